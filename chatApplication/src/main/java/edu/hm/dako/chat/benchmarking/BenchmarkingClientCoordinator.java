@@ -5,6 +5,7 @@ import edu.hm.dako.chat.common.CpuUtilisationWatch;
 import edu.hm.dako.chat.common.DistributionMetrics;
 import edu.hm.dako.chat.common.SharedClientStatistics;
 import edu.hm.dako.chat.server.ChatServerGuiInterface;
+import edu.hm.dako.chat.server.WorkerExecutors;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -13,6 +14,7 @@ import java.util.Calendar;
 import java.util.Vector;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -87,6 +89,19 @@ public class BenchmarkingClientCoordinator extends Thread
         sharedData = new SharedClientStatistics(parm.getNumberOfClients(),
                 parm.getNumberOfMessages(), parm.getClientThinkTime(), this.clientGui);
 
+        // Korrektur von Coordinated Omission nur im geschlossenen Lastmodell:
+        // Bei offener Lasterzeugung wird die RTT bereits ab dem geplanten
+        // Sendezeitpunkt gemessen und enthaelt damit die Wartezeit
+        if (parm.getExpectedRequestIntervalMicros() > 0) {
+            if (parm.getLoadMode() == UserInterfaceInputParameters.LoadMode.ClosedLoop) {
+                sharedData.setExpectedRequestInterval(
+                        parm.getExpectedRequestIntervalMicros() * 1000L);
+            } else {
+                log.info("Erwarteter Requestabstand wird bei offener Lasterzeugung "
+                        + "ignoriert");
+            }
+        }
+
         // Berechnung aller Messages fuer Progress-Bar
         if (clientGui.getProgressBar() != null) {
             clientGui.getProgressBar()
@@ -126,12 +141,38 @@ public class BenchmarkingClientCoordinator extends Thread
 
         // Client-Threads in Abhaengigkeit des Implementierungstyps instanziieren
         // und starten
-        ExecutorService executorService = Executors
-                .newFixedThreadPool(parm.getNumberOfClients());
+        // Je simuliertem Client ein Thread fuer die Lasterzeugung und einer
+        // fuer den Message-Listener. Bei vielen Clients werden dafuer
+        // virtuelle Threads verwendet, sonst wird der Lastgenerator selbst
+        // zum Engpass.
+        ExecutorService executorService;
+        ThreadFactory listenerThreadFactory = null;
+        if (parm.isVirtualClientThreads() && !WorkerExecutors.isVirtualThreadSupported()) {
+            // Lauf nicht als Lauf mit virtuellen Threads ausweisen
+            log.warn("Virtuelle Threads erst ab Java 21 verfuegbar, simulierte Clients "
+                    + "laufen in normalen Threads");
+            clientGui.setMessageLine("Virtuelle Threads nicht verfuegbar, normale Threads "
+                    + "werden verwendet");
+            parm.setVirtualClientThreads(false);
+        }
+        if (parm.isVirtualClientThreads()) {
+            executorService = WorkerExecutors.newWorkerExecutor(true);
+            listenerThreadFactory = WorkerExecutors.newThreadFactory(true, "MessageListener-");
+        } else {
+            executorService = Executors.newFixedThreadPool(parm.getNumberOfClients());
+        }
+
+        // Bei offener Lasterzeugung teilen sich alle Clients einen Zeitplan
+        OpenLoopScheduler scheduler = null;
+        if (parm.getLoadMode() != UserInterfaceInputParameters.LoadMode.ClosedLoop) {
+            scheduler = new OpenLoopScheduler(parm.getLoadMode(), parm.getRequestRate(),
+                    parm.getNumberOfClients());
+        }
 
         for (int i = 0; i < parm.getNumberOfClients(); i++) {
-            executorService
-                    .submit(BenchmarkingClientFactory.getClient(this, parm, i, sharedData));
+            executorService.submit(
+                    BenchmarkingClientFactory.getClient(this, parm, i, sharedData, scheduler,
+                            listenerThreadFactory));
         }
 
         // Startwerte anzeigen
@@ -320,6 +361,8 @@ public class BenchmarkingClientCoordinator extends Thread
         resultData.setPercentile50(distributionMetrics.getPercentile50());
         resultData.setPercentile75(distributionMetrics.getPercentile75());
         resultData.setPercentile90(distributionMetrics.getPercentile90());
+        resultData.setPercentile99(distributionMetrics.getPercentile99());
+        resultData.setPercentile999(distributionMetrics.getPercentile999());
         resultData.setStandardDeviation(distributionMetrics.getStandardDeviation());
         resultData.setRange(distributionMetrics.getRange());
         resultData.setInterquartilRange(distributionMetrics.getInterquartilRange());
@@ -327,6 +370,7 @@ public class BenchmarkingClientCoordinator extends Thread
         resultData.setMaximum(distributionMetrics.getMaximum());
 
         resultData.setAvgServerTime(sharedData.getAverageServerTime() / 1000000.0);
+        resultData.setServerPhaseHistograms(sharedData.getServerPhaseHistograms());
 
         cal = Calendar.getInstance();
         resultData.setEndTime(getCurrentTime(cal));
@@ -1,10 +1,16 @@
 package edu.hm.dako.chat.benchmarking;
 
 import edu.hm.dako.chat.client.ClientUserInterface;
+import edu.hm.dako.chat.codec.PduCodecType;
 import edu.hm.dako.chat.common.SharedClientStatistics;
 import edu.hm.dako.chat.connection.ConnectionFactory;
 import edu.hm.dako.chat.connection.DecoratingConnectionFactory;
+import edu.hm.dako.chat.local.LocalConnectionFactory;
+import edu.hm.dako.chat.tcp.FramedTcpConnectionFactory;
 import edu.hm.dako.chat.tcp.TcpConnectionFactory;
+import edu.hm.dako.chat.udp.UdpConnectionFactory;
+
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Uebernimmt die Konfiguration und die Erzeugung bestimmter Client-Typen fuer
@@ -20,7 +26,9 @@ public final class BenchmarkingClientFactory {
 
     public static Runnable getClient(ClientUserInterface userInterface,
                                      UserInterfaceInputParameters param, int numberOfClient,
-                                     SharedClientStatistics sharedData) {
+                                     SharedClientStatistics sharedData,
+                                     OpenLoopScheduler scheduler,
+                                     ThreadFactory listenerThreadFactory) {
         try {
 
             switch (param.getImplementationType()) {
@@ -32,13 +40,55 @@ public final class BenchmarkingClientFactory {
                             param.getImplementationType(), param.getRemoteServerPort(),
                             param.getRemoteServerAddress(), numberOfClient, param.getMessageLength(),
                             param.getNumberOfMessages(), param.getClientThinkTime(),
+                            param.getRequestWindowSize(), param.getConfirmBatchSize(),
+                            param.getConfirmBatchBytes(), param.getConfirmBatchDelayMicros(),
                             param.getNumberOfRetries(), param.getResponseTimeout(), sharedData,
-                            getDecoratedFactory(new TcpConnectionFactory()));
+                            scheduler, listenerThreadFactory,
+                            getDecoratedFactory(createTcpConnectionFactory(param)));
                     return impl;
 
+                case TCPNioAdvancedImplementation:
+
+                    // Der NIO-Server arbeitet immer mit Rahmen
+                    return new BenchmarkingClientImpl(userInterface,
+                            param.getImplementationType(), param.getRemoteServerPort(),
+                            param.getRemoteServerAddress(), numberOfClient, param.getMessageLength(),
+                            param.getNumberOfMessages(), param.getClientThinkTime(),
+                            param.getRequestWindowSize(), param.getConfirmBatchSize(),
+                            param.getConfirmBatchBytes(), param.getConfirmBatchDelayMicros(),
+                            param.getNumberOfRetries(), param.getResponseTimeout(), sharedData,
+                            scheduler, listenerThreadFactory,
+                            getDecoratedFactory(new FramedTcpConnectionFactory(
+                                    param.getPduCodecType().createCodec())));
+
                 case UDPAdvancedImplementation:
 
-                    System.out.println("UDP noch nicht implementiert");
+                    // Datagramme mit Wiederholung nach Ablauf des
+                    // Response-Timeouts
+                    return new BenchmarkingClientImpl(userInterface,
+                            param.getImplementationType(), param.getRemoteServerPort(),
+                            param.getRemoteServerAddress(), numberOfClient, param.getMessageLength(),
+                            param.getNumberOfMessages(), param.getClientThinkTime(),
+                            param.getRequestWindowSize(), param.getConfirmBatchSize(),
+                            param.getConfirmBatchBytes(), param.getConfirmBatchDelayMicros(),
+                            param.getNumberOfRetries(), param.getResponseTimeout(), sharedData,
+                            scheduler, listenerThreadFactory,
+                            getDecoratedFactory(new UdpConnectionFactory(
+                                    param.getPduCodecType().createCodec(),
+                                    param.getResponseTimeout(), param.getNumberOfRetries())));
+
+                case LocalAdvancedImplementation:
+
+                    // Server im selben Prozess, Kodierung gibt der Server vor
+                    return new BenchmarkingClientImpl(userInterface,
+                            param.getImplementationType(), param.getRemoteServerPort(),
+                            param.getRemoteServerAddress(), numberOfClient, param.getMessageLength(),
+                            param.getNumberOfMessages(), param.getClientThinkTime(),
+                            param.getRequestWindowSize(), param.getConfirmBatchSize(),
+                            param.getConfirmBatchBytes(), param.getConfirmBatchDelayMicros(),
+                            param.getNumberOfRetries(), param.getResponseTimeout(), sharedData,
+                            scheduler, listenerThreadFactory,
+                            getDecoratedFactory(new LocalConnectionFactory()));
 
                 default:
                     throw new RuntimeException(
@@ -49,6 +99,18 @@ public final class BenchmarkingClientFactory {
         }
     }
 
+    /**
+     * Bei Java-Serialisierung wird wie bisher ein durchgehender Objektstrom
+     * verwendet, sonst Rahmen mit dem gewaehlten Codec
+     */
+    private static ConnectionFactory createTcpConnectionFactory(
+            UserInterfaceInputParameters param) {
+        if (param.getPduCodecType() == PduCodecType.JavaSerialization) {
+            return new TcpConnectionFactory();
+        }
+        return new FramedTcpConnectionFactory(param.getPduCodecType().createCodec());
+    }
+
     public static ConnectionFactory getDecoratedFactory(
             ConnectionFactory connectionFactory) {
         return new DecoratingConnectionFactory(connectionFactory);
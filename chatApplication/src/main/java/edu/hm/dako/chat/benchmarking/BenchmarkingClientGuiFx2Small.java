@@ -74,7 +74,8 @@ public class BenchmarkingClientGuiFx2Small extends Application
     final VBox box = new VBox();
 
     // Auswahl fuer Comboboxen
-    ObservableList<String> implTypeOptions = FXCollections.observableArrayList(SystemConstants.IMPL_TCP_ADVANCED,SystemConstants.IMPL_TCP_SIMPLE);
+    ObservableList<String> implTypeOptions = FXCollections.observableArrayList(SystemConstants.IMPL_TCP_ADVANCED,SystemConstants.IMPL_TCP_SIMPLE,
+            SystemConstants.IMPL_TCP_NIO_ADVANCED, SystemConstants.IMPL_UDP_ADVANCED);
     ObservableList<String> measureTypeOptions = FXCollections
             .observableArrayList("Variable Threads", "Variable Length");
 
@@ -89,6 +90,7 @@ public class BenchmarkingClientGuiFx2Small extends Application
     private TextField textFieldNumberOfMessagesPerClients;
     private TextField textFieldServerport;
     private TextField textFieldThinkTime;
+    private TextField textFieldRequestWindowSize;
     private TextField textFieldServerIpAdress;
     private TextField textFieldMessageLength;
     private TextField textFieldNumberOfMaxRetries;
@@ -135,6 +137,7 @@ public class BenchmarkingClientGuiFx2Small extends Application
     private Label numberOfMessagesPerClients;
     private Label serverport;
     private Label thinkTime;
+    private Label requestWindowSize;
     private Label serverIpAddress;
     private Label messageLength;
     private Label numberOfMaxRetries;
@@ -291,6 +294,11 @@ public class BenchmarkingClientGuiFx2Small extends Application
         textFieldServerport = createEditableTextfield(inputPane, 11, 3, "50000");
         textFieldServerport.setFont(Font.font(TEXTFIELDFONTSIZE));
 
+        requestWindowSize = createLabel("Offene Requests je Client");
+        inputPane.add(requestWindowSize, 9, 7);
+        textFieldRequestWindowSize = createEditableTextfield(inputPane, 11, 7, "1");
+        textFieldRequestWindowSize.setFont(Font.font(TEXTFIELDFONTSIZE));
+
         serverIpAddress = createLabel("Server-IP-Adresse");
         inputPane.add(serverIpAddress, 9, 5);
         textFieldServerIpAdress = createEditableTextfield(inputPane, 11, 5, "localhost");
@@ -752,6 +760,7 @@ public class BenchmarkingClientGuiFx2Small extends Application
 
         setServerPort();
         setThinkTime();
+        setRequestWindowSize();
         setNumberOfClientThreads();
         setNumberOfMessagesPerClient();
         setMessageLength();
@@ -817,6 +826,23 @@ public class BenchmarkingClientGuiFx2Small extends Application
         }
     }
 
+    /**
+     * Pruefen der Eingabe der Fenstergroesse (offene Requests je Client)
+     */
+    private void setRequestWindowSize() {
+        String testString = textFieldRequestWindowSize.getText();
+        if (testString.matches("[0-9]+") && Integer.parseInt(testString) >= 1) {
+            Integer iWindowSize = new Integer(testString);
+            System.out.println("Offene Requests je Client: " + iWindowSize);
+            iParam.setRequestWindowSize(iWindowSize.intValue());
+            requestWindowSize.setTextFill(Color.web(SystemConstants.BLACK_COLOR));
+        } else {
+            // Nicht numerisch oder kleiner 1
+            startable = false;
+            requestWindowSize.setTextFill(Color.web(SystemConstants.RED_COLOR));
+        }
+    }
+
     /**
      * Pruefen der Eingabe der Anzahl an Clients
      */
@@ -980,10 +1006,14 @@ public class BenchmarkingClientGuiFx2Small extends Application
             iParam.setImplementationType(
                     edu.hm.dako.chat.common.ImplementationType.TCPSimpleImplementation);
             implType.setTextFill(Color.web(SystemConstants.BLACK_COLOR));
+        } else if (item.equals(SystemConstants.IMPL_TCP_NIO_ADVANCED)) {
+            iParam.setImplementationType(
+                    edu.hm.dako.chat.common.ImplementationType.TCPNioAdvancedImplementation);
+            implType.setTextFill(Color.web(SystemConstants.BLACK_COLOR));
         } else if (item.equals(SystemConstants.IMPL_UDP_ADVANCED)) {
-            setAlert("Der Typ UDPAdvanced wurde noch nicht Implementiert");
-            startable = false;
-            implType.setTextFill(Color.web(SystemConstants.RED_COLOR));
+            iParam.setImplementationType(
+                    edu.hm.dako.chat.common.ImplementationType.UDPAdvancedImplementation);
+            implType.setTextFill(Color.web(SystemConstants.BLACK_COLOR));
         } else {
             setAlert("Kein Implementierungstyp ausgew\u00c4hlt!");
             startable = false;
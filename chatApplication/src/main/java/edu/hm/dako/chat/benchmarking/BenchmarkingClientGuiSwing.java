@@ -51,6 +51,7 @@ public class BenchmarkingClientGuiSwing extends JPanel implements
     public static final String IMPL_TCP_ADVANCED = "TCPAdvanced";
     public static final String IMPL_UDP_ADVANCED = "UDPAdvanced";
     public static final String IMPL_TCP_SIMPLE = "TCPSimple";
+    public static final String IMPL_TCP_NIO_ADVANCED = "TCPNioAdvanced";
 
     // Zeitzaehler fuer Testlaufzeit
     private long timeCounter = 0;
@@ -72,6 +73,7 @@ public class BenchmarkingClientGuiSwing extends JPanel implements
     private JFormattedTextField textFieldNumberOfMessagesPerClients;
     private JTextField textFieldServerport;
     private JTextField textFieldThinkTime;
+    private JTextField textFieldRequestWindowSize;
     private JFormattedTextField textFieldServerIpAddress;
     private JFormattedTextField textFieldMessageLength;
     private JFormattedTextField textFieldNumberOfMaxRetries;
@@ -133,7 +135,7 @@ public class BenchmarkingClientGuiSwing extends JPanel implements
          * Erzeugen der GUI-Komponenten
          */
         String[] optionStrings = {IMPL_TCP_ADVANCED, IMPL_TCP_SIMPLE,
-                IMPL_UDP_ADVANCED};
+                IMPL_UDP_ADVANCED, IMPL_TCP_NIO_ADVANCED};
         optionListImplType = new JComboBox(optionStrings);
 
         String[] optionStrings1 = {"Variable Threads", "Variable Length"};
@@ -146,6 +148,7 @@ public class BenchmarkingClientGuiSwing extends JPanel implements
         textFieldNumberOfMessagesPerClients = new JFormattedTextField();
         textFieldServerport = new JTextField();
         textFieldThinkTime = new JTextField();
+        textFieldRequestWindowSize = new JTextField();
         textFieldServerIpAddress = new JFormattedTextField();
         textFieldMessageLength = new JFormattedTextField();
 
@@ -276,6 +279,10 @@ public class BenchmarkingClientGuiSwing extends JPanel implements
         panelBenchmarkingClientGui.add(textFieldResponseTimeout, cc.xy(7, 11));
         textFieldResponseTimeout.setText("2000");
 
+        panelBenchmarkingClientGui.add(new JLabel("Offene Requests je Client"), cc.xy(1, 13));
+        panelBenchmarkingClientGui.add(textFieldRequestWindowSize, cc.xy(3, 13));
+        textFieldRequestWindowSize.setText("1");
+
         panelBenchmarkingClientGui.add(createSeparator("Laufzeitdaten"), cc.xyw(1, 17, 7));
         panelBenchmarkingClientGui.add(new JLabel("Geplante Requests"), cc.xy(1, 19));
         panelBenchmarkingClientGui.add(textFieldPlannedRequests, cc.xy(3, 19));
@@ -517,6 +524,20 @@ public class BenchmarkingClientGuiSwing extends JPanel implements
             iParm.setClientThinkTime(iThinkTime.intValue());
         }
 
+        // Validierung fuer die Anzahl gleichzeitig offener Requests
+        testString = textFieldRequestWindowSize.getText();
+        if (!testString.matches("[0-9]+") || Integer.parseInt(testString) < 1) {
+            // nicht numerisch oder kleiner 1
+            // Aktualisieren des Frames auf dem Bildschirm
+            setMessageLine("Offene Requests je Client bitte numerisch und mindestens 1 angeben");
+            frameBenchmarkingGui.update(frameBenchmarkingGui.getGraphics());
+            return;
+        } else {
+            Integer iWindowSize = new Integer(textFieldRequestWindowSize.getText());
+            System.out.println("Offene Requests je Client: " + iWindowSize);
+            iParm.setRequestWindowSize(iWindowSize.intValue());
+        }
+
         // Validierung fuer Serverport
         testString = textFieldServerport.getText();
         if (testString.matches("[0-9]+")) {
@@ -649,6 +670,8 @@ public class BenchmarkingClientGuiSwing extends JPanel implements
             iParm.setImplementationType(ImplementationType.TCPSimpleImplementation);
         if (item1.equals(IMPL_UDP_ADVANCED))
             iParm.setImplementationType(ImplementationType.UDPAdvancedImplementation);
+        if (item1.equals(IMPL_TCP_NIO_ADVANCED))
+            iParm.setImplementationType(ImplementationType.TCPNioAdvancedImplementation);
 
         // Eingegebenen Messungstyp auslesen
         String item2 = (String) optionListMeasureType.getSelectedItem();
@@ -0,0 +1,403 @@
+package edu.hm.dako.chat.benchmarking;
+
+import edu.hm.dako.chat.codec.PduCodecType;
+import edu.hm.dako.chat.common.ExceptionHandler;
+import edu.hm.dako.chat.common.ImplementationType;
+import edu.hm.dako.chat.connection.FlushPolicy;
+import edu.hm.dako.chat.server.ChatServerGuiInterface;
+import edu.hm.dako.chat.server.ChatServerInterface;
+import edu.hm.dako.chat.server.ServerConfiguration;
+import edu.hm.dako.chat.server.ServerFactory;
+import edu.hm.dako.chat.server.ServerStartData;
+import edu.hm.dako.chat.server.WorkerExecutors;
+import javafx.scene.control.ProgressBar;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.log4j.PropertyConfigurator;
+
+import javax.swing.JProgressBar;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Benchmark ohne Benutzeroberflaeche, z.B. fuer naechtliche Messreihen auf
+ * Rechnern ohne Bildschirm. Fuehrt alle Messpunkte einer
+ * {@link BenchmarkingSweep Messreihe} nacheinander aus und schreibt die
+ * Ergebnisse als CSV oder JSON.
+ * <p/>
+ * Die Messreihe wird als Properties-Datei (-spec Datei) und/oder ueber
+ * Optionen in der Kommandozeile angegeben (-clients 1,10,50 usw., gleiche
+ * Schluessel wie in {@link BenchmarkingSweep}). Werte aus der Kommandozeile
+ * ueberschreiben die Datei. Weitere Optionen:
+ * <pre>
+ * -server  inprocess (Standard): Server wird im selben Prozess gestartet,
+ *          sonst Adresse eines laufenden Servers als host:port
+ * -port    Listenport des lokal gestarteten Servers
+ * -virtual Worker des lokal gestarteten Servers in virtuellen Threads (ab
+ *          Java 21, in aelteren Laufzeitumgebungen wird die Option abgelehnt)
+ * -flush   Schreibzeitpunkt des lokal gestarteten Servers fuer verteilte
+ *          Events, z.B. COALESCE,1400,200 (siehe {@link FlushPolicy})
+ * -nodelay TCP-Option TcpNoDelay des lokal gestarteten Servers (true/false)
+ * -localcodec bei LocalAdvancedImplementation PDUs mit dem Codec kodieren
+ *          (true) statt als Referenzen zu uebergeben (false, Standard)
+ * -pooling empfangene PDUs im lokal gestarteten Server wiederverwenden
+ *          (true/false, nur TCP mit Codec Binary)
+ * -virtualclients simulierte Clients in virtuellen Threads ausfuehren, damit
+ *          auch tausende Clients nur wenige Betriebssystem-Threads belegen
+ *          (ab Java 21, in aelteren Laufzeitumgebungen wird die Option
+ *          abgelehnt)
+ * -carriers Anzahl der Traeger-Threads fuer die virtuellen Threads
+ *          (jdk.virtualThreadScheduler.parallelism, Standard: Anzahl der
+ *          CPU-Kerne). Auf Rechnern mit wenigen Kernen kann ein Lauf mit
+ *          150 und mehr virtuellen Clients sonst haengen bleiben, weil die
+ *          Client-Sockets in die TCP-Sendewiederholung geraten; z.B. 4
+ * -format  csv (Standard) oder json
+ * -out     Ergebnisdatei, Standard: Benchmarking-Ergebnisse.csv bzw. .json
+ * -pause   Pause zwischen zwei Laeufen in ms, damit der Server aufraeumen kann
+ * </pre>
+ * Ein externer Server muss mit dem passenden Implementierungstyp und der
+ * passenden Kodierung gestartet sein; es sollte dann nur ein Wert fuer impl
+ * und codec angegeben werden.
+ * LocalAdvancedImplementation ist nur mit dem Server im selben Prozess
+ * moeglich.
+ *
+ * @author Peter Mandl
+ */
+public class BenchmarkingClientHeadless implements BenchmarkingClientUserInterface,
+        ChatServerGuiInterface {
+
+    private static Log log = LogFactory.getLog(BenchmarkingClientHeadless.class);
+
+    private static final String IN_PROCESS = "inprocess";
+
+    private final Properties options;
+
+    // Lokal gestarteter Server mit Implementierungstyp und Kodierung
+    private ChatServerInterface server;
+    private ImplementationType serverImplType;
+    private PduCodecType serverCodecType;
+
+    // Ergebnisse des zuletzt beendeten Laufs
+    private volatile UserInterfaceResultData lastResult;
+
+    BenchmarkingClientHeadless(Properties options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) {
+        PropertyConfigurator.configureAndWatch("log4j.client.properties", 60 * 1000);
+
+        Properties options;
+        BenchmarkingSweep sweep;
+        try {
+            options = parseArguments(args);
+            configureCarrierThreads(options);
+            sweep = new BenchmarkingSweep(options);
+        } catch (Exception e) {
+            System.out.println("Fehlerhafter Aufruf: " + e.getMessage());
+            System.out.println("Optionen: [-spec <Datei>] -impl <Typen> -codec <Kodierungen> "
+                    + "-clients <Anzahlen> -messages <Anzahlen> -length <Byte> "
+                    + "-think <ms> -window <Anzahlen> -expectedinterval <us> "
+                    + "-confirmbatch <Anzahlen> -confirmbytes <Byte> -confirmdelay <us> "
+                    + "-retries <n> -timeout <ms> -mode <Lastmodelle> -rate <Requests/s> "
+                    + "-repetitions <n> -warmup <n> "
+                    + "-server <inprocess|host:port> -port <Port> -virtual -virtualclients "
+                    + "-carriers <Anzahl> "
+                    + "-flush <Modus[,Byte[,us]]> -nodelay <true|false> "
+                    + "-localcodec <true|false> -pooling <true|false> "
+                    + "-format <csv|json> -out <Datei> -pause <ms>");
+            System.exit(1);
+            return;
+        }
+
+        int exitCode = new BenchmarkingClientHeadless(options).runSweep(sweep);
+        System.exit(exitCode);
+    }
+
+    /**
+     * Kommandozeilenoptionen und ggf. Beschreibungsdatei einlesen
+     *
+     * @param args Optionen der Form -schluessel wert bzw. -virtual, -virtualclients
+     * @return Alle Optionen, Schluessel ohne Bindestrich
+     * @throws IOException falls die Beschreibungsdatei nicht lesbar ist
+     */
+    static Properties parseArguments(String[] args) throws IOException {
+        Properties commandLine = new Properties();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("-")) {
+                throw new IllegalArgumentException("Unerwarteter Wert " + args[i]);
+            }
+            String key = args[i].substring(1);
+            if (key.equals("virtual") || key.equals("virtualclients")) {
+                commandLine.setProperty(key, "true");
+            } else if (i + 1 < args.length) {
+                commandLine.setProperty(key, args[++i]);
+            } else {
+                throw new IllegalArgumentException("Wert fuer " + args[i] + " fehlt");
+            }
+        }
+
+        Properties options = new Properties();
+        String specFile = commandLine.getProperty("spec");
+        if (specFile != null) {
+            InputStream in = new FileInputStream(specFile);
+            try {
+                options.load(in);
+            } finally {
+                in.close();
+            }
+        }
+        options.putAll(commandLine);
+
+        if (Boolean.parseBoolean(options.getProperty("virtual", "false"))
+                && !WorkerExecutors.isVirtualThreadSupported()) {
+            throw new IllegalArgumentException(
+                    "Virtuelle Threads erst ab Java 21 verfuegbar (-virtual)");
+        }
+        return options;
+    }
+
+    /**
+     * Anzahl der Traeger-Threads fuer virtuelle Threads festlegen. Muss vor
+     * dem ersten virtuellen Thread geschehen, da der Scheduler die Eigenschaft
+     * nur beim Start liest.
+     *
+     * @param options Optionen, Schluessel carriers
+     */
+    static void configureCarrierThreads(Properties options) {
+        String carriers = options.getProperty("carriers");
+        if (carriers == null) {
+            return;
+        }
+        int parallelism;
+        try {
+            parallelism = Integer.parseInt(carriers.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Ungueltiger Wert " + carriers + " fuer carriers");
+        }
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("carriers muss positiv sein");
+        }
+        System.setProperty("jdk.virtualThreadScheduler.parallelism",
+                String.valueOf(parallelism));
+        log.debug("Traeger-Threads fuer virtuelle Threads: " + parallelism);
+    }
+
+    /**
+     * Alle Messpunkte ausfuehren
+     *
+     * @param sweep Messreihe
+     * @return Exit-Code: 0 bei Erfolg
+     */
+    int runSweep(BenchmarkingSweep sweep) {
+        PrintWriter out = null;
+        try {
+            BenchmarkingResultWriter.Format format = BenchmarkingResultWriter.Format
+                    .valueOf(options.getProperty("format", "csv").toUpperCase());
+            String fileName = options.getProperty("out",
+                    "Benchmarking-Ergebnisse." + format.name().toLowerCase());
+            long pause = Long.parseLong(options.getProperty("pause", "1000"));
+
+            List<UserInterfaceInputParameters> points = sweep.getPoints();
+            System.out.println("Messreihe mit " + points.size() + " Messpunkten, je "
+                    + sweep.getWarmupRuns() + " Aufwaermlaeufe und " + sweep.getRepetitions()
+                    + " Wiederholungen, Ergebnisse in " + fileName);
+
+            out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(fileName), "UTF-8"));
+            BenchmarkingResultWriter writer = new BenchmarkingResultWriter(out, format);
+
+            int pointNumber = 0;
+            for (UserInterfaceInputParameters parm : points) {
+                pointNumber++;
+                prepareServer(parm);
+
+                for (int i = 1; i <= sweep.getWarmupRuns(); i++) {
+                    System.out.println("Messpunkt " + pointNumber + "/" + points.size()
+                            + ": Aufwaermlauf " + i);
+                    runOnce(parm, pause);
+                }
+                for (int i = 1; i <= sweep.getRepetitions(); i++) {
+                    System.out.println("Messpunkt " + pointNumber + "/" + points.size()
+                            + ": Lauf " + i + " (" + describe(parm) + ")");
+                    writer.write(parm, i, runOnce(parm, pause));
+                }
+            }
+            writer.finish();
+            return 0;
+        } catch (Exception e) {
+            log.error("Messreihe abgebrochen: " + e.getMessage());
+            ExceptionHandler.logException(e);
+            System.out.println("Messreihe abgebrochen: " + e);
+            return 2;
+        } finally {
+            if (out != null) {
+                out.close();
+            }
+            stopServer();
+        }
+    }
+
+    /**
+     * Einen Benchmark-Lauf ausfuehren und auf sein Ende warten
+     */
+    private UserInterfaceResultData runOnce(UserInterfaceInputParameters parm, long pause)
+            throws InterruptedException {
+        lastResult = null;
+        BenchmarkingClientCoordinator coordinator = new BenchmarkingClientCoordinator();
+        coordinator.executeTest(parm, this);
+
+        // Der Koordinator ist ein Thread und endet erst, nachdem die
+        // Ergebnisse gemeldet und protokolliert wurden
+        coordinator.join();
+        if (lastResult == null) {
+            throw new IllegalStateException("Keine Ergebnisse fuer " + describe(parm));
+        }
+
+        // Server Zeit zum Aufraeumen der Clientliste geben
+        Thread.sleep(pause);
+        return lastResult;
+    }
+
+    /**
+     * Bei lokalem Server: Server passend zum Messpunkt starten, bei externem
+     * Server dessen Adresse eintragen
+     */
+    private void prepareServer(UserInterfaceInputParameters parm) throws Exception {
+        String serverOption = options.getProperty("server", IN_PROCESS);
+
+        if (!serverOption.equals(IN_PROCESS)) {
+            int colon = serverOption.lastIndexOf(':');
+            if (colon < 0) {
+                parm.setRemoteServerAddress(serverOption);
+            } else {
+                parm.setRemoteServerAddress(serverOption.substring(0, colon));
+                parm.setRemoteServerPort(Integer.parseInt(serverOption.substring(colon + 1)));
+            }
+            return;
+        }
+
+        ServerConfiguration config = new ServerConfiguration();
+        config.setImplementationType(parm.getImplementationType());
+        config.setPduCodecType(parm.getPduCodecType());
+        config.setServerPort(Integer.parseInt(
+                options.getProperty("port", String.valueOf(config.getServerPort()))));
+        config.setVirtualThreads(Boolean.parseBoolean(options.getProperty("virtual", "false")));
+        config.setTcpNoDelay(Boolean.parseBoolean(options.getProperty("nodelay", "true")));
+        config.setLocalPduReferences(
+                !Boolean.parseBoolean(options.getProperty("localcodec", "false")));
+        config.setPduPooling(Boolean.parseBoolean(options.getProperty("pooling", "false")));
+        if (options.getProperty("flush") != null) {
+            config.setFlushPolicy(FlushPolicy.parse(options.getProperty("flush")));
+        }
+        config.setRetransmitTimeout(parm.getResponseTimeout());
+        config.setMaxRetries(parm.getNumberOfRetries());
+        parm.setRemoteServerAddress("127.0.0.1");
+        parm.setRemoteServerPort(config.getServerPort());
+
+        if ((server != null) && (serverImplType == config.getImplementationType())
+                && (serverCodecType == config.getPduCodecType())) {
+            return;
+        }
+
+        stopServer();
+        server = ServerFactory.getServer(config, this);
+        server.start();
+        serverImplType = config.getImplementationType();
+        serverCodecType = config.getPduCodecType();
+
+        // Warten, bis der Server Verbindungen annimmt
+        Thread.sleep(500);
+    }
+
+    private void stopServer() {
+        if (server == null) {
+            return;
+        }
+        try {
+            server.stop();
+        } catch (Exception e) {
+            log.error("Fehler beim Stoppen des Chat-Servers");
+            ExceptionHandler.logException(e);
+        }
+        // Einige Server unterbrechen beim Stoppen den aufrufenden Thread
+        Thread.interrupted();
+        server = null;
+    }
+
+    private static String describe(UserInterfaceInputParameters parm) {
+        return parm.getImplementationType() + ", " + parm.getPduCodecType() + ", Clients: "
+                + parm.getNumberOfClients() + ", Nachrichten: " + parm.getNumberOfMessages()
+                + ", Laenge: " + parm.getMessageLength() + ", Denkzeit: "
+                + parm.getClientThinkTime() + ", Fenster: " + parm.getRequestWindowSize()
+                + (parm.getConfirmBatchSize() > 1 ? ", Confirm-Buendel: " + parm.getConfirmBatchSize() : "")
+                + (parm.getLoadMode() == UserInterfaceInputParameters.LoadMode.ClosedLoop ? ""
+                : ", " + parm.getLoadMode() + " mit " + parm.getRequestRate() + " Requests/s");
+    }
+
+    @Override
+    public void showStartData(UserInterfaceStartData data) {
+        log.debug("Testbeginn: " + data.getStartTime() + ", geplante Requests: "
+                + data.getNumberOfRequests());
+    }
+
+    @Override
+    public void showResultData(UserInterfaceResultData data) {
+        lastResult = data;
+        System.out.println("Testdauer in s: " + data.getElapsedTime() + ", Responses: "
+                + data.getNumberOfResponses() + ", mittlere RTT in ms: " + data.getMean()
+                + ", 99%-Percentile in ms: " + data.getPercentile99());
+    }
+
+    @Override
+    public void setMessageLine(String message) {
+        log.debug(message);
+    }
+
+    @Override
+    public void resetCurrentRunTime() {
+    }
+
+    @Override
+    public void addCurrentRunTime(long sec) {
+    }
+
+    @Override
+    public void testFinished() {
+    }
+
+    @Override
+    public JProgressBar getProgressBar() {
+        return null;
+    }
+
+    @Override
+    public ProgressBar getProgressBarFx() {
+        return null;
+    }
+
+    @Override
+    public void countUpProgressTask() {
+    }
+
+    @Override
+    public void showStartData(ServerStartData data) {
+    }
+
+    @Override
+    public void incrNumberOfLoggedInClients() {
+    }
+
+    @Override
+    public void decrNumberOfLoggedInClients() {
+    }
+
+    @Override
+    public void incrNumberOfRequests() {
+    }
+}
@@ -1,19 +1,29 @@
 package edu.hm.dako.chat.benchmarking;
 
 import edu.hm.dako.chat.client.AbstractChatClient;
+import edu.hm.dako.chat.client.ChatRequestTracker;
 import edu.hm.dako.chat.client.ClientImpl;
 import edu.hm.dako.chat.client.ClientUserInterface;
+import edu.hm.dako.chat.client.ConfirmBatcher;
 import edu.hm.dako.chat.client.messager.AdvancedMessageListenerThreadImpl;
 import edu.hm.dako.chat.client.messager.SimpleMessageListenerThreadImpl;
+import edu.hm.dako.chat.common.ChatPDU;
 import edu.hm.dako.chat.common.ClientConversationStatus;
 import edu.hm.dako.chat.common.ExceptionHandler;
 import edu.hm.dako.chat.common.ImplementationType;
+import edu.hm.dako.chat.common.PduType;
 import edu.hm.dako.chat.common.SharedClientStatistics;
 import edu.hm.dako.chat.connection.ConnectionFactory;
+import edu.hm.dako.chat.connection.RetransmittingConnection;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -40,6 +50,37 @@ public class BenchmarkingClientImpl extends AbstractChatClient
     protected int nrOfRetries;
     protected int clientThinkTime;
 
+    // Maximale Anzahl gleichzeitig offener Chat-Requests (1: Stop-and-Wait)
+    protected int requestWindowSize;
+
+    // Schwellen fuer gebuendelte Event-Confirms (Anzahl 1: einzeln senden)
+    protected int confirmBatchSize;
+    protected int confirmBatchBytes;
+    protected int confirmBatchDelayMicros;
+
+    // Zeitplan bei offener Lasterzeugung, null bei geschlossener
+    private OpenLoopScheduler.ClientSchedule schedule;
+
+    // Erzeugt den Thread fuer den Message-Listener (z.B. virtuelle Threads),
+    // null: Message-Listener laeuft als eigener Thread
+    private ThreadFactory listenerThreadFactory;
+
+    // Inhalt der Chat-Nachrichten, wird nur einmal aufgebaut
+    private String chatMessage;
+
+    // Wartezeit in ms beim Abholen von Responses und beim Warten auf Login
+    // und Logout, danach wird auf einen Testabbruch geprueft
+    private static final int RESPONSE_POLL_INTERVAL = 100;
+
+    // Offene Requests und eingetroffene Responses
+    private ChatRequestTracker requestTracker;
+    private int sentRequests;
+    private int receivedResponses;
+
+    // Requests, die die Verbindung trotz Wiederholungen nicht zustellen
+    // konnte (nur UDP); auf ihre Responses wird nicht mehr gewartet
+    private final AtomicLong lostRequests = new AtomicLong(0);
+
     protected ImplementationType implementationType;
 
     // Kennzeichen, ob zuletzt erwartete Chat-Response-PDU des Clients
@@ -72,27 +113,86 @@ public class BenchmarkingClientImpl extends AbstractChatClient
      * @param messageLength       Laenge der Chat-Nachrichten
      * @param numberOfMessages    Anzahl der Nachrichten pro Client
      * @param clientThinkTime     Maximale Denkzeit zwischen zwei Chat-Requests
+     * @param requestWindowSize   Maximale Anzahl gleichzeitig offener Chat-Requests
+     * @param confirmBatchSize    Maximale Anzahl gebuendelter Event-Confirms, 1: keine
+     *                            Buendelung
+     * @param confirmBatchBytes   Maximale Groesse einer Sammelbestaetigung in Byte
+     * @param confirmBatchDelayMicros Maximale Wartezeit eines Confirms in us
      * @param numberOfRetries     Anzahl Wiederholungen bei Nachrichtenverlust
      * @param responseTimeout     Timeout bei Uebrwachung der Bestaetigungen
      * @param sharedStatistics    Statistikdaten
+     * @param scheduler           Gemeinsamer Zeitplan bei offener Lasterzeugung,
+     *                            null bei geschlossener
+     * @param listenerThreadFactory Erzeugt den Thread fuer den Message-Listener,
+     *                            null: Listener als eigener Thread starten
      * @param connectionFactory   Connection Fabrik
      */
     public BenchmarkingClientImpl(ClientUserInterface userInterface,
                                   ImplementationType implementationType, int serverPort, String remoteServerAddress,
                                   int numberOfClient, int messageLength, int numberOfMessages, int clientThinkTime,
+                                  int requestWindowSize, int confirmBatchSize, int confirmBatchBytes,
+                                  int confirmBatchDelayMicros,
                                   int numberOfRetries, int responseTimeout, SharedClientStatistics sharedStatistics,
+                                  OpenLoopScheduler scheduler, ThreadFactory listenerThreadFactory,
                                   ConnectionFactory connectionFactory) {
 
-        super(userInterface, serverPort, remoteServerAddress);
+        super(userInterface, serverPort, remoteServerAddress, connectionFactory);
 
         this.implementationType = implementationType;
         this.clientNumber = numberOfClient;
         this.messageLength = messageLength;
         this.numberOfMessagesToSend = numberOfMessages;
         this.clientThinkTime = clientThinkTime;
+        this.requestWindowSize = Math.max(1, requestWindowSize);
+        this.confirmBatchSize = Math.max(1, confirmBatchSize);
+        this.confirmBatchBytes = confirmBatchBytes;
+        this.confirmBatchDelayMicros = confirmBatchDelayMicros;
         this.nrOfRetries = numberOfRetries;
         this.responseTimeout = responseTimeout;
         this.sharedStatistics = sharedStatistics;
+        if (scheduler != null) {
+            this.schedule = scheduler.newClientSchedule(numberOfClient);
+        }
+        this.listenerThreadFactory = listenerThreadFactory;
+
+        // Dummy-Nachricht zusammenbauen
+        StringBuilder message = new StringBuilder(messageLength);
+        for (int j = 0; j < messageLength; j++) {
+            message.append('+');
+        }
+        this.chatMessage = message.toString();
+
+        // Responses werden ueber die Transaktions-ID zugeordnet, damit mehrere
+        // Requests gleichzeitig offen sein koennen
+        this.requestTracker = new ChatRequestTracker(this.requestWindowSize);
+        sharedClientData.requestTracker = requestTracker;
+
+        // Event-Confirms buendeln; nur der Advanced-Server bestaetigt Events
+        if ((this.confirmBatchSize > 1)
+                && (implementationType != ImplementationType.TCPSimpleImplementation)) {
+            sharedClientData.confirmBatcher = new ConfirmBatcher(connection, sharedClientData,
+                    this.confirmBatchSize, confirmBatchBytes, confirmBatchDelayMicros);
+        }
+
+        // Verlorene Requests aus dem Fenster austragen
+        if (connection instanceof RetransmittingConnection) {
+            ((RetransmittingConnection) connection).setListener(
+                    new RetransmittingConnection.Listener() {
+                        @Override
+                        public void retransmitted(ChatPDU pdu) {
+                        }
+
+                        @Override
+                        public void lost(ChatPDU pdu) {
+                            if (pdu.getPduType() == PduType.CHAT_MESSAGE_REQUEST) {
+                                log.debug(userName + ": Chat-Message-Request "
+                                        + pdu.getSequenceNumber() + " verloren");
+                                lostRequests.incrementAndGet();
+                                requestTracker.cancel(pdu.getTransactionId());
+                            }
+                        }
+                    });
+        }
         startMessageListenerThread();
     }
 
@@ -108,17 +208,20 @@ public class BenchmarkingClientImpl extends AbstractChatClient
                 try {
                     messageListenerThread = new SimpleMessageListenerThreadImpl(this, connection,
                             sharedClientData);
-                    messageListenerThread.start();
+                    startListener();
                 } catch (Exception e) {
                     ExceptionHandler.logException(e);
                 }
                 break;
 
             case TCPAdvancedImplementation:
+            case TCPNioAdvancedImplementation:
+            case UDPAdvancedImplementation:
+            case LocalAdvancedImplementation:
                 try {
                     messageListenerThread = new AdvancedMessageListenerThreadImpl(this, connection,
                             sharedClientData);
-                    messageListenerThread.start();
+                    startListener();
                 } catch (Exception e) {
                     ExceptionHandler.logException(e);
                 }
@@ -134,6 +237,20 @@ public class BenchmarkingClientImpl extends AbstractChatClient
         log.debug("Message-Processing-Thread gestartet: " + messageListenerThread.getName());
     }
 
+    /**
+     * Message-Listener starten: als eigener Thread oder, falls eine
+     * ThreadFactory vorgegeben ist, in einem von ihr erzeugten Thread (z.B.
+     * einem virtuellen Thread). Der Listener wird dann nur als Runnable
+     * verwendet.
+     */
+    private void startListener() {
+        if (listenerThreadFactory == null) {
+            messageListenerThread.start();
+        } else {
+            listenerThreadFactory.newThread(messageListenerThread).start();
+        }
+    }
+
     /**
      * Thread zur Simulation eines Chat-Users: User wird beim Server registriert,
      * alle Requests werden gesendet, Antworten werden gelesen und am Ende wird
@@ -147,14 +264,14 @@ public class BenchmarkingClientImpl extends AbstractChatClient
             // Login ausfuehren und warten, bis Server bestaetigt
             this.login(threadName);
 
-            while (sharedClientData.status != ClientConversationStatus.REGISTERED) {
-
-                Thread.sleep(1);
-                if (sharedClientData.status == ClientConversationStatus.UNREGISTERED) {
-                    // Fehlermeldung vom Server beim Login-Vorgang
-                    log.debug("User " + userName + " schon im Server angemeldet");
-                    return;
-                }
+            ClientConversationStatus loginStatus = waitForCompletion(
+                    sharedClientData.loginCompletion);
+            if (loginStatus != ClientConversationStatus.REGISTERED) {
+                // Fehlermeldung vom Server beim Login-Vorgang, Verbindungsabbruch
+                // oder Testabbruch
+                log.debug("User " + userName + " nicht beim Server angemeldet, Zustand: "
+                        + loginStatus);
+                return;
             }
 
             sharedStatistics.incrNumberOfLoggedInClients();
@@ -164,32 +281,52 @@ public class BenchmarkingClientImpl extends AbstractChatClient
             // Warten, bis alle Clients eingerloggt sind
             waitForLoggedInClients();
 
-            // Alle Chat-Nachrichten senden
+            // Alle Chat-Nachrichten senden. Es werden maximal
+            // requestWindowSize Requests gesendet, bevor auf eine Response
+            // gewartet wird
             int i = 0;
             while ((i < numberOfMessagesToSend) && (!userInterface.isTestAborted())) {
 
-                sendMessageAndWaitForAck(i);
-                try {
-                    // Zufaellige Zeit, aber maximal die angegebene Denkzeit
-                    // warten
-                    int randomThinkTime = (int) (Math.random() * clientThinkTime) + 1;
-                    Thread.sleep(randomThinkTime);
-                } catch (Exception e) {
-                    ExceptionHandler.logException(e);
+                if (schedule != null) {
+                    // Offene Lasterzeugung: Senden zum geplanten Zeitpunkt,
+                    // unabhaengig von den Responses. Eingetroffene Responses
+                    // nur abholen, nicht darauf warten.
+                    sendMessage(schedule.awaitNextSendTime(userInterface));
+                    receiveResponses(Integer.MAX_VALUE);
+                    i++;
+                    continue;
+                }
+
+                sendMessage();
+                receiveResponses(requestWindowSize - 1);
+                if (clientThinkTime > 0) {
+                    try {
+                        // Zufaellige Zeit, aber maximal die angegebene Denkzeit
+                        // warten
+                        int randomThinkTime = (int) (Math.random() * clientThinkTime) + 1;
+                        Thread.sleep(randomThinkTime);
+                    } catch (Exception e) {
+                        ExceptionHandler.logException(e);
+                    }
                 }
 
                 i++;
                 log.debug("Gesendete Chat-Nachrichten von " + userName + ": " + i);
             }
 
+            // Auf die Responses aller noch offenen Requests warten
+            receiveResponses(0);
+
             // Warten, bis alle Clients bereit zum Ausloggen sind (alle Clients
             // haben alle Chat-Nachrichten gesendet)
             waitForLoggingOutClients();
 
             // Logout ausfuehren und warten, bis Server bestaetigt
             this.logout(threadName);
-            while (sharedClientData.status != ClientConversationStatus.UNREGISTERED) {
-                Thread.sleep(1);
+            if (waitForCompletion(sharedClientData.logoutCompletion)
+                    != ClientConversationStatus.UNREGISTERED) {
+                log.debug("Logout von " + userName + " nicht bestaetigt");
+                return;
             }
 
             sharedStatistics.incrNumberOfLoggedOutClients();
@@ -219,60 +356,102 @@ public class BenchmarkingClientImpl extends AbstractChatClient
     }
 
     /**
-     * Warten, bis Server einen Chat-Response als Antwort auf den letzten
-     * Chat-Request gesendet hat (nur fuer Benchmarking)
+     * Chat-Nachricht an den Server senden, ohne auf die Antwort zu warten.
+     * Blockiert nur, wenn bereits die maximale Anzahl an Requests offen ist.
+     * Methode wird nur von Benchmarking-Client genutzt
      */
-    private void waitUntilChatResponseReceived() {
+    private void sendMessage() {
+        sendMessage(-1);
+    }
+
+    /**
+     * Chat-Nachricht an den Server senden, ohne auf die Antwort zu warten
+     *
+     * @param intendedSendTime Geplanter Sendezeitpunkt bei offener
+     *                         Lasterzeugung (System.nanoTime()), sonst -1
+     */
+    private void sendMessage(long intendedSendTime) {
 
-        setLock(true);
         try {
-            while (getLock() == true) {
-                log.debug(userName + " wartet auf Chat-Message-Response-PDU");
-                Thread.sleep(1);
-                // Durch den Sleep wird die RTT beim Benchmark ein wenig verfaelscht
+            sharedStatistics.incrSentMsgCounter(clientNumber);
+
+            // Die RTT wird ab dem Eintragen des Requests bzw. ab dem
+            // geplanten Sendezeitpunkt gemessen
+            if (schedule != null) {
+                tellScheduled(userName, chatMessage, intendedSendTime);
+            } else {
+                tell(userName, chatMessage);
             }
+            sentRequests++;
+
         } catch (Exception e) {
             ExceptionHandler.logException(e);
         }
-
-        return;
     }
 
     /**
-     * Chat-Nachricht an den Server senden und auf Antwort warten. Methode wird
-     * nur von Benchmarking-Client genutzt
+     * Eingetroffene Responses in die Statistik aufnehmen und warten, bis
+     * hoechstens noch die angegebene Anzahl an Requests offen ist. Das Warten
+     * endet vorzeitig, wenn der Test abgebrochen wird.
      *
-     * @param i Nummer des Clients
-     * @throws Exception
+     * @param maxOutstanding Anzahl an Requests, die offen bleiben duerfen
+     * @throws InterruptedException falls das Warten unterbrochen wurde
      */
-    private void sendMessageAndWaitForAck(int i) throws Exception {
+    private void receiveResponses(int maxOutstanding) throws InterruptedException {
 
-        // Dummy-Nachricht zusammenbauen
-        String chatMessage = "";
-        for (int j = 0; j < messageLength; j++) {
-            chatMessage += "+";
-        }
+        ChatRequestTracker.CompletedRequest response;
 
-        // Senden der Nachricht und warten, bis Bestaetigung vom Server da ist
-        try {
-
-            sharedStatistics.incrSentMsgCounter(clientNumber);
+        // Bereits vorliegende Responses ohne Warten abholen
+        while ((response = requestTracker.poll(0)) != null) {
+            postReceive(response);
+        }
 
-            // RTT-Startzeit ermitteln
-            long rttStartTime = System.nanoTime();
-            tell(userName, chatMessage);
+        while ((sentRequests - receivedResponses - lostRequests.get() > maxOutstanding)
+                && (!userInterface.isTestAborted())) {
+            log.debug(userName + " wartet auf Chat-Message-Response-PDU, offene Requests: "
+                    + (sentRequests - receivedResponses));
+            response = requestTracker.poll(RESPONSE_POLL_INTERVAL);
+            if (response != null) {
+                postReceive(response);
+            }
+        }
+    }
 
-            // Warten, bis Chat-Response empfangen wurde, dann erst naechsten
-            // Chat Request senden
-            waitUntilChatResponseReceived();
+    /**
+     * Response in die Statistik aufnehmen
+     *
+     * @param response Messwerte des abgeschlossenen Requests
+     */
+    private void postReceive(ChatRequestTracker.CompletedRequest response) {
+        receivedResponses++;
+        postReceive((int) response.getSequenceNumber() - 1, response.getServerTime(),
+                response.getServerPhaseTimes(), response.getRtt());
+    }
 
-            // Response in Statistik aufnehmen
-            long rtt = System.nanoTime() - rttStartTime;
-            postReceive(i, getLastServerTime(), rtt);
+    /**
+     * Warten, bis der Message-Listener-Thread den Login- bzw. Logout-Vorgang
+     * abschliesst. Das Warten endet vorzeitig, wenn der Test abgebrochen wird.
+     *
+     * @param completion Abschluss des Vorgangs aus den gemeinsamen Daten
+     * @return Erreichter Zustand, null bei Testabbruch
+     * @throws InterruptedException falls das Warten unterbrochen wurde
+     */
+    private ClientConversationStatus waitForCompletion(
+            CompletableFuture<ClientConversationStatus> completion)
+            throws InterruptedException {
 
-        } catch (Exception e) {
-            ExceptionHandler.logException(e);
+        while (!userInterface.isTestAborted()) {
+            try {
+                return completion.get(RESPONSE_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                log.debug(userName + " wartet auf Response, Zustand: "
+                        + sharedClientData.status);
+            } catch (ExecutionException e) {
+                ExceptionHandler.logException(e);
+                return null;
+            }
         }
+        return null;
     }
 
     /**
@@ -301,15 +480,19 @@ public class BenchmarkingClientImpl extends AbstractChatClient
     /**
      * Nacharbeit nach Empfang einer PDU vom Server
      *
-     * @param messageNumber Fortlaufende Nachrichtennummer
-     * @param serverTime    Zeit, die der Server fuer die Bearbeitung des
-     *                      Chat-Message-Requests benoetigt
-     * @param rtt           Round Trip Time fuer den Request
+     * @param messageNumber    Fortlaufende Nachrichtennummer
+     * @param serverTime       Zeit, die der Server fuer die Bearbeitung des
+     *                         Chat-Message-Requests benoetigt
+     * @param serverPhaseTimes Aufteilung der Serverzeit auf die
+     *                         Bearbeitungsabschnitte oder null
+     * @param rtt              Round Trip Time fuer den Request
      */
-    private void postReceive(int messageNumber, long serverTime, long rtt) {
+    private void postReceive(int messageNumber, long serverTime, long[] serverPhaseTimes,
+                             long rtt) {
 
         // Response-Zaehler und Serverbearbeitungszeit erhoehen
-        sharedStatistics.incrReceivedMsgCounter(clientNumber, rtt, serverTime);
+        sharedStatistics.incrReceivedMsgCounter(clientNumber, rtt, serverTime,
+                serverPhaseTimes);
 
         if (rtt <= serverTime) {
             // Test, ob Messung plausibel ist, rtt muss groesser als serverTime sein
@@ -333,6 +516,11 @@ public class BenchmarkingClientImpl extends AbstractChatClient
         sharedStatistics.setNumberOfLostConfirmEvents(clientNumber,
                 getNumberOfLostConfirms());
         sharedStatistics.setNumberOfRetriedEvents(clientNumber, getNumberOfRetries());
+        if (connection instanceof RetransmittingConnection) {
+            // Eigene Uebertragungswiederholungen des Clients
+            sharedStatistics.setNumberOfRetries(clientNumber,
+                    ((RetransmittingConnection) connection).getNumberOfRetries());
+        }
 
         log.debug(
                 "Vom Server verarbeitete Chat-Nachrichten: " + getNumberOfReceivedChatMessages());
@@ -0,0 +1,184 @@
+package edu.hm.dako.chat.benchmarking;
+
+import edu.hm.dako.chat.common.LatencyHistogram;
+import edu.hm.dako.chat.common.ServerPhase;
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Schreibt die Ergebnisse einer Messreihe maschinenlesbar als CSV (eine Zeile
+ * je Lauf, Kopfzeile mit Spaltennamen) oder als JSON (ein Array mit einem
+ * Objekt je Lauf). Jeder Datensatz enthaelt die Eingabeparameter des
+ * Messpunkts, die Nummer der Wiederholung und alle Felder aus
+ * {@link UserInterfaceResultData}, die Verteilungen der Serverabschnitte
+ * als Mittelwert, 50%- und 99%-Percentile in ms.
+ *
+ * @author Peter Mandl
+ */
+public class BenchmarkingResultWriter {
+
+    /**
+     * Ausgabeformat
+     */
+    public enum Format {
+        CSV, JSON
+    }
+
+    private final PrintWriter out;
+    private final Format format;
+
+    // Anzahl bereits geschriebener Datensaetze
+    private int records = 0;
+
+    /**
+     * @param out    Ziel der Ausgabe
+     * @param format Ausgabeformat
+     */
+    public BenchmarkingResultWriter(PrintWriter out, Format format) {
+        this.out = out;
+        this.format = format;
+    }
+
+    /**
+     * Datensatz fuer einen Lauf schreiben
+     *
+     * @param parm       Eingabeparameter des Messpunkts
+     * @param repetition Nummer der Wiederholung (ab 1)
+     * @param result     Ergebnisse des Laufs
+     */
+    public void write(UserInterfaceInputParameters parm, int repetition,
+                      UserInterfaceResultData result) {
+        Map<String, Object> record = toRecord(parm, repetition, result);
+
+        if (format == Format.CSV) {
+            if (records == 0) {
+                out.println(join(record.keySet()));
+            }
+            out.println(join(record.values()));
+        } else {
+            out.println(records == 0 ? "[" : ",");
+            out.print(toJson(record));
+        }
+        out.flush();
+        records++;
+    }
+
+    /**
+     * Ausgabe abschliessen. Das Ziel der Ausgabe wird nicht geschlossen.
+     */
+    public void finish() {
+        if (format == Format.JSON) {
+            out.println(records == 0 ? "[]" : "\n]");
+        }
+        out.flush();
+    }
+
+    private static Map<String, Object> toRecord(UserInterfaceInputParameters parm,
+                                                int repetition, UserInterfaceResultData result) {
+        Map<String, Object> record = new LinkedHashMap<String, Object>();
+
+        // Eingabeparameter
+        record.put("implementationType", parm.getImplementationType());
+        record.put("pduCodecType", parm.getPduCodecType());
+        record.put("numberOfClients", parm.getNumberOfClients());
+        record.put("numberOfMessages", parm.getNumberOfMessages());
+        record.put("messageLength", parm.getMessageLength());
+        record.put("clientThinkTime", parm.getClientThinkTime());
+        record.put("requestWindowSize", parm.getRequestWindowSize());
+        record.put("confirmBatchSize", parm.getConfirmBatchSize());
+        record.put("loadMode", parm.getLoadMode());
+        record.put("requestRate", parm.getRequestRate());
+        record.put("expectedRequestIntervalMicros", parm.getExpectedRequestIntervalMicros());
+        record.put("virtualClientThreads", parm.isVirtualClientThreads());
+        record.put("repetition", repetition);
+
+        // Ergebnisse
+        record.put("endTime", result.getEndTime());
+        record.put("elapsedTime", result.getElapsedTime());
+        record.put("numberOfSentRequests", result.getNumberOfSentRequests());
+        record.put("numberOfResponses", result.getNumberOfResponses());
+        record.put("numberOfLostResponses", result.getNumberOfLostResponses());
+        record.put("numberOfRetries", result.getNumberOfRetries());
+        record.put("numberOfSentEventMessages", result.getNumberOfSentEventMessages());
+        record.put("numberOfReceivedConfirmEvents", result.getNumberOfReceivedConfirmEvents());
+        record.put("numberOfLostConfirmEvents", result.getNumberOfLostConfirmEvents());
+        record.put("numberOfRetriedEvents", result.getNumberOfRetriedEvents());
+        record.put("avgServerTime", result.getAvgServerTime());
+        record.put("maxHeapSize", result.getMaxHeapSize());
+        record.put("maxCpuUsage", result.getMaxCpuUsage());
+        record.put("minimum", result.getMinimum());
+        record.put("maximum", result.getMaximum());
+        record.put("mean", result.getMean());
+        record.put("standardDeviation", result.getStandardDeviation());
+        record.put("percentile10", result.getPercentile10());
+        record.put("percentile25", result.getPercentile25());
+        record.put("percentile50", result.getPercentile50());
+        record.put("percentile75", result.getPercentile75());
+        record.put("percentile90", result.getPercentile90());
+        record.put("percentile99", result.getPercentile99());
+        record.put("percentile999", result.getPercentile999());
+        record.put("range", result.getRange());
+        record.put("interquartilRange", result.getInterquartilRange());
+
+        // Aufteilung der Serverzeit je Bearbeitungsabschnitt in ms
+        for (ServerPhase phase : ServerPhase.values()) {
+            LatencyHistogram histogram = result.getServerPhaseHistogram(phase);
+            record.put(phase.getKey() + "Mean", histogram.getMean() / 1000000.0);
+            record.put(phase.getKey() + "Percentile50",
+                    histogram.getValueAtPercentile(50) / 1000000.0);
+            record.put(phase.getKey() + "Percentile99",
+                    histogram.getValueAtPercentile(99) / 1000000.0);
+        }
+        return record;
+    }
+
+    private static String join(Iterable<?> values) {
+        StringBuilder line = new StringBuilder();
+        for (Object value : values) {
+            if (line.length() > 0) {
+                line.append(',');
+            }
+            line.append(format(value));
+        }
+        return line.toString();
+    }
+
+    private static String toJson(Map<String, Object> record) {
+        StringBuilder json = new StringBuilder("  {");
+        boolean first = true;
+        for (Map.Entry<String, Object> entry : record.entrySet()) {
+            if (!first) {
+                json.append(", ");
+            }
+            first = false;
+            json.append('"').append(entry.getKey()).append("\": ");
+            Object value = entry.getValue();
+            if ((value instanceof Number) && !isNaN(value)) {
+                json.append(format(value));
+            } else if (value == null || isNaN(value)) {
+                json.append("null");
+            } else {
+                json.append('"').append(value.toString().replace("\\", "\\\\")
+                        .replace("\"", "\\\"")).append('"');
+            }
+        }
+        return json.append('}').toString();
+    }
+
+    private static boolean isNaN(Object value) {
+        return ((value instanceof Double) && ((Double) value).isNaN())
+                || ((value instanceof Float) && ((Float) value).isNaN());
+    }
+
+    /**
+     * Zahlen immer mit Dezimalpunkt ausgeben, unabhaengig vom Gebietsschema
+     */
+    private static String format(Object value) {
+        if ((value instanceof Double) || (value instanceof Float)) {
+            return String.format(Locale.ROOT, "%.6f", ((Number) value).doubleValue());
+        }
+        return value == null ? "" : value.toString();
+    }
+}
@@ -0,0 +1,226 @@
+package edu.hm.dako.chat.benchmarking;
+
+import edu.hm.dako.chat.codec.PduCodecType;
+import edu.hm.dako.chat.common.ImplementationType;
+import edu.hm.dako.chat.server.WorkerExecutors;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Beschreibung einer Messreihe fuer den Benchmark ohne Benutzeroberflaeche.
+ * Fuer jeden Parameter kann eine Liste von Werten angegeben werden (durch
+ * Komma getrennt); gemessen wird das kartesische Produkt aller Werte. Jeder
+ * Messpunkt wird mehrfach wiederholt, davor laufen Aufwaermlaeufe, die nicht
+ * in das Ergebnis eingehen.
+ * <p/>
+ * Schluessel der Beschreibung (Properties-Datei oder Kommandozeile):
+ * <pre>
+ * impl        Implementierungstypen, z.B. TCPSimpleImplementation,TCPAdvancedImplementation
+ * codec       Kodierungen, z.B. JavaSerialization,Binary
+ * clients     Anzahl Clients, z.B. 1,10,50
+ * messages    Anzahl Nachrichten je Client
+ * length      Nachrichtenlaengen in Byte
+ * think       Denkzeiten in ms
+ * window      Anzahl offener Requests je Client
+ * confirmbatch  Maximale Anzahl gebuendelter Event-Confirms je Client (1: einzeln)
+ * confirmbytes  Maximale Groesse einer Sammelbestaetigung in Byte (ein Wert)
+ * confirmdelay  Maximale Wartezeit eines Confirms in us (ein Wert)
+ * retries     Maximale Anzahl an Wiederholungen je PDU bei UDP (ein Wert)
+ * timeout     Maximale Wartezeit auf eine Quittung in ms bei UDP (ein Wert)
+ * mode        Lastmodelle, z.B. ClosedLoop,OpenLoopFixedRate,OpenLoopPoisson
+ * rate        Gesamtraten in Requests/s fuer die offenen Lastmodelle
+ * expectedinterval  Erwarteter Abstand zwischen zwei Requests eines Clients
+ *             in us fuer die Korrektur von Coordinated Omission im
+ *             geschlossenen Lastmodell, 0: keine Korrektur (ein Wert)
+ * virtualclients  true: simulierte Clients in virtuellen Threads (ein Wert,
+ *             ab Java 21, in aelteren Laufzeitumgebungen wird er abgelehnt)
+ * repetitions Wiederholungen je Messpunkt
+ * warmup      Aufwaermlaeufe je Messpunkt
+ * </pre>
+ *
+ * @author Peter Mandl
+ */
+public class BenchmarkingSweep {
+
+    private final List<ImplementationType> implementationTypes;
+    private final List<PduCodecType> codecTypes;
+    private final List<Integer> numberOfClients;
+    private final List<Integer> numberOfMessages;
+    private final List<Integer> messageLengths;
+    private final List<Integer> thinkTimes;
+    private final List<Integer> requestWindowSizes;
+    private final List<Integer> confirmBatchSizes;
+    private final int confirmBatchBytes;
+    private final int confirmBatchDelayMicros;
+    private final int numberOfRetries;
+    private final int responseTimeout;
+    private final List<UserInterfaceInputParameters.LoadMode> loadModes;
+    private final List<Double> requestRates;
+    private final int expectedRequestIntervalMicros;
+    private final boolean virtualClientThreads;
+    private final int repetitions;
+    private final int warmupRuns;
+
+    /**
+     * Messreihe aus einer Beschreibung erzeugen. Nicht angegebene Parameter
+     * werden mit den Standardwerten aus {@link UserInterfaceInputParameters}
+     * belegt.
+     *
+     * @param spec Beschreibung der Messreihe
+     * @throws IllegalArgumentException bei ungueltigen Werten
+     */
+    public BenchmarkingSweep(Properties spec) {
+        UserInterfaceInputParameters defaults = new UserInterfaceInputParameters();
+
+        implementationTypes = new ArrayList<ImplementationType>();
+        for (String s : split(spec, "impl", defaults.getImplementationType().name())) {
+            implementationTypes.add(ImplementationType.valueOf(s));
+        }
+        codecTypes = new ArrayList<PduCodecType>();
+        for (String s : split(spec, "codec", defaults.getPduCodecType().name())) {
+            codecTypes.add(PduCodecType.valueOf(s));
+        }
+        numberOfClients = parseIntegers(spec, "clients", defaults.getNumberOfClients());
+        numberOfMessages = parseIntegers(spec, "messages", defaults.getNumberOfMessages());
+        messageLengths = parseIntegers(spec, "length", defaults.getMessageLength());
+        thinkTimes = parseIntegers(spec, "think", defaults.getClientThinkTime());
+        requestWindowSizes = parseIntegers(spec, "window", defaults.getRequestWindowSize());
+        confirmBatchSizes = parseIntegers(spec, "confirmbatch", defaults.getConfirmBatchSize());
+        confirmBatchBytes = parseIntegers(spec, "confirmbytes",
+                defaults.getConfirmBatchBytes()).get(0);
+        confirmBatchDelayMicros = parseIntegers(spec, "confirmdelay",
+                defaults.getConfirmBatchDelayMicros()).get(0);
+        numberOfRetries = parseIntegers(spec, "retries", defaults.getNumberOfRetries()).get(0);
+        responseTimeout = parseIntegers(spec, "timeout", defaults.getResponseTimeout()).get(0);
+        loadModes = new ArrayList<UserInterfaceInputParameters.LoadMode>();
+        for (String s : split(spec, "mode", defaults.getLoadMode().name())) {
+            loadModes.add(UserInterfaceInputParameters.LoadMode.valueOf(s));
+        }
+        requestRates = new ArrayList<Double>();
+        for (String s : split(spec, "rate", String.valueOf(defaults.getRequestRate()))) {
+            double rate;
+            try {
+                rate = Double.parseDouble(s);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Ungueltiger Wert " + s + " fuer rate");
+            }
+            if (rate <= 0) {
+                throw new IllegalArgumentException("Rate " + s + " muss positiv sein");
+            }
+            requestRates.add(rate);
+        }
+        expectedRequestIntervalMicros = parseIntegers(spec, "expectedinterval",
+                defaults.getExpectedRequestIntervalMicros()).get(0);
+        if (expectedRequestIntervalMicros < 0) {
+            throw new IllegalArgumentException("expectedinterval darf nicht negativ sein");
+        }
+        virtualClientThreads = Boolean.parseBoolean(
+                spec.getProperty("virtualclients", "false").trim());
+        if (virtualClientThreads && !WorkerExecutors.isVirtualThreadSupported()) {
+            throw new IllegalArgumentException(
+                    "Virtuelle Threads erst ab Java 21 verfuegbar (virtualclients)");
+        }
+        repetitions = parseIntegers(spec, "repetitions", 1).get(0);
+        warmupRuns = parseIntegers(spec, "warmup", 0).get(0);
+    }
+
+    /**
+     * Alle Messpunkte der Reihe erzeugen. Die Punkte sind nach
+     * Implementierungstyp und Kodierung geordnet, damit ein lokal gestarteter
+     * Server nur bei deren Wechsel neu gestartet werden muss.
+     *
+     * @return Eingabeparameter je Messpunkt
+     */
+    public List<UserInterfaceInputParameters> getPoints() {
+        List<UserInterfaceInputParameters> points = new ArrayList<UserInterfaceInputParameters>();
+
+        for (ImplementationType implType : implementationTypes) {
+            for (PduCodecType codec : codecTypes) {
+                for (int clients : numberOfClients) {
+                    for (int messages : numberOfMessages) {
+                        for (int length : messageLengths) {
+                            for (int think : thinkTimes) {
+                                for (int window : requestWindowSizes) {
+                                    for (int confirmBatch : confirmBatchSizes) {
+                                        for (UserInterfaceInputParameters.LoadMode mode : loadModes) {
+                                            // Die Rate gilt nur fuer die offenen Lastmodelle
+                                            List<Double> rates = requestRates;
+                                            if (mode == UserInterfaceInputParameters.LoadMode.ClosedLoop) {
+                                                rates = requestRates.subList(0, 1);
+                                            }
+                                            for (double rate : rates) {
+                                                UserInterfaceInputParameters parm = new UserInterfaceInputParameters();
+                                                parm.setImplementationType(implType);
+                                                parm.setPduCodecType(codec);
+                                                parm.setNumberOfClients(clients);
+                                                parm.setNumberOfMessages(messages);
+                                                parm.setMessageLength(length);
+                                                parm.setClientThinkTime(think);
+                                                parm.setRequestWindowSize(window);
+                                                parm.setConfirmBatchSize(confirmBatch);
+                                                parm.setConfirmBatchBytes(confirmBatchBytes);
+                                                parm.setConfirmBatchDelayMicros(confirmBatchDelayMicros);
+                                                parm.setNumberOfRetries(numberOfRetries);
+                                                parm.setResponseTimeout(responseTimeout);
+                                                parm.setLoadMode(mode);
+                                                parm.setRequestRate(rate);
+                                                parm.setExpectedRequestIntervalMicros(
+                                                        expectedRequestIntervalMicros);
+                                                parm.setVirtualClientThreads(virtualClientThreads);
+                                                if (messageLengths.size() > 1) {
+                                                    parm.setMeasurementType(
+                                                            UserInterfaceInputParameters.MeasurementType.VarMsgLength);
+                                                }
+                                                points.add(parm);
+                                            }
+                                        }
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return points;
+    }
+
+    public int getRepetitions() {
+        return repetitions;
+    }
+
+    public int getWarmupRuns() {
+        return warmupRuns;
+    }
+
+    private static String[] split(Properties spec, String key, String defaultValue) {
+        String value = spec.getProperty(key, defaultValue).trim();
+        if (value.isEmpty()) {
+            value = defaultValue;
+        }
+        String[] values = value.split("\\s*,\\s*");
+        if (values.length == 0) {
+            throw new IllegalArgumentException("Kein Wert fuer " + key);
+        }
+        return values;
+    }
+
+    private static List<Integer> parseIntegers(Properties spec, String key, int defaultValue) {
+        List<Integer> values = new ArrayList<Integer>();
+        for (String s : split(spec, key, String.valueOf(defaultValue))) {
+            int value;
+            try {
+                value = Integer.parseInt(s);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Ungueltiger Wert " + s + " fuer " + key);
+            }
+            if (value < 0) {
+                throw new IllegalArgumentException("Negativer Wert " + s + " fuer " + key);
+            }
+            values.add(value);
+        }
+        return values;
+    }
+}
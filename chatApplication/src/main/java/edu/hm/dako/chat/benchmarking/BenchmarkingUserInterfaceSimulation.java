@@ -40,6 +40,9 @@ public class BenchmarkingUserInterfaceSimulation implements
         System.out.println("Mittlere RTT in ms: " + data.getMean());
         System.out.println("Maximale RTT in ms: " + data.getMaximum());
         System.out.println("Minimale RTT in ms: " + data.getMinimum());
+        System.out.println("RTT-Percentile in ms (50/90/99/99,9): "
+                + data.getPercentile50() + " / " + data.getPercentile90() + " / "
+                + data.getPercentile99() + " / " + data.getPercentile999());
         System.out.println("Mittlere Serverbearbeitungszeit in ms: "
                 + data.getAvgServerTime());
 
@@ -0,0 +1,151 @@
+package edu.hm.dako.chat.benchmarking;
+
+import edu.hm.dako.chat.client.ClientUserInterface;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Zeitplan fuer die offene Lasterzeugung: Die Requests aller Clients werden
+ * mit einer angestrebten Gesamtrate gesendet, unabhaengig davon, wann die
+ * Responses eintreffen. Wird der Server langsamer, sinkt die angebotene Last
+ * also nicht wie beim geschlossenen Modell (Senden erst nach der Response).
+ * <p/>
+ * Jeder Client erhaelt mit {@link #newClientSchedule(int)} seinen Anteil am
+ * Zeitplan:
+ * <ul>
+ * <li>Feste Rate: Jeder Client sendet mit Rate/Anzahl Clients, die Clients
+ * sind gegeneinander versetzt, so dass insgesamt alle 1/Rate Sekunden ein
+ * Request gesendet wird.</li>
+ * <li>Poisson: Jeder Client sendet mit exponentialverteilten Abstaenden und
+ * Rate/Anzahl Clients. Die Ueberlagerung ist wieder ein Poisson-Prozess mit
+ * der Gesamtrate.</li>
+ * </ul>
+ * Die Latenz wird ab dem geplanten Sendezeitpunkt gemessen. Kann ein Client
+ * nicht rechtzeitig senden (z.B. weil sein Fenster offener Requests voll
+ * ist), geht die Verspaetung in die Latenz ein; Coordinated Omission tritt
+ * damit nicht auf.
+ *
+ * @author Peter Mandl
+ */
+public class OpenLoopScheduler {
+
+    private static Log log = LogFactory.getLog(OpenLoopScheduler.class);
+
+    // Vorlauf zwischen dem Start des Zeitplans und dem ersten Request in ns
+    private static final long START_DELAY = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final UserInterfaceInputParameters.LoadMode loadMode;
+    private final int numberOfClients;
+
+    // Mittlerer Abstand zwischen zwei Requests eines Clients in ns
+    private final double clientInterval;
+
+    // Gemeinsamer Startzeitpunkt aller Clients (System.nanoTime()), 0: noch
+    // nicht gestartet
+    private final AtomicLong startTime = new AtomicLong(0);
+
+    /**
+     * @param loadMode        offenes Lastmodell
+     * @param requestRate     angestrebte Gesamtrate in Requests je Sekunde
+     * @param numberOfClients Anzahl der Clients, auf die die Last verteilt wird
+     */
+    public OpenLoopScheduler(UserInterfaceInputParameters.LoadMode loadMode,
+                             double requestRate, int numberOfClients) {
+        if (loadMode == UserInterfaceInputParameters.LoadMode.ClosedLoop) {
+            throw new IllegalArgumentException("Kein offenes Lastmodell: " + loadMode);
+        }
+        if (requestRate <= 0 || numberOfClients <= 0) {
+            throw new IllegalArgumentException("Rate und Anzahl Clients muessen positiv sein");
+        }
+        this.loadMode = loadMode;
+        this.numberOfClients = numberOfClients;
+        this.clientInterval = TimeUnit.SECONDS.toNanos(1) * (double) numberOfClients
+                / requestRate;
+    }
+
+    /**
+     * Zeitplan starten. Der erste Aufruf legt den gemeinsamen Startzeitpunkt
+     * fest, weitere Aufrufe aendern ihn nicht.
+     *
+     * @return Startzeitpunkt in ns (System.nanoTime())
+     */
+    public long start() {
+        long now = System.nanoTime() + START_DELAY;
+        if (startTime.compareAndSet(0, now)) {
+            log.debug(loadMode + ": Abstand je Client " + clientInterval + " ns bei "
+                    + numberOfClients + " Clients");
+            return now;
+        }
+        return startTime.get();
+    }
+
+    /**
+     * Zeitplan fuer einen Client erzeugen
+     *
+     * @param clientNumber Nummer des Clients (ab 0)
+     * @return Zeitplan des Clients
+     */
+    public ClientSchedule newClientSchedule(int clientNumber) {
+        return new ClientSchedule(clientNumber);
+    }
+
+    /**
+     * Geplante Sendezeitpunkte eines Clients
+     */
+    public class ClientSchedule {
+
+        private final int clientNumber;
+
+        // Geplanter Sendezeitpunkt des naechsten Requests relativ zum Start
+        // in ns
+        private double nextOffset;
+
+        private ClientSchedule(int clientNumber) {
+            this.clientNumber = clientNumber;
+            if (loadMode == UserInterfaceInputParameters.LoadMode.OpenLoopFixedRate) {
+                // Clients gleichmaessig versetzen
+                nextOffset = clientInterval * clientNumber / numberOfClients;
+            } else {
+                nextOffset = exponentialInterval();
+            }
+        }
+
+        /**
+         * Naechsten geplanten Sendezeitpunkt ermitteln und bis dahin warten
+         *
+         * @param userInterface zur Pruefung auf Testabbruch
+         * @return Geplanter Sendezeitpunkt (System.nanoTime()), auch wenn er
+         * bereits verstrichen ist
+         */
+        public long awaitNextSendTime(ClientUserInterface userInterface) {
+            long sendTime = start() + (long) nextOffset;
+            if (loadMode == UserInterfaceInputParameters.LoadMode.OpenLoopFixedRate) {
+                nextOffset += clientInterval;
+            } else {
+                nextOffset += exponentialInterval();
+            }
+
+            long delay;
+            while ((delay = sendTime - System.nanoTime()) > 0) {
+                if (userInterface.isTestAborted()) {
+                    break;
+                }
+                LockSupport.parkNanos(Math.min(delay, TimeUnit.MILLISECONDS.toNanos(100)));
+            }
+            return sendTime;
+        }
+
+        public int getClientNumber() {
+            return clientNumber;
+        }
+
+        private double exponentialInterval() {
+            return -Math.log(1.0 - ThreadLocalRandom.current().nextDouble()) * clientInterval;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package edu.hm.dako.chat.benchmarking;
 
+import edu.hm.dako.chat.codec.PduCodecType;
 import edu.hm.dako.chat.common.ImplementationType;
 
 /**
@@ -17,6 +18,28 @@ public class UserInterfaceInputParameters {
     private int clientThinkTime;
     // Anzahl der Nachrichten pro Client-Thread
     private int numberOfMessages;
+    // Maximale Anzahl gleichzeitig offener Chat-Requests pro Client-Thread
+    // (1: Stop-and-Wait)
+    private int requestWindowSize;
+    // Confirms fuer Chat-Events buendeln (nur TCPAdvanced): maximale Anzahl
+    // Confirms je Sammelbestaetigung (1: jeder Confirm einzeln), maximale
+    // geschaetzte Groesse in Byte und maximale Wartezeit in us
+    private int confirmBatchSize;
+    private int confirmBatchBytes;
+    private int confirmBatchDelayMicros;
+
+    // Art der Lasterzeugung
+    private LoadMode loadMode;
+    // Angestrebte Gesamtrate aller Clients in Requests je Sekunde (nur
+    // offene Lastmodelle)
+    private double requestRate;
+    // Erwarteter Abstand zwischen zwei Requests eines Clients in us fuer die
+    // Korrektur von Coordinated Omission im geschlossenen Lastmodell
+    // (0: keine Korrektur)
+    private int expectedRequestIntervalMicros;
+    // Simulierte Clients und ihre Message-Listener in virtuellen Threads
+    // ausfuehren (ab Java 21)
+    private boolean virtualClientThreads;
 
     // Maximale Anzahl an Uebertragungswiederholungen bei
     // verbindungslosen Prototokollen
@@ -28,6 +51,9 @@ public class UserInterfaceInputParameters {
 
     private ImplementationType implementationType;
 
+    // Kodierung der PDUs auf der Leitung
+    private PduCodecType pduCodecType;
+
     // Typ der Messung fuer das Messprotokoll
     private MeasurementType measurementType;
     private int remoteServerPort; // UDP- oder TCP-Port des Servers, Default: 50000
@@ -41,9 +67,20 @@ public class UserInterfaceInputParameters {
         clientThinkTime = 1;
         messageLength = 100;
         numberOfMessages = 5;
+        requestWindowSize = 1;
+        confirmBatchSize = 1;
+        confirmBatchBytes = 1400;
+        confirmBatchDelayMicros = 200;
+        numberOfRetries = 3;
+        responseTimoeut = 2000;
+        loadMode = LoadMode.ClosedLoop;
+        requestRate = 1000;
+        expectedRequestIntervalMicros = 0;
+        virtualClientThreads = false;
         remoteServerPort = 50000;
         remoteServerAddress = "127.0.0.1";
         implementationType = ImplementationType.TCPSimpleImplementation;
+        pduCodecType = PduCodecType.JavaSerialization;
         measurementType = MeasurementType.VarThreads;
     }
 
@@ -66,6 +103,12 @@ public class UserInterfaceInputParameters {
             case UDPAdvancedImplementation:
                 returnString = "UDPAdvanced-Implementation";
                 break;
+            case TCPNioAdvancedImplementation:
+                returnString = "TCPNioAdvanced-Implementation";
+                break;
+            case LocalAdvancedImplementation:
+                returnString = "LocalAdvanced-Implementation";
+                break;
             default:
                 break;
         }
@@ -86,6 +129,21 @@ public class UserInterfaceInputParameters {
         VarMsgLength
     }
 
+    /**
+     * Art der Lasterzeugung
+     */
+    public enum LoadMode {
+        // Geschlossen: Jeder Client sendet erst nach der Response (bzw. bei
+        // freiem Fenster) und der Denkzeit den naechsten Request
+        ClosedLoop,
+        // Offen: Requests werden unabhaengig von den Responses in festen
+        // Abstaenden mit der angestrebten Gesamtrate gesendet
+        OpenLoopFixedRate,
+        // Offen: Wie OpenLoopFixedRate, aber mit exponentialverteilten
+        // Abstaenden (Poisson-Prozess)
+        OpenLoopPoisson
+    }
+
     /**
      * Abbildung der Messungstypen auf Strings
      *
@@ -141,6 +199,70 @@ public class UserInterfaceInputParameters {
         this.numberOfMessages = numberOfMessages;
     }
 
+    public int getRequestWindowSize() {
+        return requestWindowSize;
+    }
+
+    public void setRequestWindowSize(int requestWindowSize) {
+        this.requestWindowSize = requestWindowSize;
+    }
+
+    public int getConfirmBatchSize() {
+        return confirmBatchSize;
+    }
+
+    public void setConfirmBatchSize(int confirmBatchSize) {
+        this.confirmBatchSize = confirmBatchSize;
+    }
+
+    public int getConfirmBatchBytes() {
+        return confirmBatchBytes;
+    }
+
+    public void setConfirmBatchBytes(int confirmBatchBytes) {
+        this.confirmBatchBytes = confirmBatchBytes;
+    }
+
+    public int getConfirmBatchDelayMicros() {
+        return confirmBatchDelayMicros;
+    }
+
+    public void setConfirmBatchDelayMicros(int confirmBatchDelayMicros) {
+        this.confirmBatchDelayMicros = confirmBatchDelayMicros;
+    }
+
+    public LoadMode getLoadMode() {
+        return loadMode;
+    }
+
+    public void setLoadMode(LoadMode loadMode) {
+        this.loadMode = loadMode;
+    }
+
+    public double getRequestRate() {
+        return requestRate;
+    }
+
+    public void setRequestRate(double requestRate) {
+        this.requestRate = requestRate;
+    }
+
+    public int getExpectedRequestIntervalMicros() {
+        return expectedRequestIntervalMicros;
+    }
+
+    public void setExpectedRequestIntervalMicros(int expectedRequestIntervalMicros) {
+        this.expectedRequestIntervalMicros = expectedRequestIntervalMicros;
+    }
+
+    public boolean isVirtualClientThreads() {
+        return virtualClientThreads;
+    }
+
+    public void setVirtualClientThreads(boolean virtualClientThreads) {
+        this.virtualClientThreads = virtualClientThreads;
+    }
+
     public ImplementationType getImplementationType() {
         return implementationType;
     }
@@ -188,4 +310,12 @@ public class UserInterfaceInputParameters {
     public void setResponseTimeout(int responseTimer) {
         this.responseTimoeut = responseTimer;
     }
+
+    public PduCodecType getPduCodecType() {
+        return pduCodecType;
+    }
+
+    public void setPduCodecType(PduCodecType pduCodecType) {
+        this.pduCodecType = pduCodecType;
+    }
 }
\ No newline at end of file
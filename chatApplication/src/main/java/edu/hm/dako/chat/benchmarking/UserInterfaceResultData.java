@@ -1,5 +1,8 @@
 package edu.hm.dako.chat.benchmarking;
 
+import edu.hm.dako.chat.common.LatencyHistogram;
+import edu.hm.dako.chat.common.ServerPhase;
+
 public class UserInterfaceResultData {
 
     // Anzahl gesendeter Requests
@@ -63,6 +66,12 @@ public class UserInterfaceResultData {
     // 90 % Percentile
     private double percentile90;
 
+    // 99 % Percentile
+    private double percentile99;
+
+    // 99,9 % Percentile
+    private double percentile999;
+
     // Stannweite (zwischen Minimum und Maximum)
     private double range;
 
@@ -75,6 +84,10 @@ public class UserInterfaceResultData {
     // Standardabweichung
     double standardDeviation;
 
+    // Verteilung der vom Server gemeldeten Bearbeitungsabschnitte (Werte in
+    // ns), Index ist die Ordinalzahl von ServerPhase
+    private LatencyHistogram[] serverPhaseHistograms = new LatencyHistogram[0];
+
     public long getNumberOfSentRequests() {
         return numberOfSentRequests;
     }
@@ -208,6 +221,14 @@ public class UserInterfaceResultData {
         return percentile90;
     }
 
+    public double getPercentile99() {
+        return percentile99;
+    }
+
+    public double getPercentile999() {
+        return percentile999;
+    }
+
     public double getInterquartilRange() {
         return interquartilRange;
     }
@@ -252,6 +273,14 @@ public class UserInterfaceResultData {
         this.percentile90 = percentile90;
     }
 
+    public void setPercentile99(double percentile99) {
+        this.percentile99 = percentile99;
+    }
+
+    public void setPercentile999(double percentile999) {
+        this.percentile999 = percentile999;
+    }
+
     public void setInterquartilRange(double interquartilRange) {
         this.interquartilRange = interquartilRange;
     }
@@ -267,4 +296,20 @@ public class UserInterfaceResultData {
     public void setStandardDeviation(double standardDeviation) {
         this.standardDeviation = standardDeviation;
     }
-}
\ No newline at end of file
+
+    /**
+     * @param phase Bearbeitungsabschnitt im Server
+     * @return Verteilung der gemeldeten Dauer (Werte in ns); leeres
+     * Histogramm, wenn der Server keine Aufteilung gemeldet hat
+     */
+    public LatencyHistogram getServerPhaseHistogram(ServerPhase phase) {
+        if (phase.ordinal() >= serverPhaseHistograms.length) {
+            return new LatencyHistogram();
+        }
+        return serverPhaseHistograms[phase.ordinal()];
+    }
+
+    public void setServerPhaseHistograms(LatencyHistogram[] serverPhaseHistograms) {
+        this.serverPhaseHistograms = serverPhaseHistograms;
+    }
+}
@@ -13,7 +13,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.io.IOException;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -25,6 +25,13 @@ public abstract class AbstractChatClient implements ClientCommunication {
 
     private static Log log = LogFactory.getLog(AbstractChatClient.class);
 
+    // Laufende Nummer der Clients im Prozess; bildet zusammen mit dem
+    // Request-Zaehler die Transaktions-ID. Eindeutig innerhalb des Prozesses,
+    // das genuegt, da der Server Transaktionen je Initiator zuordnet.
+    private static final AtomicInteger nextClientNumber = new AtomicInteger(0);
+    private final int clientNumber = nextClientNumber.incrementAndGet();
+    private final AtomicInteger requestCounter = new AtomicInteger(0);
+
     // Username (Login-Kennung) des Clients
     protected String userName;
 
@@ -55,6 +62,18 @@ public abstract class AbstractChatClient implements ClientCommunication {
 
     public AbstractChatClient(ClientUserInterface userInterface, int serverPort,
                               String remoteServerAddress) {
+        this(userInterface, serverPort, remoteServerAddress,
+                getDecoratedFactory(new TcpConnectionFactory()));
+    }
+
+    /**
+     * @param userInterface       GUI-Interface
+     * @param serverPort          Port des Servers
+     * @param remoteServerAddress Adresse des Servers
+     * @param connectionFactory   Factory fuer die Verbindung zum Server
+     */
+    public AbstractChatClient(ClientUserInterface userInterface, int serverPort,
+                              String remoteServerAddress, ConnectionFactory connectionFactory) {
 
         this.userInterface = userInterface;
         this.serverPort = serverPort;
@@ -64,7 +83,7 @@ public abstract class AbstractChatClient implements ClientCommunication {
          * Verbindung zum Server aufbauen
 		 */
         try {
-            connectionFactory = getDecoratedFactory(new TcpConnectionFactory());
+            this.connectionFactory = connectionFactory;
             connection = connectionFactory.connectToServer(remoteServerAddress, serverPort,
                     localPort, 20000, 20000);
         } catch (Exception e) {
@@ -95,16 +114,24 @@ public abstract class AbstractChatClient implements ClientCommunication {
         return new DecoratingConnectionFactory(connectionFactory);
     }
 
+    /**
+     * @return Neue Transaktions-ID aus Client-Nummer und Request-Zaehler
+     */
+    private long nextTransactionId() {
+        return ChatPDU.createTransactionId(clientNumber, requestCounter.incrementAndGet());
+    }
+
     @Override
     public void login(String name) throws IOException {
 
         userName = name;
         sharedClientData.userName = name;
         sharedClientData.status = ClientConversationStatus.REGISTERING;
+        sharedClientData.loginCompletion = new CompletableFuture<ClientConversationStatus>();
         ChatPDU requestPdu = new ChatPDU();
         requestPdu.setPduType(PduType.LOGIN_REQUEST);
         // setzen der transactionID
-        requestPdu.setTransactionId("LoginRequest-" + UUID.randomUUID().toString());
+        requestPdu.setTransactionId(nextTransactionId());
         requestPdu.setClientStatus(sharedClientData.status);
         Thread.currentThread().setName("Client-" + userName);
         requestPdu.setClientThreadName(Thread.currentThread().getName());
@@ -121,17 +148,55 @@ public abstract class AbstractChatClient implements ClientCommunication {
 
     @Override
     public void tell(String name, String text) throws IOException {
+        sendChatMessage(name, text, false, 0);
+    }
+
+    /**
+     * Chat-Nachricht zu einem geplanten Zeitpunkt senden (offene
+     * Lasterzeugung im Benchmarking-Client). Die RTT wird ab dem geplanten
+     * Zeitpunkt gemessen, nicht ab dem tatsaechlichen Senden.
+     *
+     * @param name             Name des Users
+     * @param text             Chat-Nachricht
+     * @param intendedSendTime Geplanter Sendezeitpunkt (System.nanoTime())
+     * @throws IOException bei Fehlern beim Senden
+     */
+    protected void tellScheduled(String name, String text, long intendedSendTime)
+            throws IOException {
+        sendChatMessage(name, text, true, intendedSendTime);
+    }
+
+    private void sendChatMessage(String name, String text, boolean scheduled,
+                                 long intendedSendTime) throws IOException {
 
         ChatPDU requestPdu = new ChatPDU();
         requestPdu.setPduType(PduType.CHAT_MESSAGE_REQUEST);
         // setzen der transactionID
-        requestPdu.setTransactionId("MessageRequest-" + UUID.randomUUID().toString());
+        requestPdu.setTransactionId(nextTransactionId());
         requestPdu.setClientStatus(sharedClientData.status);
         requestPdu.setClientThreadName(Thread.currentThread().getName());
         requestPdu.setUserName(userName);
         requestPdu.setMessage(text);
         sharedClientData.messageCounter.getAndIncrement();
         requestPdu.setSequenceNumber(sharedClientData.messageCounter.get());
+
+        // Request vor dem Senden eintragen; blockiert, solange bereits die
+        // maximale Anzahl an Requests offen ist
+        ChatRequestTracker tracker = sharedClientData.requestTracker;
+        if (tracker != null) {
+            try {
+                if (scheduled) {
+                    tracker.register(requestPdu.getTransactionId(),
+                            requestPdu.getSequenceNumber(), intendedSendTime);
+                } else {
+                    tracker.register(requestPdu.getTransactionId(),
+                            requestPdu.getSequenceNumber());
+                }
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }
+
         try {
             connection.send(requestPdu);
             log.debug("Chat-Message-Request-PDU fuer Client " + name
@@ -140,6 +205,9 @@ public abstract class AbstractChatClient implements ClientCommunication {
                     + ", SequenceNumber: " + requestPdu.getSequenceNumber());
         } catch (Exception e) {
             log.debug("Senden der Chat-Nachricht nicht moeglich");
+            if (tracker != null) {
+                tracker.cancel(requestPdu.getTransactionId());
+            }
             throw new IOException();
         }
 
@@ -150,10 +218,11 @@ public abstract class AbstractChatClient implements ClientCommunication {
     public void logout(String name) throws IOException {
 
         sharedClientData.status = ClientConversationStatus.UNREGISTERING;
+        sharedClientData.logoutCompletion = new CompletableFuture<ClientConversationStatus>();
         ChatPDU requestPdu = new ChatPDU();
         requestPdu.setPduType(PduType.LOGOUT_REQUEST);
         // setzen der transactionID
-        requestPdu.setTransactionId("LogoutRequest-" + UUID.randomUUID().toString());
+        requestPdu.setTransactionId(nextTransactionId());
         requestPdu.setClientStatus(sharedClientData.status);
         requestPdu.setClientThreadName(Thread.currentThread().getName());
         requestPdu.setUserName(userName);
@@ -0,0 +1,214 @@
+package edu.hm.dako.chat.client;
+
+import edu.hm.dako.chat.common.ChatPDU;
+import edu.hm.dako.chat.common.ConcurrentLongMap;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verwaltung der offenen Chat-Message-Requests eines Clients. Ein Client darf
+ * bis zu einer festen Fenstergroesse Requests senden, ohne auf die Responses
+ * zu warten. Die Responses werden ueber die Transaktions-ID ihrem Request
+ * zugeordnet.
+ * <p/>
+ * Der sendende Thread belegt vor dem Senden einen Platz im Fenster
+ * ({@link #register(long, long)}) und blockiert, solange das Fenster voll
+ * ist. Der Message-Listener-Thread meldet ankommende Responses mit
+ * {@link #complete(long, long, long[])}; damit wird der Platz wieder frei und die
+ * Messwerte des Requests stehen ueber {@link #take()} bzw.
+ * {@link #poll(long)} zur Verfuegung. Bei Fenstergroesse 1 ergibt sich das
+ * bisherige Stop-and-Wait-Verhalten.
+ *
+ * @author Peter Mandl
+ */
+public class ChatRequestTracker {
+
+    private static Log log = LogFactory.getLog(ChatRequestTracker.class);
+
+    /**
+     * Messwerte eines abgeschlossenen Requests
+     */
+    public static class CompletedRequest {
+
+        // Sequenznummer des Requests
+        private final long sequenceNumber;
+
+        // Round Trip Time in ns
+        private final long rtt;
+
+        // Vom Server gemeldete Bearbeitungszeit in ns
+        private final long serverTime;
+
+        // Vom Server gemeldete Aufteilung der Bearbeitungszeit, null: keine
+        private final long[] serverPhaseTimes;
+
+        CompletedRequest(long sequenceNumber, long rtt, long serverTime,
+                         long[] serverPhaseTimes) {
+            this.sequenceNumber = sequenceNumber;
+            this.rtt = rtt;
+            this.serverTime = serverTime;
+            this.serverPhaseTimes = serverPhaseTimes;
+        }
+
+        public long getSequenceNumber() {
+            return sequenceNumber;
+        }
+
+        public long getRtt() {
+            return rtt;
+        }
+
+        public long getServerTime() {
+            return serverTime;
+        }
+
+        /**
+         * @return Dauer der Bearbeitungsabschnitte im Server in ns (Index:
+         * Ordinalzahl von {@link edu.hm.dako.chat.common.ServerPhase}) oder
+         * null, wenn der Server keine Aufteilung meldet
+         */
+        public long[] getServerPhaseTimes() {
+            return serverPhaseTimes;
+        }
+    }
+
+    /**
+     * Daten eines gesendeten, noch nicht beantworteten Requests
+     */
+    private static class PendingRequest {
+
+        private final long sequenceNumber;
+        private final long sendTime;
+
+        PendingRequest(long sequenceNumber, long sendTime) {
+            this.sequenceNumber = sequenceNumber;
+            this.sendTime = sendTime;
+        }
+    }
+
+    // Maximale Anzahl gleichzeitig offener Requests
+    private final int windowSize;
+
+    // Freie Plaetze im Fenster
+    private final Semaphore window;
+
+    // Offene Requests, Schluessel ist die Transaktions-ID
+    private final ConcurrentLongMap<PendingRequest> pending =
+            new ConcurrentLongMap<PendingRequest>();
+
+    // Abgeschlossene Requests, die noch nicht abgeholt wurden
+    private final LinkedBlockingQueue<CompletedRequest> completed =
+            new LinkedBlockingQueue<CompletedRequest>();
+
+    /**
+     * @param windowSize Maximale Anzahl gleichzeitig offener Requests (mindestens 1)
+     */
+    public ChatRequestTracker(int windowSize) {
+        this.windowSize = Math.max(1, windowSize);
+        this.window = new Semaphore(this.windowSize);
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * Belegt einen Platz im Fenster und traegt den Request ein. Blockiert,
+     * solange bereits die maximale Anzahl an Requests offen ist. Muss vor dem
+     * Senden aufgerufen werden, damit auch eine sehr schnelle Response
+     * zugeordnet werden kann.
+     *
+     * @param transactionId  Transaktions-ID des Requests
+     * @param sequenceNumber Sequenznummer des Requests
+     * @throws InterruptedException falls das Warten unterbrochen wurde
+     */
+    public void register(long transactionId, long sequenceNumber)
+            throws InterruptedException {
+        window.acquire();
+        pending.put(transactionId, new PendingRequest(sequenceNumber, System.nanoTime()));
+    }
+
+    /**
+     * Wie {@link #register(long, long)}, die RTT wird aber ab dem geplanten
+     * Sendezeitpunkt gemessen (offene Lasterzeugung). Wartezeiten auf einen
+     * freien Platz im Fenster zaehlen damit zur RTT.
+     *
+     * @param transactionId    Transaktions-ID des Requests
+     * @param sequenceNumber   Sequenznummer des Requests
+     * @param intendedSendTime Geplanter Sendezeitpunkt (System.nanoTime())
+     * @throws InterruptedException falls das Warten unterbrochen wurde
+     */
+    public void register(long transactionId, long sequenceNumber, long intendedSendTime)
+            throws InterruptedException {
+        window.acquire();
+        pending.put(transactionId, new PendingRequest(sequenceNumber, intendedSendTime));
+    }
+
+    /**
+     * Request wieder austragen, wenn er nicht gesendet werden konnte
+     *
+     * @param transactionId Transaktions-ID des Requests
+     */
+    public void cancel(long transactionId) {
+        PendingRequest request = pending.get(transactionId);
+        if ((request != null) && pending.remove(transactionId, request)) {
+            window.release();
+        }
+    }
+
+    /**
+     * Response zu einem Request eingetroffen
+     *
+     * @param transactionId    Transaktions-ID aus der Response
+     * @param serverTime       Vom Server gemeldete Bearbeitungszeit in ns
+     * @param serverPhaseTimes Dauer der Bearbeitungsabschnitte in ns oder null
+     * @return true, wenn ein passender offener Request gefunden wurde
+     */
+    public boolean complete(long transactionId, long serverTime, long[] serverPhaseTimes) {
+        PendingRequest request = pending.get(transactionId);
+        if ((request == null) || !pending.remove(transactionId, request)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Kein offener Request zur Transaktion "
+                        + ChatPDU.transactionIdToString(transactionId));
+            }
+            return false;
+        }
+        long rtt = System.nanoTime() - request.sendTime;
+        completed.add(new CompletedRequest(request.sequenceNumber, rtt, serverTime,
+                serverPhaseTimes));
+        window.release();
+        return true;
+    }
+
+    /**
+     * Naechsten abgeschlossenen Request abholen, blockiert bis einer vorliegt
+     *
+     * @return Messwerte des Requests
+     * @throws InterruptedException falls das Warten unterbrochen wurde
+     */
+    public CompletedRequest take() throws InterruptedException {
+        return completed.take();
+    }
+
+    /**
+     * Naechsten abgeschlossenen Request abholen
+     *
+     * @param timeout Maximale Wartezeit in ms, 0: nicht warten
+     * @return Messwerte des Requests oder null, falls keiner vorliegt
+     * @throws InterruptedException falls das Warten unterbrochen wurde
+     */
+    public CompletedRequest poll(long timeout) throws InterruptedException {
+        return completed.poll(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Anzahl der gesendeten, noch nicht beantworteten Requests
+     */
+    public int getInFlight() {
+        return pending.size();
+    }
+}
@@ -2,8 +2,14 @@ package edu.hm.dako.chat.client;
 
 import edu.hm.dako.chat.client.messager.AdvancedMessageListenerThreadImpl;
 import edu.hm.dako.chat.client.messager.SimpleMessageListenerThreadImpl;
+import edu.hm.dako.chat.codec.SerializingPduCodec;
 import edu.hm.dako.chat.common.ExceptionHandler;
 import edu.hm.dako.chat.common.SystemConstants;
+import edu.hm.dako.chat.connection.ConnectionFactory;
+import edu.hm.dako.chat.tcp.FramedTcpConnectionFactory;
+import edu.hm.dako.chat.tcp.TcpConnectionFactory;
+import edu.hm.dako.chat.udp.UdpConnection;
+import edu.hm.dako.chat.udp.UdpConnectionFactory;
 
 /**
  * <p/>
@@ -13,6 +19,9 @@ import edu.hm.dako.chat.common.SystemConstants;
  */
 public class ClientImpl extends AbstractChatClient {
 
+    // Maximale Anzahl an Wiederholungen je PDU bei UDP
+    private static final int DEFAULT_MAX_RETRIES = 3;
+
     /**
      * Konstruktor
      *
@@ -24,7 +33,8 @@ public class ClientImpl extends AbstractChatClient {
     public ClientImpl(ClientUserInterface userInterface, int serverPort,
                       String remoteServerAddress, String serverType) {
 
-        super(userInterface, serverPort, remoteServerAddress);
+        super(userInterface, serverPort, remoteServerAddress,
+                getDecoratedFactory(createConnectionFactory(serverType)));
         this.serverPort = serverPort;
         this.remoteServerAddress = remoteServerAddress;
 
@@ -33,7 +43,9 @@ public class ClientImpl extends AbstractChatClient {
 
         try {
 
-            if (serverType.equals(SystemConstants.IMPL_TCP_ADVANCED)) {
+            if (serverType.equals(SystemConstants.IMPL_TCP_ADVANCED)
+                    || serverType.equals(SystemConstants.IMPL_TCP_NIO_ADVANCED)
+                    || serverType.equals(SystemConstants.IMPL_UDP_ADVANCED)) {
                 // Advanced
                 messageListenerThread = new AdvancedMessageListenerThreadImpl(userInterface,
                         connection, sharedClientData);
@@ -47,4 +59,22 @@ public class ClientImpl extends AbstractChatClient {
             ExceptionHandler.logException(e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Der NIO-Server erwartet Nachrichten mit Rahmenbildung, der UDP-Server
+     * Datagramme, alle anderen Server einen Objektstrom
+     *
+     * @param serverType Ausgewaehlter Servertyp
+     * @return Passende ConnectionFactory
+     */
+    private static ConnectionFactory createConnectionFactory(String serverType) {
+        if (serverType.equals(SystemConstants.IMPL_TCP_NIO_ADVANCED)) {
+            return new FramedTcpConnectionFactory(new SerializingPduCodec());
+        }
+        if (serverType.equals(SystemConstants.IMPL_UDP_ADVANCED)) {
+            return new UdpConnectionFactory(new SerializingPduCodec(),
+                    UdpConnection.DEFAULT_RETRANSMIT_TIMEOUT, DEFAULT_MAX_RETRIES);
+        }
+        return new TcpConnectionFactory();
+    }
+}
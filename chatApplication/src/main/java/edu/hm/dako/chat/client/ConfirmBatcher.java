@@ -0,0 +1,243 @@
+package edu.hm.dako.chat.client;
+
+import edu.hm.dako.chat.common.ChatPDU;
+import edu.hm.dako.chat.common.ExceptionHandler;
+import edu.hm.dako.chat.connection.Connection;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sammelt die Confirms fuer empfangene Chat-Message-Events eines Clients und
+ * sendet sie gemeinsam in einer Chat-Message-Event-Confirm-Batch-PDU (Group
+ * Commit). Statt eines Schreibaufrufs je Event faellt damit nur einer je
+ * Sammlung an.
+ * <p/>
+ * Gesendet wird, sobald eine der Schwellen erreicht ist:
+ * <ul>
+ * <li>Anzahl gesammelter Confirms</li>
+ * <li>geschaetzte Groesse der PDU in Byte</li>
+ * <li>Alter des aeltesten gesammelten Confirms in Mikrosekunden</li>
+ * </ul>
+ * Die Zeitschwelle wird von einem gemeinsamen Zeitgeber-Thread aller Clients
+ * ueberwacht, da der Message-Listener-Thread im Empfang blockiert. Der
+ * Zeitgeber sendet nicht selbst, sondern uebergibt das Senden an einen
+ * Sende-Thread aus einem Pool. Eine blockierte Verbindung haelt damit nur
+ * die Confirms ihres eigenen Clients auf, nicht die Zeitschwelle aller
+ * anderen. Die Verzoegerung eines Confirms ist damit nach oben begrenzt; sie
+ * geht in die Antwortzeit des Initiators ein und sollte klein gegenueber
+ * dieser sein.
+ * <p/>
+ * Login- und Logout-Confirms werden weiterhin einzeln gesendet.
+ *
+ * @author Peter Mandl
+ */
+public class ConfirmBatcher {
+
+    private static Log log = LogFactory.getLog(ConfirmBatcher.class);
+
+    // Geschaetzte Bytes je Eintrag: Transaktions-ID (Client-Nummer und
+    // Request-Zaehler) und Client-ID als Varint
+    private static final int ENTRY_BYTES = 10;
+
+    // Gemeinsamer Zeitgeber fuer die Zeitschwelle aller Clients, darf nicht
+    // blockieren
+    private static final ScheduledExecutorService timer =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ConfirmBatcher-Timer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    // Sende-Threads fuer das zeitgesteuerte Senden; ein Thread wartet
+    // hoechstens auf die Verbindung eines einzigen Clients
+    private static final ExecutorService sender =
+            Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ConfirmBatcher-Sender");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    // Schwellen
+    private final int maxConfirms;
+    private final int maxBytes;
+    private final long maxDelayMicros;
+
+    private final Connection connection;
+    private final SharedClientData sharedClientData;
+
+    // Schuetzt die Sammlung; gesendet wird ebenfalls unter der Sperre, damit
+    // die Sammlungen in der Reihenfolge ihrer Entstehung beim Server ankommen
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Gesammelte Confirms: Transaktions-IDs und Client-IDs der Initiatoren
+    private long[] transactionIds;
+    private int[] eventClientIds;
+    private int count = 0;
+    private int bytes = 0;
+
+    // Zeitgesteuertes Senden der aktuellen Sammlung, null wenn keines geplant
+    private ScheduledFuture<?> scheduledFlush;
+
+    // Zaehler fuer Testausgaben
+    private long sentBatches = 0;
+    private long sentConfirms = 0;
+
+    /**
+     * @param connection       Verbindung zum Server
+     * @param sharedClientData Gemeinsame Daten des Clients (Username)
+     * @param maxConfirms      Maximale Anzahl Confirms je Sammlung (mindestens 1)
+     * @param maxBytes         Maximale geschaetzte Groesse einer Sammlung in Byte
+     * @param maxDelayMicros   Maximale Wartezeit des aeltesten Confirms in us
+     */
+    public ConfirmBatcher(Connection connection, SharedClientData sharedClientData,
+                          int maxConfirms, int maxBytes, long maxDelayMicros) {
+        this.connection = connection;
+        this.sharedClientData = sharedClientData;
+        this.maxConfirms = Math.max(1, maxConfirms);
+        this.maxBytes = Math.max(1, maxBytes);
+        this.maxDelayMicros = Math.max(1, maxDelayMicros);
+        reset();
+    }
+
+    /**
+     * Confirm fuer ein empfangenes Chat-Message-Event aufnehmen und ggf. die
+     * Sammlung senden
+     *
+     * @param messageEventPdu Empfangenes Event
+     * @throws Exception Fehler beim Senden
+     */
+    public void add(ChatPDU messageEventPdu) throws Exception {
+        lock.lock();
+        try {
+            if (count == eventClientIds.length) {
+                transactionIds = Arrays.copyOf(transactionIds, count * 2);
+                eventClientIds = Arrays.copyOf(eventClientIds, count * 2);
+            }
+            transactionIds[count] = messageEventPdu.getTransactionId();
+            eventClientIds[count] = messageEventPdu.getEventClientId();
+            count++;
+            bytes += ENTRY_BYTES;
+
+            if ((count >= maxConfirms) || (bytes >= maxBytes)) {
+                flushLocked();
+            } else if (count == 1) {
+                // Erster Confirm der Sammlung: spaetestens nach der
+                // Zeitschwelle senden
+                final long collection = sentBatches;
+                final Runnable timedFlush = new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            flush(collection);
+                        } catch (Exception e) {
+                            ExceptionHandler.logException(e);
+                        }
+                    }
+                };
+                scheduledFlush = timer.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        sender.execute(timedFlush);
+                    }
+                }, maxDelayMicros, TimeUnit.MICROSECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gesammelte Confirms sofort senden
+     *
+     * @throws Exception Fehler beim Senden
+     */
+    public void flush() throws Exception {
+        lock.lock();
+        try {
+            flushLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Zeitgesteuertes Senden einer Sammlung. Wurde die Sammlung inzwischen
+     * bereits gesendet, bleibt die naechste bis zu ihrer eigenen Schwelle
+     * liegen.
+     *
+     * @param collection Anzahl der bis zum Beginn der Sammlung gesendeten
+     *                   Sammelbestaetigungen
+     * @throws Exception Fehler beim Senden
+     */
+    private void flush(long collection) throws Exception {
+        lock.lock();
+        try {
+            if (sentBatches == collection) {
+                flushLocked();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Restliche Confirms senden, bevor die Verbindung geschlossen wird
+     */
+    public void close() {
+        try {
+            flush();
+        } catch (Exception e) {
+            ExceptionHandler.logException(e);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug(sharedClientData.userName + ": " + sentConfirms + " Confirms in "
+                    + sentBatches + " Sammelbestaetigungen gesendet");
+        }
+    }
+
+    private void flushLocked() throws Exception {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        int batchSize = count;
+        if (batchSize == 0) {
+            return;
+        }
+        // Die PDU erhaelt Kopien, die Sammelfelder werden weiterverwendet
+        ChatPDU batch = ChatPDU.createChatMessageEventConfirmBatchPdu(sharedClientData.userName,
+                Arrays.copyOf(transactionIds, batchSize), Arrays.copyOf(eventClientIds, batchSize),
+                batchSize);
+        count = 0;
+        bytes = 0;
+        sentBatches++;
+        sentConfirms += batchSize;
+        if (log.isDebugEnabled()) {
+            log.debug(sharedClientData.userName + ": Sammelbestaetigung mit " + batchSize
+                    + " Confirms senden");
+        }
+        connection.send(batch);
+    }
+
+    private void reset() {
+        transactionIds = new long[Math.min(maxConfirms, 64)];
+        eventClientIds = new int[Math.min(maxConfirms, 64)];
+        count = 0;
+        bytes = 0;
+    }
+}
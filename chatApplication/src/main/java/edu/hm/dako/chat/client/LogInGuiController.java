@@ -156,6 +156,7 @@ public class LogInGuiController implements Initializable {
 
     @Override
     public void initialize(URL location, ResourceBundle resources) {
-        comboServerType.getItems().addAll(SystemConstants.IMPL_TCP_ADVANCED, SystemConstants.IMPL_TCP_SIMPLE);
+        comboServerType.getItems().addAll(SystemConstants.IMPL_TCP_ADVANCED, SystemConstants.IMPL_TCP_SIMPLE,
+                SystemConstants.IMPL_TCP_NIO_ADVANCED, SystemConstants.IMPL_UDP_ADVANCED);
     }
 }
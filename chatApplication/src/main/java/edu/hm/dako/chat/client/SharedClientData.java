@@ -2,6 +2,7 @@ package edu.hm.dako.chat.client;
 
 import edu.hm.dako.chat.common.ClientConversationStatus;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -16,7 +17,15 @@ public class SharedClientData {
     public String userName;
 
     // Aktueller Zustand des Clients
-    public ClientConversationStatus status;
+    public volatile ClientConversationStatus status;
+
+    // Abschluss des laufenden Login- bzw. Logout-Vorgangs. Wird beim Senden
+    // des Requests neu angelegt und vom Message-Listener-Thread mit dem
+    // erreichten Zustand abgeschlossen, sobald die Response eintrifft.
+    public volatile CompletableFuture<ClientConversationStatus> loginCompletion =
+            new CompletableFuture<ClientConversationStatus>();
+    public volatile CompletableFuture<ClientConversationStatus> logoutCompletion =
+            new CompletableFuture<ClientConversationStatus>();
 
     // Zaehler fuer gesendete Chat-Nachrichten des Clients
     public AtomicInteger messageCounter;
@@ -26,4 +35,12 @@ public class SharedClientData {
     public AtomicInteger logoutCounter;
     public AtomicInteger eventCounter;
     public AtomicInteger confirmCounter;
+
+    // Offene Chat-Message-Requests, falls mehrere Requests gleichzeitig
+    // ausstehen duerfen (nur Benchmarking-Client, sonst null)
+    public ChatRequestTracker requestTracker;
+
+    // Sammelt Confirms fuer Chat-Message-Events, falls sie gebuendelt
+    // gesendet werden sollen (nur Benchmarking-Client, sonst null)
+    public ConfirmBatcher confirmBatcher;
 }
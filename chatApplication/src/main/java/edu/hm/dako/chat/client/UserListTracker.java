@@ -0,0 +1,135 @@
+package edu.hm.dako.chat.client;
+
+import edu.hm.dako.chat.common.ChatPDU;
+import edu.hm.dako.chat.common.PduType;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.TreeMap;
+import java.util.Vector;
+
+/**
+ * Clientseitige Kopie der Userliste des Servers. Login- und Logout-Events
+ * tragen nur den an- bzw. abgemeldeten User und die Version der Aenderung im
+ * Userverzeichnis des Servers; die vollstaendige Liste kommt mit der
+ * Login-Response und auf Anforderung mit einer User-List-Response.
+ * <p/>
+ * Events werden in der Reihenfolge ihrer Versionen angewendet. Da der Server
+ * Events verschiedener Worker parallel verteilt, koennen sie vertauscht
+ * ankommen; vorauseilende Events werden zurueckgehalten, bis die Luecke
+ * geschlossen ist. Bleibt eine Luecke bestehen (z.B. weil ein Client ohne
+ * Logout-Event entfernt wurde), wird nach {@link #MAX_PENDING_EVENTS}
+ * zurueckgehaltenen Events eine vollstaendige Liste angefordert.
+ * <p/>
+ * Wird nur vom Message-Listener-Thread benutzt und ist daher nicht
+ * synchronisiert.
+ *
+ * @author Peter Mandl
+ */
+public class UserListTracker {
+
+    private static Log log = LogFactory.getLog(UserListTracker.class);
+
+    // Anzahl zurueckgehaltener Events, ab der die Liste angefordert wird
+    public static final int MAX_PENDING_EVENTS = 8;
+
+    // Version der lokalen Liste, -1 solange noch keine Liste empfangen wurde
+    private long version = -1;
+
+    private final LinkedHashSet<String> users = new LinkedHashSet<String>();
+
+    // Vorauseilende Events, nach Version geordnet
+    private final TreeMap<Long, ChatPDU> pendingEvents = new TreeMap<Long, ChatPDU>();
+
+    // Vollstaendige Liste angefordert, aber noch nicht erhalten
+    private boolean snapshotRequested = false;
+
+    /**
+     * Vollstaendige Liste uebernehmen (Login-Response, User-List-Response).
+     * Zurueckgehaltene Events mit hoeherer Version werden danach angewendet.
+     *
+     * @param snapshotVersion Version der Liste
+     * @param snapshotUsers   Namen der angemeldeten User
+     * @return true, wenn sich die lokale Liste geaendert hat
+     */
+    public boolean applySnapshot(long snapshotVersion, Collection<String> snapshotUsers) {
+        snapshotRequested = false;
+        if ((snapshotUsers == null) || (snapshotVersion <= version)) {
+            return false;
+        }
+        version = snapshotVersion;
+        users.clear();
+        users.addAll(snapshotUsers);
+        pendingEvents.headMap(version, true).clear();
+        applyPendingEvents();
+        return true;
+    }
+
+    /**
+     * Login- oder Logout-Event anwenden bzw. zurueckhalten
+     *
+     * @param event Empfangenes Event
+     * @return true, wenn sich die lokale Liste geaendert hat
+     */
+    public boolean applyEvent(ChatPDU event) {
+        long eventVersion = event.getUserListVersion();
+        if ((version >= 0) && (eventVersion <= version)) {
+            // Bereits in der Liste enthalten
+            return false;
+        }
+        if ((version < 0) || (eventVersion > version + 1)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Event mit Version " + eventVersion + " zurueckgehalten, lokale Version "
+                        + version);
+            }
+            pendingEvents.put(eventVersion, event);
+            return false;
+        }
+        apply(event);
+        applyPendingEvents();
+        return true;
+    }
+
+    /**
+     * Prueft, ob die vollstaendige Liste angefordert werden soll. Liefert
+     * true hoechstens einmal bis zum Eintreffen der naechsten Liste.
+     *
+     * @return true, wenn der Aufrufer einen User-List-Request senden soll
+     */
+    public boolean isSnapshotNeeded() {
+        if ((version < 0) || snapshotRequested
+                || (pendingEvents.size() < MAX_PENDING_EVENTS)) {
+            return false;
+        }
+        snapshotRequested = true;
+        return true;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return Kopie der lokalen Liste fuer die Darstellung
+     */
+    public Vector<String> getUsers() {
+        return new Vector<String>(users);
+    }
+
+    private void applyPendingEvents() {
+        while (!pendingEvents.isEmpty() && (pendingEvents.firstKey() == version + 1)) {
+            apply(pendingEvents.pollFirstEntry().getValue());
+        }
+    }
+
+    private void apply(ChatPDU event) {
+        if (event.getPduType() == PduType.LOGIN_EVENT) {
+            users.add(event.getUserName());
+        } else {
+            users.remove(event.getUserName());
+        }
+        version = event.getUserListVersion();
+    }
+}
@@ -1,7 +1,9 @@
 package edu.hm.dako.chat.client.messager;
 
+import edu.hm.dako.chat.client.ChatRequestTracker;
 import edu.hm.dako.chat.client.ClientUserInterface;
 import edu.hm.dako.chat.client.SharedClientData;
+import edu.hm.dako.chat.client.UserListTracker;
 import edu.hm.dako.chat.common.ChatPDU;
 import edu.hm.dako.chat.common.ClientConversationStatus;
 import edu.hm.dako.chat.common.ExceptionHandler;
@@ -31,6 +33,9 @@ public abstract class AbstractMessageListenerThread extends Thread {
     // Gemeinsame Daten zwischen Client-Thread und Message-Processing-Thread
     protected SharedClientData sharedClientData;
 
+    // Lokale Kopie der Userliste, wird aus Login-/Logout-Events fortgeschrieben
+    protected final UserListTracker userListTracker = new UserListTracker();
+
     public AbstractMessageListenerThread(ClientUserInterface userInterface,
                                          Connection con, SharedClientData sharedData) {
 
@@ -46,12 +51,46 @@ public abstract class AbstractMessageListenerThread extends Thread {
      */
     protected void handleUserListEvent(ChatPDU receivedPdu) {
 
-        log.debug("Login- oder Logout-Event-PDU fuer "
-                + receivedPdu.getUserName() + " empfangen");
+        if (log.isDebugEnabled()) {
+            log.debug("Login- oder Logout-Event-PDU fuer " + receivedPdu.getUserName()
+                    + " empfangen, Version " + receivedPdu.getUserListVersion());
+        }
+
+        // Event traegt nur die Aenderung; Liste nur bei Aenderung neu darstellen
+        if (userListTracker.applyEvent(receivedPdu)) {
+            userInterface.setUserList(userListTracker.getUsers());
+        }
+
+        // Luecke in den Versionen schliesst sich nicht: vollstaendige Liste
+        // beim Server anfordern
+        if (userListTracker.isSnapshotNeeded()) {
+            log.debug("Vollstaendige Userliste wird angefordert, lokale Version "
+                    + userListTracker.getVersion());
+            try {
+                connection.send(ChatPDU.createUserListRequestPdu(sharedClientData.userName,
+                        userListTracker.getVersion()));
+            } catch (Exception e) {
+                ExceptionHandler.logException(e);
+            }
+        }
+    }
+
+    /**
+     * Vollstaendige Userliste aus einer Login- oder User-List-Response
+     * uebernehmen
+     *
+     * @param receivedPdu Empfangene PDU
+     */
+    protected void handleUserListSnapshot(ChatPDU receivedPdu) {
 
-        // Neue Userliste zur Darstellung an User Interface uebergeben
-        log.debug("Empfangene Userliste: " + receivedPdu.getClients());
-        userInterface.setUserList(receivedPdu.getClients());
+        if (userListTracker.applySnapshot(receivedPdu.getUserListVersion(),
+                receivedPdu.getClients())) {
+            if (log.isDebugEnabled()) {
+                log.debug("Empfangene Userliste: " + receivedPdu.getClients() + ", Version "
+                        + receivedPdu.getUserListVersion());
+            }
+            userInterface.setUserList(userListTracker.getUsers());
+        }
     }
 
     /**
@@ -134,6 +173,7 @@ public abstract class AbstractMessageListenerThread extends Thread {
                             + receivedPdu.getUserName() + " vermutlich schon angemeldet",
                     receivedPdu.getErrorCode());
             sharedClientData.status = ClientConversationStatus.UNREGISTERED;
+            sharedClientData.loginCompletion.complete(ClientConversationStatus.UNREGISTERED);
 
             // Verbindung wird gleich geschlossen
             try {
@@ -145,9 +185,13 @@ public abstract class AbstractMessageListenerThread extends Thread {
         } else {
             // Login hat funktioniert
             sharedClientData.status = ClientConversationStatus.REGISTERED;
+            sharedClientData.loginCompletion.complete(ClientConversationStatus.REGISTERED);
 
             userInterface.loginComplete();
 
+            // Login-Response enthaelt die vollstaendige Userliste
+            handleUserListSnapshot(receivedPdu);
+
             Thread.currentThread().setName("Listener" + "-" + sharedClientData.userName);
             log.debug("Login-Response-PDU fuer Client " + receivedPdu.getUserName() + " empfangen");
 
@@ -171,7 +215,24 @@ public abstract class AbstractMessageListenerThread extends Thread {
                 + receivedPdu.getServerTime() + " ns = " + receivedPdu.getServerTime() / 1000000
                 + " ms");
 
-        if (receivedPdu.getSequenceNumber() == sharedClientData.messageCounter.get()) {
+        ChatRequestTracker tracker = sharedClientData.requestTracker;
+        if (tracker != null) {
+
+            // Mehrere Requests koennen offen sein: Zuordnung ueber die
+            // Transaktions-ID statt ueber die zuletzt vergebene Sequenznummer
+            if (tracker.complete(receivedPdu.getTransactionId(), receivedPdu.getServerTime(),
+                    receivedPdu.getServerPhaseTimes())) {
+                log.debug("Chat-Response-PDU fuer Client " + receivedPdu.getUserName()
+                        + " empfangen, Transaktion "
+                        + ChatPDU.transactionIdToString(receivedPdu.getTransactionId()));
+                userInterface.setMessageLine("[DEBUG]", createMessage(receivedPdu));
+                DirectionInfo.logReceivedResponse(receivedPdu);
+            } else {
+                log.debug("Chat-Response-PDU ohne offenen Request empfangen: "
+                        + ChatPDU.transactionIdToString(receivedPdu.getTransactionId()));
+            }
+
+        } else if (receivedPdu.getSequenceNumber() == sharedClientData.messageCounter.get()) {
 
             // Zuletzt gemessene Serverzeit fuer das Benchmarking
             // merken
@@ -216,6 +277,7 @@ public abstract class AbstractMessageListenerThread extends Thread {
         DirectionInfo.logReceivedResponse(receivedPdu);
 
         finished = true;
+        sharedClientData.logoutCompletion.complete(ClientConversationStatus.UNREGISTERED);
         userInterface.logoutComplete();
     }
 
@@ -270,6 +332,11 @@ public abstract class AbstractMessageListenerThread extends Thread {
 
                                 break;
 
+                            case USER_LIST_RESPONSE:
+                                // Angeforderte vollstaendige Userliste
+                                handleUserListSnapshot(receivedPdu);
+                                break;
+
                             case CHAT_MESSAGE_EVENT:
                                 // Chat-Nachricht vom Server gesendet
                                 chatMessageEventAction(receivedPdu);
@@ -310,6 +377,11 @@ public abstract class AbstractMessageListenerThread extends Thread {
 
                                 break;
 
+                            case USER_LIST_RESPONSE:
+                                // Angeforderte vollstaendige Userliste
+                                handleUserListSnapshot(receivedPdu);
+                                break;
+
                             default:
                                 log.debug("Ankommende PDU im Zustand " + sharedClientData.status + " wird verworfen");
                         }
@@ -343,6 +415,11 @@ public abstract class AbstractMessageListenerThread extends Thread {
 
                                 break;
 
+                            case USER_LIST_RESPONSE:
+                                // Angeforderte vollstaendige Userliste
+                                handleUserListSnapshot(receivedPdu);
+                                break;
+
                             default:
                                 log.debug("Ankommende PDU im Zustand " + sharedClientData.status + " wird verworfen");
                                 break;
@@ -360,12 +437,23 @@ public abstract class AbstractMessageListenerThread extends Thread {
             }
         }
 
+        // Noch gesammelte Confirms senden
+        if (sharedClientData.confirmBatcher != null) {
+            sharedClientData.confirmBatcher.close();
+        }
+
         // Verbindung noch schliessen
         try {
             connection.close();
         } catch (Exception e) {
             ExceptionHandler.logException(e);
         }
+
+        // Wartende Threads nicht haengen lassen, wenn die Verbindung vor der
+        // Login- oder Logout-Response abgebrochen ist
+        sharedClientData.loginCompletion.complete(sharedClientData.status);
+        sharedClientData.logoutCompletion.complete(sharedClientData.status);
+
         log.debug("Ordnungsgemaesses Ende des SimpleMessageListener-Threads fuer User" + sharedClientData.userName + ", Status: " + sharedClientData.status);
     } // run
 }
@@ -1,6 +1,7 @@
 package edu.hm.dako.chat.client.messager;
 
 import edu.hm.dako.chat.client.ClientUserInterface;
+import edu.hm.dako.chat.client.ConfirmBatcher;
 import edu.hm.dako.chat.client.SharedClientData;
 import edu.hm.dako.chat.common.ChatPDU;
 import edu.hm.dako.chat.common.ExceptionHandler;
@@ -50,13 +51,19 @@ public class AdvancedMessageListenerThreadImpl extends AbstractMessageListenerTh
         log.debug("Chat-Message-Event-PDU von " + messageEventPDU.getEventUserName() + " empfangen");
 
         try {
-            ChatPDU messageEventConfirm = ChatPDU.createChatMessageEventConfirm(sharedClientData.userName, messageEventPDU);
-            // setzen der transactionID
-            messageEventConfirm.setTransactionId(messageEventPDU.getTransactionId());
-            // setzen der sequenzNumber
-            messageEventConfirm.setSequenceNumber(messageEventPDU.getSequenceNumber());
-
-            connection.send(messageEventConfirm);
+            ConfirmBatcher batcher = sharedClientData.confirmBatcher;
+            if (batcher != null) {
+                // Confirm wird mit weiteren gesammelt und gebuendelt gesendet
+                batcher.add(messageEventPDU);
+            } else {
+                ChatPDU messageEventConfirm = ChatPDU.createChatMessageEventConfirm(sharedClientData.userName, messageEventPDU);
+                // setzen der transactionID
+                messageEventConfirm.setTransactionId(messageEventPDU.getTransactionId());
+                // setzen der sequenzNumber
+                messageEventConfirm.setSequenceNumber(messageEventPDU.getSequenceNumber());
+
+                connection.send(messageEventConfirm);
+            }
         } catch (Exception e) {
             e.printStackTrace();
             ExceptionHandler.logException(e);
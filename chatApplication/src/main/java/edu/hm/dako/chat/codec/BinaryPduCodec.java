@@ -0,0 +1,447 @@
+package edu.hm.dako.chat.codec;
+
+import edu.hm.dako.chat.common.ChatPDU;
+import edu.hm.dako.chat.common.ClientConversationStatus;
+import edu.hm.dako.chat.common.PduType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Vector;
+
+/**
+ * Kompaktes Binaerformat fuer ChatPDUs.
+ * <p/>
+ * Aufbau des Rahmeninhalts:
+ * <pre>
+ * PDU-Typ          1 Byte   (PduType.getId())
+ * Praesenz-Bitmap  Varint   (ein Bit je optionalem Feld, siehe F_*)
+ * Felder           in der Reihenfolge der Bits, nur wenn vorhanden:
+ *                  Strings als Varint-Laenge + UTF-8-Bytes,
+ *                  Zahlen (auch die Transaktions-ID) als Varint,
+ *                  Userliste als Varint-Anzahl + Strings,
+ *                  Client-Status als 1 Byte (Ordinalzahl), bestaetigte
+ *                  Events als Varint-Anzahl + je Client-ID und Transaktions-ID,
+ *                  Zeiten der Serverabschnitte als Varint-Anzahl + Zeiten
+ * </pre>
+ * Leere Felder (null bzw. 0) werden nicht uebertragen. Zahlen werden als
+ * vorzeichenlose Varints (7 Bit je Byte) kodiert, Sequenznummern und Zaehler
+ * belegen damit meist nur ein bis drei Byte.
+ * <p/>
+ * Beim Dekodieren in wiederverwendete PDUs ({@link RecyclingPduCodec}) werden
+ * kurze Strings ueber einen gemeinsamen {@link StringCache} der Codec-Instanz
+ * aufgeloest und die Felder bestaetigter Events der PDU weiterverwendet. Der
+ * Cache ist threadsicher und aendert das Ergebnis nicht; die Instanz kann
+ * daher weiterhin von allen Verbindungen gemeinsam benutzt werden.
+ *
+ * @author Peter Mandl
+ */
+public class BinaryPduCodec implements RecyclingPduCodec {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // Bits der Praesenz-Bitmap
+    private static final int F_TRANSACTION_ID = 1;
+    private static final int F_USER_NAME = 1 << 1;
+    private static final int F_EVENT_USER_NAME = 1 << 2;
+    private static final int F_CLIENT_THREAD_NAME = 1 << 3;
+    private static final int F_SERVER_THREAD_NAME = 1 << 4;
+    private static final int F_SEQUENCE_NUMBER = 1 << 5;
+    private static final int F_MESSAGE = 1 << 6;
+    private static final int F_CLIENTS = 1 << 7;
+    private static final int F_SERVER_TIME = 1 << 8;
+    private static final int F_CLIENT_STATUS = 1 << 9;
+    private static final int F_ERROR_CODE = 1 << 10;
+    private static final int F_RECEIVED_CHAT_MESSAGES = 1 << 11;
+    private static final int F_SENT_EVENTS = 1 << 12;
+    private static final int F_RECEIVED_CONFIRMS = 1 << 13;
+    private static final int F_LOST_CONFIRMS = 1 << 14;
+    private static final int F_RETRIES = 1 << 15;
+    private static final int F_USER_LIST_VERSION = 1 << 16;
+    private static final int F_EVENT_CLIENT_ID = 1 << 17;
+    private static final int F_CONFIRMED_EVENTS = 1 << 18;
+    private static final int F_SERVER_PHASE_TIMES = 1 << 19;
+
+    // Obergrenze fuer die Anzahl gemeldeter Bearbeitungsabschnitte
+    private static final int MAX_SERVER_PHASES = 64;
+
+    private static final ClientConversationStatus[] STATUS_VALUES = ClientConversationStatus
+            .values();
+
+    // Strings, die beim Dekodieren in wiederverwendete PDUs erkannt werden
+    private final StringCache stringCache = new StringCache();
+
+    // Lesezeiger je Thread fuer das Dekodieren in wiederverwendete PDUs, damit
+    // auch dabei kein Objekt je Rahmen entsteht
+    private final ThreadLocal<Reader> readers = new ThreadLocal<Reader>() {
+        @Override
+        protected Reader initialValue() {
+            return new Reader(stringCache);
+        }
+    };
+
+    @Override
+    public ByteBuffer encode(ChatPDU pdu) throws IOException {
+        Writer out = new Writer(128);
+        out.skip(HEADER_LENGTH);
+
+        PduType pduType = pdu.getPduType() == null ? PduType.UNDEFINED : pdu.getPduType();
+        out.writeByte(pduType.getId());
+
+        int fields = 0;
+        fields |= pdu.getTransactionId() != ChatPDU.NO_TRANSACTION_ID ? F_TRANSACTION_ID : 0;
+        fields |= pdu.getUserName() != null ? F_USER_NAME : 0;
+        fields |= pdu.getEventUserName() != null ? F_EVENT_USER_NAME : 0;
+        fields |= pdu.getClientThreadName() != null ? F_CLIENT_THREAD_NAME : 0;
+        fields |= pdu.getServerThreadName() != null ? F_SERVER_THREAD_NAME : 0;
+        fields |= pdu.getSequenceNumber() != 0 ? F_SEQUENCE_NUMBER : 0;
+        fields |= pdu.getMessage() != null ? F_MESSAGE : 0;
+        fields |= pdu.getClients() != null ? F_CLIENTS : 0;
+        fields |= pdu.getServerTime() != 0 ? F_SERVER_TIME : 0;
+        fields |= pdu.getClientStatus() != null ? F_CLIENT_STATUS : 0;
+        fields |= pdu.getErrorCode() != 0 ? F_ERROR_CODE : 0;
+        fields |= pdu.getNumberOfReceivedChatMessages() != 0 ? F_RECEIVED_CHAT_MESSAGES : 0;
+        fields |= pdu.getNumberOfSentEvents() != 0 ? F_SENT_EVENTS : 0;
+        fields |= pdu.getNumberOfReceivedConfirms() != 0 ? F_RECEIVED_CONFIRMS : 0;
+        fields |= pdu.getNumberOfLostConfirms() != 0 ? F_LOST_CONFIRMS : 0;
+        fields |= pdu.getNumberOfRetries() != 0 ? F_RETRIES : 0;
+        fields |= pdu.getUserListVersion() != 0 ? F_USER_LIST_VERSION : 0;
+        fields |= pdu.getEventClientId() != 0 ? F_EVENT_CLIENT_ID : 0;
+        fields |= pdu.getConfirmedTransactionIds() != null ? F_CONFIRMED_EVENTS : 0;
+        fields |= pdu.getServerPhaseTimes() != null ? F_SERVER_PHASE_TIMES : 0;
+        out.writeVarLong(fields);
+
+        if ((fields & F_TRANSACTION_ID) != 0) {
+            out.writeVarLong(pdu.getTransactionId());
+        }
+        if ((fields & F_USER_NAME) != 0) {
+            out.writeString(pdu.getUserName());
+        }
+        if ((fields & F_EVENT_USER_NAME) != 0) {
+            out.writeString(pdu.getEventUserName());
+        }
+        if ((fields & F_CLIENT_THREAD_NAME) != 0) {
+            out.writeString(pdu.getClientThreadName());
+        }
+        if ((fields & F_SERVER_THREAD_NAME) != 0) {
+            out.writeString(pdu.getServerThreadName());
+        }
+        if ((fields & F_SEQUENCE_NUMBER) != 0) {
+            out.writeVarLong(pdu.getSequenceNumber());
+        }
+        if ((fields & F_MESSAGE) != 0) {
+            out.writeString(pdu.getMessage());
+        }
+        if ((fields & F_CLIENTS) != 0) {
+            Vector<String> clients = pdu.getClients();
+            // Kopie, da die Liste parallel veraendert werden koennte
+            Object[] names = clients.toArray();
+            out.writeVarLong(names.length);
+            for (Object name : names) {
+                out.writeString((String) name);
+            }
+        }
+        if ((fields & F_SERVER_TIME) != 0) {
+            out.writeVarLong(pdu.getServerTime());
+        }
+        if ((fields & F_CLIENT_STATUS) != 0) {
+            out.writeByte(pdu.getClientStatus().ordinal());
+        }
+        if ((fields & F_ERROR_CODE) != 0) {
+            out.writeVarLong(pdu.getErrorCode());
+        }
+        if ((fields & F_RECEIVED_CHAT_MESSAGES) != 0) {
+            out.writeVarLong(pdu.getNumberOfReceivedChatMessages());
+        }
+        if ((fields & F_SENT_EVENTS) != 0) {
+            out.writeVarLong(pdu.getNumberOfSentEvents());
+        }
+        if ((fields & F_RECEIVED_CONFIRMS) != 0) {
+            out.writeVarLong(pdu.getNumberOfReceivedConfirms());
+        }
+        if ((fields & F_LOST_CONFIRMS) != 0) {
+            out.writeVarLong(pdu.getNumberOfLostConfirms());
+        }
+        if ((fields & F_RETRIES) != 0) {
+            out.writeVarLong(pdu.getNumberOfRetries());
+        }
+        if ((fields & F_USER_LIST_VERSION) != 0) {
+            out.writeVarLong(pdu.getUserListVersion());
+        }
+        if ((fields & F_EVENT_CLIENT_ID) != 0) {
+            out.writeVarLong(pdu.getEventClientId());
+        }
+        if ((fields & F_CONFIRMED_EVENTS) != 0) {
+            long[] transactionIds = pdu.getConfirmedTransactionIds();
+            int[] eventClientIds = pdu.getConfirmedEventClientIds();
+            int count = pdu.getNumberOfConfirmedEvents();
+            out.writeVarLong(count);
+            for (int i = 0; i < count; i++) {
+                out.writeVarLong(eventClientIds[i]);
+                out.writeVarLong(transactionIds[i]);
+            }
+        }
+        if ((fields & F_SERVER_PHASE_TIMES) != 0) {
+            long[] phaseTimes = pdu.getServerPhaseTimes();
+            out.writeVarLong(phaseTimes.length);
+            for (long phaseTime : phaseTimes) {
+                // Negative Werte (Uhrensprung) wuerden 10 Byte belegen
+                out.writeVarLong(Math.max(0, phaseTime));
+            }
+        }
+
+        ByteBuffer frame = ByteBuffer.wrap(out.buffer, 0, out.position);
+        frame.putInt(0, out.position - HEADER_LENGTH);
+        return frame;
+    }
+
+    @Override
+    public ChatPDU decode(byte[] data, int offset, int length) throws IOException {
+        return decode(new Reader(null).wrap(data, offset, length), new ChatPDU(), length,
+                null, null);
+    }
+
+    @Override
+    public ChatPDU decode(byte[] data, int offset, int length, ChatPDU pdu)
+            throws IOException {
+        // Felder der bestaetigten Events vor dem Zuruecksetzen sichern
+        long[] transactionIds = pdu.getConfirmedTransactionIds();
+        int[] eventClientIds = pdu.getConfirmedEventClientIds();
+        pdu.reset();
+        return decode(readers.get().wrap(data, offset, length), pdu, length,
+                transactionIds, eventClientIds);
+    }
+
+    /**
+     * Dekodiert die Felder in eine neue oder zurueckgesetzte PDU
+     *
+     * @param reusableTransactionIds Weiterverwendbares Feld bestaetigter
+     *                               Transaktions-IDs oder null
+     * @param reusableEventClientIds Weiterverwendbares Feld der Client-IDs
+     *                               bestaetigter Events oder null
+     */
+    private ChatPDU decode(Reader in, ChatPDU pdu, int length,
+                           long[] reusableTransactionIds, int[] reusableEventClientIds)
+            throws IOException {
+
+        int typeId = in.readByte();
+        PduType pduType = PduType.getId(typeId);
+        if (pduType == null) {
+            throw new IOException("Unbekannter PDU-Typ: " + typeId);
+        }
+        pdu.setPduType(pduType);
+
+        long fields = in.readVarLong();
+
+        if ((fields & F_TRANSACTION_ID) != 0) {
+            pdu.setTransactionId(in.readVarLong());
+        }
+        if ((fields & F_USER_NAME) != 0) {
+            pdu.setUserName(in.readString());
+        }
+        if ((fields & F_EVENT_USER_NAME) != 0) {
+            pdu.setEventUserName(in.readString());
+        }
+        if ((fields & F_CLIENT_THREAD_NAME) != 0) {
+            pdu.setClientThreadName(in.readString());
+        }
+        if ((fields & F_SERVER_THREAD_NAME) != 0) {
+            pdu.setServerThreadName(in.readString());
+        }
+        if ((fields & F_SEQUENCE_NUMBER) != 0) {
+            pdu.setSequenceNumber(in.readVarLong());
+        }
+        if ((fields & F_MESSAGE) != 0) {
+            pdu.setMessage(in.readString());
+        }
+        if ((fields & F_CLIENTS) != 0) {
+            int count = (int) in.readVarLong();
+            if (count < 0 || count > length) {
+                throw new IOException("Unzulaessige Laenge der Userliste: " + count);
+            }
+            Vector<String> clients = new Vector<String>(count);
+            for (int i = 0; i < count; i++) {
+                clients.add(in.readString());
+            }
+            pdu.setClients(clients);
+        }
+        if ((fields & F_SERVER_TIME) != 0) {
+            pdu.setServerTime(in.readVarLong());
+        }
+        if ((fields & F_CLIENT_STATUS) != 0) {
+            int status = in.readByte();
+            if (status >= STATUS_VALUES.length) {
+                throw new IOException("Unbekannter Client-Status: " + status);
+            }
+            pdu.setClientStatus(STATUS_VALUES[status]);
+        } else {
+            pdu.setClientStatus(null);
+        }
+        if ((fields & F_ERROR_CODE) != 0) {
+            pdu.setErrorCode((int) in.readVarLong());
+        }
+        if ((fields & F_RECEIVED_CHAT_MESSAGES) != 0) {
+            pdu.setNumberOfReceivedChatMessages(in.readVarLong());
+        }
+        if ((fields & F_SENT_EVENTS) != 0) {
+            pdu.setNumberOfSentEvents(in.readVarLong());
+        }
+        if ((fields & F_RECEIVED_CONFIRMS) != 0) {
+            pdu.setNumberOfReceivedEventConfirms(in.readVarLong());
+        }
+        if ((fields & F_LOST_CONFIRMS) != 0) {
+            pdu.setNumberOfLostEventConfirms(in.readVarLong());
+        }
+        if ((fields & F_RETRIES) != 0) {
+            pdu.setNumberOfRetries(in.readVarLong());
+        }
+        if ((fields & F_USER_LIST_VERSION) != 0) {
+            pdu.setUserListVersion(in.readVarLong());
+        }
+        if ((fields & F_EVENT_CLIENT_ID) != 0) {
+            pdu.setEventClientId((int) in.readVarLong());
+        }
+        if ((fields & F_CONFIRMED_EVENTS) != 0) {
+            int count = (int) in.readVarLong();
+            if (count < 0 || count > length) {
+                throw new IOException("Unzulaessige Anzahl bestaetigter Events: " + count);
+            }
+            long[] transactionIds = reusableTransactionIds;
+            if ((transactionIds == null) || (transactionIds.length < count)) {
+                transactionIds = new long[count];
+            }
+            int[] eventClientIds = reusableEventClientIds;
+            if ((eventClientIds == null) || (eventClientIds.length < count)) {
+                eventClientIds = new int[count];
+            }
+            for (int i = 0; i < count; i++) {
+                eventClientIds[i] = (int) in.readVarLong();
+                transactionIds[i] = in.readVarLong();
+            }
+            pdu.setConfirmedEvents(transactionIds, eventClientIds, count);
+        }
+        if ((fields & F_SERVER_PHASE_TIMES) != 0) {
+            int count = (int) in.readVarLong();
+            if (count < 0 || count > MAX_SERVER_PHASES) {
+                throw new IOException("Unzulaessige Anzahl von Serverabschnitten: " + count);
+            }
+            long[] phaseTimes = new long[count];
+            for (int i = 0; i < count; i++) {
+                phaseTimes[i] = in.readVarLong();
+            }
+            pdu.setServerPhaseTimes(phaseTimes);
+        }
+        return pdu;
+    }
+
+    /**
+     * Wachsender Schreibpuffer ohne Synchronisation
+     */
+    private static final class Writer {
+
+        private byte[] buffer;
+        private int position = 0;
+
+        Writer(int initialCapacity) {
+            buffer = new byte[initialCapacity];
+        }
+
+        private void ensureCapacity(int additional) {
+            if (position + additional > buffer.length) {
+                byte[] larger = new byte[Math.max(buffer.length * 2, position + additional)];
+                System.arraycopy(buffer, 0, larger, 0, position);
+                buffer = larger;
+            }
+        }
+
+        void skip(int count) {
+            ensureCapacity(count);
+            position += count;
+        }
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            buffer[position++] = (byte) value;
+        }
+
+        void writeVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(UTF8);
+            writeVarLong(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+    }
+
+    /**
+     * Lesezeiger auf einem Rahmeninhalt mit Bereichspruefung
+     */
+    private static final class Reader {
+
+        private byte[] data;
+        private int position;
+        private int end;
+
+        // Cache fuer Strings, null: immer neue Strings erzeugen
+        private final StringCache cache;
+
+        Reader(StringCache cache) {
+            this.cache = cache;
+        }
+
+        /**
+         * Lesezeiger auf einen (neuen) Rahmeninhalt setzen
+         */
+        Reader wrap(byte[] data, int offset, int length) {
+            this.data = data;
+            this.position = offset;
+            this.end = offset + length;
+            return this;
+        }
+
+        private void require(int count) throws IOException {
+            if (count < 0 || position + count > end) {
+                throw new IOException("Rahmen unvollstaendig");
+            }
+        }
+
+        int readByte() throws IOException {
+            require(1);
+            return data[position++] & 0xFF;
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Varint zu lang");
+        }
+
+        String readString() throws IOException {
+            long length = readVarLong();
+            if (length > end - position) {
+                throw new IOException("Rahmen unvollstaendig");
+            }
+            require((int) length);
+            String value = (cache == null)
+                    ? new String(data, position, (int) length, UTF8)
+                    : cache.get(data, position, (int) length);
+            position += (int) length;
+            return value;
+        }
+    }
+}
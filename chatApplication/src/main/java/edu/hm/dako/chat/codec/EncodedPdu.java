@@ -0,0 +1,105 @@
+package edu.hm.dako.chat.codec;
+
+import edu.hm.dako.chat.common.ChatPDU;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * PDU, die fuer die Verteilung an mehrere Empfaenger nur einmal kodiert wird.
+ * <p/>
+ * Der Rahmen wird beim ersten Sendeversuch mit dem Codec der Verbindung
+ * erzeugt und fuer alle weiteren Empfaenger wiederverwendet. Jede Verbindung
+ * erhaelt eine eigene Sicht (duplicate) auf denselben Inhalt, der nach dem
+ * Kodieren nicht mehr veraendert wird. Die PDU selbst darf nach der Erzeugung
+ * dieses Objekts nicht mehr veraendert werden.
+ * <p/>
+ * Verbindungen ohne Rahmenbildung (Objektstrom) senden weiterhin die PDU
+ * selbst.
+ *
+ * @author Peter Mandl
+ */
+public final class EncodedPdu {
+
+    private final ChatPDU pdu;
+
+    // Zuletzt verwendeter Codec und zugehoeriger Rahmen (Heap und Direct)
+    private PduCodec codec;
+    private ByteBuffer frame;
+    private ByteBuffer directFrame;
+
+    // Dauer der letzten Kodierung in ns (fuer die Serverkennzahlen)
+    private long encodeTime;
+
+    public EncodedPdu(ChatPDU pdu) {
+        this.pdu = pdu;
+    }
+
+    public ChatPDU getPdu() {
+        return pdu;
+    }
+
+    /**
+     * Liefert den kodierten Rahmen als Heap-Puffer (fuer Stroeme)
+     *
+     * @param codec Codec der sendenden Verbindung
+     * @return Eigene Sicht auf den gemeinsamen Rahmen (Position 0)
+     * @throws IOException Fehler bei der Kodierung
+     */
+    public synchronized ByteBuffer getFrame(PduCodec codec) throws IOException {
+        encode(codec);
+        return frame.duplicate();
+    }
+
+    /**
+     * Liefert den kodierten Rahmen als Direct-Puffer (fuer Kanaele), der nur
+     * einmal in den nativen Speicher kopiert wird
+     *
+     * @param codec Codec der sendenden Verbindung
+     * @return Eigene, nur lesbare Sicht auf den gemeinsamen Rahmen (Position 0)
+     * @throws IOException Fehler bei der Kodierung
+     */
+    public synchronized ByteBuffer getDirectFrame(PduCodec codec) throws IOException {
+        encode(codec);
+        if (directFrame == null) {
+            ByteBuffer direct = ByteBuffer.allocateDirect(frame.remaining());
+            direct.put(frame.duplicate());
+            direct.flip();
+            directFrame = direct.asReadOnlyBuffer();
+        }
+        return directFrame.duplicate();
+    }
+
+    /**
+     * @return true, wenn der Rahmen bereits kodiert wurde
+     */
+    public synchronized boolean isEncoded() {
+        return frame != null;
+    }
+
+    /**
+     * @return Dauer der Kodierung in ns, 0 solange nicht kodiert wurde
+     */
+    public synchronized long getEncodeTime() {
+        return encodeTime;
+    }
+
+    /**
+     * @return Laenge des kodierten Rahmens in Byte, -1 solange nicht kodiert
+     * wurde (z.B. bei Objektstroemen)
+     */
+    public synchronized int getEncodedLength() {
+        return (frame == null) ? -1 : frame.remaining();
+    }
+
+    private void encode(PduCodec codec) throws IOException {
+        if (this.codec != codec) {
+            // Mehrere Codecs fuer dieselbe PDU sind die Ausnahme
+            long start = System.nanoTime();
+            this.codec = codec;
+            this.frame = codec.encode(pdu);
+            this.directFrame = null;
+            this.encodeTime = System.nanoTime() - start;
+        }
+    }
+}
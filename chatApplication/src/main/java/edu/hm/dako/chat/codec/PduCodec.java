@@ -0,0 +1,45 @@
+package edu.hm.dako.chat.codec;
+
+import edu.hm.dako.chat.common.ChatPDU;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Kodierung von ChatPDUs fuer die Uebertragung auf einem Bytestrom. Jede PDU
+ * wird als Rahmen mit vorangestelltem Laengenfeld (4 Byte, Big Endian)
+ * uebertragen, der Rahmeninhalt haengt von der Implementierung ab.
+ * <p/>
+ * Implementierungen sind zustandslos und duerfen von mehreren Threads
+ * gleichzeitig verwendet werden.
+ *
+ * @author Peter Mandl
+ */
+public interface PduCodec {
+
+    // Laenge des Laengenfeldes in Byte
+    public static final int HEADER_LENGTH = 4;
+
+    // Obergrenze fuer einen Rahmen, schuetzt vor fehlerhaften Laengenangaben
+    public static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    /**
+     * Kodiert eine PDU inklusive Laengenfeld
+     *
+     * @param pdu Zu kodierende PDU
+     * @return Sendebereiter Puffer (Position 0, Limit = Rahmenende)
+     * @throws IOException Fehler bei der Kodierung
+     */
+    public ByteBuffer encode(ChatPDU pdu) throws IOException;
+
+    /**
+     * Dekodiert einen Rahmeninhalt (ohne Laengenfeld)
+     *
+     * @param data   Puffer mit dem Rahmeninhalt
+     * @param offset Beginn des Rahmeninhalts
+     * @param length Laenge des Rahmeninhalts
+     * @return Dekodierte PDU
+     * @throws IOException Rahmeninhalt fehlerhaft
+     */
+    public ChatPDU decode(byte[] data, int offset, int length) throws IOException;
+}
@@ -0,0 +1,28 @@
+package edu.hm.dako.chat.codec;
+
+/**
+ * Verfuegbare Kodierungen fuer ChatPDUs auf der Leitung
+ *
+ * @author Peter Mandl
+ */
+public enum PduCodecType {
+
+    // Java-Objektserialisierung (bei TCPSimple/TCPAdvanced: durchgehender
+    // Objektstrom wie bisher)
+    JavaSerialization,
+
+    // Kompaktes Binaerformat, siehe BinaryPduCodec
+    Binary;
+
+    /**
+     * @return Neue Codec-Instanz fuer diesen Typ
+     */
+    public PduCodec createCodec() {
+        switch (this) {
+            case Binary:
+                return new BinaryPduCodec();
+            default:
+                return new SerializingPduCodec();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package edu.hm.dako.chat.codec;
+
+import edu.hm.dako.chat.common.ChatPDU;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * Hilfsfunktionen fuer das Lesen von Rahmen (siehe {@link PduCodec})
+ *
+ * @author Peter Mandl
+ */
+public final class PduFrames {
+
+    private PduFrames() {
+    }
+
+    /**
+     * Prueft eine empfangene Laengenangabe
+     *
+     * @param length Laenge laut Laengenfeld
+     * @throws IOException Laengenangabe unzulaessig
+     */
+    public static void checkFrameLength(int length) throws IOException {
+        if (length < 0 || length > PduCodec.MAX_FRAME_LENGTH) {
+            throw new IOException("Unzulaessige Rahmenlaenge: " + length);
+        }
+    }
+
+    /**
+     * Liest einen vollstaendigen Rahmen von einem blockierenden Eingabestrom
+     *
+     * @param in    Eingabestrom
+     * @param codec Codec fuer den Rahmeninhalt
+     * @return Dekodierte PDU
+     * @throws IOException Lesefehler, End of File oder fehlerhafter Rahmen
+     */
+    public static ChatPDU readFrame(DataInputStream in, PduCodec codec) throws IOException {
+        int length = in.readInt();
+        checkFrameLength(length);
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return codec.decode(data, 0, length);
+    }
+}
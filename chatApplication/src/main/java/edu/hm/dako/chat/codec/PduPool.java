@@ -0,0 +1,81 @@
+package edu.hm.dako.chat.codec;
+
+import edu.hm.dako.chat.common.ChatPDU;
+
+/**
+ * Pool wiederverwendbarer ChatPDUs einer Verbindung. Empfangene Rahmen werden
+ * mit einem {@link RecyclingPduCodec} in PDUs aus dem Pool dekodiert; nach
+ * der Bearbeitung gibt der Empfaenger die PDU ueber
+ * {@link edu.hm.dako.chat.connection.PooledConnection#release(ChatPDU)}
+ * zurueck. Im eingeschwungenen Zustand entstehen so fuer empfangene PDUs
+ * keine neuen Objekte.
+ * <p/>
+ * Nicht threadsicher: Abholen und Zurueckgeben erfolgen im Empfangsthread
+ * der Verbindung. Ist der Pool leer (PDU nicht zurueckgegeben), wird eine
+ * neue PDU erzeugt; ist er voll, wird die zurueckgegebene PDU verworfen.
+ *
+ * @author Peter Mandl
+ */
+public final class PduPool {
+
+    // Standardgroesse: Ein Worker bearbeitet immer nur eine PDU zur Zeit
+    public static final int DEFAULT_CAPACITY = 4;
+
+    private final ChatPDU[] free;
+    private int size = 0;
+
+    // Zaehler fuer Tests und Messungen
+    private long created = 0;
+    private long reused = 0;
+
+    public PduPool() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity Maximale Anzahl freier PDUs im Pool
+     */
+    public PduPool(int capacity) {
+        free = new ChatPDU[Math.max(1, capacity)];
+    }
+
+    /**
+     * @return Freie PDU; ihr Inhalt wird vom Codec vollstaendig ueberschrieben
+     */
+    public ChatPDU acquire() {
+        if (size == 0) {
+            created++;
+            return new ChatPDU();
+        }
+        reused++;
+        ChatPDU pdu = free[--size];
+        free[size] = null;
+        return pdu;
+    }
+
+    /**
+     * Gibt eine PDU nach der Bearbeitung zurueck. Die PDU darf danach nicht
+     * mehr verwendet werden.
+     *
+     * @param pdu Zurueckgegebene PDU
+     */
+    public void release(ChatPDU pdu) {
+        if ((pdu != null) && (size < free.length)) {
+            free[size++] = pdu;
+        }
+    }
+
+    /**
+     * @return Anzahl neu erzeugter PDUs
+     */
+    public long getCreated() {
+        return created;
+    }
+
+    /**
+     * @return Anzahl wiederverwendeter PDUs
+     */
+    public long getReused() {
+        return reused;
+    }
+}
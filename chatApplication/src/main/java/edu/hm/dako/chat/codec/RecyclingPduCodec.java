@@ -0,0 +1,31 @@
+package edu.hm.dako.chat.codec;
+
+import edu.hm.dako.chat.common.ChatPDU;
+
+import java.io.IOException;
+
+/**
+ * Optionale Erweiterung eines {@link PduCodec}: Dekodieren in eine
+ * vorhandene, wiederverwendete PDU (siehe {@link PduPool}) statt in ein neues
+ * Objekt. Java-Serialisierung erzeugt immer neue Objekte und bietet diese
+ * Erweiterung daher nicht an.
+ *
+ * @author Peter Mandl
+ */
+public interface RecyclingPduCodec extends PduCodec {
+
+    /**
+     * Dekodiert einen Rahmeninhalt (ohne Laengenfeld) in eine vorhandene PDU.
+     * Alle Felder der PDU werden ueberschrieben; vorhandene Listen der PDU
+     * koennen dabei weiterverwendet werden.
+     *
+     * @param data   Puffer mit dem Rahmeninhalt
+     * @param offset Beginn des Rahmeninhalts
+     * @param length Laenge des Rahmeninhalts
+     * @param pdu    Wiederverwendete PDU
+     * @return Die uebergebene, neu belegte PDU
+     * @throws IOException Rahmeninhalt fehlerhaft
+     */
+    public ChatPDU decode(byte[] data, int offset, int length, ChatPDU pdu)
+            throws IOException;
+}
@@ -0,0 +1,47 @@
+package edu.hm.dako.chat.codec;
+
+import edu.hm.dako.chat.common.ChatPDU;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Rahmeninhalt ist die mit Java-Objektserialisierung erzeugte Darstellung der
+ * PDU. Jeder Rahmen enthaelt einen eigenen Objektstrom und ist damit fuer
+ * sich dekodierbar (inkl. Klassenbeschreibung).
+ *
+ * @author Peter Mandl
+ */
+public class SerializingPduCodec implements PduCodec {
+
+    @Override
+    public ByteBuffer encode(ChatPDU pdu) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        // Platz fuer das Laengenfeld freihalten
+        bytes.write(new byte[HEADER_LENGTH]);
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(pdu);
+        out.close();
+
+        ByteBuffer frame = ByteBuffer.wrap(bytes.toByteArray());
+        frame.putInt(0, frame.limit() - HEADER_LENGTH);
+        return frame;
+    }
+
+    @Override
+    public ChatPDU decode(byte[] data, int offset, int length) throws IOException {
+        ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(data, offset, length));
+        try {
+            return (ChatPDU) in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        } finally {
+            in.close();
+        }
+    }
+}
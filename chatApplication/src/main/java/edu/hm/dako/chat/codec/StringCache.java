@@ -0,0 +1,93 @@
+package edu.hm.dako.chat.codec;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Cache fuer dekodierte Strings, damit wiederkehrende Inhalte (Usernamen,
+ * Threadnamen) nicht bei jedem Empfang neu erzeugt werden.
+ * <p/>
+ * Tabelle ohne Sperren mit je zwei Plaetzen pro Hashwert: Ein neuer Eintrag
+ * kommt auf den ersten Platz, der bisherige erste rueckt auf den zweiten und
+ * verdraengt dessen Eintrag. Jeder Eintrag ist unveraenderlich, der Cache
+ * darf daher von mehreren Threads gleichzeitig verwendet werden.
+ *
+ * @author Peter Mandl
+ */
+final class StringCache {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // Laengere Strings (z.B. Chat-Nachrichten) werden nicht zwischengespeichert
+    static final int MAX_CACHED_LENGTH = 64;
+
+    // Anzahl der Tabelleneintraege als Zweierpotenz (2^TABLE_BITS)
+    private static final int TABLE_BITS = 12;
+    private static final int TABLE_SIZE = 1 << TABLE_BITS;
+
+    private final AtomicReferenceArray<Entry> table =
+            new AtomicReferenceArray<Entry>(TABLE_SIZE);
+
+    /**
+     * Kodierte Bytes und zugehoeriger String
+     */
+    private static final class Entry {
+        final byte[] bytes;
+        final String value;
+
+        Entry(byte[] bytes, String value) {
+            this.bytes = bytes;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Liefert den String zu den UTF-8-Bytes, aus dem Cache oder neu erzeugt
+     *
+     * @param data   Puffer
+     * @param offset Beginn der Bytes
+     * @param length Anzahl der Bytes
+     * @return Dekodierter String
+     */
+    String get(byte[] data, int offset, int length) {
+        if (length > MAX_CACHED_LENGTH) {
+            return new String(data, offset, length, UTF8);
+        }
+        int hash = 1;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + data[i];
+        }
+        // Fibonacci-Hashing: Namen, die sich nur in der laufenden Nummer
+        // unterscheiden, werden ueber die ganze Tabelle verteilt
+        int index = ((hash * 0x9E3779B9) >>> (32 - TABLE_BITS)) & ~1;
+
+        Entry first = table.get(index);
+        if ((first != null) && matches(first.bytes, data, offset, length)) {
+            return first.value;
+        }
+        Entry second = table.get(index + 1);
+        if ((second != null) && matches(second.bytes, data, offset, length)) {
+            return second.value;
+        }
+        String value = new String(data, offset, length, UTF8);
+        if (first != null) {
+            table.lazySet(index + 1, first);
+        }
+        table.lazySet(index, new Entry(Arrays.copyOfRange(data, offset, offset + length),
+                value));
+        return value;
+    }
+
+    private static boolean matches(byte[] bytes, byte[] data, int offset, int length) {
+        if (bytes.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] != data[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
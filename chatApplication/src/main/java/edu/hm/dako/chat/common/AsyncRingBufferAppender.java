@@ -0,0 +1,224 @@
+package edu.hm.dako.chat.common;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Layout;
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.spi.Filter;
+import org.apache.log4j.spi.LoggingEvent;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Log4j-Appender, der die Log-Ereignisse in einem Ringpuffer fester Groesse
+ * ablegt und sie in einem eigenen Thread formatiert und ausgibt. Der
+ * protokollierende Thread (z.B. ein Worker-Thread des Servers) wartet damit
+ * weder auf die Ausgabe noch auf andere protokollierende Threads: Anders als
+ * bei {@link AppenderSkeleton} wird nicht auf den Appender synchronisiert, und
+ * ist der Puffer voll, wird das Ereignis verworfen statt zu blockieren. Die
+ * Anzahl verworfener Ereignisse wird in der Ausgabe vermerkt.
+ * <p/>
+ * Konfiguration in log4j.server.properties bzw. log4j.client.properties:
+ * <pre>
+ * log4j.appender.AsyncAppender=edu.hm.dako.chat.common.AsyncRingBufferAppender
+ * log4j.appender.AsyncAppender.BufferSize=8192
+ * log4j.appender.AsyncAppender.File=logs/chatserver_async.log   (ohne: Konsole)
+ * log4j.appender.AsyncAppender.layout=org.apache.log4j.PatternLayout
+ * </pre>
+ *
+ * @author Peter Mandl
+ */
+public class AsyncRingBufferAppender extends AppenderSkeleton {
+
+    // Maximale Anzahl Ereignisse, die der Ausgabe-Thread am Stueck uebernimmt
+    private static final int BATCH_SIZE = 256;
+
+    // Einstellbare Groesse des Ringpuffers und Ausgabedatei (null: Konsole)
+    private int bufferSize = 8192;
+    private String file = null;
+
+    private ArrayBlockingQueue<LoggingEvent> buffer;
+    private Writer writer;
+    private Thread dispatcher;
+
+    // Ende der Ausgabe angefordert; eigenes Kennzeichen, da closed nicht
+    // volatile ist
+    private volatile boolean stopping = false;
+
+    // Wegen vollem Puffer verworfene Ereignisse seit der letzten Meldung
+    private final AtomicLong discarded = new AtomicLong();
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    public void setFile(String file) {
+        this.file = file;
+    }
+
+    @Override
+    public void activateOptions() {
+        buffer = new ArrayBlockingQueue<LoggingEvent>(Math.max(1, bufferSize));
+        try {
+            if (file != null) {
+                File logFile = new File(file);
+                if (logFile.getParentFile() != null) {
+                    logFile.getParentFile().mkdirs();
+                }
+                writer = new BufferedWriter(
+                        new OutputStreamWriter(new FileOutputStream(logFile, true)));
+            } else {
+                writer = new BufferedWriter(new OutputStreamWriter(System.out));
+            }
+        } catch (IOException e) {
+            LogLog.error("Log-Datei " + file + " kann nicht geoeffnet werden", e);
+            writer = new BufferedWriter(new OutputStreamWriter(System.out));
+        }
+
+        dispatcher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                dispatch();
+            }
+        }, "AsyncRingBufferAppender-" + getName());
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Nimmt ein Ereignis ohne Synchronisation auf den Appender entgegen
+     */
+    @Override
+    public void doAppend(LoggingEvent event) {
+        if (closed || (buffer == null) || !isAsSevereAsThreshold(event.getLevel())) {
+            return;
+        }
+        Filter filter = getFirstFilter();
+        while (filter != null) {
+            int decision = filter.decide(event);
+            if (decision == Filter.DENY) {
+                return;
+            }
+            if (decision == Filter.ACCEPT) {
+                break;
+            }
+            filter = filter.getNext();
+        }
+        append(event);
+    }
+
+    @Override
+    protected void append(LoggingEvent event) {
+        // Thread-bezogene Angaben und die Nachricht muessen im aufrufenden
+        // Thread festgehalten werden, die Nachricht kann sich sonst noch
+        // aendern
+        event.getThreadName();
+        event.getNDC();
+        event.getMDCCopy();
+        event.getRenderedMessage();
+        event.getThrowableStrRep();
+        if (!buffer.offer(event)) {
+            discarded.incrementAndGet();
+        }
+    }
+
+    /**
+     * Ausgabe-Thread: uebernimmt die Ereignisse in Gruppen und leert den
+     * Ausgabepuffer, sobald der Ringpuffer leer ist
+     */
+    private void dispatch() {
+        List<LoggingEvent> batch = new ArrayList<LoggingEvent>(BATCH_SIZE);
+        try {
+            while (!stopping || !buffer.isEmpty()) {
+                LoggingEvent first = buffer.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                buffer.drainTo(batch, BATCH_SIZE - 1);
+                for (LoggingEvent event : batch) {
+                    write(event);
+                }
+                batch.clear();
+                reportDiscarded();
+                if (buffer.isEmpty()) {
+                    writer.flush();
+                }
+            }
+        } catch (InterruptedException e) {
+            // Appender wird geschlossen
+        } catch (IOException e) {
+            LogLog.error("Fehler bei der Log-Ausgabe", e);
+        }
+    }
+
+    private void write(LoggingEvent event) throws IOException {
+        writer.write(layout.format(event));
+        if (layout.ignoresThrowable()) {
+            String[] throwable = event.getThrowableStrRep();
+            if (throwable != null) {
+                for (String line : throwable) {
+                    writer.write(line);
+                    writer.write(Layout.LINE_SEP);
+                }
+            }
+        }
+    }
+
+    private void reportDiscarded() throws IOException {
+        long count = discarded.getAndSet(0);
+        if (count > 0) {
+            writer.write(count + " Log-Ereignisse verworfen, Puffer (" + bufferSize
+                    + ") voll" + Layout.LINE_SEP);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        stopping = true;
+        if (dispatcher != null) {
+            try {
+                // Restliche Ereignisse noch ausgeben lassen
+                dispatcher.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            if (writer != null) {
+                writer.flush();
+                if (file != null) {
+                    writer.close();
+                }
+            }
+        } catch (IOException e) {
+            LogLog.error("Fehler beim Schliessen der Log-Ausgabe", e);
+        }
+    }
+
+    @Override
+    public boolean requiresLayout() {
+        return true;
+    }
+}
@@ -4,6 +4,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Vector;
 
 /**
@@ -18,7 +19,13 @@ public class ChatPDU implements Serializable {
     private static final long serialVersionUID = -6172619032079227585L;
     private static final Log log = LogFactory.getLog(ChatPDU.class);
 
-    private String transactionId;
+    // Transaktions-ID ohne Transaktion
+    public static final long NO_TRANSACTION_ID = 0;
+
+    // Transaktions-ID eines Requests, wird in alle zugehoerigen Events,
+    // Confirms und Responses uebernommen. Obere 32 Bit: Nummer des Clients,
+    // untere 32 Bit: laufende Nummer des Requests (siehe createTransactionId)
+    private long transactionId;
 
     // Kommandos bzw. PDU-Typen
     private PduType pduType;
@@ -29,6 +36,10 @@ public class ChatPDU implements Serializable {
     // Name des Clients, von dem ein Event initiiert wurde
     private String eventUserName;
 
+    // Client-ID des Initiators in der Sitzungstabelle des Servers, wird vom
+    // Server in Events eingetragen und im Confirm zurueckgegeben (0: keine)
+    private int eventClientId;
+
     // Name des Client-Threads, der den Request absendet
     private String clientThreadName;
 
@@ -42,15 +53,34 @@ public class ChatPDU implements Serializable {
     // Nutzdaten (eigentliche Chat-Nachricht in Textform)
     private String message;
 
-    // Liste aller angemeldeten User
+    // Liste aller angemeldeten User (nur in Login-Response und
+    // User-List-Response; Login- und Logout-Events tragen nur die Aenderung)
     private Vector<String> clients;
 
+    // Version des Userverzeichnisses im Server: bei Login- und Logout-Events
+    // die Version der Aenderung, bei Login- und User-List-Response die Version
+    // der mitgesendeten Liste, beim User-List-Request die dem Client bekannte
+    private long userListVersion;
+
+    // Sammelbestaetigung: Transaktions-IDs der bestaetigten Chat-Events und
+    // die Client-IDs ihrer Initiatoren (paarweise, nur in
+    // Chat-Message-Event-Confirm-Batch-PDUs). Die Felder koennen laenger als
+    // die Anzahl der Eintraege sein.
+    private long[] confirmedTransactionIds;
+    private int[] confirmedEventClientIds;
+    private int numberOfConfirmedEvents;
+
     // Zeit in Nanosekunden, die der Server fuer die komplette Bearbeitung einer
     // Chat-Nachricht benoetigt (inkl. kompletter Verteilung an alle
     // angemeldeten User).
     // Diese Zeit wird vom Server vor dem Absenden der Response eingetragen
     private long serverTime;
 
+    // Aufteilung der Serverzeit auf die Bearbeitungsabschnitte in
+    // Nanosekunden, Index ist die Ordinalzahl von ServerPhase (nur in
+    // Chat-Message-Response-PDUs, sonst null)
+    private long[] serverPhaseTimes;
+
     // Conversation-Status aus Sicht des Servers
     private ClientConversationStatus clientStatus;
 
@@ -79,16 +109,32 @@ public class ChatPDU implements Serializable {
     private long numberOfRetries;
 
     public ChatPDU() {
+        reset();
+    }
+
+    /**
+     * Setzt alle Felder auf die Anfangswerte zurueck, damit die PDU aus einem
+     * Pool wiederverwendet werden kann (siehe
+     * {@link edu.hm.dako.chat.codec.PduPool})
+     */
+    public void reset() {
+        transactionId = NO_TRANSACTION_ID;
         pduType = PduType.UNDEFINED;
         userName = null;
         eventUserName = null;
+        eventClientId = 0;
         clientThreadName = null;
         serverThreadName = null;
         sequenceNumber = 0;
         errorCode = NO_ERROR;
         message = null;
         serverTime = 0;
+        serverPhaseTimes = null;
         clients = null;
+        userListVersion = 0;
+        confirmedTransactionIds = null;
+        confirmedEventClientIds = null;
+        numberOfConfirmedEvents = 0;
         clientStatus = ClientConversationStatus.UNREGISTERED;
         numberOfReceivedChatMessages = 0;
         numberOfSentEvents = 0;
@@ -107,14 +153,39 @@ public class ChatPDU implements Serializable {
         this.message = message;
     }
 
-    public String getTransactionId() {
+    public long getTransactionId() {
         return transactionId;
     }
 
-    public void setTransactionId(String transactionId) {
+    public void setTransactionId(long transactionId) {
         this.transactionId = transactionId;
     }
 
+    /**
+     * Bildet eine Transaktions-ID aus der Nummer des Clients und einer
+     * laufenden Nummer des Requests
+     *
+     * @param clientNumber  Nummer des Clients (eindeutig im Client-Prozess)
+     * @param requestNumber Laufende Nummer des Requests beim Client
+     * @return Transaktions-ID, nie NO_TRANSACTION_ID fuer clientNumber > 0
+     */
+    public static long createTransactionId(int clientNumber, int requestNumber) {
+        return ((long) clientNumber << 32) | (requestNumber & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Lesbare Darstellung einer Transaktions-ID fuer Log-Ausgaben
+     *
+     * @param transactionId Transaktions-ID
+     * @return "Client-Nummer/Request-Nummer" oder "-" ohne Transaktion
+     */
+    public static String transactionIdToString(long transactionId) {
+        if (transactionId == NO_TRANSACTION_ID) {
+            return "-";
+        }
+        return (transactionId >>> 32) + "/" + (transactionId & 0xFFFFFFFFL);
+    }
+
     @Override
     public String toString() {
 
@@ -124,6 +195,10 @@ public class ChatPDU implements Serializable {
                 + this.pduType
                 + ", "
                 + "\n"
+                + "transactionId: "
+                + transactionIdToString(this.transactionId)
+                + ", "
+                + "\n"
                 + "userName: "
                 + this.userName
                 + ", "
@@ -132,6 +207,10 @@ public class ChatPDU implements Serializable {
                 + this.eventUserName
                 + ", "
                 + "\n"
+                + "eventClientId: "
+                + this.eventClientId
+                + ", "
+                + "\n"
                 + "clientThreadName: "
                 + this.clientThreadName
                 + ", "
@@ -151,6 +230,10 @@ public class ChatPDU implements Serializable {
                 + this.serverTime
                 + ", "
                 + "\n"
+                + "serverPhaseTimes: "
+                + Arrays.toString(this.serverPhaseTimes)
+                + ", "
+                + "\n"
                 + "clientStatus: "
                 + this.clientStatus
                 + ","
@@ -174,6 +257,10 @@ public class ChatPDU implements Serializable {
                 + this.clients
                 + ", "
                 + "\n"
+                + "userListVersion: "
+                + this.userListVersion
+                + ", "
+                + "\n"
                 + "message: "
                 + this.message
                 + "\n"
@@ -190,6 +277,31 @@ public class ChatPDU implements Serializable {
         this.clients = clients;
     }
 
+    public long[] getConfirmedTransactionIds() {
+        return confirmedTransactionIds;
+    }
+
+    public int[] getConfirmedEventClientIds() {
+        return confirmedEventClientIds;
+    }
+
+    public int getNumberOfConfirmedEvents() {
+        return numberOfConfirmedEvents;
+    }
+
+    /**
+     * Bestaetigte Events einer Sammelbestaetigung setzen
+     *
+     * @param transactionIds Transaktions-IDs der Events
+     * @param eventClientIds Client-IDs der Initiatoren, gleiche Reihenfolge
+     * @param count          Anzahl der gueltigen Eintraege am Anfang der Felder
+     */
+    public void setConfirmedEvents(long[] transactionIds, int[] eventClientIds, int count) {
+        this.confirmedTransactionIds = transactionIds;
+        this.confirmedEventClientIds = eventClientIds;
+        this.numberOfConfirmedEvents = count;
+    }
+
     public void setPduType(PduType pduType) {
         this.pduType = pduType;
     }
@@ -218,6 +330,20 @@ public class ChatPDU implements Serializable {
         this.serverTime = time;
     }
 
+    /**
+     * @return Dauer der Bearbeitungsabschnitte in ns, Index ist die
+     * Ordinalzahl von {@link ServerPhase}; null, wenn der Server keine
+     * Aufteilung gemeldet hat. Die Laenge kann von {@link ServerPhase#COUNT}
+     * abweichen, ausgewertet werden nur die bekannten Abschnitte.
+     */
+    public long[] getServerPhaseTimes() {
+        return serverPhaseTimes;
+    }
+
+    public void setServerPhaseTimes(long[] serverPhaseTimes) {
+        this.serverPhaseTimes = serverPhaseTimes;
+    }
+
     public void setSequenceNumber(long sequenceNumber) {
         this.sequenceNumber = sequenceNumber;
     }
@@ -230,6 +356,14 @@ public class ChatPDU implements Serializable {
         return clients;
     }
 
+    public long getUserListVersion() {
+        return userListVersion;
+    }
+
+    public void setUserListVersion(long userListVersion) {
+        this.userListVersion = userListVersion;
+    }
+
     public String getUserName() {
         return userName;
     }
@@ -238,6 +372,14 @@ public class ChatPDU implements Serializable {
         return eventUserName;
     }
 
+    public int getEventClientId() {
+        return eventClientId;
+    }
+
+    public void setEventClientId(int eventClientId) {
+        this.eventClientId = eventClientId;
+    }
+
     public String getClientThreadName() {
         return (clientThreadName);
     }
@@ -507,6 +649,7 @@ public class ChatPDU implements Serializable {
         pdu.setServerThreadName(receivedPdu.getServerThreadName());
         pdu.setUserName(userName);
         pdu.setEventUserName(receivedPdu.getEventUserName());
+        pdu.setEventClientId(receivedPdu.getEventClientId());
         return pdu;
     }
 
@@ -526,6 +669,7 @@ public class ChatPDU implements Serializable {
         pdu.setServerThreadName(receivedPdu.getServerThreadName());
         pdu.setUserName(userName);
         pdu.setEventUserName(receivedPdu.getEventUserName());
+        pdu.setEventClientId(receivedPdu.getEventClientId());
         return pdu;
     }
 
@@ -546,6 +690,73 @@ public class ChatPDU implements Serializable {
         pdu.setServerThreadName(receivedPdu.getServerThreadName());
         pdu.setUserName(userName);
         pdu.setEventUserName(receivedPdu.getEventUserName());
+        pdu.setEventClientId(receivedPdu.getEventClientId());
+        return pdu;
+    }
+
+    /**
+     * Erzeugen einer User-List-Request-PDU, mit der ein Client bei einer
+     * Luecke in den Versionen der Login- und Logout-Events die vollstaendige
+     * Userliste anfordert
+     *
+     * @param userName     Name des Clients
+     * @param knownVersion Dem Client zuletzt bekannte Version
+     * @return Erzeugte PDU
+     */
+    public static ChatPDU createUserListRequestPdu(String userName, long knownVersion) {
+
+        ChatPDU pdu = new ChatPDU();
+        pdu.setPduType(PduType.USER_LIST_REQUEST);
+        pdu.setClientStatus(ClientConversationStatus.REGISTERED);
+        pdu.setClientThreadName(Thread.currentThread().getName());
+        pdu.setUserName(userName);
+        pdu.setUserListVersion(knownVersion);
+        return pdu;
+    }
+
+    /**
+     * Erzeugen einer User-List-Response-PDU
+     *
+     * @param receivedPdu Empfangene PDU (User-List-Request-PDU)
+     * @param users       Aktuelle Userliste, wird nicht kopiert
+     * @param version     Version der Userliste
+     * @return Erzeugte PDU
+     */
+    public static ChatPDU createUserListResponsePdu(ChatPDU receivedPdu, Vector<String> users,
+                                                    long version) {
+
+        ChatPDU pdu = new ChatPDU();
+        pdu.setPduType(PduType.USER_LIST_RESPONSE);
+        pdu.setServerThreadName(Thread.currentThread().getName());
+        pdu.setClientThreadName(receivedPdu.getClientThreadName());
+        pdu.setUserName(receivedPdu.getUserName());
+        pdu.setClientStatus(ClientConversationStatus.REGISTERED);
+        pdu.setClients(users);
+        pdu.setUserListVersion(version);
+        return pdu;
+    }
+
+    /**
+     * Erzeugen einer Chat-Message-Event-Confirm-Batch-PDU, die mehrere
+     * Chat-Message-Events auf einmal bestaetigt
+     *
+     * @param userName       Name des bestaetigenden Clients
+     * @param transactionIds Transaktions-IDs der bestaetigten Events
+     * @param eventClientIds Client-IDs der Initiatoren, gleiche Reihenfolge
+     * @param count          Anzahl der bestaetigten Events
+     * @return Erzeugte PDU
+     */
+    public static ChatPDU createChatMessageEventConfirmBatchPdu(String userName,
+                                                                long[] transactionIds,
+                                                                int[] eventClientIds,
+                                                                int count) {
+
+        ChatPDU pdu = new ChatPDU();
+        pdu.setPduType(PduType.CHAT_MESSAGE_EVENT_CONFIRM_BATCH);
+        pdu.setClientStatus(ClientConversationStatus.REGISTERED);
+        pdu.setClientThreadName(Thread.currentThread().getName());
+        pdu.setUserName(userName);
+        pdu.setConfirmedEvents(transactionIds, eventClientIds, count);
         return pdu;
     }
-}
\ No newline at end of file
+}
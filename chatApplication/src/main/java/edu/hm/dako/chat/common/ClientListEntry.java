@@ -4,7 +4,9 @@ import edu.hm.dako.chat.connection.Connection;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import java.util.Vector;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Eintrag in der serverseitigen Clientliste zur Verwaltung der angemeldeten
@@ -15,47 +17,65 @@ import java.util.Vector;
 public class ClientListEntry {
     private static Log log = LogFactory.getLog(ClientListEntry.class);
 
+    // Die Zugriffsmethoden kommen ohne Monitor aus (volatile Felder und
+    // atomare Zaehler). Damit blockiert ein Worker, der in einem virtuellen
+    // Thread laeuft, beim Zugriff nie seinen Traeger-Thread.
+
     // Login-Name des Clients
-    private String userName;
+    private volatile String userName;
+
+    // Client-ID in der Sitzungstabelle des Servers, 0 solange nicht
+    // eingetragen
+    private volatile int clientId;
 
     // Verbindungs-Handle fuer Transportverbindung zum Client
-    private Connection con;
+    private volatile Connection con;
 
     // Kennzeichen zum Beenden des Worker-Threads
-    boolean finished;
+    volatile boolean finished;
 
     // Login-Zeitpunkt
-    private long loginTime;
+    private volatile long loginTime;
 
     // Ankunftszeit einer Chat-Message fuer die Serverzeit-Messung
-    private long startTime;
+    private volatile long startTime;
 
     // Conversation-Status des Clients
-    private ClientConversationStatus status;
+    private volatile ClientConversationStatus status;
+
+    // Version des Userverzeichnisses, mit der der Client zuletzt aufgenommen
+    // bzw. entfernt wurde; wird im Login- bzw. Logout-Event uebertragen
+    private volatile long userListVersion;
 
     // Anzahl der verarbeiteten Chat-Nachrichten des Clients (Sequenznummer)
-    private long numberOfReceivedChatMessages;
+    private final AtomicLong numberOfReceivedChatMessages = new AtomicLong(0);
 
     // Anzahl gesendeter Events (ChatMessageEvents, LoginEvents, LogoutEvents),
     // die der
     // Server fuer den Client sendet
-    private long numberOfSentEvents;
+    private final AtomicLong numberOfSentEvents = new AtomicLong(0);
 
     // Anzahl aller empfangenen Confirms (ChatMessageConfirm, LoginConfirm,
     // LogoutConfirm)
     // fuer den Client
-    private long numberOfReceivedEventConfirms;
+    private final AtomicLong numberOfReceivedEventConfirms = new AtomicLong(0);
 
     // Anzahl nicht erhaltener Bestaetigungen (derzeit nicht genutzt)
-    private long numberOfLostEventConfirms;
+    private final AtomicLong numberOfLostEventConfirms = new AtomicLong(0);
 
     // Anzahl an Nachrichtenwiederholungen (derzeit nicht genutzt)
-    private long numberOfRetries;
+    private final AtomicLong numberOfRetries = new AtomicLong(0);
+
+    // Wartelisten aller laufenden Requests des Clients, Schluessel ist die
+    // Transaktions-ID des Requests. Jede Liste verweist auf alle Clients, die
+    // noch kein Event-Confirm fuer den Request gesendet haben (ohne Sperre
+    // nutzbar). Requests ohne Transaktions-ID teilen sich eine Warteliste.
+    private final ConcurrentLongMap<WaitList> waitLists;
 
-    // Liste, die auf alle Clients verweist, die noch kein Event-Confirm fuer
-    // einen
-    // konkret laufenden Request gesendet haben
-    private Vector<String> waitList;
+    // Anzahl der Wartelisten (aller Clients), in denen dieser Client noch
+    // steht. Wird von der WaitList gepflegt; bei 0 wartet niemand mehr auf
+    // einen Confirm dieses Clients
+    private final AtomicInteger waitListReferences;
 
     public ClientListEntry(String userName, Connection con) {
         this.userName = userName;
@@ -64,12 +84,8 @@ public class ClientListEntry {
         this.loginTime = 0;
         this.startTime = 0;
         this.status = ClientConversationStatus.UNREGISTERED;
-        this.numberOfReceivedChatMessages = 0;
-        this.numberOfSentEvents = 0;
-        this.numberOfReceivedEventConfirms = 0;
-        this.numberOfLostEventConfirms = 0;
-        this.numberOfRetries = 0;
-        this.waitList = new Vector<String>();
+        this.waitLists = new ConcurrentLongMap<WaitList>();
+        this.waitListReferences = new AtomicInteger(0);
     }
 
     @Override
@@ -90,129 +106,232 @@ public class ClientListEntry {
         return stringBuilder.toString();
     }
 
-    public synchronized void setUserName(String userName) {
+    public void setUserName(String userName) {
         this.userName = userName;
     }
 
-    public synchronized String getUserName() {
+    public String getUserName() {
         return userName;
     }
 
-    public synchronized void setConnection(Connection con) {
+    public int getClientId() {
+        return clientId;
+    }
+
+    void setClientId(int clientId) {
+        this.clientId = clientId;
+    }
+
+    public void setConnection(Connection con) {
         this.con = con;
     }
 
-    public synchronized Connection getConnection() {
+    public Connection getConnection() {
         return (con);
     }
 
-    public synchronized void setLoginTime(long time) {
+    public void setLoginTime(long time) {
         this.loginTime = time;
     }
 
-    public synchronized void setStartTime(long startTime) {
+    public void setStartTime(long startTime) {
         this.startTime = startTime;
     }
 
-    public synchronized long getLoginTime() {
+    public long getLoginTime() {
         return (loginTime);
     }
 
-    public synchronized long getStartTime() {
+    public long getStartTime() {
         return (startTime);
     }
 
-    public synchronized void setNumberOfReceivedChatMessages(long nr) {
-        this.numberOfReceivedChatMessages = nr;
+    public void setNumberOfReceivedChatMessages(long nr) {
+        this.numberOfReceivedChatMessages.set(nr);
     }
 
-    public synchronized long getNumberOfReceivedChatMessages() {
-        return (numberOfReceivedChatMessages);
+    public long getNumberOfReceivedChatMessages() {
+        return numberOfReceivedChatMessages.get();
     }
 
-    public synchronized void setNumberOfSentEvents(long nr) {
-        this.numberOfSentEvents = nr;
+    public void setNumberOfSentEvents(long nr) {
+        this.numberOfSentEvents.set(nr);
     }
 
-    public synchronized long getNumberOfSentEvents() {
-        return (numberOfSentEvents);
+    public long getNumberOfSentEvents() {
+        return numberOfSentEvents.get();
     }
 
-    public synchronized void setNumberOfReceivedEventConfirms(long nr) {
-        this.numberOfReceivedEventConfirms = nr;
+    public void setNumberOfReceivedEventConfirms(long nr) {
+        this.numberOfReceivedEventConfirms.set(nr);
     }
 
-    public synchronized long getNumberOfReceivedEventConfirms() {
-        return (numberOfReceivedEventConfirms);
+    public long getNumberOfReceivedEventConfirms() {
+        return numberOfReceivedEventConfirms.get();
     }
 
-    public synchronized void setNumberOfLostEventConfirms(long nr) {
-        this.numberOfLostEventConfirms = nr;
+    public void setNumberOfLostEventConfirms(long nr) {
+        this.numberOfLostEventConfirms.set(nr);
     }
 
-    public synchronized long getNumberOfLostEventConfirms() {
-        return (numberOfLostEventConfirms);
+    public long getNumberOfLostEventConfirms() {
+        return numberOfLostEventConfirms.get();
     }
 
-    public synchronized void setNumberOfRetries(long nr) {
-        this.numberOfRetries = nr;
+    public void setNumberOfRetries(long nr) {
+        this.numberOfRetries.set(nr);
     }
 
-    public synchronized long getNumberOfRetries() {
-        return (numberOfRetries);
+    public long getNumberOfRetries() {
+        return numberOfRetries.get();
     }
 
-    public synchronized ClientConversationStatus getStatus() {
+    public ClientConversationStatus getStatus() {
         return status;
     }
 
-    public synchronized void setStatus(ClientConversationStatus status) {
+    public void setStatus(ClientConversationStatus status) {
         this.status = status;
     }
 
-    public synchronized boolean isFinished() {
+    public long getUserListVersion() {
+        return userListVersion;
+    }
+
+    public void setUserListVersion(long userListVersion) {
+        this.userListVersion = userListVersion;
+    }
+
+    public boolean isFinished() {
         return finished;
     }
 
-    public synchronized void setFinished(boolean finished) {
+    public void setFinished(boolean finished) {
         this.finished = finished;
     }
 
-    public synchronized void incrNumberOfSentEvents() {
-        this.numberOfSentEvents++;
+    public void incrNumberOfSentEvents() {
+        this.numberOfSentEvents.incrementAndGet();
     }
 
-    public synchronized void incrNumberOfReceivedEventConfirms() {
-        this.numberOfReceivedEventConfirms++;
+    public void incrNumberOfReceivedEventConfirms() {
+        this.numberOfReceivedEventConfirms.incrementAndGet();
     }
 
-    public synchronized void incrNumberOfLostEventConfirms() {
-        this.numberOfLostEventConfirms++;
+    public void incrNumberOfLostEventConfirms() {
+        this.numberOfLostEventConfirms.incrementAndGet();
     }
 
-    public synchronized void incrNumberOfReceivedChatMessages() {
-        this.numberOfReceivedChatMessages++;
+    public void incrNumberOfReceivedChatMessages() {
+        this.numberOfReceivedChatMessages.incrementAndGet();
     }
 
-    public synchronized void incrNumberOfRetries() {
-        this.numberOfRetries++;
+    public void incrNumberOfRetries() {
+        this.numberOfRetries.incrementAndGet();
     }
 
-    public synchronized void setWaitList(Vector<String> list) {
-        this.waitList = list;
-        log.debug("Warteliste von " + this.userName + ": " + waitList);
+    /**
+     * Neue Warteliste fuer einen Request anlegen. Eine vorhandene Liste mit
+     * derselben Transaktions-ID (z.B. nach einer Wiederholung des Requests)
+     * wird ersetzt und geleert, damit ihre Eintraege die Referenzzaehler der
+     * Clients freigeben.
+     *
+     * @param transactionId Transaktions-ID des Requests
+     * @param event         Event-PDU, fuer die Confirms gesammelt werden
+     * @param startTime     Ankunftszeit des Requests in ns
+     * @param clientTable   Sitzungstabelle, aus der die Eintraege stammen
+     * @return Angelegte, noch leere Warteliste
+     */
+    public WaitList createWaitList(long transactionId, ChatPDU event, long startTime,
+                                   ClientTable clientTable) {
+        WaitList waitList = new WaitList(transactionId, event, startTime, clientTable);
+        WaitList replaced = waitLists.put(transactionId, waitList);
+        if (replaced != null) {
+            log.debug("Warteliste fuer Transaktion "
+                    + ChatPDU.transactionIdToString(transactionId) + " ersetzt");
+            replaced.clear();
+        }
+        return waitList;
     }
 
-    public synchronized void addWaitListEntry(String userName) {
-        this.waitList.add(userName);
-        log.debug("Warteliste von " + this.userName + " ergaenzt um " + userName);
+    public WaitList getWaitList(long transactionId) {
+        return waitLists.get(transactionId);
     }
 
-    public synchronized Vector<String> getWaitList() {
-        return waitList;
+    /**
+     * Warteliste eines abgeschlossenen Requests entfernen
+     *
+     * @param waitList Zu entfernende Warteliste
+     * @return true, wenn die Liste noch eingetragen war
+     */
+    public boolean removeWaitList(WaitList waitList) {
+        return waitLists.remove(waitList.getTransactionId(), waitList);
+    }
+
+    public Collection<WaitList> getWaitLists() {
+        return waitLists.values();
+    }
+
+    /**
+     * Prueft, ob ein Client in irgendeiner Warteliste dieses Clients steht
+     *
+     * @param clientId Client-ID des gesuchten Clients
+     * @return true, wenn noch ein Confirm des Clients aussteht
+     */
+    public boolean isInWaitList(int clientId) {
+        for (WaitList waitList : waitLists.values()) {
+            if (waitList.contains(clientId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Anzahl aller noch ausstehenden Confirms ueber alle laufenden Requests
+     */
+    public int getWaitListSize() {
+        int size = 0;
+        for (WaitList waitList : waitLists.values()) {
+            size += waitList.size();
+        }
+        return size;
+    }
+
+    /**
+     * Alle Wartelisten des Clients verwerfen. Die eingetragenen Clients werden
+     * dabei ausgetragen, damit ihre Referenzzaehler stimmen.
+     */
+    public void clearWaitLists() {
+        for (WaitList waitList : waitLists.values()) {
+            waitList.clear();
+        }
+        waitLists.clear();
+    }
+
+    /**
+     * Anzahl der Wartelisten, in denen dieser Client noch steht
+     */
+    public int getWaitListReferences() {
+        return waitListReferences.get();
+    }
+
+    void incrWaitListReferences() {
+        waitListReferences.incrementAndGet();
+    }
+
+    void decrWaitListReferences() {
+        waitListReferences.decrementAndGet();
     }
 
-    public synchronized void clearWaitList() {
-        waitList.clear();
+    /**
+     * Prueft, ob der Client geloescht werden darf: Er ist zum Beenden
+     * vorgemerkt, hat keine offenen Requests mehr und steht in keiner
+     * Warteliste eines anderen Clients.
+     *
+     * @return true, wenn der Client geloescht werden darf
+     */
+    public boolean isDeletable() {
+        return isFinished() && (waitListReferences.get() == 0) && (getWaitListSize() == 0);
     }
 }
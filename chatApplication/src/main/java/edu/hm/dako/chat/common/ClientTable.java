@@ -0,0 +1,157 @@
+package edu.hm.dako.chat.common;
+
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sitzungstabelle des Servers: Jeder Client erhaelt beim Login eine kleine,
+ * dichte Client-ID (ab 1, 0 steht fuer "keine ID"), unter der sein Eintrag in
+ * einem Feld abgelegt ist. Frei gewordene IDs werden wiederverwendet, immer
+ * die kleinste zuerst; die IDs bleiben dadurch so dicht wie die Anzahl der
+ * gleichzeitig angemeldeten Clients.
+ * <p/>
+ * Der Zugriff ueber die ID ist ein Feldzugriff ohne Hashing, Stringvergleich
+ * oder Sperre. Wartelisten, Zaehler und das Verteilen von Events arbeiten
+ * daher mit IDs; der Name wird nur beim Login in eine ID umgesetzt.
+ * <p/>
+ * Eintragen und Austragen sind durch eine Sperre serialisiert. Wird das Feld
+ * zu klein, wird es kopiert und das neue Feld veroeffentlicht; ein Leser mit
+ * dem alten Feld sieht dann hoechstens einen gerade angemeldeten Client noch
+ * nicht.
+ *
+ * @author Peter Mandl
+ */
+public class ClientTable {
+
+    // Anfangsgroesse des Feldes, waechst bei Bedarf auf das Doppelte
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Eintraege, Index ist die Client-ID
+    private volatile AtomicReferenceArray<ClientListEntry> slots =
+            new AtomicReferenceArray<ClientListEntry>(INITIAL_CAPACITY);
+
+    // Vergebene IDs, nur unter der Sperre benutzt
+    private final BitSet usedIds = new BitSet();
+
+    // Hoechste derzeit vergebene ID
+    private volatile int maxClientId = 0;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Client eintragen und ihm die kleinste freie ID zuordnen
+     *
+     * @param client Eintrag des Clients
+     * @return Vergebene Client-ID
+     */
+    public int add(ClientListEntry client) {
+        lock.lock();
+        try {
+            int clientId = usedIds.nextClearBit(1);
+            if (clientId >= slots.length()) {
+                grow(clientId + 1);
+            }
+            usedIds.set(clientId);
+            client.setClientId(clientId);
+            slots.set(clientId, client);
+            if (clientId > maxClientId) {
+                maxClientId = clientId;
+            }
+            return clientId;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Eintrag eines Clients durch einen neuen Eintrag unter derselben ID
+     * ersetzen
+     *
+     * @param oldClient Bisheriger Eintrag
+     * @param newClient Neuer Eintrag
+     */
+    public void replace(ClientListEntry oldClient, ClientListEntry newClient) {
+        lock.lock();
+        try {
+            int clientId = oldClient.getClientId();
+            if ((clientId > 0) && slots.compareAndSet(clientId, oldClient, newClient)) {
+                newClient.setClientId(clientId);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Client austragen und seine ID freigeben. Ist unter der ID inzwischen
+     * ein anderer Eintrag abgelegt, bleibt dieser erhalten.
+     *
+     * @param client Eintrag des Clients, darf null sein
+     */
+    public void remove(ClientListEntry client) {
+        if (client == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            int clientId = client.getClientId();
+            if ((clientId > 0) && slots.compareAndSet(clientId, client, null)) {
+                usedIds.clear(clientId);
+                maxClientId = Math.max(usedIds.length() - 1, 0);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Eintrag zu einer Client-ID, ohne Sperre
+     *
+     * @param clientId Client-ID
+     * @return Eintrag oder null, wenn die ID nicht vergeben ist
+     */
+    public ClientListEntry get(int clientId) {
+        AtomicReferenceArray<ClientListEntry> current = slots;
+        if ((clientId <= 0) || (clientId >= current.length())) {
+            return null;
+        }
+        return current.get(clientId);
+    }
+
+    /**
+     * @return Hoechste vergebene Client-ID, 0 wenn die Tabelle leer ist.
+     * Fuer Durchlaeufe ueber alle Clients von 1 bis einschliesslich dieser ID.
+     */
+    public int getMaxClientId() {
+        return maxClientId;
+    }
+
+    /**
+     * Alle Eintraege entfernen
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            slots = new AtomicReferenceArray<ClientListEntry>(INITIAL_CAPACITY);
+            usedIds.clear();
+            maxClientId = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void grow(int minCapacity) {
+        AtomicReferenceArray<ClientListEntry> current = slots;
+        int capacity = current.length();
+        while (capacity < minCapacity) {
+            capacity *= 2;
+        }
+        AtomicReferenceArray<ClientListEntry> grown =
+                new AtomicReferenceArray<ClientListEntry>(capacity);
+        for (int i = 0; i < current.length(); i++) {
+            grown.set(i, current.get(i));
+        }
+        slots = grown;
+    }
+}
@@ -0,0 +1,195 @@
+package edu.hm.dako.chat.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Threadsichere Abbildung von long-Schluesseln (z.B. Transaktions-IDs) auf
+ * Objekte, ohne die Schluessel als Long-Objekte anzulegen.
+ * <p/>
+ * Lesen erfolgt ohne Sperre: Die Buckets bestehen aus unveraenderlichen
+ * Knoten, Aenderungen ersetzen den Anfang einer Kette und werden unter einer
+ * Sperre ausgefuehrt. Gedacht fuer wenige Eintraege, die oft gelesen und
+ * selten geaendert werden, wie die offenen Wartelisten eines Clients.
+ *
+ * @param <V> Typ der Werte
+ * @author Peter Mandl
+ */
+public final class ConcurrentLongMap<V> {
+
+    // Anfangsgroesse der Tabelle (Zweierpotenz)
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Unveraenderlicher Knoten einer Kette
+     */
+    private static final class Node<V> {
+        final long key;
+        final V value;
+        final Node<V> next;
+
+        Node(long key, V value, Node<V> next) {
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    // Aktuelle Tabelle, wird beim Vergroessern ersetzt
+    private volatile AtomicReferenceArray<Node<V>> table =
+            new AtomicReferenceArray<Node<V>>(INITIAL_CAPACITY);
+
+    // Anzahl der Eintraege, nur unter der Sperre veraendert
+    private volatile int size = 0;
+
+    // Serialisiert alle Aenderungen
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * @param key Schluessel
+     * @return Wert zum Schluessel oder null
+     */
+    public V get(long key) {
+        AtomicReferenceArray<Node<V>> current = table;
+        for (Node<V> node = current.get(index(key, current.length())); node != null;
+             node = node.next) {
+            if (node.key == key) {
+                return node.value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Traegt einen Wert ein bzw. ersetzt den vorhandenen
+     *
+     * @param key   Schluessel
+     * @param value Wert (nicht null)
+     * @return Bisheriger Wert oder null
+     */
+    public V put(long key, V value) {
+        lock.lock();
+        try {
+            AtomicReferenceArray<Node<V>> current = table;
+            int index = index(key, current.length());
+            Node<V> head = current.get(index);
+            V previous = null;
+            for (Node<V> node = head; node != null; node = node.next) {
+                if (node.key == key) {
+                    previous = node.value;
+                    head = without(head, node);
+                    break;
+                }
+            }
+            current.set(index, new Node<V>(key, value, head));
+            if (previous == null) {
+                size++;
+                if (size > current.length() - (current.length() >> 2)) {
+                    resize(current);
+                }
+            }
+            return previous;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Entfernt einen Eintrag, wenn er noch den erwarteten Wert hat
+     *
+     * @param key   Schluessel
+     * @param value Erwarteter Wert
+     * @return true, wenn der Eintrag entfernt wurde
+     */
+    public boolean remove(long key, V value) {
+        lock.lock();
+        try {
+            AtomicReferenceArray<Node<V>> current = table;
+            int index = index(key, current.length());
+            Node<V> head = current.get(index);
+            for (Node<V> node = head; node != null; node = node.next) {
+                if ((node.key == key) && (node.value == value)) {
+                    current.set(index, without(head, node));
+                    size--;
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Entfernt alle Eintraege
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            table = new AtomicReferenceArray<Node<V>>(INITIAL_CAPACITY);
+            size = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return Momentaufnahme aller Werte
+     */
+    public List<V> values() {
+        List<V> values = new ArrayList<V>(size);
+        AtomicReferenceArray<Node<V>> current = table;
+        for (int i = 0; i < current.length(); i++) {
+            for (Node<V> node = current.get(i); node != null; node = node.next) {
+                values.add(node.value);
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return values().toString();
+    }
+
+    /**
+     * Kette ohne den angegebenen Knoten; die Knoten davor werden kopiert, da
+     * Knoten unveraenderlich sind
+     */
+    private static <V> Node<V> without(Node<V> head, Node<V> removed) {
+        if (head == removed) {
+            return removed.next;
+        }
+        return new Node<V>(head.key, head.value, without(head.next, removed));
+    }
+
+    /**
+     * Tabelle verdoppeln, nur unter der Sperre
+     */
+    private void resize(AtomicReferenceArray<Node<V>> current) {
+        AtomicReferenceArray<Node<V>> larger =
+                new AtomicReferenceArray<Node<V>>(current.length() * 2);
+        for (int i = 0; i < current.length(); i++) {
+            for (Node<V> node = current.get(i); node != null; node = node.next) {
+                int index = index(node.key, larger.length());
+                larger.set(index, new Node<V>(node.key, node.value, larger.get(index)));
+            }
+        }
+        table = larger;
+    }
+
+    // Fibonacci-Hashing, verteilt auch aufeinanderfolgende Schluessel
+    private static int index(long key, int length) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - Integer.numberOfTrailingZeros(length)));
+    }
+}
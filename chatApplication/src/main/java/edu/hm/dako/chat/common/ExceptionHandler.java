@@ -21,7 +21,10 @@ public class ExceptionHandler {
 
     private static void handleException(Exception exception, boolean terminateVm) {
         try {
-            System.out.println(exception.getCause().getClass().getSimpleName() + ": " + exception.getMessage());
+            // Nicht jede Exception hat eine Ursache (z.B. IOException bei voller
+            // Ausgangswarteschlange)
+            Throwable cause = (exception.getCause() != null) ? exception.getCause() : exception;
+            System.out.println(cause.getClass().getSimpleName() + ": " + exception.getMessage());
             throw exception;
         } catch (java.io.EOFException e) {
             log.error("End of File bei Verbindung: " + e);
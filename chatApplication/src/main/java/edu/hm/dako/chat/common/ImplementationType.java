@@ -8,4 +8,5 @@ package edu.hm.dako.chat.common;
 
 public enum ImplementationType {
     TCPAdvancedImplementation, TCPSimpleImplementation, UDPAdvancedImplementation,
+    TCPNioAdvancedImplementation, LocalAdvancedImplementation,
 }
@@ -0,0 +1,241 @@
+package edu.hm.dako.chat.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogramm fuer Latenzzeiten (z.B. RTTs in ns) mit festem Speicherbedarf,
+ * aufgebaut nach dem Vorbild von HdrHistogram.
+ * <p/>
+ * Die Werte werden logarithmisch in Bereiche eingeteilt, jeder Bereich
+ * (Zweierpotenz) ist linear in {@value #SUB_BUCKET_HALF_COUNT} Stufen
+ * unterteilt. Damit ist der relative Fehler eines aus dem Histogramm
+ * ermittelten Percentils unabhaengig von der Groesse des Wertes auf etwa
+ * 1/{@value #SUB_BUCKET_COUNT} (unter 1 %) beschraenkt. Werte unterhalb von
+ * 2^{@value #UNIT_MAGNITUDE} ns (ca. 1 Mikrosekunde) werden nicht weiter
+ * unterschieden, Werte ueber {@link #HIGHEST_TRACKABLE_VALUE} landen im
+ * obersten Bereich. Minimum, Maximum und Summe werden exakt gefuehrt.
+ * <p/>
+ * Das Eintragen ist ohne Sperren moeglich (atomare Zaehler), mehrere Threads
+ * koennen also gleichzeitig in ein Histogramm schreiben. Histogramme lassen
+ * sich mit {@link #add(LatencyHistogram)} zusammenfuehren, z.B. die
+ * Histogramme aller Clients eines Benchmarks.
+ *
+ * @author Peter Mandl
+ */
+public class LatencyHistogram {
+
+    // Kleinste unterschiedene Einheit: 2^10 ns
+    static final int UNIT_MAGNITUDE = 10;
+
+    // Stufen je Zweierpotenz; bestimmt die Genauigkeit
+    static final int SUB_BUCKET_COUNT = 128;
+    static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+    private static final int SUB_BUCKET_HALF_COUNT_MAGNITUDE = 6;
+
+    /**
+     * Groesster Wert, der noch genau eingeordnet wird (2^37 ns, ca. 137 s)
+     */
+    public static final long HIGHEST_TRACKABLE_VALUE = (1L << 37) - 1;
+
+    private static final int BUCKET_COUNT = countsIndex(HIGHEST_TRACKABLE_VALUE) + 1;
+
+    // Haeufigkeiten je Stufe
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    private final AtomicLong totalCount = new AtomicLong(0);
+    private final AtomicLong sum = new AtomicLong(0);
+    private final AtomicLong minValue = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong maxValue = new AtomicLong(0);
+
+    /**
+     * Einen Messwert eintragen
+     *
+     * @param value Messwert, z.B. RTT in ns; negative Werte werden als 0
+     *              eingetragen
+     */
+    public void recordValue(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(countsIndex(value));
+        totalCount.incrementAndGet();
+        sum.addAndGet(value);
+        updateMin(value);
+        updateMax(value);
+    }
+
+    /**
+     * Einen Messwert eintragen und dabei Coordinated Omission korrigieren:
+     * Ein Lastgenerator, der auf die Antwort wartet, sendet waehrend einer
+     * langen Verzoegerung keine weiteren Requests, so dass die Messwerte, die
+     * in dieser Zeit angefallen waeren, fehlen. Ist der Wert groesser als der
+     * erwartete Abstand zwischen zwei Requests, werden die fehlenden Werte
+     * (Wert - Abstand, Wert - 2 * Abstand, ...) zusaetzlich eingetragen.
+     *
+     * @param value            Messwert in ns
+     * @param expectedInterval erwarteter Abstand zwischen zwei Requests in ns;
+     *                         bei 0 oder weniger wird nicht korrigiert
+     */
+    public void recordValueWithExpectedInterval(long value, long expectedInterval) {
+        recordValue(value);
+        if (expectedInterval <= 0) {
+            return;
+        }
+        for (long missingValue = value - expectedInterval; missingValue >= expectedInterval;
+             missingValue -= expectedInterval) {
+            recordValue(missingValue);
+        }
+    }
+
+    /**
+     * Alle Werte eines anderen Histogramms hinzufuegen
+     *
+     * @param other Histogramm, das hinzugefuegt wird
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = other.counts.get(i);
+            if (count > 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+        long otherCount = other.totalCount.get();
+        if (otherCount > 0) {
+            totalCount.addAndGet(otherCount);
+            sum.addAndGet(other.sum.get());
+            updateMin(other.minValue.get());
+            updateMax(other.maxValue.get());
+        }
+    }
+
+    public long getTotalCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * @return Kleinster eingetragener Wert, 0 bei leerem Histogramm
+     */
+    public long getMin() {
+        return (totalCount.get() == 0) ? 0 : minValue.get();
+    }
+
+    /**
+     * @return Groesster eingetragener Wert
+     */
+    public long getMax() {
+        return maxValue.get();
+    }
+
+    /**
+     * @return Arithmetisches Mittel aller eingetragenen Werte
+     */
+    public double getMean() {
+        long count = totalCount.get();
+        return (count == 0) ? 0.0 : (double) sum.get() / count;
+    }
+
+    /**
+     * Standardabweichung, ermittelt aus den Stufen des Histogramms
+     *
+     * @return Standardabweichung (Stichprobe)
+     */
+    public double getStandardDeviation() {
+        long count = totalCount.get();
+        if (count < 2) {
+            return 0.0;
+        }
+        double mean = getMean();
+        double squareSum = 0.0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long bucketCount = counts.get(i);
+            if (bucketCount > 0) {
+                double deviation = medianEquivalentValue(i) - mean;
+                squareSum += deviation * deviation * bucketCount;
+            }
+        }
+        return Math.sqrt(squareSum / (count - 1));
+    }
+
+    /**
+     * Wert zu einem Percentil ermitteln
+     *
+     * @param percentile Percentil zwischen 0 und 100, z.B. 99.9
+     * @return Wert, unter dem der angegebene Anteil aller Werte liegt; 0 bei
+     * leerem Histogramm
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        double requested = Math.min(Math.max(percentile, 0.0), 100.0);
+        long countAtPercentile = Math.max(1, (long) Math.ceil(requested / 100.0 * count));
+
+        long cumulativeCount = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            cumulativeCount += counts.get(i);
+            if (cumulativeCount >= countAtPercentile) {
+                // Mitte der Stufe, begrenzt durch die exakten Randwerte
+                long value = medianEquivalentValue(i);
+                return Math.min(Math.max(value, getMin()), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Index der Stufe fuer einen Wert berechnen
+     */
+    static int countsIndex(long value) {
+        long units = Math.min(value, HIGHEST_TRACKABLE_VALUE) >>> UNIT_MAGNITUDE;
+        if (units < SUB_BUCKET_COUNT) {
+            // Unterster Bereich ist linear eingeteilt
+            return (int) units;
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(units)) - SUB_BUCKET_HALF_COUNT_MAGNITUDE;
+        int subBucket = (int) (units >>> shift) - SUB_BUCKET_HALF_COUNT;
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF_COUNT + subBucket;
+    }
+
+    /**
+     * Kleinster Wert einer Stufe
+     */
+    static long lowestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return ((long) index) << UNIT_MAGNITUDE;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + 1;
+        long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+        return (subBucket << shift) << UNIT_MAGNITUDE;
+    }
+
+    /**
+     * Breite einer Stufe
+     */
+    static long bucketWidth(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return 1L << UNIT_MAGNITUDE;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + 1;
+        return 1L << (shift + UNIT_MAGNITUDE);
+    }
+
+    private static long medianEquivalentValue(int index) {
+        return lowestEquivalentValue(index) + bucketWidth(index) / 2;
+    }
+
+    private void updateMin(long value) {
+        long current = minValue.get();
+        while (value < current && !minValue.compareAndSet(current, value)) {
+            current = minValue.get();
+        }
+    }
+
+    private void updateMax(long value) {
+        long current = maxValue.get();
+        while (value > current && !maxValue.compareAndSet(current, value)) {
+            current = maxValue.get();
+        }
+    }
+}
@@ -18,18 +18,24 @@ public enum PduType {
     LOGOUT_EVENT(9, "Logout-Event"),
     CHAT_MESSAGE_EVENT_CONFIRM(10, "Chat-Message-Event-Confirm"),
     LOGIN_EVENT_CONFIRM(11, "Login-Event-Confirm"),
-    LOGOUT_EVENT_CONFIRM(12, "Logout-Event-Confirm");
+    LOGOUT_EVENT_CONFIRM(12, "Logout-Event-Confirm"),
+    USER_LIST_REQUEST(13, "User-List-Request"),
+    USER_LIST_RESPONSE(14, "User-List-Response"),
+    CHAT_MESSAGE_EVENT_CONFIRM_BATCH(15, "Chat-Message-Event-Confirm-Batch");
 
     private final int id;
     private final String description;
 
+    // Kopie von values(), da values() bei jedem Aufruf ein neues Feld anlegt
+    private static final PduType[] VALUES = values();
+
     PduType(int id, String description) {
         this.id = id;
         this.description = description;
     }
 
     public static PduType getId(int id) {
-        for (PduType e : values()) {
+        for (PduType e : VALUES) {
             if (e.getId() == id) {
                 return e;
             }
@@ -45,6 +51,14 @@ public enum PduType {
         return description;
     }
 
+    /**
+     * @return true bei Events, die der Server an alle Clients verteilt und
+     * deren Confirm er in einer Warteliste erwartet
+     */
+    public boolean isEvent() {
+        return (this == CHAT_MESSAGE_EVENT) || (this == LOGIN_EVENT) || (this == LOGOUT_EVENT);
+    }
+
     @Override
     public String toString() {
         return description;
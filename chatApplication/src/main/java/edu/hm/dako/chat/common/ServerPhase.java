@@ -0,0 +1,64 @@
+package edu.hm.dako.chat.common;
+
+/**
+ * Abschnitte der Bearbeitung einer Chat-Nachricht im Server. Der Server
+ * meldet die Dauer jedes Abschnitts in der Chat-Message-Response (siehe
+ * {@link ChatPDU#getServerPhaseTimes()}), der Benchmarking-Client fuehrt je
+ * Abschnitt ein eigenes Histogramm. Damit laesst sich eine wachsende RTT
+ * einem Teil des Servers zuordnen.
+ * <p/>
+ * Bis auf {@link #ENCODE} folgen die Abschnitte ohne Ueberlappung
+ * aufeinander. Die Ordinalzahl ist der Index in den gemeldeten Zeiten und
+ * Teil des Binaerformats; neue Abschnitte duerfen nur am Ende ergaenzt
+ * werden.
+ *
+ * @author Peter Mandl
+ */
+public enum ServerPhase {
+
+    // Dekodieren des Requests (vor Beginn der Serverzeit)
+    DECODE("decode", "Dekodieren des Requests"),
+
+    // Anlegen der Warteliste fuer die Confirms
+    WAIT_LIST("waitList", "Anlegen der Warteliste"),
+
+    // Einmaliges Kodieren des Chat-Events fuer alle Empfaenger. Erfolgt beim
+    // ersten Senden und ist dann in FAN_OUT enthalten; bei Warteschlangen
+    // (QueuedConnection) kodiert der Schreib-Thread nebenlaeufig
+    ENCODE("encode", "Kodieren des Events"),
+
+    // Sendeschleife des Events an alle Empfaenger
+    FAN_OUT("fanOut", "Verteilen des Events"),
+
+    // Vom Ende der Verteilung bis zum letzten Confirm
+    CONFIRM_WAIT("confirmWait", "Warten auf den letzten Confirm");
+
+    /**
+     * Anzahl der Abschnitte (Laenge der gemeldeten Zeiten)
+     */
+    public static final int COUNT = values().length;
+
+    private final String key;
+    private final String description;
+
+    ServerPhase(String key, String description) {
+        this.key = key;
+        this.description = description;
+    }
+
+    /**
+     * @return Kurzname fuer maschinenlesbare Ausgaben (Spaltennamen)
+     */
+    public String getKey() {
+        return key;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
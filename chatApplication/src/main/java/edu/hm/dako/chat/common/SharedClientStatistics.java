@@ -3,21 +3,12 @@ package edu.hm.dako.chat.common;
 import edu.hm.dako.chat.benchmarking.BenchmarkingClientUserInterface;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.commons.math3.exception.MathIllegalArgumentException;
-import org.apache.commons.math3.stat.descriptive.moment.Mean;
-import org.apache.commons.math3.stat.descriptive.moment.StandardDeviation;
-import org.apache.commons.math3.stat.descriptive.moment.Variance;
-import org.apache.commons.math3.stat.descriptive.rank.Max;
-import org.apache.commons.math3.stat.descriptive.rank.Min;
-import org.apache.commons.math3.stat.descriptive.rank.Percentile;
 
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.text.NumberFormat;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Formatter;
 import java.util.concurrent.CountDownLatch;
 
@@ -69,6 +60,10 @@ public class SharedClientStatistics {
     // Client-GUI fuer die Bearbeitung des Ladebalken
     private BenchmarkingClientUserInterface clientGui;
 
+    // Erwarteter Abstand zwischen zwei Requests eines Clients in ns fuer die
+    // Korrektur von Coordinated Omission; 0: keine Korrektur
+    private volatile long expectedRequestInterval = 0;
+
     // Statistikdaten eines Clients
     private class ClientStatistics {
         // Anzahl gesendeter Nachrichten
@@ -97,8 +92,9 @@ public class SharedClientStatistics {
         long minRTT;
         // Summe aller RTTs in ns
         long sumRTT;
-        // Alle RTTs werden hier fuer die Quartilsermittlung gesammelt
-        ArrayList<Long> rttList;
+        // Verteilung der RTTs fuer die Percentil-Ermittlung; wird ohne
+        // Sperre beschrieben
+        final LatencyHistogram rttHistogram = new LatencyHistogram();
         // Zeit, die der Server insgesamt fuer alle Requests benoetigt
         // in ns
         long sumServerTime;
@@ -111,6 +107,13 @@ public class SharedClientStatistics {
 
     private ClientStatistics clientStatistics[];
 
+    // Verteilung der vom Server gemeldeten Bearbeitungsabschnitte, Index ist
+    // die Ordinalzahl von ServerPhase. Gemeinsam fuer alle Clients, damit der
+    // Speicherbedarf nicht mit der Anzahl der Clients waechst; wird ohne
+    // Sperre beschrieben
+    private final LatencyHistogram[] serverPhaseHistograms =
+            new LatencyHistogram[ServerPhase.COUNT];
+
     /**
      * Test, ob Client-Id im gueltigen Bereich ist
      *
@@ -155,8 +158,22 @@ public class SharedClientStatistics {
             clientStatistics[i].sumRTT = 0;
             clientStatistics[i].sumServerTime = 0;
             clientStatistics[i].maxHeapSize = 0;
-            clientStatistics[i].rttList = new ArrayList<Long>();
         }
+        for (int i = 0; i < serverPhaseHistograms.length; i++) {
+            serverPhaseHistograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Korrektur von Coordinated Omission einschalten: RTTs, die laenger als
+     * der erwartete Abstand zwischen zwei Requests sind, werden um die in
+     * dieser Zeit nicht gesendeten Requests ergaenzt (siehe
+     * {@link LatencyHistogram#recordValueWithExpectedInterval(long, long)}).
+     *
+     * @param expectedRequestInterval Abstand in ns, 0 schaltet die Korrektur aus
+     */
+    public void setExpectedRequestInterval(long expectedRequestInterval) {
+        this.expectedRequestInterval = expectedRequestInterval;
     }
 
     public CountDownLatch getLoginSignal() {
@@ -275,6 +292,15 @@ public class SharedClientStatistics {
         return clientStatistics[i].numberOfRetriedEvents;
     }
 
+    /**
+     * Anzahl der Uebertragungswiederholungen setzen
+     */
+    public synchronized void setNumberOfRetries(int i, long nr) {
+        if (!inRange(i))
+            return;
+        clientStatistics[i].numberOfRetries = (int) nr;
+    }
+
     /**
      * Anzahl der Uebrtragungswiederholungen erhoehen
      */
@@ -287,15 +313,34 @@ public class SharedClientStatistics {
     /**
      * Anzahl der empfangenen Nachrichten eines Clients erhoehen
      *
-     * @param i          Client-Id
-     * @param rtt        RoundTrip Time
-     * @param serverTime Die Zeit, die der Server benoetigt hat
+     * @param i                Client-Id
+     * @param rtt              RoundTrip Time
+     * @param serverTime       Die Zeit, die der Server benoetigt hat
+     * @param serverPhaseTimes Aufteilung der Serverzeit in ns (Index:
+     *                         Ordinalzahl von ServerPhase), null: keine
      */
-    public synchronized void incrReceivedMsgCounter(int i, long rtt, long serverTime) {
+    public void incrReceivedMsgCounter(int i, long rtt, long serverTime,
+                                       long[] serverPhaseTimes) {
 
         if (!inRange(i))
             return;
 
+        // Verteilungen ohne Sperre fortschreiben
+        clientStatistics[i].rttHistogram.recordValueWithExpectedInterval(rtt,
+                expectedRequestInterval);
+        if (serverPhaseTimes != null) {
+            int phases = Math.min(serverPhaseTimes.length, serverPhaseHistograms.length);
+            for (int phase = 0; phase < phases; phase++) {
+                serverPhaseHistograms[phase].recordValue(serverPhaseTimes[phase]);
+            }
+        }
+
+        synchronized (this) {
+            incrReceivedMsgCounters(i, rtt, serverTime);
+        }
+    }
+
+    private void incrReceivedMsgCounters(int i, long rtt, long serverTime) {
         clientGui.countUpProgressTask();
         clientStatistics[i].receivedResponses++;
 
@@ -315,7 +360,6 @@ public class SharedClientStatistics {
         clientStatistics[i].avgServerTime = clientStatistics[i].sumServerTime
                 / clientStatistics[i].receivedResponses;
 
-        clientStatistics[i].rttList.add((Long) rtt);
         if (clientStatistics[i].maxHeapSize < usedMemory()) {
             clientStatistics[i].maxHeapSize = usedMemory();
         }
@@ -639,76 +683,83 @@ public class SharedClientStatistics {
     }
 
     /**
-     * Gesamtliste ueber alle RTTs bilden
+     * Histogramme aller Clients zu einer Gesamtverteilung zusammenfuehren
      *
-     * @return ArrayList
+     * @return Histogramm ueber alle RTTs
      */
-    public synchronized DistributionMetrics calculateMetrics() {
-
-        ArrayList<Long> completeList = new ArrayList<Long>();
-        DistributionMetrics distributionMetrics = new DistributionMetrics();
-
-        // RTT-Listen aller Clients zusammenfuegen
+    public LatencyHistogram getRttHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
         for (int i = 0; i < numberOfClients; i++) {
-            completeList.addAll(clientStatistics[i].rttList);
+            histogram.add(clientStatistics[i].rttHistogram);
         }
+        return histogram;
+    }
 
-        // Sortieren der gesamten RTT-Liste
-        Collections.sort(completeList);
-
-        double[] doubleList = new double[completeList.size()];
-
-        try {
-
-            // RTT-Werte konvertieren zu double-Werten
-            for (int i = 0; i < completeList.size(); i++) {
-                doubleList[i] = completeList.get(i).doubleValue();
-            }
+    /**
+     * Verteilung eines vom Server gemeldeten Bearbeitungsabschnitts ueber alle
+     * Clients
+     *
+     * @param phase Bearbeitungsabschnitt
+     * @return Kopie des Histogramms (Werte in ns)
+     */
+    public LatencyHistogram getServerPhaseHistogram(ServerPhase phase) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.add(serverPhaseHistograms[phase.ordinal()]);
+        return histogram;
+    }
 
-            // Percentile berechnen
-            Percentile percentile = new Percentile();
-            percentile.setData(doubleList);
-            distributionMetrics.setPercentile10(percentile.evaluate(10) / 1000000.0);
-            distributionMetrics.setPercentile25(percentile.evaluate(25) / 1000000.0);
-            distributionMetrics.setPercentile50(percentile.evaluate(50) / 1000000.0);
-            distributionMetrics.setPercentile75(percentile.evaluate(75) / 1000000.0);
-            distributionMetrics.setPercentile90(percentile.evaluate(90) / 1000000.0);
+    /**
+     * @return Kopien der Histogramme aller Bearbeitungsabschnitte, Index ist
+     * die Ordinalzahl von {@link ServerPhase}
+     */
+    public LatencyHistogram[] getServerPhaseHistograms() {
+        LatencyHistogram[] histograms = new LatencyHistogram[ServerPhase.COUNT];
+        for (ServerPhase phase : ServerPhase.values()) {
+            histograms[phase.ordinal()] = getServerPhaseHistogram(phase);
+        }
+        return histograms;
+    }
 
-            distributionMetrics.setInterquartilRange(
-                    distributionMetrics.percentile75 - distributionMetrics.percentile25);
+    /**
+     * Verteilungsmetriken ueber alle RTTs ermitteln. Alle Werte in ms.
+     *
+     * @return Verteilungsmetriken
+     */
+    public DistributionMetrics calculateMetrics() {
 
-            // Maximum berechnen
-            Max max = new Max();
-            max.setData(doubleList);
-            distributionMetrics.setMaximum(max.evaluate() / 1000000.0);
+        LatencyHistogram histogram = getRttHistogram();
+        DistributionMetrics distributionMetrics = new DistributionMetrics();
 
-            // Minimum berechnen
-            Min min = new Min();
-            min.setData(doubleList);
-            distributionMetrics.setMinimum(min.evaluate() / 1000000.0);
+        if (histogram.getTotalCount() == 0) {
+            log.debug("Keine RTTs fuer die Berechnung der Verteilungsmetriken vorhanden");
+            return distributionMetrics;
+        }
 
-            // Spannweite und IQR berechnen
-            distributionMetrics
-                    .setRange(distributionMetrics.maximum - distributionMetrics.minimum);
+        // Percentile berechnen
+        distributionMetrics.setPercentile10(histogram.getValueAtPercentile(10) / 1000000.0);
+        distributionMetrics.setPercentile25(histogram.getValueAtPercentile(25) / 1000000.0);
+        distributionMetrics.setPercentile50(histogram.getValueAtPercentile(50) / 1000000.0);
+        distributionMetrics.setPercentile75(histogram.getValueAtPercentile(75) / 1000000.0);
+        distributionMetrics.setPercentile90(histogram.getValueAtPercentile(90) / 1000000.0);
+        distributionMetrics.setPercentile99(histogram.getValueAtPercentile(99) / 1000000.0);
+        distributionMetrics.setPercentile999(histogram.getValueAtPercentile(99.9) / 1000000.0);
 
-            // Artihmetisches Mittel berechnen
-            Mean mean = new Mean();
-            mean.setData(doubleList);
-            distributionMetrics.setMean(mean.evaluate() / 1000000.0);
+        distributionMetrics.setInterquartilRange(
+                distributionMetrics.percentile75 - distributionMetrics.percentile25);
 
-            // Varianz berechnen
-            Variance variance = new Variance();
-            variance.setData(doubleList);
-            distributionMetrics.setVariance(variance.evaluate() / 1000000.0);
+        // Minimum und Maximum werden exakt gefuehrt
+        distributionMetrics.setMaximum(histogram.getMax() / 1000000.0);
+        distributionMetrics.setMinimum(histogram.getMin() / 1000000.0);
 
-            // Standardabweichung berechnen
-            StandardDeviation standardDeviation = new StandardDeviation();
-            standardDeviation.setData(doubleList);
-            distributionMetrics.setStandardDeviation(standardDeviation.evaluate() / 1000000.0);
+        // Spannweite berechnen
+        distributionMetrics
+                .setRange(distributionMetrics.maximum - distributionMetrics.minimum);
 
-        } catch (MathIllegalArgumentException e) {
-            log.error("Fehler bei der Berechnung der Verteilungsmetriken");
-        }
+        // Artihmetisches Mittel, Standardabweichung und Varianz berechnen
+        distributionMetrics.setMean(histogram.getMean() / 1000000.0);
+        double standardDeviation = histogram.getStandardDeviation() / 1000000.0;
+        distributionMetrics.setStandardDeviation(standardDeviation);
+        distributionMetrics.setVariance(standardDeviation * standardDeviation);
 
         return distributionMetrics;
     }
@@ -849,6 +900,7 @@ public class SharedClientStatistics {
                         + "\n" + "Reine Serverzeit: " + this.getAverageServerTime() + " ns ("
                         + (this.getAverageServerTime() / numberOfClients) / 1000000.0 + " ms)" + "\n"
                         + "Maximal erreichte Heap-Belegung: " + usedMemoryAsString + " MByte"
+                        + serverPhaseStatistic()
 
                         + "\n"
                         + "************************ Ende Statistik *****************************"
@@ -856,6 +908,28 @@ public class SharedClientStatistics {
                         + "*********************************************************************");
     }
 
+    /**
+     * Aufteilung der Serverzeit fuer die Statistikausgabe
+     *
+     * @return Mittelwert, 50%- und 99%-Percentil je Bearbeitungsabschnitt,
+     * leer, wenn der Server keine Aufteilung gemeldet hat
+     */
+    private String serverPhaseStatistic() {
+        if (serverPhaseHistograms[0].getTotalCount() == 0) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder("\n\n"
+                + "Aufteilung der Serverzeit (Mittelwert / 50%-Percentile / 99%-Percentile):");
+        for (ServerPhase phase : ServerPhase.values()) {
+            LatencyHistogram histogram = serverPhaseHistograms[phase.ordinal()];
+            sb.append(String.format("%n%s: %.3f / %.3f / %.3f ms", phase.getDescription(),
+                    histogram.getMean() / 1000000.0,
+                    histogram.getValueAtPercentile(50) / 1000000.0,
+                    histogram.getValueAtPercentile(99) / 1000000.0));
+        }
+        return sb.toString();
+    }
+
     /**
      * Ausgabe eines Auswertungssatzes fuer eine Messung (einen Benchmark-Lauf) in
      * eine Datei im CSV-Dateiformat in folgender Form:
@@ -920,6 +994,13 @@ public class SharedClientStatistics {
      * <p/>
      * 29 Endezeit der Messung
      * <p/>
+     * 30 99%-Percentile
+     * <p/>
+     * 31 99,9%-Percentile
+     * <p/>
+     * 32-46 Aufteilung der Serverzeit: je Bearbeitungsabschnitt (Reihenfolge
+     * wie in ServerPhase) Mittelwert, 50%- und 99%-Percentile in ms
+     * <p/>
      * Der Satz wird an das Ende einer bestehenden Datei angehaengt.
      * <p/>
      * Die Datei kann zur Testauswertung in Excel weiterverarbeitet werden.
@@ -955,10 +1036,11 @@ public class SharedClientStatistics {
             StringBuilder sb = new StringBuilder();
             Formatter formatter = new Formatter();
 
-            sb.append(formatter.format(
+            formatter.format(
                     "%s | %s | %d | %d | "
                             + "%05.2f | %05.2f | %05.2f | %05.2f | %05.2f | %05.2f | %05.2f | %05.2f | %05.2f | %05.2f |  %05.2f |  %05.2f | "
-                            + "%d | %d | %d | %d | %d | %d | %d | %d | %d | %d | %02.2f | %s | %s%n",
+                            + "%d | %d | %d | %d | %d | %d | %d | %d | %d | %d | %02.2f | %s | %s | "
+                            + "%05.2f | %05.2f",
                     measureType, implType, numberOfClients, numberOfMessages,
                     distr.getPercentile10(), distr.getPercentile25(), distr.getPercentile50(),
                     distr.getPercentile75(), distr.getPercentile90(), distr.getRange(),
@@ -970,7 +1052,16 @@ public class SharedClientStatistics {
                     this.getSumOfAllSentEventMessages(), this.getSumOfAllReceivedConfirmEvents(),
                     this.getSumOfAllLostConfirmEvents(), this.getSumOfAllRetriedEvents(),
                     this.getMaxHeapSize() / (1024 * 1024), (double) (averageCpuTime * 100),
-                    startTime, endTime));
+                    startTime, endTime, distr.getPercentile99(), distr.getPercentile999());
+            // Aufteilung der Serverzeit je Bearbeitungsabschnitt
+            for (LatencyHistogram histogram : serverPhaseHistograms) {
+                formatter.format(" | %07.4f | %07.4f | %07.4f",
+                        histogram.getMean() / 1000000.0,
+                        histogram.getValueAtPercentile(50) / 1000000.0,
+                        histogram.getValueAtPercentile(99) / 1000000.0);
+            }
+            formatter.format("%n");
+            sb.append(formatter.toString());
 
             out.append(sb);
             formatter.close();
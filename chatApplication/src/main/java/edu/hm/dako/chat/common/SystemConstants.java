@@ -6,6 +6,7 @@ public class SystemConstants {
     public static final String IMPL_TCP_ADVANCED = "TCPAdvanced";
     public static final String IMPL_UDP_ADVANCED = "UDPAdvanced";
     public static final String IMPL_TCP_SIMPLE = "TCPSimple";
+    public static final String IMPL_TCP_NIO_ADVANCED = "TCPNioAdvanced";
 
     // Farben fuer GUI:
     // Rot fuer die Darstellung falsch eingegebener Werte
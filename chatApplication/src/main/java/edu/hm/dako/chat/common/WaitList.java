@@ -0,0 +1,265 @@
+package edu.hm.dako.chat.common;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Warteliste eines Requests: Enthaelt alle Clients, die fuer einen laufenden
+ * Request noch kein Event-Confirm gesendet haben. Ein Client kann mehrere
+ * Requests gleichzeitig offen haben; jeder Request hat dann eine eigene
+ * Warteliste, die ueber seine Transaktions-ID gefunden wird.
+ * <p/>
+ * Die Liste kommt ohne Sperre aus. Die Eintraege sind ein Bitset ueber die
+ * Client-IDs der {@link ClientTable}, dessen Worte per Compare-and-Set
+ * geaendert werden; zusaetzlich wird die Anzahl offener Confirms atomar
+ * gezaehlt. Eintragen, Austragen und Laengenabfrage kosten damit O(1) ohne
+ * Hashing, und Confirms verschiedener Clients behindern sich nicht
+ * gegenseitig. {@link #remove(ClientListEntry)} meldet genau dem Aufrufer,
+ * der den letzten Eintrag entfernt, dass die Liste leer geworden ist. Nur
+ * dieser sendet die Response an den Initiator.
+ * <p/>
+ * Das Bitset wird beim Anlegen fuer die hoechste vergebene Client-ID
+ * dimensioniert. Alle Eintraege werden beim Anlegen unter der Sperre der
+ * Clientliste aufgenommen, in der auch IDs vergeben werden.
+ * <p/>
+ * Beim Ein- und Austragen wird zusaetzlich der Referenzzaehler des
+ * betroffenen Clients gepflegt (Anzahl der Wartelisten, in denen er steht).
+ * Damit laesst sich ohne Durchsuchen aller Listen feststellen, ob ein Client
+ * geloescht werden darf. Eine ID wird erst wiederverwendet, wenn ihr Client
+ * in keiner Warteliste mehr steht.
+ *
+ * @author Peter Mandl
+ */
+public class WaitList {
+
+    // Clients, deren Confirm noch aussteht, ein Bit je Client-ID
+    private final AtomicLongArray entries;
+
+    // Sitzungstabelle zum Aufloesen der IDs beim Leeren der Liste
+    private final ClientTable clientTable;
+
+    // Anzahl offener Confirms, wird nach dem Bitset geaendert
+    private final AtomicInteger pending = new AtomicInteger(0);
+
+    // Transaktions-ID des Requests, zu dem die Warteliste gehoert
+    private final long transactionId;
+
+    // Event, fuer das die Confirms gesammelt werden. Wird benoetigt, um die
+    // Response zu erzeugen, insbesondere wenn die Liste nicht durch einen
+    // Confirm, sondern durch das Entfernen eines abgebrochenen Clients leer
+    // wird
+    private final ChatPDU event;
+
+    // Ankunftszeit des Requests fuer die Serverzeitmessung
+    private final long startTime;
+
+    // Dauer der einzeln gemessenen Bearbeitungsabschnitte in ns, Index ist
+    // die Ordinalzahl von ServerPhase. Geschrieben vom Worker des Initiators,
+    // gelesen vom Worker, der den letzten Confirm bearbeitet.
+    private final AtomicLongArray phaseTimes = new AtomicLongArray(ServerPhase.COUNT);
+
+    // Beginn und Ende der Verteilung des Events in ns, 0: noch nicht erreicht
+    private volatile long fanOutStart = 0;
+    private volatile long fanOutEnd = 0;
+
+    /**
+     * @param transactionId Transaktions-ID des Requests
+     * @param event         Gesendete Event-PDU
+     * @param startTime     Ankunftszeit des Requests in ns
+     * @param clientTable   Sitzungstabelle, aus der die Eintraege stammen
+     */
+    public WaitList(long transactionId, ChatPDU event, long startTime,
+                    ClientTable clientTable) {
+        this.transactionId = transactionId;
+        this.event = event;
+        this.startTime = startTime;
+        this.clientTable = clientTable;
+        this.entries = new AtomicLongArray((clientTable.getMaxClientId() >> 6) + 1);
+    }
+
+    public long getTransactionId() {
+        return transactionId;
+    }
+
+    public ChatPDU getEvent() {
+        return event;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Dauer eines einzeln gemessenen Bearbeitungsabschnitts eintragen
+     * (Dekodieren, Anlegen der Warteliste, Kodieren des Events)
+     *
+     * @param phase Bearbeitungsabschnitt
+     * @param time  Dauer in ns
+     */
+    public void setPhaseTime(ServerPhase phase, long time) {
+        phaseTimes.set(phase.ordinal(), time);
+    }
+
+    /**
+     * Beginn der Verteilung des Events, vor dem ersten Senden aufzurufen
+     *
+     * @param time Zeitpunkt in ns (System.nanoTime())
+     */
+    public void fanOutStarted(long time) {
+        fanOutStart = time;
+    }
+
+    /**
+     * Ende der Verteilung des Events, nach dem letzten Senden und nach dem
+     * Eintragen der Kodierzeit aufzurufen
+     *
+     * @param time Zeitpunkt in ns (System.nanoTime())
+     */
+    public void fanOutFinished(long time) {
+        fanOutEnd = time;
+    }
+
+    /**
+     * Aufteilung der Serverzeit fuer die Response. Ist die Liste leer
+     * geworden, bevor die Verteilung abgeschlossen wurde (der letzte Confirm
+     * war schneller als das Ende der Sendeschleife), zaehlt die gesamte Zeit
+     * ab Beginn der Verteilung als Verteilung.
+     *
+     * @param completionTime Zeitpunkt, zu dem die Liste leer wurde, in ns
+     * @return Dauer der Bearbeitungsabschnitte in ns, Index ist die
+     * Ordinalzahl von {@link ServerPhase}
+     */
+    public long[] getPhaseTimes(long completionTime) {
+        long end = fanOutEnd;
+        long start = fanOutStart;
+        if (end == 0) {
+            end = completionTime;
+        }
+        long[] times = new long[ServerPhase.COUNT];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = phaseTimes.get(i);
+        }
+        if (start != 0) {
+            times[ServerPhase.FAN_OUT.ordinal()] = Math.max(0, end - start);
+            times[ServerPhase.CONFIRM_WAIT.ordinal()] = Math.max(0, completionTime - end);
+        }
+        return times;
+    }
+
+    /**
+     * Client in die Warteliste aufnehmen
+     *
+     * @param client Eintrag des Clients in der Clientliste
+     */
+    public void add(ClientListEntry client) {
+        int clientId = client.getClientId();
+        if ((clientId >> 6) >= entries.length()) {
+            throw new IllegalArgumentException("Client-ID " + clientId
+                    + " beim Anlegen der Warteliste noch nicht vergeben");
+        }
+        if (setBit(clientId)) {
+            client.incrWaitListReferences();
+            pending.incrementAndGet();
+        }
+    }
+
+    /**
+     * Client aus der Warteliste entfernen
+     *
+     * @param client Eintrag des Clients, darf null sein
+     * @return true, wenn mit diesem Aufruf der letzte Eintrag entfernt wurde
+     */
+    public boolean remove(ClientListEntry client) {
+        if ((client != null) && clearBit(client.getClientId())) {
+            client.decrWaitListReferences();
+            return pending.decrementAndGet() == 0;
+        }
+        return false;
+    }
+
+    public boolean contains(int clientId) {
+        if ((clientId <= 0) || ((clientId >> 6) >= entries.length())) {
+            return false;
+        }
+        return (entries.get(clientId >> 6) & (1L << clientId)) != 0;
+    }
+
+    /**
+     * Anzahl der noch ausstehenden Confirms
+     */
+    public int size() {
+        return pending.get();
+    }
+
+    public boolean isEmpty() {
+        return pending.get() == 0;
+    }
+
+    /**
+     * Alle Eintraege entfernen
+     */
+    public void clear() {
+        for (int clientId : toIds()) {
+            remove(clientTable.get(clientId));
+        }
+    }
+
+    /**
+     * Momentaufnahme der Eintraege
+     *
+     * @return Client-IDs aller Clients in der Warteliste, aufsteigend
+     */
+    public int[] toIds() {
+        int count = 0;
+        for (int i = 0; i < entries.length(); i++) {
+            count += Long.bitCount(entries.get(i));
+        }
+        int[] ids = new int[count];
+        int n = 0;
+        for (int i = 0; (i < entries.length()) && (n < count); i++) {
+            long word = entries.get(i);
+            while ((word != 0) && (n < count)) {
+                ids[n++] = (i << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return n == count ? ids : Arrays.copyOf(ids, n);
+    }
+
+    @Override
+    public String toString() {
+        return ChatPDU.transactionIdToString(transactionId) + "=" + Arrays.toString(toIds());
+    }
+
+    private boolean setBit(int clientId) {
+        int index = clientId >> 6;
+        long mask = 1L << clientId;
+        while (true) {
+            long word = entries.get(index);
+            if ((word & mask) != 0) {
+                return false;
+            }
+            if (entries.compareAndSet(index, word, word | mask)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean clearBit(int clientId) {
+        int index = clientId >> 6;
+        if ((clientId <= 0) || (index >= entries.length())) {
+            return false;
+        }
+        long mask = 1L << clientId;
+        while (true) {
+            long word = entries.get(index);
+            if ((word & mask) == 0) {
+                return false;
+            }
+            if (entries.compareAndSet(index, word, word & ~mask)) {
+                return true;
+            }
+        }
+    }
+}
@@ -1,9 +1,15 @@
 package edu.hm.dako.chat.connection;
 
+import edu.hm.dako.chat.codec.EncodedPdu;
+
 import java.io.Serializable;
 
 /**
  * Wird vom Client und vom Server zur Kommunikation verwendet.
+ * <p/>
+ * Ereignisgesteuerte Verbindungen (z.B. NioConnection) werden von einer
+ * Event-Loop gelesen und unterstuetzen receive() nicht; ein Aufruf endet mit
+ * einer IOException. Decorators reichen receive() unveraendert durch.
  */
 public interface Connection {
 
@@ -34,6 +40,16 @@ public interface Connection {
      */
     public void send(Serializable message) throws Exception;
 
+    /**
+     * Sendet eine nur einmal kodierte PDU, z.B. bei der Verteilung eines Events
+     * an alle Clients. Verbindungen mit Rahmenbildung verwenden den bereits
+     * kodierten Rahmen, alle anderen senden die enthaltene PDU.
+     *
+     * @param pdu Die zu sendende, kodierte PDU.
+     * @throws Exception
+     */
+    public void sendEncoded(EncodedPdu pdu) throws Exception;
+
     /**
      * Baut die Verbindung zum Kommunikationspartner ab.
      *
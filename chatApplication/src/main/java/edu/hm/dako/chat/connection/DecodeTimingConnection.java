@@ -0,0 +1,21 @@
+package edu.hm.dako.chat.connection;
+
+/**
+ * Optionale Erweiterung einer {@link Connection}, die die Dauer der
+ * Dekodierung der zuletzt empfangenen PDU misst. Gemessen wird nur die
+ * Umwandlung des Rahmeninhalts in eine PDU, nicht das Warten auf und das
+ * Lesen der Daten. Der Server meldet den Wert in der Zeitaufteilung der
+ * Chat-Message-Response (siehe {@link edu.hm.dako.chat.common.ServerPhase}).
+ *
+ * @author Peter Mandl
+ */
+public interface DecodeTimingConnection {
+
+    /**
+     * Muss im Thread aufgerufen werden, der auch receive() aufruft
+     *
+     * @return Dauer der Dekodierung der zuletzt mit receive() empfangenen PDU
+     * in ns, 0 falls nicht gemessen
+     */
+    public long getLastDecodeTime();
+}
@@ -0,0 +1,132 @@
+package edu.hm.dako.chat.connection;
+
+import edu.hm.dako.chat.common.ExceptionHandler;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buchfuehrung ueber die zurueckgehaltenen Bytes einer
+ * {@link FlushableConnection}: entscheidet nach der {@link FlushPolicy}, ob
+ * nach einem Schreiben ohne Flush sofort geschrieben werden muss, und plant
+ * bei COALESCE das Schreiben nach Ablauf der Wartezeit.
+ * <p/>
+ * Die Wartezeit wird von einem gemeinsamen Zeitgeber-Thread aller
+ * Verbindungen ueberwacht. Der Zeitgeber schreibt nicht selbst, sondern
+ * uebergibt den Flush an einen Thread aus einem Pool: Ein Client, der nicht
+ * mehr liest, blockiert so nur den Flush seiner eigenen Verbindung und haelt
+ * die Wartezeit der anderen Verbindungen nicht auf. Alle Methoden werden
+ * unter der Schreibsperre der Verbindung aufgerufen; die Flush-Aktion muss
+ * sich diese Sperre selbst holen.
+ *
+ * @author Peter Mandl
+ */
+public class DeferredFlusher {
+
+    // Gemeinsamer Zeitgeber fuer die Wartezeit aller Verbindungen, darf nicht
+    // blockieren
+    private static final ScheduledExecutorService timer =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "DeferredFlush-Timer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    // Threads fuer den zeitgesteuerten Flush; ein Thread wartet hoechstens
+    // auf die Sperre und das Socket einer einzigen Verbindung
+    private static final ExecutorService flushExecutor =
+            Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "DeferredFlush-Writer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final FlushPolicy policy;
+
+    // Uebergibt den Flush der Verbindung an den Pool, wird vom Zeitgeber
+    // aufgerufen
+    private final Runnable timedFlush;
+
+    // Seit dem letzten Flush zurueckgehaltene Bytes
+    private long pendingBytes = 0;
+
+    // Geplantes Schreiben, null wenn keines geplant
+    private ScheduledFuture<?> scheduledFlush;
+
+    /**
+     * @param policy  FlushPolicy der Verbindung
+     * @param flusher Verbindung, deren flush() der Zeitgeber aufruft
+     */
+    public DeferredFlusher(FlushPolicy policy, final FlushableConnection flusher) {
+        this.policy = policy;
+        final Runnable flush = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flusher.flush();
+                } catch (Exception e) {
+                    ExceptionHandler.logException(e);
+                }
+            }
+        };
+        this.timedFlush = new Runnable() {
+            @Override
+            public void run() {
+                flushExecutor.execute(flush);
+            }
+        };
+    }
+
+    public FlushPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Nach dem Schreiben einer PDU ohne Flush aufrufen
+     *
+     * @param bytes Laenge der PDU in Byte, soweit bekannt
+     * @return true, wenn der Aufrufer jetzt flushen muss
+     */
+    public boolean written(long bytes) {
+        if (!policy.isDeferred()) {
+            return true;
+        }
+        pendingBytes += bytes;
+        if (pendingBytes >= policy.getThresholdBytes()) {
+            return true;
+        }
+        if ((policy.getMode() == FlushPolicy.Mode.COALESCE) && (scheduledFlush == null)) {
+            scheduledFlush = timer.schedule(timedFlush, policy.getMaxDelayMicros(),
+                    TimeUnit.MICROSECONDS);
+        }
+        return false;
+    }
+
+    /**
+     * @return true, wenn am Ende einer Verteilung geschrieben werden muss
+     */
+    public boolean isFlushAtEndOfBatch() {
+        return (policy.getMode() == FlushPolicy.Mode.END_OF_BATCH) && (pendingBytes > 0);
+    }
+
+    /**
+     * Nach jedem Flush aufrufen
+     */
+    public void flushed() {
+        pendingBytes = 0;
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+    }
+}
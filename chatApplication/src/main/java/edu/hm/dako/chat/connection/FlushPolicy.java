@@ -0,0 +1,108 @@
+package edu.hm.dako.chat.connection;
+
+/**
+ * Legt fest, wann eine Verbindung mit gepuffertem Ausgabestrom zurueckgehaltene
+ * PDUs tatsaechlich auf das Socket schreibt (siehe {@link FlushableConnection}).
+ * Betrifft nur PDUs, die ohne sofortiges Flushen gesendet werden; ein normales
+ * send() schreibt immer sofort.
+ *
+ * @author Peter Mandl
+ */
+public class FlushPolicy {
+
+    public enum Mode {
+
+        // Jede PDU sofort schreiben (bisheriges Verhalten)
+        IMMEDIATE,
+
+        // Schreiben am Ende einer Verteilung bzw. eines Schreibdurchgangs der
+        // Ausgangswarteschlange, spaetestens bei Erreichen der Byte-Schwelle
+        END_OF_BATCH,
+
+        // Schreiben erst bei Erreichen der Byte-Schwelle oder nach Ablauf der
+        // Wartezeit; PDUs mehrerer Verteilungen werden zusammengefasst
+        COALESCE
+    }
+
+    // Standard: keine Zurueckhaltung
+    public static final FlushPolicy IMMEDIATE = new FlushPolicy(Mode.IMMEDIATE, 0, 0);
+
+    // Standardschwellen: etwa ein TCP-Segment bei Ethernet-MTU, 200 us
+    public static final int DEFAULT_THRESHOLD_BYTES = 1400;
+    public static final long DEFAULT_MAX_DELAY_MICROS = 200;
+
+    private final Mode mode;
+
+    // Byte-Schwelle, ab der zurueckgehaltene PDUs geschrieben werden
+    private final int thresholdBytes;
+
+    // Maximale Wartezeit der aeltesten zurueckgehaltenen PDU in us (nur
+    // COALESCE)
+    private final long maxDelayMicros;
+
+    /**
+     * @param mode           Zeitpunkt des Schreibens
+     * @param thresholdBytes Byte-Schwelle (mindestens 1)
+     * @param maxDelayMicros Maximale Wartezeit in us (mindestens 1, nur COALESCE)
+     */
+    public FlushPolicy(Mode mode, int thresholdBytes, long maxDelayMicros) {
+        this.mode = mode;
+        this.thresholdBytes = Math.max(1, thresholdBytes);
+        this.maxDelayMicros = Math.max(1, maxDelayMicros);
+    }
+
+    /**
+     * FlushPolicy aus einer Beschreibung der Form Modus[,Byte[,us]] erzeugen,
+     * z.B. COALESCE,1400,200. Fehlende Schwellen erhalten die Standardwerte.
+     *
+     * @param spec Beschreibung
+     * @return FlushPolicy
+     * @throws IllegalArgumentException bei ungueltiger Beschreibung
+     */
+    public static FlushPolicy parse(String spec) {
+        String[] parts = spec.split(",");
+        Mode mode = Mode.valueOf(parts[0].trim());
+        if (mode == Mode.IMMEDIATE) {
+            return IMMEDIATE;
+        }
+        int thresholdBytes = DEFAULT_THRESHOLD_BYTES;
+        long maxDelayMicros = DEFAULT_MAX_DELAY_MICROS;
+        if (parts.length > 1) {
+            thresholdBytes = Integer.parseInt(parts[1].trim());
+        }
+        if (parts.length > 2) {
+            maxDelayMicros = Long.parseLong(parts[2].trim());
+        }
+        return new FlushPolicy(mode, thresholdBytes, maxDelayMicros);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getThresholdBytes() {
+        return thresholdBytes;
+    }
+
+    public long getMaxDelayMicros() {
+        return maxDelayMicros;
+    }
+
+    /**
+     * @return true, wenn PDUs zurueckgehalten werden koennen
+     */
+    public boolean isDeferred() {
+        return mode != Mode.IMMEDIATE;
+    }
+
+    @Override
+    public String toString() {
+        if (mode == Mode.IMMEDIATE) {
+            return mode.name();
+        }
+        if (mode == Mode.END_OF_BATCH) {
+            return mode.name() + " (" + thresholdBytes + " Byte)";
+        }
+        return mode.name() + " (" + thresholdBytes + " Byte, " + maxDelayMicros + " us)";
+    }
+}
@@ -0,0 +1,60 @@
+package edu.hm.dako.chat.connection;
+
+import edu.hm.dako.chat.codec.EncodedPdu;
+
+import java.io.Serializable;
+
+/**
+ * Optionale Erweiterung einer {@link Connection} mit gepuffertem
+ * Ausgabestrom: PDUs koennen ohne sofortiges Flushen gesendet werden, damit
+ * mehrere PDUs mit einem Schreibaufruf (und moeglichst wenigen TCP-Segmenten)
+ * uebertragen werden. Wann zurueckgehaltene PDUs geschrieben werden, legt die
+ * {@link FlushPolicy} der Verbindung fest.
+ * <p/>
+ * Wird von den Verteilschleifen des Servers genutzt: Jedes Event wird ohne
+ * Flush gesendet, am Ende der Schleife wird fuer jeden Empfaenger
+ * {@link #endOfBatch()} aufgerufen.
+ *
+ * @author Peter Mandl
+ */
+public interface FlushableConnection {
+
+    /**
+     * Sendet eine Nachricht, ggf. ohne sie sofort zu schreiben
+     *
+     * @param message Die zu sendende Nachricht.
+     * @param flush   true: sofort schreiben, false: Zeitpunkt nach FlushPolicy
+     * @throws Exception
+     */
+    public void send(Serializable message, boolean flush) throws Exception;
+
+    /**
+     * Sendet eine kodierte PDU, ggf. ohne sie sofort zu schreiben
+     *
+     * @param pdu   Die zu sendende, kodierte PDU.
+     * @param flush true: sofort schreiben, false: Zeitpunkt nach FlushPolicy
+     * @throws Exception
+     */
+    public void sendEncoded(EncodedPdu pdu, boolean flush) throws Exception;
+
+    /**
+     * Schreibt alle zurueckgehaltenen PDUs sofort
+     *
+     * @throws Exception
+     */
+    public void flush() throws Exception;
+
+    /**
+     * Ende einer Verteilung bzw. eines Schreibdurchgangs: schreibt die
+     * zurueckgehaltenen PDUs, wenn die FlushPolicy dies vorsieht
+     * (END_OF_BATCH); sonst bleibt es bei Schwelle und Zeitgeber.
+     *
+     * @throws Exception
+     */
+    public void endOfBatch() throws Exception;
+
+    /**
+     * @return FlushPolicy der Verbindung
+     */
+    public FlushPolicy getFlushPolicy();
+}
@@ -0,0 +1,24 @@
+package edu.hm.dako.chat.connection;
+
+import edu.hm.dako.chat.codec.EncodedPdu;
+
+import java.util.List;
+
+/**
+ * Optionale Erweiterung einer {@link Connection}: Mehrere PDUs werden mit
+ * moeglichst wenigen Schreibaufrufen (Systemaufrufen) gesendet. Wird vom
+ * Writer einer {@link QueuedConnection} genutzt, wenn sich mehrere PDUs in
+ * der Warteschlange angesammelt haben.
+ *
+ * @author Peter Mandl
+ */
+public interface GatheringConnection {
+
+    /**
+     * Sendet alle PDUs in der angegebenen Reihenfolge
+     *
+     * @param pdus Zu sendende PDUs
+     * @throws Exception
+     */
+    public void sendGathered(List<EncodedPdu> pdus) throws Exception;
+}
@@ -1,46 +1,190 @@
 package edu.hm.dako.chat.connection;
 
+import edu.hm.dako.chat.codec.EncodedPdu;
 import edu.hm.dako.chat.common.ChatPDU;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.io.Serializable;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Stattet ein {@link Connection} Objekt mit automatischem Logging aus. Umschliesst eine
  * beliebige Connection-Instanz und bietet dieselbe Schnittstelle an. Beim Aufruf einer
  * Methode wird zunaechst eine Log-Ausgabe getaetigt und danach die Methode der
  * umschlossenen Connection aufgerufen. Anschliessend erfolgt eine weitere Log-Ausgabe.
+ * <p>
+ * Alle Ausgaben sind durch eine Abfrage des Log-Levels geschuetzt: Bei
+ * abgeschaltetem Debug- und Trace-Level werden keine Strings aufgebaut und
+ * die (umfangreiche) String-Darstellung der PDU nicht erzeugt. Auf dem Server
+ * kann der Dekorierer ueber {@link edu.hm.dako.chat.server.ServerConfiguration}
+ * ganz weggelassen werden.
  */
-public class LoggingConnectionDecorator implements Connection {
+public class LoggingConnectionDecorator implements Connection, FlushableConnection,
+        RetransmittingConnection, PooledConnection,
+        DecodeTimingConnection {
 
     private static Log log = LogFactory
             .getLog(LoggingConnectionDecorator.class);
 
     private Connection wrappedConnection;
 
+    // Serialisiert parallele Sendeaufrufe verschiedener Worker. ReentrantLock
+    // statt synchronized, damit ein virtueller Thread beim Warten auf die Sperre
+    // (oder beim blockierenden Schreiben) seinen Traeger-Thread nicht belegt.
+    private final ReentrantLock sendLock = new ReentrantLock();
+
     public LoggingConnectionDecorator(Connection wrappedConnection) {
         this.wrappedConnection = wrappedConnection;
     }
 
     @Override
-    public synchronized void send(Serializable message) throws Exception {
+    public void send(Serializable message) throws Exception {
         ChatPDU pdu = (ChatPDU) message;
-        log.debug("Sende Nachricht, Chat-Inhalt: " + pdu.getMessage()
-                + ", Chat-User: " + pdu.getUserName());
-        wrappedConnection.send(message);
-        log.trace(pdu);
-        log.debug("Nachricht gesendet");
+        sendLock.lock();
+        try {
+            if (log.isDebugEnabled()) {
+                log.debug("Sende Nachricht, Chat-Inhalt: " + pdu.getMessage()
+                        + ", Chat-User: " + pdu.getUserName());
+            }
+            wrappedConnection.send(message);
+            if (log.isTraceEnabled()) {
+                log.trace(pdu);
+            }
+            log.debug("Nachricht gesendet");
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    @Override
+    public void sendEncoded(EncodedPdu encodedPdu) throws Exception {
+        ChatPDU pdu = encodedPdu.getPdu();
+        sendLock.lock();
+        try {
+            if (log.isDebugEnabled()) {
+                log.debug("Sende kodierte Nachricht, Chat-Inhalt: " + pdu.getMessage()
+                        + ", Chat-User: " + pdu.getUserName());
+            }
+            wrappedConnection.sendEncoded(encodedPdu);
+            if (log.isTraceEnabled()) {
+                log.trace(pdu);
+            }
+            log.debug("Nachricht gesendet");
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    /**
+     * Ohne Flush nur, wenn die umschlossene Verbindung dies unterstuetzt
+     */
+    @Override
+    public void send(Serializable message, boolean flush) throws Exception {
+        if (flush || !(wrappedConnection instanceof FlushableConnection)) {
+            send(message);
+            return;
+        }
+        sendLock.lock();
+        try {
+            if (log.isDebugEnabled()) {
+                log.debug("Sende Nachricht ohne Flush, Chat-User: "
+                        + ((ChatPDU) message).getUserName());
+            }
+            ((FlushableConnection) wrappedConnection).send(message, false);
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    @Override
+    public void sendEncoded(EncodedPdu encodedPdu, boolean flush) throws Exception {
+        if (flush || !(wrappedConnection instanceof FlushableConnection)) {
+            sendEncoded(encodedPdu);
+            return;
+        }
+        sendLock.lock();
+        try {
+            if (log.isDebugEnabled()) {
+                log.debug("Sende kodierte Nachricht ohne Flush, Chat-User: "
+                        + encodedPdu.getPdu().getUserName());
+            }
+            ((FlushableConnection) wrappedConnection).sendEncoded(encodedPdu, false);
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    @Override
+    public void flush() throws Exception {
+        if (wrappedConnection instanceof FlushableConnection) {
+            ((FlushableConnection) wrappedConnection).flush();
+        }
+    }
+
+    @Override
+    public void endOfBatch() throws Exception {
+        if (wrappedConnection instanceof FlushableConnection) {
+            ((FlushableConnection) wrappedConnection).endOfBatch();
+        }
+    }
+
+    @Override
+    public FlushPolicy getFlushPolicy() {
+        if (wrappedConnection instanceof FlushableConnection) {
+            return ((FlushableConnection) wrappedConnection).getFlushPolicy();
+        }
+        return FlushPolicy.IMMEDIATE;
+    }
+
+    @Override
+    public long getNumberOfRetries() {
+        if (wrappedConnection instanceof RetransmittingConnection) {
+            return ((RetransmittingConnection) wrappedConnection).getNumberOfRetries();
+        }
+        return 0;
+    }
+
+    @Override
+    public long getNumberOfLostMessages() {
+        if (wrappedConnection instanceof RetransmittingConnection) {
+            return ((RetransmittingConnection) wrappedConnection).getNumberOfLostMessages();
+        }
+        return 0;
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        if (wrappedConnection instanceof RetransmittingConnection) {
+            ((RetransmittingConnection) wrappedConnection).setListener(listener);
+        }
+    }
+
+    @Override
+    public void release(ChatPDU pdu) {
+        if (wrappedConnection instanceof PooledConnection) {
+            ((PooledConnection) wrappedConnection).release(pdu);
+        }
+    }
+
+    @Override
+    public long getLastDecodeTime() {
+        if (wrappedConnection instanceof DecodeTimingConnection) {
+            return ((DecodeTimingConnection) wrappedConnection).getLastDecodeTime();
+        }
+        return 0;
     }
 
     @Override
     public Serializable receive() throws Exception {
         log.debug("Empfange Nachricht...");
         ChatPDU pdu = (ChatPDU) wrappedConnection.receive();
-        if (pdu != null) {
+        if ((pdu != null) && log.isDebugEnabled()) {
             log.debug("Nachricht empfangen, Chat-Inhalt: " + pdu.getMessage()
                     + ", Chat-User: " + pdu.getUserName());
-            log.trace(pdu);
+            if (log.isTraceEnabled()) {
+                log.trace(pdu);
+            }
         }
         return pdu;
     }
@@ -49,10 +193,12 @@ public class LoggingConnectionDecorator implements Connection {
     public Serializable receive(int timeout) throws Exception {
         log.debug("Empfange Nachricht...");
         ChatPDU pdu = (ChatPDU) wrappedConnection.receive(timeout);
-        if (pdu != null) {
+        if ((pdu != null) && log.isDebugEnabled()) {
             log.debug("Nachricht empfangen, Chat-Inhalt: " + pdu.getMessage()
                     + ", Chat-User: " + pdu.getUserName());
-            log.trace(pdu);
+            if (log.isTraceEnabled()) {
+                log.trace(pdu);
+            }
         }
         return pdu;
     }
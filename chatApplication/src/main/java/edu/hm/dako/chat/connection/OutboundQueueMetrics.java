@@ -0,0 +1,103 @@
+package edu.hm.dako.chat.connection;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Kennzahlen aller Ausgangswarteschlangen eines Servers. Wird von allen
+ * Verbindungen gemeinsam fortgeschrieben.
+ *
+ * @author Peter Mandl
+ */
+public class OutboundQueueMetrics {
+
+    // In Warteschlangen eingestellte Nachrichten
+    private final AtomicLong enqueuedMessages = new AtomicLong();
+
+    // Geschriebene Nachrichten und Anzahl der Schreibaufrufe dafuer
+    private final AtomicLong writtenMessages = new AtomicLong();
+    private final AtomicLong writeCalls = new AtomicLong();
+
+    // Auswirkungen der Ueberlaufstrategie
+    private final AtomicLong droppedMessages = new AtomicLong();
+    private final AtomicLong disconnects = new AtomicLong();
+    private final AtomicLong blockedSends = new AtomicLong();
+
+    // Summe der aktuellen Warteschlangenlaengen und groesste beobachtete
+    // Laenge einer einzelnen Warteschlange
+    private final AtomicLong currentDepth = new AtomicLong();
+    private final AtomicLong maxDepth = new AtomicLong();
+
+    public void enqueued(int depth) {
+        enqueuedMessages.incrementAndGet();
+        currentDepth.incrementAndGet();
+        long max = maxDepth.get();
+        while (depth > max && !maxDepth.compareAndSet(max, depth)) {
+            max = maxDepth.get();
+        }
+    }
+
+    public void written(int messages) {
+        writtenMessages.addAndGet(messages);
+        writeCalls.incrementAndGet();
+        currentDepth.addAndGet(-messages);
+    }
+
+    public void discarded(int messages) {
+        currentDepth.addAndGet(-messages);
+    }
+
+    public void dropped() {
+        droppedMessages.incrementAndGet();
+    }
+
+    public void disconnected() {
+        disconnects.incrementAndGet();
+    }
+
+    public void blocked() {
+        blockedSends.incrementAndGet();
+    }
+
+    public long getEnqueuedMessages() {
+        return enqueuedMessages.get();
+    }
+
+    public long getWrittenMessages() {
+        return writtenMessages.get();
+    }
+
+    public long getWriteCalls() {
+        return writeCalls.get();
+    }
+
+    public long getDroppedMessages() {
+        return droppedMessages.get();
+    }
+
+    public long getDisconnects() {
+        return disconnects.get();
+    }
+
+    public long getBlockedSends() {
+        return blockedSends.get();
+    }
+
+    public long getCurrentDepth() {
+        return currentDepth.get();
+    }
+
+    public long getMaxDepth() {
+        return maxDepth.get();
+    }
+
+    @Override
+    public String toString() {
+        long calls = writeCalls.get();
+        return "Ausgangswarteschlangen: eingestellt " + enqueuedMessages.get()
+                + ", geschrieben " + writtenMessages.get() + " in " + calls
+                + " Schreibaufrufen (" + (calls == 0 ? 0 : writtenMessages.get() / calls)
+                + " je Aufruf), aktuell " + currentDepth.get() + ", max. " + maxDepth.get()
+                + ", verworfen " + droppedMessages.get() + ", Verbindungsabbrueche "
+                + disconnects.get() + ", blockierte Sender " + blockedSends.get();
+    }
+}
@@ -0,0 +1,22 @@
+package edu.hm.dako.chat.connection;
+
+/**
+ * Verhalten einer Ausgangswarteschlange, wenn sie voll ist (der Client liest
+ * nicht schnell genug)
+ *
+ * @author Peter Mandl
+ */
+public enum OverflowPolicy {
+
+    // Events verwerfen und dem Listener der Verbindung als verloren melden
+    // (siehe RetransmittingConnection), der Sender laeuft ungebremst weiter.
+    // Alle anderen PDUs (insbesondere Responses) werden nie verworfen, der
+    // Sender wartet wie bei BLOCK
+    DROP,
+
+    // Verbindung zum langsamen Client abbauen
+    DISCONNECT,
+
+    // Sender wartet, bis wieder Platz in der Warteschlange ist
+    BLOCK
+}
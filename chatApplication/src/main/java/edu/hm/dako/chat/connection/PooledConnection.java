@@ -0,0 +1,24 @@
+package edu.hm.dako.chat.connection;
+
+import edu.hm.dako.chat.common.ChatPDU;
+
+/**
+ * Optionale Erweiterung einer {@link Connection}, die empfangene PDUs aus
+ * einem Pool wiederverwendet (siehe {@link edu.hm.dako.chat.codec.PduPool}).
+ * Der Empfaenger gibt eine PDU nach ihrer Bearbeitung zurueck; danach darf
+ * weder die PDU noch eine ihrer Listen weiter verwendet werden. Nicht
+ * zurueckgegebene PDUs sind kein Fehler, sie werden lediglich nicht
+ * wiederverwendet.
+ *
+ * @author Peter Mandl
+ */
+public interface PooledConnection {
+
+    /**
+     * Gibt eine mit receive() empfangene PDU zur Wiederverwendung zurueck.
+     * Muss im Thread aufgerufen werden, der auch receive() aufruft.
+     *
+     * @param pdu Bearbeitete PDU
+     */
+    public void release(ChatPDU pdu);
+}
@@ -0,0 +1,347 @@
+package edu.hm.dako.chat.connection;
+
+import edu.hm.dako.chat.codec.EncodedPdu;
+import edu.hm.dako.chat.common.ChatPDU;
+import edu.hm.dako.chat.common.ExceptionHandler;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Entkoppelt das Senden von der Socket-Ausgabe: send() stellt die PDU nur in
+ * eine begrenzte Warteschlange ein, ein eigener Writer-Thread schreibt sie auf
+ * die umschlossene Verbindung. Ein Client, der nicht schnell genug liest,
+ * blockiert damit nicht mehr die Worker-Threads anderer Clients.
+ * <p/>
+ * Hat sich mehr als eine PDU angesammelt, werden alle mit einem Aufruf
+ * geschrieben, sofern die umschlossene Verbindung {@link GatheringConnection}
+ * unterstuetzt. Haelt die umschlossene Verbindung PDUs nach ihrer
+ * {@link FlushPolicy} zurueck, schreibt der Writer stattdessen alle PDUs ohne
+ * Flush und ueberlaesst den Schreibzeitpunkt der FlushPolicy. Bei voller
+ * Warteschlange entscheidet die {@link OverflowPolicy}; bei DROP verworfene
+ * Events werden dem {@link RetransmittingConnection.Listener} als verloren
+ * gemeldet, damit der Server den Empfaenger aus der Warteliste austraegt.
+ * <p/>
+ * Senden ohne Flush ({@link FlushableConnection}) stellt die PDU wie send()
+ * ein: Der Writer schreibt, sobald die Warteschlange Eintraege hat.
+ *
+ * @author Peter Mandl
+ */
+public class QueuedConnection implements Connection, FlushableConnection,
+        RetransmittingConnection, PooledConnection,
+        DecodeTimingConnection {
+
+    private static Log log = LogFactory.getLog(QueuedConnection.class);
+
+    // Hoechstens so viele PDUs werden in einem Aufruf geschrieben
+    private static final int MAX_BATCH_SIZE = 64;
+
+    // Maximale Wartezeit in ms beim Schliessen, bis die Warteschlange
+    // abgearbeitet ist
+    private static final int CLOSE_TIMEOUT = 2000;
+
+    // Markierung in der Warteschlange: Writer beenden
+    private static final EncodedPdu CLOSE_MARKER = new EncodedPdu(null);
+
+    private static final AtomicInteger writerCounter = new AtomicInteger(0);
+
+    private final Connection wrappedConnection;
+    private final ArrayBlockingQueue<EncodedPdu> queue;
+    private final OverflowPolicy overflowPolicy;
+    private final OutboundQueueMetrics metrics;
+    private final Thread writer;
+
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    // Empfaenger der Meldungen ueber verworfene Events
+    private volatile Listener listener;
+
+    // Anzahl der bei voller Warteschlange verworfenen Events
+    private final AtomicLong droppedEvents = new AtomicLong(0);
+
+    // Umschlossene Verbindung haelt PDUs nach ihrer FlushPolicy zurueck
+    private final boolean deferring;
+
+    /**
+     * Konstruktor, startet den Writer-Thread als Daemon-Thread
+     *
+     * @param wrappedConnection Verbindung, auf die geschrieben wird
+     * @param capacity          Maximale Anzahl wartender PDUs
+     * @param overflowPolicy    Verhalten bei voller Warteschlange
+     * @param metrics           Gemeinsame Kennzahlen aller Warteschlangen
+     */
+    public QueuedConnection(Connection wrappedConnection, int capacity,
+                            OverflowPolicy overflowPolicy, OutboundQueueMetrics metrics) {
+        this(wrappedConnection, capacity, overflowPolicy, metrics, null);
+    }
+
+    /**
+     * Konstruktor, startet den Writer-Thread
+     *
+     * @param wrappedConnection Verbindung, auf die geschrieben wird
+     * @param capacity          Maximale Anzahl wartender PDUs
+     * @param overflowPolicy    Verhalten bei voller Warteschlange
+     * @param metrics           Gemeinsame Kennzahlen aller Warteschlangen
+     * @param threadFactory     Erzeugt den Writer-Thread (z.B. virtuell), null:
+     *                          normaler Daemon-Thread
+     */
+    public QueuedConnection(Connection wrappedConnection, int capacity,
+                            OverflowPolicy overflowPolicy, OutboundQueueMetrics metrics,
+                            ThreadFactory threadFactory) {
+        this.wrappedConnection = wrappedConnection;
+        this.queue = new ArrayBlockingQueue<EncodedPdu>(capacity);
+        this.overflowPolicy = overflowPolicy;
+        this.metrics = metrics;
+        this.deferring = (wrappedConnection instanceof FlushableConnection)
+                && ((FlushableConnection) wrappedConnection).getFlushPolicy().isDeferred();
+
+        Runnable writeLoop = new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        };
+        if (threadFactory != null) {
+            writer = threadFactory.newThread(writeLoop);
+        } else {
+            writer = new Thread(writeLoop, "Writer-" + writerCounter.incrementAndGet());
+            writer.setDaemon(true);
+        }
+        writer.start();
+    }
+
+    @Override
+    public Serializable receive(int timeout) throws Exception {
+        return wrappedConnection.receive(timeout);
+    }
+
+    @Override
+    public Serializable receive() throws Exception {
+        return wrappedConnection.receive();
+    }
+
+    @Override
+    public void send(Serializable message) throws Exception {
+        enqueue(new EncodedPdu((ChatPDU) message));
+    }
+
+    @Override
+    public void sendEncoded(EncodedPdu pdu) throws Exception {
+        enqueue(pdu);
+    }
+
+    @Override
+    public void send(Serializable message, boolean flush) throws Exception {
+        send(message);
+    }
+
+    @Override
+    public void sendEncoded(EncodedPdu pdu, boolean flush) throws Exception {
+        enqueue(pdu);
+    }
+
+    @Override
+    public void flush() {
+        // Der Writer schreibt ohnehin, sobald PDUs eingestellt sind
+    }
+
+    @Override
+    public void endOfBatch() {
+    }
+
+    @Override
+    public FlushPolicy getFlushPolicy() {
+        if (wrappedConnection instanceof FlushableConnection) {
+            return ((FlushableConnection) wrappedConnection).getFlushPolicy();
+        }
+        return FlushPolicy.IMMEDIATE;
+    }
+
+    @Override
+    public long getNumberOfRetries() {
+        if (wrappedConnection instanceof RetransmittingConnection) {
+            return ((RetransmittingConnection) wrappedConnection).getNumberOfRetries();
+        }
+        return 0;
+    }
+
+    /**
+     * @return Verlorene Nachrichten der umschlossenen Verbindung und
+     * verworfene Events
+     */
+    @Override
+    public long getNumberOfLostMessages() {
+        long lost = droppedEvents.get();
+        if (wrappedConnection instanceof RetransmittingConnection) {
+            lost += ((RetransmittingConnection) wrappedConnection).getNumberOfLostMessages();
+        }
+        return lost;
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+        if (wrappedConnection instanceof RetransmittingConnection) {
+            ((RetransmittingConnection) wrappedConnection).setListener(listener);
+        }
+    }
+
+    @Override
+    public void release(ChatPDU pdu) {
+        if (wrappedConnection instanceof PooledConnection) {
+            ((PooledConnection) wrappedConnection).release(pdu);
+        }
+    }
+
+    @Override
+    public long getLastDecodeTime() {
+        if (wrappedConnection instanceof DecodeTimingConnection) {
+            return ((DecodeTimingConnection) wrappedConnection).getLastDecodeTime();
+        }
+        return 0;
+    }
+
+    private void enqueue(EncodedPdu pdu) throws Exception {
+        if (closed.get()) {
+            log.debug("Sendeversuch, obwohl Verbindung geschlossen ist");
+            throw new IOException();
+        }
+
+        if (!queue.offer(pdu)) {
+            switch (overflowPolicy) {
+                case DROP:
+                    if (pdu.getPdu().getPduType().isEvent()) {
+                        metrics.dropped();
+                        droppedEvents.incrementAndGet();
+                        log.debug("Ausgangswarteschlange voll, " + pdu.getPdu().getPduType()
+                                + " verworfen");
+                        Listener current = listener;
+                        if (current != null) {
+                            try {
+                                current.lost(pdu.getPdu());
+                            } catch (Exception e) {
+                                ExceptionHandler.logException(e);
+                            }
+                        }
+                        return;
+                    }
+                    // Responses werden nicht verworfen, sondern wie bei BLOCK
+                    // eingestellt
+                    metrics.blocked();
+                    queue.put(pdu);
+                    break;
+
+                case DISCONNECT:
+                    metrics.disconnected();
+                    log.error("Ausgangswarteschlange voll, Verbindung zum Client wird abgebaut");
+                    close();
+                    throw new IOException("Ausgangswarteschlange voll");
+
+                default:
+                    metrics.blocked();
+                    queue.put(pdu);
+                    break;
+            }
+        }
+        metrics.enqueued(queue.size());
+    }
+
+    /**
+     * Writer: Wartet auf die erste PDU und nimmt alle weiteren bereits
+     * wartenden PDUs mit
+     */
+    private void writeLoop() {
+        List<EncodedPdu> batch = new ArrayList<EncodedPdu>(MAX_BATCH_SIZE);
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+
+                boolean stop = false;
+                int markerIndex = batch.indexOf(CLOSE_MARKER);
+                if (markerIndex >= 0) {
+                    // Alles vor der Markierung noch schreiben
+                    batch.subList(markerIndex, batch.size()).clear();
+                    stop = true;
+                }
+
+                if (!batch.isEmpty()) {
+                    write(batch);
+                    metrics.written(batch.size());
+                }
+                batch.clear();
+
+                if (stop) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            log.debug(Thread.currentThread().getName() + " unterbrochen");
+        } catch (Exception e) {
+            log.debug("Schreiben auf die Verbindung fehlgeschlagen: " + e.getMessage());
+            closed.set(true);
+            try {
+                wrappedConnection.close();
+            } catch (Exception e2) {
+                log.debug("Exception bei close: " + e2.getMessage());
+            }
+        }
+
+        // Nicht mehr zustellbare PDUs aus den Kennzahlen nehmen
+        int remaining = batch.size() + queue.size();
+        queue.clear();
+        metrics.discarded(remaining);
+    }
+
+    private void write(List<EncodedPdu> batch) throws Exception {
+        if (deferring) {
+            // Ohne Flush schreiben, Zeitpunkt nach FlushPolicy
+            FlushableConnection flushable = (FlushableConnection) wrappedConnection;
+            for (EncodedPdu pdu : batch) {
+                flushable.sendEncoded(pdu, false);
+            }
+            flushable.endOfBatch();
+        } else if (batch.size() > 1 && wrappedConnection instanceof GatheringConnection) {
+            ((GatheringConnection) wrappedConnection).sendGathered(batch);
+        } else {
+            for (EncodedPdu pdu : batch) {
+                wrappedConnection.sendEncoded(pdu);
+            }
+        }
+    }
+
+    /**
+     * Anzahl der aktuell wartenden PDUs dieser Verbindung
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Schliesst die Verbindung, nachdem die bereits eingestellten PDUs
+     * geschrieben wurden (hoechstens {@value #CLOSE_TIMEOUT} ms)
+     */
+    @Override
+    public void close() throws Exception {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+
+        if (Thread.currentThread() != writer) {
+            if (queue.offer(CLOSE_MARKER)) {
+                writer.join(CLOSE_TIMEOUT);
+            }
+            writer.interrupt();
+        }
+        wrappedConnection.close();
+    }
+}
@@ -0,0 +1,62 @@
+package edu.hm.dako.chat.connection;
+
+import edu.hm.dako.chat.common.ChatPDU;
+
+/**
+ * Optionale Erweiterung einer {@link Connection} ueber ein unzuverlaessiges
+ * Transportprotokoll (z.B. UDP), die verlorene Nachrichten selbst wiederholt.
+ * Liefert die Anzahl der Uebertragungswiederholungen und der trotz aller
+ * Wiederholungen nicht zugestellten Nachrichten.
+ * <p/>
+ * Ueber einen {@link Listener} kann die Anwendung auf Wiederholungen und
+ * Verluste einzelner PDUs reagieren, z.B. ein nicht zustellbares Event wie
+ * einen fehlenden Confirm behandeln. Verbindungen mit einer
+ * Ausgangswarteschlange melden ueber denselben Weg Events, die sie nach der
+ * {@link OverflowPolicy} DROP verworfen haben.
+ *
+ * @author Peter Mandl
+ */
+public interface RetransmittingConnection {
+
+    /**
+     * Rueckmeldungen der Verbindung zu einzelnen PDUs. Wird nicht vom
+     * Zeitgeber der Wiederholungen, sondern in einem eigenen Thread der
+     * Verbindung aufgerufen und darf daher senden; die Rueckmeldungen zu
+     * verschiedenen PDUs koennen nebenlaeufig zueinander eintreffen.
+     */
+    public interface Listener {
+
+        /**
+         * Eine PDU wurde nach Ablauf der Wartezeit erneut gesendet
+         *
+         * @param pdu Wiederholte PDU
+         */
+        public void retransmitted(ChatPDU pdu);
+
+        /**
+         * Eine PDU wurde auch nach der maximalen Anzahl an Wiederholungen
+         * nicht bestaetigt und gilt als verloren
+         *
+         * @param pdu Verlorene PDU
+         */
+        public void lost(ChatPDU pdu);
+    }
+
+    /**
+     * @return Anzahl der Uebertragungswiederholungen seit dem
+     * Verbindungsaufbau
+     */
+    public long getNumberOfRetries();
+
+    /**
+     * @return Anzahl der Nachrichten, die trotz aller Wiederholungen nicht
+     * zugestellt werden konnten
+     */
+    public long getNumberOfLostMessages();
+
+    /**
+     * @param listener Rueckmeldungen zu Wiederholungen und Verlusten, null:
+     *                 keine Rueckmeldungen
+     */
+    public void setListener(Listener listener);
+}
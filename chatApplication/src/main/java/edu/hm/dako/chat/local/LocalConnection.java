@@ -0,0 +1,265 @@
+package edu.hm.dako.chat.local;
+
+import edu.hm.dako.chat.codec.EncodedPdu;
+import edu.hm.dako.chat.codec.PduCodec;
+import edu.hm.dako.chat.common.ChatPDU;
+import edu.hm.dako.chat.connection.Connection;
+import edu.hm.dako.chat.connection.ConnectionTimeoutException;
+import edu.hm.dako.chat.connection.DecodeTimingConnection;
+import edu.hm.dako.chat.connection.EndOfFileException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Verbindung innerhalb eines Prozesses, z.B. zwischen Benchmarking-Client
+ * und Server in derselben JVM. Je Richtung gibt es eine sperrfreie
+ * {@link SpscQueue}; Betriebssystem, Netzwerkstack und Sockets sind nicht
+ * beteiligt, so dass Messungen nur die Kosten der Serverlogik (und ggf. der
+ * Kodierung) enthalten.
+ * <p/>
+ * Ohne Codec werden die PDUs als Referenzen uebergeben. Sender und
+ * Empfaenger teilen sich dann dasselbe Objekt, eine PDU darf daher nach dem
+ * Senden nicht mehr veraendert werden (wie bei {@link EncodedPdu}). Mit
+ * Codec wird jede PDU wie auf einer Leitung kodiert und beim Empfang
+ * dekodiert.
+ * <p/>
+ * Empfangen darf immer nur ein Thread. Mehrere sendende Threads (z.B. Worker
+ * ohne Ausgangswarteschlange) werden ueber eine Sperre nacheinander zum
+ * einzigen Erzeuger der Warteschlange. Ein Empfaenger bzw. Sender wartet
+ * zunaechst kurz aktiv und legt sich dann schlafen, bis er von der
+ * Gegenseite geweckt wird.
+ *
+ * @author Peter Mandl
+ */
+public class LocalConnection implements Connection, DecodeTimingConnection {
+
+    private static Log log = LogFactory.getLog(LocalConnection.class);
+
+    // Kapazitaet der Warteschlange je Richtung in PDUs
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    // Anzahl der Versuche mit Thread.yield(), bevor ein Thread schlafen geht
+    private static final int SPIN_TRIES = 64;
+
+    // Eingehende PDUs (ChatPDU-Referenzen oder kodierte Rahmen)
+    private final SpscQueue<Object> inbound;
+
+    // Gegenseite, deren Warteschlange beim Senden gefuellt wird
+    private LocalConnection peer;
+
+    // Kodierung der PDUs, null: Uebergabe als Referenz
+    private final PduCodec codec;
+
+    // Macht mehrere sendende Threads zum einzigen Erzeuger
+    private final ReentrantLock sendLock = new ReentrantLock();
+
+    // Schlafender Empfaenger dieser Verbindung bzw. schlafender Sender der
+    // Gegenseite, der auf Platz in inbound wartet
+    private volatile Thread waitingReceiver;
+    private volatile Thread waitingSender;
+
+    private volatile boolean closed = false;
+
+    // Dauer der Dekodierung der zuletzt empfangenen PDU in ns, nur im
+    // empfangenden Thread verwendet
+    private long lastDecodeTime = 0;
+
+    private LocalConnection(PduCodec codec, int capacity) {
+        this.codec = codec;
+        this.inbound = new SpscQueue<Object>(capacity);
+    }
+
+    /**
+     * Erzeugt zwei miteinander verbundene Verbindungsenden
+     *
+     * @param codec    Kodierung der PDUs, null: Uebergabe als Referenz
+     * @param capacity Kapazitaet der Warteschlange je Richtung in PDUs
+     * @return Clientseite [0] und Serverseite [1]
+     */
+    static LocalConnection[] createPair(PduCodec codec, int capacity) {
+        LocalConnection client = new LocalConnection(codec, capacity);
+        LocalConnection server = new LocalConnection(codec, capacity);
+        client.peer = server;
+        server.peer = client;
+        return new LocalConnection[]{client, server};
+    }
+
+    @Override
+    public Serializable receive(int timeout)
+            throws Exception, ConnectionTimeoutException, EndOfFileException {
+        return take((timeout > 0) ? TimeUnit.MILLISECONDS.toNanos(timeout) : 0);
+    }
+
+    @Override
+    public Serializable receive() throws Exception {
+        return take(0);
+    }
+
+    /**
+     * Naechste PDU abholen, wartet hoechstens timeoutNanos (0: unbegrenzt)
+     */
+    private Serializable take(long timeoutNanos) throws Exception {
+        long deadline = System.nanoTime() + timeoutNanos;
+        int spins = 0;
+        while (true) {
+            Object message = inbound.poll();
+            if (message != null) {
+                wake(waitingSender);
+                return decode(message);
+            }
+            if (closed || peer.closed) {
+                // Bereits eingestellte PDUs werden noch ausgeliefert
+                if (!inbound.isEmpty()) {
+                    continue;
+                }
+                log.debug("End of File beim Empfang");
+                throw new EndOfFileException(new EOFException());
+            }
+            if (spins < SPIN_TRIES) {
+                spins++;
+                Thread.yield();
+                continue;
+            }
+
+            // Erst eintragen, dann erneut pruefen: Der Sender stellt ein und
+            // liest danach waitingReceiver
+            waitingReceiver = Thread.currentThread();
+            try {
+                if (inbound.isEmpty() && !closed && !peer.closed) {
+                    if (timeoutNanos > 0) {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0) {
+                            throw new ConnectionTimeoutException(new SocketTimeoutException());
+                        }
+                        LockSupport.parkNanos(this, remaining);
+                    } else {
+                        LockSupport.park(this);
+                    }
+                }
+            } finally {
+                waitingReceiver = null;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException("Empfang unterbrochen");
+            }
+        }
+    }
+
+    @Override
+    public long getLastDecodeTime() {
+        return lastDecodeTime;
+    }
+
+    private Serializable decode(Object message) throws IOException {
+        if (message instanceof ByteBuffer) {
+            ByteBuffer frame = (ByteBuffer) message;
+            int length = frame.remaining() - PduCodec.HEADER_LENGTH;
+            long start = System.nanoTime();
+            ChatPDU pdu;
+            if (frame.hasArray()) {
+                pdu = codec.decode(frame.array(),
+                        frame.arrayOffset() + frame.position() + PduCodec.HEADER_LENGTH, length);
+            } else {
+                byte[] data = new byte[length];
+                frame.position(frame.position() + PduCodec.HEADER_LENGTH);
+                frame.get(data);
+                pdu = codec.decode(data, 0, length);
+            }
+            lastDecodeTime = System.nanoTime() - start;
+            return pdu;
+        }
+        // Uebergabe als Referenz, nichts zu dekodieren
+        lastDecodeTime = 0;
+        return (Serializable) message;
+    }
+
+    @Override
+    public void send(Serializable message) throws Exception {
+        enqueue((codec == null) ? message : codec.encode((ChatPDU) message));
+    }
+
+    @Override
+    public void sendEncoded(EncodedPdu pdu) throws Exception {
+        // Gemeinsame PDU bzw. gemeinsamen, bereits kodierten Rahmen verwenden
+        enqueue((codec == null) ? pdu.getPdu() : pdu.getFrame(codec));
+    }
+
+    /**
+     * PDU in die Warteschlange der Gegenseite stellen, bei voller
+     * Warteschlange warten (Flusskontrolle wie bei vollem TCP-Fenster)
+     */
+    private void enqueue(Object message) throws IOException, InterruptedException {
+        sendLock.lock();
+        try {
+            int spins = 0;
+            while (true) {
+                checkOpen();
+                if (peer.inbound.offer(message)) {
+                    wake(peer.waitingReceiver);
+                    return;
+                }
+                if (spins < SPIN_TRIES) {
+                    spins++;
+                    Thread.yield();
+                    continue;
+                }
+                // Erst eintragen, dann erneut versuchen: Der Empfaenger holt ab
+                // und liest danach waitingSender
+                peer.waitingSender = Thread.currentThread();
+                try {
+                    if (peer.inbound.offer(message)) {
+                        wake(peer.waitingReceiver);
+                        return;
+                    }
+                    if (!peer.closed && !closed) {
+                        LockSupport.park(this);
+                    }
+                } finally {
+                    peer.waitingSender = null;
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException("Senden unterbrochen");
+                }
+            }
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed || peer.closed) {
+            log.debug("Sendeversuch, obwohl Verbindung nicht mehr steht");
+            throw new IOException("Verbindung abgebaut");
+        }
+    }
+
+    private static void wake(Thread thread) {
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        // Wartende Threads beider Seiten sehen das Ende
+        wake(waitingReceiver);
+        wake(waitingSender);
+        wake(peer.waitingReceiver);
+        wake(peer.waitingSender);
+        log.debug("Lokale Verbindung abgebaut");
+    }
+}
@@ -0,0 +1,23 @@
+package edu.hm.dako.chat.local;
+
+import edu.hm.dako.chat.connection.Connection;
+import edu.hm.dako.chat.connection.ConnectionFactory;
+
+import java.net.ConnectException;
+
+/**
+ * Erzeugen von Verbindungen zu einem {@link LocalServerSocket} im selben
+ * Prozess. Adresse, lokaler Port und Puffergroessen spielen keine Rolle;
+ * Kodierung und Warteschlangengroesse gibt der Server vor.
+ *
+ * @author Peter Mandl
+ */
+public class LocalConnectionFactory implements ConnectionFactory {
+
+    @Override
+    public Connection connectToServer(String remoteServerAddress, int serverPort,
+                                      int localPort, int sendBufferSize, int receiveBufferSize)
+            throws ConnectException {
+        return LocalServerSocket.connect(serverPort);
+    }
+}
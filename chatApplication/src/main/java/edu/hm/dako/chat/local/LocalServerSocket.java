@@ -0,0 +1,121 @@
+package edu.hm.dako.chat.local;
+
+import edu.hm.dako.chat.codec.PduCodec;
+import edu.hm.dako.chat.connection.Connection;
+import edu.hm.dako.chat.connection.ServerSocketInterface;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server-Socket fuer {@link LocalConnection}s. Die "Portnummer" ist nur ein
+ * Schluessel in einem prozessweiten Verzeichnis, ueber das die
+ * {@link LocalConnectionFactory} den Server findet; Client und Server
+ * muessen daher in derselben JVM laufen.
+ *
+ * @author Peter Mandl
+ */
+public class LocalServerSocket implements ServerSocketInterface {
+
+    private static Log log = LogFactory.getLog(LocalServerSocket.class);
+
+    // Pruefintervall von accept() auf ein geschlossenes Socket in ms
+    private static final int ACCEPT_POLL_INTERVAL = 500;
+
+    // Lokale Server-Sockets des Prozesses je Port
+    private static final ConcurrentHashMap<Integer, LocalServerSocket> registry =
+            new ConcurrentHashMap<Integer, LocalServerSocket>();
+
+    private final int port;
+
+    // Kodierung der PDUs, null: Uebergabe als Referenz
+    private final PduCodec codec;
+
+    // Kapazitaet der Warteschlange je Richtung und Verbindung in PDUs
+    private final int queueCapacity;
+
+    // Neue, noch nicht abgeholte Verbindungen (Serverseite)
+    private final LinkedBlockingQueue<LocalConnection> newConnections =
+            new LinkedBlockingQueue<LocalConnection>();
+
+    private volatile boolean closed = false;
+
+    /**
+     * Erzeugt ein lokales Server-Socket und traegt es unter dem Port ein
+     *
+     * @param port          Portnummer, unter der Clients den Server finden
+     * @param codec         Kodierung der PDUs, null: Uebergabe als Referenz
+     * @param queueCapacity Kapazitaet der Warteschlange je Richtung in PDUs
+     * @throws BindException Port im Prozess schon belegt
+     */
+    public LocalServerSocket(int port, PduCodec codec, int queueCapacity)
+            throws BindException {
+        this.port = port;
+        this.codec = codec;
+        this.queueCapacity = queueCapacity;
+        if (registry.putIfAbsent(port, this) != null) {
+            log.debug("Lokaler Port " + port + " schon in Benutzung");
+            throw new BindException("Lokaler Port " + port + " schon in Benutzung");
+        }
+    }
+
+    /**
+     * Verbindungsaufbau durch einen Client
+     *
+     * @param port Port des Servers
+     * @return Clientseite der neuen Verbindung
+     * @throws ConnectException kein lokaler Server unter dem Port
+     */
+    static Connection connect(int port) throws ConnectException {
+        LocalServerSocket serverSocket = registry.get(port);
+        if ((serverSocket == null) || serverSocket.closed) {
+            throw new ConnectException("Kein lokaler Server auf Port " + port
+                    + " (Server muss im selben Prozess laufen)");
+        }
+        LocalConnection[] pair = LocalConnection.createPair(serverSocket.codec,
+                serverSocket.queueCapacity);
+        serverSocket.newConnections.add(pair[1]);
+        return pair[0];
+    }
+
+    @Override
+    public Connection accept() throws IOException {
+        while (!closed) {
+            try {
+                LocalConnection connection = newConnections.poll(ACCEPT_POLL_INTERVAL,
+                        TimeUnit.MILLISECONDS);
+                if (connection != null) {
+                    return connection;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SocketException("accept unterbrochen");
+            }
+        }
+        throw new SocketException("Socket geschlossen");
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        registry.remove(port, this);
+
+        // Nicht mehr abgeholte Verbindungen abbauen
+        LocalConnection connection;
+        while ((connection = newConnections.poll()) != null) {
+            connection.close();
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+}
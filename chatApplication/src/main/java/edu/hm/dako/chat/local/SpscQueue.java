@@ -0,0 +1,90 @@
+package edu.hm.dako.chat.local;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Begrenzte, sperrfreie Warteschlange fuer genau einen Erzeuger und genau
+ * einen Verbraucher (Single Producer, Single Consumer) als Ringpuffer.
+ * <p/>
+ * Der Erzeuger schreibt nur tail, der Verbraucher nur head; beide lesen den
+ * Zaehler des anderen und merken ihn sich, damit nicht bei jedem Aufruf auf
+ * die Cache-Zeile des anderen Threads zugegriffen wird. Mehrere Erzeuger
+ * oder Verbraucher muessen sich ausserhalb der Warteschlange abstimmen.
+ *
+ * @author Peter Mandl
+ */
+final class SpscQueue<E> {
+
+    private final AtomicReferenceArray<E> buffer;
+    private final int mask;
+
+    // Naechste Leseposition, nur vom Verbraucher veraendert
+    private final AtomicLong head = new AtomicLong(0);
+
+    // Naechste Schreibposition, nur vom Erzeuger veraendert
+    private final AtomicLong tail = new AtomicLong(0);
+
+    // Zuletzt gelesene Position des anderen Threads
+    private long cachedHead = 0;
+    private long cachedTail = 0;
+
+    /**
+     * @param capacity Mindestkapazitaet, wird auf die naechste Zweierpotenz
+     *                 aufgerundet
+     */
+    SpscQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        buffer = new AtomicReferenceArray<E>(size);
+        mask = size - 1;
+    }
+
+    /**
+     * Nur vom Erzeuger aufzurufen
+     *
+     * @param element Einzustellendes Element, nicht null
+     * @return false, wenn die Warteschlange voll ist
+     */
+    boolean offer(E element) {
+        long currentTail = tail.get();
+        if (currentTail - cachedHead > mask) {
+            cachedHead = head.get();
+            if (currentTail - cachedHead > mask) {
+                return false;
+            }
+        }
+        buffer.lazySet((int) currentTail & mask, element);
+
+        // Vollstaendige Schreibbarriere: Ein danach wartender Verbraucher
+        // muss das Element sehen (siehe LocalConnection)
+        tail.set(currentTail + 1);
+        return true;
+    }
+
+    /**
+     * Nur vom Verbraucher aufzurufen
+     *
+     * @return Aeltestes Element oder null, wenn die Warteschlange leer ist
+     */
+    E poll() {
+        long currentHead = head.get();
+        if (currentHead >= cachedTail) {
+            cachedTail = tail.get();
+            if (currentHead >= cachedTail) {
+                return null;
+            }
+        }
+        int index = (int) currentHead & mask;
+        E element = buffer.get(index);
+        buffer.lazySet(index, null);
+        head.set(currentHead + 1);
+        return element;
+    }
+
+    /**
+     * @return true, wenn die Warteschlange leer ist (Momentaufnahme)
+     */
+    boolean isEmpty() {
+        return head.get() >= tail.get();
+    }
+}
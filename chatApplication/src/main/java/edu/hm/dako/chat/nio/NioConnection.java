@@ -0,0 +1,486 @@
+package edu.hm.dako.chat.nio;
+
+import edu.hm.dako.chat.codec.EncodedPdu;
+import edu.hm.dako.chat.codec.PduCodec;
+import edu.hm.dako.chat.codec.PduFrames;
+import edu.hm.dako.chat.common.ChatPDU;
+import edu.hm.dako.chat.common.ExceptionHandler;
+import edu.hm.dako.chat.connection.Connection;
+import edu.hm.dako.chat.connection.DecodeTimingConnection;
+import edu.hm.dako.chat.connection.OutboundQueueMetrics;
+import edu.hm.dako.chat.connection.OverflowPolicy;
+import edu.hm.dako.chat.connection.RetransmittingConnection;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Nicht-blockierende Verbindung auf Basis eines SocketChannels. Nachrichten
+ * werden als Rahmen (siehe {@link PduCodec}) uebertragen.
+ * <p/>
+ * Das Lesen uebernimmt ausschliesslich die zugeordnete {@link NioEventLoop}, die
+ * empfangene Nachrichten an einen {@link NioConnectionListener} meldet. Ein
+ * blockierendes receive() wird daher nicht unterstuetzt und endet mit einer
+ * IOException wie eine gestoerte Verbindung. Gesendet werden kann
+ * aus beliebigen Threads: Was nicht sofort in den Socket-Sendepuffer passt,
+ * wird in eine Warteschlange gestellt und von der Event-Loop nachgeschoben,
+ * sobald der Kanal wieder beschreibbar ist. Mehrere wartende Rahmen werden
+ * dabei mit einem Gathering-Write uebergeben.
+ * <p/>
+ * Die Warteschlange kann begrenzt werden, bei Ueberlauf entscheidet die
+ * {@link OverflowPolicy}. Bei DROP verworfene Events werden dem
+ * {@link RetransmittingConnection.Listener} als verloren gemeldet; andere
+ * PDUs werden nie verworfen, sondern wie bei BLOCK behandelt. BLOCK
+ * blockiert nur fremde Threads; in einer
+ * Event-Loop wuerde Warten die Loop selbst (oder wechselseitig zwei Loops)
+ * blockieren, dort waechst die Warteschlange daher ueber die Grenze hinaus
+ * und es wird nur der blockierte Sendeversuch gezaehlt.
+ *
+ * @author Peter Mandl
+ */
+public class NioConnection implements Connection, DecodeTimingConnection,
+        RetransmittingConnection {
+
+    private static Log log = LogFactory.getLog(NioConnection.class);
+
+    // Anfangsgroesse des Lesepuffers, waechst bei groesseren Rahmen
+    private static final int INITIAL_READ_BUFFER_SIZE = 8192;
+
+    // Hoechstens so viele Rahmen werden in einem Gathering-Write geschrieben
+    private static final int MAX_GATHER = 64;
+
+    private final SocketChannel channel;
+    private final NioEventLoop eventLoop;
+
+    // Kodierung des Rahmeninhalts
+    private final PduCodec codec;
+
+    // Wird von der Event-Loop bei der Registrierung gesetzt
+    private SelectionKey key;
+    private NioConnectionListener listener;
+
+    // Nur von der Event-Loop verwendet
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER_SIZE);
+
+    // Dauer der Dekodierung der zuletzt an den Listener gemeldeten PDU in ns,
+    // nur von der Event-Loop verwendet
+    private long lastDecodeTime = 0;
+
+    // Noch nicht (vollstaendig) gesendete Rahmen, Zugriff nur unter Sperre
+    private final ArrayDeque<ByteBuffer> writeQueue = new ArrayDeque<ByteBuffer>();
+
+    // Begrenzung der Warteschlange (0 = unbegrenzt) und Verhalten bei Ueberlauf
+    private final int queueCapacity;
+    private final OverflowPolicy overflowPolicy;
+    private final OutboundQueueMetrics metrics;
+
+    // Nur von der Event-Loop verwendet
+    private final ByteBuffer[] gatherBuffers = new ByteBuffer[MAX_GATHER];
+
+    private volatile boolean closed = false;
+
+    // Empfaenger der Meldungen ueber verworfene Events
+    private volatile Listener lossListener;
+
+    // Anzahl der bei voller Warteschlange verworfenen Events
+    private final AtomicLong droppedEvents = new AtomicLong(0);
+
+    /**
+     * Konstruktor
+     *
+     * @param channel   Verbundener Kanal (wird auf nicht-blockierend umgestellt)
+     * @param eventLoop Event-Loop, die den Kanal bedient
+     * @param codec     Kodierung des Rahmeninhalts
+     * @throws IOException Kanal kann nicht umgestellt werden
+     */
+    public NioConnection(SocketChannel channel, NioEventLoop eventLoop, PduCodec codec)
+            throws IOException {
+        this(channel, eventLoop, codec, 0, OverflowPolicy.BLOCK, new OutboundQueueMetrics());
+    }
+
+    /**
+     * Konstruktor mit begrenzter Ausgangswarteschlange
+     *
+     * @param channel        Verbundener Kanal (wird auf nicht-blockierend umgestellt)
+     * @param eventLoop      Event-Loop, die den Kanal bedient
+     * @param codec          Kodierung des Rahmeninhalts
+     * @param queueCapacity  Maximale Anzahl wartender Rahmen, 0 = unbegrenzt
+     * @param overflowPolicy Verhalten bei voller Warteschlange
+     * @param metrics        Gemeinsame Kennzahlen aller Warteschlangen
+     * @throws IOException Kanal kann nicht umgestellt werden
+     */
+    public NioConnection(SocketChannel channel, NioEventLoop eventLoop, PduCodec codec,
+                         int queueCapacity, OverflowPolicy overflowPolicy,
+                         OutboundQueueMetrics metrics) throws IOException {
+        this.channel = channel;
+        this.eventLoop = eventLoop;
+        this.codec = codec;
+        this.queueCapacity = queueCapacity;
+        this.overflowPolicy = overflowPolicy;
+        this.metrics = metrics;
+        channel.configureBlocking(false);
+    }
+
+    public SocketChannel getChannel() {
+        return channel;
+    }
+
+    public NioEventLoop getEventLoop() {
+        return eventLoop;
+    }
+
+    /**
+     * Im Listener (Thread der Event-Loop) aufzurufen
+     */
+    @Override
+    public long getLastDecodeTime() {
+        return lastDecodeTime;
+    }
+
+    /**
+     * Verbindung ueber TCP, es wird nichts wiederholt
+     */
+    @Override
+    public long getNumberOfRetries() {
+        return 0;
+    }
+
+    /**
+     * @return Anzahl der bei voller Warteschlange verworfenen Events
+     */
+    @Override
+    public long getNumberOfLostMessages() {
+        return droppedEvents.get();
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        this.lossListener = listener;
+    }
+
+    /**
+     * Blockierendes Lesen wird nicht unterstuetzt, empfangene Nachrichten
+     * meldet die Event-Loop an den {@link NioConnectionListener}
+     *
+     * @throws IOException immer
+     */
+    @Override
+    public Serializable receive(int timeout) throws Exception {
+        throw receiveNotSupported();
+    }
+
+    /**
+     * Blockierendes Lesen wird nicht unterstuetzt, empfangene Nachrichten
+     * meldet die Event-Loop an den {@link NioConnectionListener}
+     *
+     * @throws IOException immer
+     */
+    @Override
+    public Serializable receive() throws Exception {
+        throw receiveNotSupported();
+    }
+
+    private IOException receiveNotSupported() {
+        log.error("receive() auf ereignisgesteuerter Verbindung aufgerufen");
+        return new IOException(
+                "NioConnection wird ereignisgesteuert ueber die NioEventLoop gelesen");
+    }
+
+    @Override
+    public void send(Serializable message) throws Exception {
+        if (closed) {
+            log.debug("Sendeversuch, obwohl Verbindung geschlossen ist");
+            throw new IOException();
+        }
+        ChatPDU pdu = (ChatPDU) message;
+        if (!enqueue(codec.encode(pdu), pdu)) {
+            dropped(pdu);
+        }
+    }
+
+    @Override
+    public void sendEncoded(EncodedPdu pdu) throws Exception {
+        if (closed) {
+            log.debug("Sendeversuch, obwohl Verbindung geschlossen ist");
+            throw new IOException();
+        }
+        // Gemeinsamer Direct-Puffer, nur die Sicht ist je Verbindung eigen
+        if (!enqueue(pdu.getDirectFrame(codec), pdu.getPdu())) {
+            dropped(pdu.getPdu());
+        }
+    }
+
+    /**
+     * Versucht den Rahmen sofort zu schreiben, den Rest uebernimmt die
+     * Event-Loop. Die Reihenfolge der Rahmen bleibt erhalten.
+     *
+     * @param frame Rahmen
+     * @param pdu   Enthaltene PDU
+     * @return false, wenn der Rahmen nach der OverflowPolicy verworfen wurde
+     */
+    private boolean enqueue(ByteBuffer frame, ChatPDU pdu) throws IOException {
+        synchronized (writeQueue) {
+            if (writeQueue.isEmpty()) {
+                channel.write(frame);
+                if (!frame.hasRemaining()) {
+                    metrics.enqueued(0);
+                    metrics.written(1);
+                    return true;
+                }
+            }
+
+            if (queueCapacity > 0 && writeQueue.size() >= queueCapacity
+                    && !handleOverflow(pdu)) {
+                return false;
+            }
+
+            writeQueue.add(frame);
+            metrics.enqueued(writeQueue.size());
+            if (writeQueue.size() == 1) {
+                // Socket-Sendepuffer voll, auf OP_WRITE warten
+                eventLoop.requestWrite(this);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Verworfenes Event dem Listener melden (ausserhalb der Sperre)
+     */
+    private void dropped(ChatPDU pdu) {
+        droppedEvents.incrementAndGet();
+        Listener current = lossListener;
+        if (current != null) {
+            try {
+                current.lost(pdu);
+            } catch (Exception e) {
+                ExceptionHandler.logException(e);
+            }
+        }
+    }
+
+    /**
+     * Ueberlauf der Warteschlange behandeln (Aufruf unter Sperre)
+     *
+     * @param pdu Im Rahmen enthaltene PDU
+     * @return true, wenn der Rahmen trotzdem eingestellt werden soll
+     * @throws IOException Verbindung wurde abgebaut
+     */
+    private boolean handleOverflow(ChatPDU pdu) throws IOException {
+        switch (overflowPolicy) {
+            case DROP:
+                if (pdu.getPduType().isEvent()) {
+                    metrics.dropped();
+                    log.debug("Ausgangswarteschlange voll, " + pdu.getPduType() + " verworfen");
+                    return false;
+                }
+                // Responses werden nicht verworfen, sondern wie bei BLOCK
+                // eingestellt
+                return awaitQueueSpace();
+
+            case DISCONNECT:
+                metrics.disconnected();
+                log.error("Ausgangswarteschlange voll, Verbindung zum Client wird abgebaut");
+                disconnect();
+                throw new IOException("Ausgangswarteschlange voll");
+
+            default:
+                return awaitQueueSpace();
+        }
+    }
+
+    /**
+     * Bei voller Warteschlange warten, ausser in einer Event-Loop (Aufruf
+     * unter Sperre)
+     *
+     * @return true, der Rahmen wird eingestellt
+     * @throws IOException Verbindung wurde inzwischen geschlossen
+     */
+    private boolean awaitQueueSpace() throws IOException {
+        metrics.blocked();
+        if (Thread.currentThread() instanceof NioEventLoop) {
+            // Warten wuerde eine Event-Loop blockieren
+            return true;
+        }
+        while (!closed && writeQueue.size() >= queueCapacity) {
+            try {
+                writeQueue.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+        }
+        if (closed) {
+            throw new IOException();
+        }
+        return true;
+    }
+
+    /**
+     * Kanal schliessen und den Listener in der Event-Loop informieren, da der
+     * Abbau nicht vom Partner ausging
+     */
+    private void disconnect() {
+        try {
+            close();
+        } catch (Exception e) {
+            log.debug("Exception beim Schliessen des Kanals: " + e.getMessage());
+        }
+        eventLoop.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (listener != null) {
+                    listener.connectionClosed(NioConnection.this);
+                }
+            }
+        });
+    }
+
+    /**
+     * Anzahl der aktuell wartenden Rahmen dieser Verbindung
+     */
+    public int getQueueDepth() {
+        synchronized (writeQueue) {
+            return writeQueue.size();
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        log.debug("Kanal wird geschlossen: " + channel);
+        channel.close();
+
+        synchronized (writeQueue) {
+            // Nicht mehr zustellbare Rahmen verwerfen, blockierte Sender wecken
+            metrics.discarded(writeQueue.size());
+            writeQueue.clear();
+            writeQueue.notifyAll();
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /*
+     * Ab hier: Aufrufe ausschliesslich aus dem Thread der Event-Loop
+     */
+
+    void registered(SelectionKey key, NioConnectionListener listener) {
+        this.key = key;
+        this.listener = listener;
+        synchronized (writeQueue) {
+            if (!writeQueue.isEmpty()) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        }
+    }
+
+    SelectionKey getKey() {
+        return key;
+    }
+
+    /**
+     * Schreibt ausstehende Rahmen, solange der Kanal sie aufnimmt. Mehrere
+     * Rahmen werden mit einem Gathering-Write uebergeben.
+     */
+    void handleWritable() throws IOException {
+        synchronized (writeQueue) {
+            while (!writeQueue.isEmpty()) {
+                int count = 0;
+                for (ByteBuffer frame : writeQueue) {
+                    gatherBuffers[count++] = frame;
+                    if (count == MAX_GATHER) {
+                        break;
+                    }
+                }
+                channel.write(gatherBuffers, 0, count);
+
+                int written = 0;
+                while (written < count && !gatherBuffers[written].hasRemaining()) {
+                    writeQueue.poll();
+                    written++;
+                }
+                Arrays.fill(gatherBuffers, 0, count, null);
+                if (written > 0) {
+                    metrics.written(written);
+                    writeQueue.notifyAll();
+                }
+                if (written < count) {
+                    // Socket-Sendepuffer voll
+                    return;
+                }
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Liest verfuegbare Daten und meldet alle vollstaendigen Rahmen
+     */
+    void handleReadable() throws IOException {
+        int count = channel.read(readBuffer);
+        if (count < 0) {
+            log.debug("End of File beim Empfang, vermutlich Verbindungsabbau des Partners");
+            connectionLost();
+            return;
+        }
+
+        readBuffer.flip();
+        while (!closed && readBuffer.remaining() >= PduCodec.HEADER_LENGTH) {
+            int position = readBuffer.position();
+            int length = readBuffer.getInt(position);
+            PduFrames.checkFrameLength(length);
+            int frameLength = PduCodec.HEADER_LENGTH + length;
+
+            if (readBuffer.remaining() < frameLength) {
+                if (readBuffer.capacity() < frameLength) {
+                    // Rahmen passt nicht in den Puffer, Puffer vergroessern
+                    ByteBuffer larger = ByteBuffer.allocate(frameLength);
+                    larger.put(readBuffer);
+                    readBuffer = larger;
+                    return;
+                }
+                break;
+            }
+
+            long decodeStart = System.nanoTime();
+            ChatPDU message = codec.decode(readBuffer.array(),
+                    readBuffer.arrayOffset() + position + PduCodec.HEADER_LENGTH, length);
+            lastDecodeTime = System.nanoTime() - decodeStart;
+            readBuffer.position(position + frameLength);
+            listener.messageReceived(this, message);
+        }
+        readBuffer.compact();
+    }
+
+    /**
+     * Verbindung abgebrochen: Kanal schliessen und Listener einmalig
+     * informieren
+     */
+    void connectionLost() {
+        if (closed) {
+            return;
+        }
+        try {
+            close();
+        } catch (Exception e) {
+            log.debug("Exception beim Schliessen des Kanals: " + e.getMessage());
+        }
+        if (listener != null) {
+            listener.connectionClosed(this);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package edu.hm.dako.chat.nio;
+
+import java.io.Serializable;
+
+/**
+ * Callback-Schnittstelle einer {@link NioEventLoop} fuer Ereignisse auf einer
+ * Verbindung. Die Methoden werden im Thread der Event-Loop aufgerufen und
+ * duerfen daher nicht blockieren.
+ *
+ * @author Peter Mandl
+ */
+public interface NioConnectionListener {
+
+    /**
+     * Eine vollstaendige Nachricht wurde empfangen
+     *
+     * @param connection Verbindung, auf der die Nachricht empfangen wurde
+     * @param message    Dekodierte Nachricht
+     */
+    public void messageReceived(NioConnection connection, Serializable message);
+
+    /**
+     * Die Verbindung wurde vom Partner abgebaut oder ist abgebrochen
+     *
+     * @param connection Betroffene Verbindung
+     */
+    public void connectionClosed(NioConnection connection);
+}
@@ -0,0 +1,170 @@
+package edu.hm.dako.chat.nio;
+
+import edu.hm.dako.chat.common.ExceptionHandler;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Event-Loop auf Basis eines Selectors. Eine Event-Loop bedient beliebig viele
+ * {@link NioConnection}s in einem einzigen Thread: Sie liest ankommende Daten,
+ * setzt daraus Nachrichten zusammen, meldet diese an den zugehoerigen
+ * {@link NioConnectionListener} und schiebt ausstehende Sendedaten nach.
+ * <p/>
+ * Registrierungen und Aenderungen des Interesses an OP_WRITE aus fremden
+ * Threads werden als Auftrag eingestellt und im Thread der Event-Loop
+ * ausgefuehrt.
+ *
+ * @author Peter Mandl
+ */
+public class NioEventLoop extends Thread {
+
+    private static Log log = LogFactory.getLog(NioEventLoop.class);
+
+    private final Selector selector;
+
+    // Auftraege aus fremden Threads
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+    private volatile boolean running = true;
+
+    /**
+     * Konstruktor
+     *
+     * @param name Name des Event-Loop-Threads
+     * @throws IOException Selector kann nicht erzeugt werden
+     */
+    public NioEventLoop(String name) throws IOException {
+        super(name);
+        setDaemon(true);
+        selector = Selector.open();
+    }
+
+    /**
+     * Meldet eine Verbindung bei der Event-Loop an. Ab der Registrierung werden
+     * empfangene Nachrichten an den Listener gemeldet.
+     *
+     * @param connection Verbindung, die von dieser Event-Loop bedient wird
+     * @param listener   Empfaenger der Ereignisse
+     */
+    public void register(final NioConnection connection,
+                         final NioConnectionListener listener) {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    SelectionKey key = connection.getChannel().register(selector,
+                            SelectionKey.OP_READ, connection);
+                    connection.registered(key, listener);
+                } catch (IOException e) {
+                    log.error("Registrierung einer Verbindung fehlgeschlagen: " + e);
+                    connection.connectionLost();
+                }
+            }
+        });
+    }
+
+    /**
+     * Interesse an OP_WRITE anmelden, weil ausstehende Sendedaten vorliegen
+     *
+     * @param connection Verbindung mit ausstehenden Sendedaten
+     */
+    void requestWrite(final NioConnection connection) {
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                SelectionKey key = connection.getKey();
+                if (key != null && key.isValid()) {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                }
+                // Ohne Key wird OP_WRITE bei der Registrierung gesetzt
+            }
+        };
+
+        if (Thread.currentThread() == this) {
+            task.run();
+        } else {
+            execute(task);
+        }
+    }
+
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Event-Loop beenden, alle noch registrierten Kanaele werden geschlossen
+     */
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        log.debug(getName() + " gestartet");
+
+        while (running) {
+            try {
+                selector.select();
+                runTasks();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handleKey(key);
+                }
+            } catch (Exception e) {
+                log.error("Exception in der Event-Loop " + getName());
+                ExceptionHandler.logException(e);
+            }
+        }
+
+        closeAll();
+        log.debug(getName() + " beendet sich");
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private void handleKey(SelectionKey key) {
+        NioConnection connection = (NioConnection) key.attachment();
+        try {
+            if (key.isValid() && key.isWritable()) {
+                connection.handleWritable();
+            }
+            if (key.isValid() && key.isReadable()) {
+                connection.handleReadable();
+            }
+        } catch (CancelledKeyException e) {
+            connection.connectionLost();
+        } catch (IOException e) {
+            log.debug("Verbindungsabbruch in " + getName() + ": " + e.getMessage());
+            connection.connectionLost();
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : new ArrayList<SelectionKey>(selector.keys())) {
+            ((NioConnection) key.attachment()).connectionLost();
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            log.debug("Exception beim Schliessen des Selectors: " + e.getMessage());
+        }
+    }
+}
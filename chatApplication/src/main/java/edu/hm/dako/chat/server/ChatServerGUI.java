@@ -15,6 +15,7 @@ import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.Separator;
@@ -73,6 +74,9 @@ public class ChatServerGUI extends Application implements ChatServerGuiInterface
     // Combobox fuer Eingabe des Implementierungstyps
     private ComboBox<String> comboBoxImplType;
 
+    // Auswahl, ob Worker in virtuellen Threads laufen (ab Java 21)
+    private CheckBox virtualThreads;
+
     // Testfelder, Buttons und Labels der ServerGUI
 
     private TextField startTimeField;
@@ -97,7 +101,8 @@ public class ChatServerGUI extends Application implements ChatServerGuiInterface
     private ServerStartData data = new ServerStartData();
 
     // Moegliche Belegungen des Implementierungsfeldes in der GUI
-    ObservableList<String> implTypeOptions = FXCollections.observableArrayList(SystemConstants.IMPL_TCP_ADVANCED, SystemConstants.IMPL_TCP_SIMPLE);
+    ObservableList<String> implTypeOptions = FXCollections.observableArrayList(SystemConstants.IMPL_TCP_ADVANCED, SystemConstants.IMPL_TCP_SIMPLE,
+            SystemConstants.IMPL_TCP_NIO_ADVANCED, SystemConstants.IMPL_UDP_ADVANCED);
 
     /**
      * Konstruktion der ServerGUI
@@ -120,7 +125,7 @@ public class ChatServerGUI extends Application implements ChatServerGuiInterface
     public void start(final Stage stage) throws Exception {
 
         stage.setTitle("ChatServerGUI");
-        stage.setScene(new Scene(pane, 335, 350));
+        stage.setScene(new Scene(pane, 335, 375));
         stage.show();
 
         pane.setStyle("-fx-background-color: cornsilk");
@@ -164,6 +169,8 @@ public class ChatServerGUI extends Application implements ChatServerGuiInterface
         serverPort = createEditableTextfield(DEFAULT_SERVER_PORT);
         sendBufferSize = createEditableTextfield(DEFAULT_SENDBUFFER_SIZE);
         receiveBufferSize = createEditableTextfield(DEFAULT_RECEIVEBUFFER_SIZE);
+        virtualThreads = new CheckBox();
+        virtualThreads.setDisable(!WorkerExecutors.isVirtualThreadSupported());
 
         inputPane.add(label, 1, 3);
         inputPane.add(comboBoxImplType, 3, 3);
@@ -173,6 +180,8 @@ public class ChatServerGUI extends Application implements ChatServerGuiInterface
         inputPane.add(sendBufferSize, 3, 7);
         inputPane.add(receiveBufferSizeLabel, 1, 9);
         inputPane.add(receiveBufferSize, 3, 9);
+        inputPane.add(createLabel("Virtuelle Threads"), 1, 11);
+        inputPane.add(virtualThreads, 3, 11);
 
         return inputPane;
     }
@@ -326,7 +335,8 @@ public class ChatServerGUI extends Application implements ChatServerGuiInterface
                     String implType = readComboBox();
 
                     try {
-                        startChatServer(implType, serverPort, sendBufferSize, receiveBufferSize);
+                        startChatServer(implType, serverPort, sendBufferSize, receiveBufferSize,
+                                virtualThreads.isSelected());
                     } catch (Exception e) {
                         setAlert(
                                 "Der Server konnte nicht gestartet werden, evtl. laeuft ein anderer Server mit dem Port");
@@ -413,9 +423,11 @@ public class ChatServerGUI extends Application implements ChatServerGuiInterface
      * @param serverPort        Serverport, die der Server als Listener-Port nutzen soll
      * @param sendBufferSize    Sendpuffergroeße, die der Server nutzen soll
      * @param receiveBufferSize Empfangspuffergroesse, die der Server nutzen soll
+     * @param virtualThreads    true: Worker in virtuellen Threads ausfuehren
      */
     private void startChatServer(String implType, int serverPort, int sendBufferSize,
-                                 int receiveBufferSize) throws Exception {
+                                 int receiveBufferSize, boolean virtualThreads)
+            throws Exception {
 
 
         ImplementationType serverImpl = ImplementationType.TCPAdvancedImplementation;
@@ -423,11 +435,20 @@ public class ChatServerGUI extends Application implements ChatServerGuiInterface
             serverImpl = ImplementationType.TCPAdvancedImplementation;
         } else if (implType.equals(SystemConstants.IMPL_TCP_SIMPLE)) {
             serverImpl = ImplementationType.TCPSimpleImplementation;
+        } else if (implType.equals(SystemConstants.IMPL_TCP_NIO_ADVANCED)) {
+            serverImpl = ImplementationType.TCPNioAdvancedImplementation;
+        } else if (implType.equals(SystemConstants.IMPL_UDP_ADVANCED)) {
+            serverImpl = ImplementationType.UDPAdvancedImplementation;
         }
 
         try {
-            chatServer = ServerFactory.getServer(serverImpl, serverPort, sendBufferSize,
-                    receiveBufferSize, this);
+            ServerConfiguration config = new ServerConfiguration();
+            config.setImplementationType(serverImpl);
+            config.setServerPort(serverPort);
+            config.setSendBufferSize(sendBufferSize);
+            config.setReceiveBufferSize(receiveBufferSize);
+            config.setVirtualThreads(virtualThreads);
+            chatServer = ServerFactory.getServer(config, this);
         } catch (Exception e) {
             log.error("Fehler beim Starten des Chat-Servers: " + e.getMessage());
             ExceptionHandler.logException(e);
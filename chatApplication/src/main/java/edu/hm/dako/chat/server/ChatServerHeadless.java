@@ -0,0 +1,226 @@
+package edu.hm.dako.chat.server;
+
+import edu.hm.dako.chat.codec.PduCodecType;
+import edu.hm.dako.chat.common.ExceptionHandler;
+import edu.hm.dako.chat.common.ImplementationType;
+import edu.hm.dako.chat.connection.FlushPolicy;
+import edu.hm.dako.chat.connection.OverflowPolicy;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.log4j.PropertyConfigurator;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Start des Chat-Servers ohne Benutzeroberflaeche, z.B. fuer Messungen auf
+ * einem entfernten Rechner. Die Konfiguration wird ueber Optionen in der
+ * Kommandozeile angegeben, nicht angegebene Parameter behalten die
+ * Standardwerte aus {@link ServerConfiguration}:
+ * <p/>
+ * <pre>
+ * -impl    TCPSimpleImplementation | TCPAdvancedImplementation | TCPNioAdvancedImplementation
+ *          | UDPAdvancedImplementation
+ * -port    Listenport
+ * -sendbuf / -recvbuf   Groesse der Sende- und Empfangspuffer in Byte
+ * -codec   JavaSerialization | Binary
+ * -queue   Kapazitaet der Ausgangswarteschlange je Verbindung
+ * -overflow DROP | DISCONNECT | BLOCK
+ * -nodelay true | false: TCP-Option TcpNoDelay (Standard true)
+ * -flush   Schreibzeitpunkt fuer Events der Verteilschleifen:
+ *          IMMEDIATE | END_OF_BATCH[,Byte] | COALESCE[,Byte[,us]]
+ * -retransmit Maximale Wartezeit auf eine Quittung in ms (nur UDP)
+ * -retries Maximale Anzahl an Wiederholungen je PDU (nur UDP)
+ * -virtual Worker in virtuellen Threads ausfuehren (ab Java 21, in aelteren
+ *          Laufzeitumgebungen wird die Option abgelehnt)
+ * -noconnlog Verbindungen ohne Logging-Dekorierer betreiben
+ * -pooling empfangene PDUs wiederverwenden (nur TCP mit Codec Binary)
+ * -metrics Datei, in die die Kennzahlen je PDU-Typ periodisch geschrieben
+ *          werden (abrufbar auch ueber JMX)
+ * -metricsinterval Abstand zwischen zwei Snapshots in Sekunden
+ * </pre>
+ * Der Server laeuft, bis auf der Standardeingabe eine Zeile eingegeben oder
+ * der Prozess beendet wird.
+ *
+ * @author Peter Mandl
+ */
+public class ChatServerHeadless implements ChatServerGuiInterface {
+
+    private static Log log = LogFactory.getLog(ChatServerHeadless.class);
+
+    // Zaehler fuer die eingeloggten Clients und die empfangenen Requests
+    private final AtomicInteger loggedInClientCounter = new AtomicInteger(0);
+    private final AtomicInteger requestCounter = new AtomicInteger(0);
+
+    public static void main(String[] args) {
+        PropertyConfigurator.configureAndWatch("log4j.server.properties", 60 * 1000);
+
+        ServerConfiguration config;
+        try {
+            config = parseArguments(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Fehlerhafter Aufruf: " + e.getMessage());
+            System.out.println("Optionen: -impl <Typ> -port <Port> -sendbuf <Byte> "
+                    + "-recvbuf <Byte> -codec <Kodierung> -queue <Anzahl> "
+                    + "-overflow <DROP|DISCONNECT|BLOCK> -nodelay <true|false> "
+                    + "-flush <IMMEDIATE|END_OF_BATCH|COALESCE>[,Byte[,us]] -retransmit <ms> -retries <Anzahl> "
+                    + "-virtual -noconnlog -pooling -metrics <Datei> "
+                    + "-metricsinterval <s>");
+            System.exit(1);
+            return;
+        }
+
+        new ChatServerHeadless().run(config);
+    }
+
+    /**
+     * Kommandozeilenoptionen auswerten
+     *
+     * @param args Optionen
+     * @return Konfiguration des Servers
+     */
+    static ServerConfiguration parseArguments(String[] args) {
+        ServerConfiguration config = new ServerConfiguration();
+
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (option.equals("-virtual")) {
+                if (!WorkerExecutors.isVirtualThreadSupported()) {
+                    throw new IllegalArgumentException(
+                            "Virtuelle Threads erst ab Java 21 verfuegbar (-virtual)");
+                }
+                config.setVirtualThreads(true);
+                continue;
+            }
+            if (option.equals("-noconnlog")) {
+                config.setConnectionLogging(false);
+                continue;
+            }
+            if (option.equals("-pooling")) {
+                config.setPduPooling(true);
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Wert fuer " + option + " fehlt");
+            }
+            String value = args[++i];
+            if (!applyOption(config, option, value)) {
+                throw new IllegalArgumentException("Unbekannte Option " + option);
+            }
+        }
+        return config;
+    }
+
+    /**
+     * Einzelne Option mit Wert uebernehmen
+     *
+     * @return false, wenn die Option unbekannt ist
+     */
+    private static boolean applyOption(ServerConfiguration config, String option,
+                                       String value) {
+        try {
+            if (option.equals("-impl")) {
+                config.setImplementationType(ImplementationType.valueOf(value));
+            } else if (option.equals("-port")) {
+                config.setServerPort(Integer.parseInt(value));
+            } else if (option.equals("-sendbuf")) {
+                config.setSendBufferSize(Integer.parseInt(value));
+            } else if (option.equals("-recvbuf")) {
+                config.setReceiveBufferSize(Integer.parseInt(value));
+            } else if (option.equals("-codec")) {
+                config.setPduCodecType(PduCodecType.valueOf(value));
+            } else if (option.equals("-queue")) {
+                config.setOutboundQueueCapacity(Integer.parseInt(value));
+            } else if (option.equals("-overflow")) {
+                config.setOverflowPolicy(OverflowPolicy.valueOf(value));
+            } else if (option.equals("-nodelay")) {
+                config.setTcpNoDelay(Boolean.parseBoolean(value));
+            } else if (option.equals("-flush")) {
+                config.setFlushPolicy(FlushPolicy.parse(value));
+            } else if (option.equals("-retransmit")) {
+                config.setRetransmitTimeout(Integer.parseInt(value));
+            } else if (option.equals("-retries")) {
+                config.setMaxRetries(Integer.parseInt(value));
+            } else if (option.equals("-metrics")) {
+                config.setMetricsSnapshotFile(value);
+            } else if (option.equals("-metricsinterval")) {
+                config.setMetricsSnapshotInterval(Integer.parseInt(value));
+            } else {
+                return false;
+            }
+        } catch (IllegalArgumentException e) {
+            // Auch NumberFormatException
+            throw new IllegalArgumentException("Ungueltiger Wert " + value + " fuer " + option);
+        }
+        return true;
+    }
+
+    /**
+     * Server starten und bis zum Ende der Eingabe laufen lassen
+     *
+     * @param config Konfiguration des Servers
+     */
+    private void run(ServerConfiguration config) {
+        final ChatServerInterface chatServer;
+        try {
+            chatServer = ServerFactory.getServer(config, this);
+            chatServer.start();
+        } catch (Exception e) {
+            log.error("Fehler beim Starten des Chat-Servers: " + e.getMessage());
+            ExceptionHandler.logException(e);
+            System.exit(1);
+            return;
+        }
+
+        // Server auch beim Beenden des Prozesses (Strg-C) ordentlich stoppen
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                stopServer(chatServer);
+            }
+        }));
+
+        System.out.println("Server beenden mit <Return>");
+        try {
+            if (new BufferedReader(new InputStreamReader(System.in)).readLine() == null) {
+                // Keine Standardeingabe (z.B. im Hintergrund gestartet): laufen,
+                // bis der Prozess beendet wird
+                Thread.sleep(Long.MAX_VALUE);
+            }
+        } catch (Exception e) {
+            log.debug("Standardeingabe nicht lesbar: " + e.getMessage());
+        }
+        System.exit(0);
+    }
+
+    private void stopServer(ChatServerInterface chatServer) {
+        try {
+            chatServer.stop();
+        } catch (Exception e) {
+            log.error("Fehler beim Stoppen des Chat-Servers");
+            ExceptionHandler.logException(e);
+        }
+        System.out.println("Empfangene Requests: " + requestCounter.get()
+                + ", angemeldete Clients: " + loggedInClientCounter.get());
+    }
+
+    @Override
+    public void showStartData(ServerStartData data) {
+    }
+
+    @Override
+    public void incrNumberOfLoggedInClients() {
+        loggedInClientCounter.getAndIncrement();
+    }
+
+    @Override
+    public void decrNumberOfLoggedInClients() {
+        loggedInClientCounter.getAndDecrement();
+    }
+
+    @Override
+    public void incrNumberOfRequests() {
+        requestCounter.getAndIncrement();
+    }
+}
@@ -0,0 +1,223 @@
+package edu.hm.dako.chat.server;
+
+import edu.hm.dako.chat.codec.PduCodecType;
+import edu.hm.dako.chat.common.ImplementationType;
+import edu.hm.dako.chat.connection.FlushPolicy;
+import edu.hm.dako.chat.connection.OverflowPolicy;
+
+/**
+ * Konfigurationsparameter fuer den Start eines Chat-Servers ueber die
+ * {@link ServerFactory}
+ *
+ * @author Peter Mandl
+ */
+public class ServerConfiguration {
+
+    // Typ der Implementierung
+    private ImplementationType implementationType;
+
+    // Listenport des Servers
+    private int serverPort;
+
+    // Groesse des Sende- und Empfangspuffers der Verbindungen in Byte
+    private int sendBufferSize;
+    private int receiveBufferSize;
+
+    // Kodierung der PDUs auf der Leitung
+    private PduCodecType pduCodecType;
+
+    // Maximale Anzahl wartender PDUs je Verbindung (0 = ohne Warteschlange
+    // bzw. unbegrenzt bei NIO) und Verhalten bei voller Warteschlange
+    private int outboundQueueCapacity;
+    private OverflowPolicy overflowPolicy;
+
+    // TCP-Option TcpNoDelay der Verbindungen (true: Nagle-Algorithmus aus)
+    private boolean tcpNoDelay;
+
+    // Schreibzeitpunkt fuer PDUs, die in den Verteilschleifen ohne Flush
+    // gesendet werden (nur Simple und Advanced)
+    private FlushPolicy flushPolicy;
+
+    // Maximale Wartezeit auf eine Quittung in ms und maximale Anzahl an
+    // Wiederholungen je PDU (nur UDP)
+    private int retransmitTimeout;
+    private int maxRetries;
+
+    // PDUs als Referenzen statt kodiert uebergeben (nur Local)
+    private boolean localPduReferences;
+
+    // Empfangene PDUs wiederverwenden (nur TCP mit Binaerformat)
+    private boolean pduPooling;
+
+    // Worker und Writer in virtuellen Threads ausfuehren (nur Simple und
+    // Advanced, ab Java 21)
+    private boolean virtualThreads;
+
+    // Datei, in die die Serverkennzahlen periodisch geschrieben werden (null:
+    // keine Datei), und Abstand in Sekunden
+    private String metricsSnapshotFile;
+    private int metricsSnapshotInterval;
+
+    // Verbindungen mit dem Logging-Dekorierer versehen; ohne Dekorierer
+    // entfallen dessen Aufrufe je PDU auch bei abgeschaltetem Logging
+    private boolean connectionLogging;
+
+    /**
+     * Konstruktor Belegung der Parameter mit Standardwerten
+     */
+    public ServerConfiguration() {
+        implementationType = ImplementationType.TCPAdvancedImplementation;
+        serverPort = 50000;
+        sendBufferSize = 300000;
+        receiveBufferSize = 300000;
+        pduCodecType = PduCodecType.JavaSerialization;
+        outboundQueueCapacity = 1000;
+        overflowPolicy = OverflowPolicy.BLOCK;
+        tcpNoDelay = true;
+        flushPolicy = FlushPolicy.IMMEDIATE;
+        retransmitTimeout = 2000;
+        maxRetries = 3;
+        localPduReferences = true;
+        pduPooling = false;
+        virtualThreads = false;
+        metricsSnapshotFile = null;
+        metricsSnapshotInterval = 10;
+        connectionLogging = true;
+    }
+
+    public ImplementationType getImplementationType() {
+        return implementationType;
+    }
+
+    public void setImplementationType(ImplementationType implementationType) {
+        this.implementationType = implementationType;
+    }
+
+    public int getServerPort() {
+        return serverPort;
+    }
+
+    public void setServerPort(int serverPort) {
+        this.serverPort = serverPort;
+    }
+
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    public void setSendBufferSize(int sendBufferSize) {
+        this.sendBufferSize = sendBufferSize;
+    }
+
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    public void setReceiveBufferSize(int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    public PduCodecType getPduCodecType() {
+        return pduCodecType;
+    }
+
+    public void setPduCodecType(PduCodecType pduCodecType) {
+        this.pduCodecType = pduCodecType;
+    }
+
+    public int getOutboundQueueCapacity() {
+        return outboundQueueCapacity;
+    }
+
+    public void setOutboundQueueCapacity(int outboundQueueCapacity) {
+        this.outboundQueueCapacity = outboundQueueCapacity;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    public FlushPolicy getFlushPolicy() {
+        return flushPolicy;
+    }
+
+    public void setFlushPolicy(FlushPolicy flushPolicy) {
+        this.flushPolicy = flushPolicy;
+    }
+
+    public int getRetransmitTimeout() {
+        return retransmitTimeout;
+    }
+
+    public void setRetransmitTimeout(int retransmitTimeout) {
+        this.retransmitTimeout = retransmitTimeout;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public boolean isLocalPduReferences() {
+        return localPduReferences;
+    }
+
+    public void setLocalPduReferences(boolean localPduReferences) {
+        this.localPduReferences = localPduReferences;
+    }
+
+    public boolean isPduPooling() {
+        return pduPooling;
+    }
+
+    public void setPduPooling(boolean pduPooling) {
+        this.pduPooling = pduPooling;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    public String getMetricsSnapshotFile() {
+        return metricsSnapshotFile;
+    }
+
+    public void setMetricsSnapshotFile(String metricsSnapshotFile) {
+        this.metricsSnapshotFile = metricsSnapshotFile;
+    }
+
+    public int getMetricsSnapshotInterval() {
+        return metricsSnapshotInterval;
+    }
+
+    public void setMetricsSnapshotInterval(int metricsSnapshotInterval) {
+        this.metricsSnapshotInterval = metricsSnapshotInterval;
+    }
+
+    public boolean isConnectionLogging() {
+        return connectionLogging;
+    }
+
+    public void setConnectionLogging(boolean connectionLogging) {
+        this.connectionLogging = connectionLogging;
+    }
+}
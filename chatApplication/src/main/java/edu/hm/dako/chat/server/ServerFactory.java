@@ -1,16 +1,28 @@
 package edu.hm.dako.chat.server;
 
+import edu.hm.dako.chat.codec.PduCodecType;
 import edu.hm.dako.chat.common.ImplementationType;
 import edu.hm.dako.chat.connection.Connection;
 import edu.hm.dako.chat.connection.LoggingConnectionDecorator;
+import edu.hm.dako.chat.connection.OutboundQueueMetrics;
+import edu.hm.dako.chat.connection.OverflowPolicy;
+import edu.hm.dako.chat.connection.QueuedConnection;
 import edu.hm.dako.chat.connection.ServerSocketInterface;
+import edu.hm.dako.chat.local.LocalConnection;
+import edu.hm.dako.chat.local.LocalServerSocket;
+import edu.hm.dako.chat.server.chat.AbstractChatServer;
 import edu.hm.dako.chat.server.chat.AdvancedChatServerImpl;
+import edu.hm.dako.chat.server.chat.NioAdvancedChatServerImpl;
 import edu.hm.dako.chat.server.chat.SimpleChatServerImpl;
+import edu.hm.dako.chat.server.metrics.MeasuringConnectionDecorator;
+import edu.hm.dako.chat.server.metrics.ServerMetrics;
+import edu.hm.dako.chat.tcp.FramedTcpServerSocket;
 import edu.hm.dako.chat.tcp.TcpServerSocket;
+import edu.hm.dako.chat.udp.UdpServerSocket;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Uebernimmt die Konfiguration und Erzeugung bestimmter Server-Typen. Siehe
@@ -25,7 +37,7 @@ public final class ServerFactory {
     }
 
     /**
-     * Erzeugt einen Chat-Server
+     * Erzeugt einen Chat-Server mit Standardkodierung (Java-Serialisierung)
      *
      * @param implType           Implementierungytyp des Servers
      * @param serverPort         Listenport
@@ -38,22 +50,69 @@ public final class ServerFactory {
     public static ChatServerInterface getServer(ImplementationType implType, int serverPort,
                                                 int sendBufferSize, int receiveBufferSize,
                                                 ChatServerGuiInterface serverGuiInterface) throws Exception {
+        ServerConfiguration config = new ServerConfiguration();
+        config.setImplementationType(implType);
+        config.setServerPort(serverPort);
+        config.setSendBufferSize(sendBufferSize);
+        config.setReceiveBufferSize(receiveBufferSize);
+        return getServer(config, serverGuiInterface);
+    }
+
+    /**
+     * Erzeugt einen Chat-Server
+     *
+     * @param config             Konfigurationsparameter des Servers
+     * @param serverGuiInterface Referenz auf GUI fuer Callback
+     * @return
+     * @throws Exception
+     */
+    public static ChatServerInterface getServer(ServerConfiguration config,
+                                                ChatServerGuiInterface serverGuiInterface) throws Exception {
+        ImplementationType implType = config.getImplementationType();
+        int serverPort = config.getServerPort();
+        int sendBufferSize = config.getSendBufferSize();
+        int receiveBufferSize = config.getReceiveBufferSize();
+        PduCodecType codecType = config.getPduCodecType();
+
+        // Ein Lauf mit normalen Threads darf nicht als Lauf mit virtuellen
+        // Threads ausgewiesen werden
+        if (config.isVirtualThreads() && !WorkerExecutors.isVirtualThreadSupported()) {
+            throw new IllegalArgumentException(
+                    "Virtuelle Threads erst ab Java 21 verfuegbar");
+        }
+
+        // Gemeinsame Kennzahlen der Ausgangswarteschlangen aller Verbindungen
+        OutboundQueueMetrics metrics = new OutboundQueueMetrics();
+
+        // Kennzahlen je PDU-Typ, abrufbar ueber JMX und ggf. als Datei
+        ServerMetrics serverMetrics = new ServerMetrics(metrics);
+
         log.debug("ChatServer (" + implType.toString() + ") wird gestartet, Serverport: "
                 + serverPort + ", Sendepuffer: " + sendBufferSize + ", Empfangspuffer: "
-                + receiveBufferSize);
+                + receiveBufferSize + ", Kodierung: " + codecType);
         System.out.println("ChatServer (" + implType.toString()
                 + ") wird gestartet, Listen-Port: " + serverPort + ", Sendepuffer: "
-                + sendBufferSize + ", Empfangspuffer: " + receiveBufferSize);
+                + sendBufferSize + ", Empfangspuffer: " + receiveBufferSize + ", Kodierung: "
+                + codecType + ", Ausgangswarteschlange: " + config.getOutboundQueueCapacity()
+                + " (" + config.getOverflowPolicy() + ")" + ", Virtuelle Threads: "
+                + config.isVirtualThreads() + ", Verbindungs-Logging: "
+                + config.isConnectionLogging() + ", TcpNoDelay: " + config.isTcpNoDelay()
+                + ", Flush: " + config.getFlushPolicy() + ", UDP-Wartezeit: "
+                + config.getRetransmitTimeout() + " ms, UDP-Wiederholungen: "
+                + config.getMaxRetries() + ", Lokale PDU-Referenzen: "
+                + config.isLocalPduReferences() + ", PDU-Pooling: " + config.isPduPooling());
 
+        AbstractChatServer server;
         switch (implType) {
 
             case TCPSimpleImplementation:
 
                 try {
-                    TcpServerSocket tcpServerSocket = new TcpServerSocket(serverPort, sendBufferSize,
-                            receiveBufferSize);
-                    return new SimpleChatServerImpl(Executors.newCachedThreadPool(),
-                            getDecoratedServerSocket(tcpServerSocket), serverGuiInterface);
+                    server = new SimpleChatServerImpl(
+                            WorkerExecutors.newWorkerExecutor(config.isVirtualThreads()),
+                            getDecoratedServerSocket(createTcpServerSocket(config), config,
+                                    metrics, serverMetrics), serverGuiInterface);
+                    break;
                 } catch (Exception e) {
                     throw new Exception(e);
                 }
@@ -61,41 +120,155 @@ public final class ServerFactory {
             case TCPAdvancedImplementation:
 
                 try {
-                    TcpServerSocket tcpServerSocket = new TcpServerSocket(serverPort, sendBufferSize,
-                            receiveBufferSize);
-                    return new AdvancedChatServerImpl(Executors.newCachedThreadPool(),
-                            getDecoratedServerSocket(tcpServerSocket), serverGuiInterface);
+                    server = new AdvancedChatServerImpl(
+                            WorkerExecutors.newWorkerExecutor(config.isVirtualThreads()),
+                            getDecoratedServerSocket(createTcpServerSocket(config), config,
+                                    metrics, serverMetrics), serverGuiInterface);
+                    break;
+                } catch (Exception e) {
+                    throw new Exception(e);
+                }
+
+            case TCPNioAdvancedImplementation:
+
+                if (config.isVirtualThreads()) {
+                    log.info("NIO-Server arbeitet mit Event-Loops, Option fuer "
+                            + "virtuelle Threads wird ignoriert");
+                }
+
+                try {
+                    // Eine Event-Loop pro CPU-Kern
+                    server = new NioAdvancedChatServerImpl(serverPort,
+                            Runtime.getRuntime().availableProcessors(), codecType.createCodec(),
+                            sendBufferSize, receiveBufferSize, config.isTcpNoDelay(),
+                            config.getOutboundQueueCapacity(), config.getOverflowPolicy(),
+                            config.isConnectionLogging(), serverGuiInterface);
+                    break;
+                } catch (Exception e) {
+                    throw new Exception(e);
+                }
+
+            case UDPAdvancedImplementation:
+
+                try {
+                    // Gleiches Protokoll wie TCPAdvanced, die Verbindungen
+                    // sichern die Zustellung selbst
+                    server = new AdvancedChatServerImpl(
+                            WorkerExecutors.newWorkerExecutor(config.isVirtualThreads()),
+                            getDecoratedServerSocket(new UdpServerSocket(serverPort,
+                                            codecType.createCodec(), sendBufferSize,
+                                            receiveBufferSize, config.getRetransmitTimeout(),
+                                            config.getMaxRetries()), config, metrics,
+                                    serverMetrics), serverGuiInterface);
+                    break;
+                } catch (Exception e) {
+                    throw new Exception(e);
+                }
+
+            case LocalAdvancedImplementation:
+
+                try {
+                    // Gleiches Protokoll wie TCPAdvanced, aber Clients im selben
+                    // Prozess ohne Netzwerkstack
+                    server = new AdvancedChatServerImpl(
+                            WorkerExecutors.newWorkerExecutor(config.isVirtualThreads()),
+                            getDecoratedServerSocket(new LocalServerSocket(serverPort,
+                                            config.isLocalPduReferences() ? null
+                                                    : codecType.createCodec(),
+                                            LocalConnection.DEFAULT_QUEUE_CAPACITY), config,
+                                    metrics, serverMetrics), serverGuiInterface);
+                    break;
                 } catch (Exception e) {
                     throw new Exception(e);
                 }
 
             default:
-                System.out.println("Dezeit nur TCP implementiert!");
+                System.out.println("Unbekannter Implementierungstyp!");
                 throw new RuntimeException("Unknown type: " + implType);
         }
+
+        server.setOutboundQueueMetrics(metrics);
+        server.setServerMetrics(serverMetrics);
+        serverMetrics.registerMBean();
+        if (config.getMetricsSnapshotFile() != null) {
+            serverMetrics.startSnapshots(config.getMetricsSnapshotFile(),
+                    config.getMetricsSnapshotInterval());
+        }
+        return server;
+    }
+
+    /**
+     * Bei Java-Serialisierung wird wie bisher ein durchgehender Objektstrom
+     * verwendet, sonst Rahmen mit dem gewaehlten Codec
+     */
+    private static TcpServerSocket createTcpServerSocket(ServerConfiguration config)
+            throws Exception {
+        TcpServerSocket serverSocket;
+        if (config.getPduCodecType() == PduCodecType.JavaSerialization) {
+            serverSocket = new TcpServerSocket(config.getServerPort(),
+                    config.getSendBufferSize(), config.getReceiveBufferSize());
+        } else {
+            FramedTcpServerSocket framedServerSocket = new FramedTcpServerSocket(
+                    config.getServerPort(), config.getPduCodecType().createCodec(),
+                    config.getSendBufferSize(), config.getReceiveBufferSize());
+            framedServerSocket.setPduPooling(config.isPduPooling());
+            serverSocket = framedServerSocket;
+        }
+        serverSocket.setTcpNoDelay(config.isTcpNoDelay());
+        serverSocket.setFlushPolicy(config.getFlushPolicy());
+        return serverSocket;
     }
 
     private static ServerSocketInterface getDecoratedServerSocket(
-            ServerSocketInterface serverSocket) {
-        return new DecoratingServerSocket(serverSocket);
+            ServerSocketInterface serverSocket, ServerConfiguration config,
+            OutboundQueueMetrics metrics, ServerMetrics serverMetrics) {
+        return new DecoratingServerSocket(serverSocket, config.getOutboundQueueCapacity(),
+                config.getOverflowPolicy(), config.isConnectionLogging(), metrics, serverMetrics,
+                WorkerExecutors.newThreadFactory(config.isVirtualThreads(), "Writer-"));
     }
 
     /**
-     * Dekoriert Server-Socket mit Logging-Funktionalitaet
+     * Dekoriert Server-Socket, falls konfiguriert, mit Logging-Funktionalitaet
+     * und mit einer Ausgangswarteschlange je Verbindung. Unterhalb
+     * der Warteschlange werden Kodierung und Schreiben gemessen.
      *
      * @author mandl
      */
     private static class DecoratingServerSocket implements ServerSocketInterface {
 
         private final ServerSocketInterface wrappedServerSocket;
+        private final int outboundQueueCapacity;
+        private final OverflowPolicy overflowPolicy;
+        private final boolean connectionLogging;
+        private final OutboundQueueMetrics metrics;
+        private final ServerMetrics serverMetrics;
+        private final ThreadFactory writerThreadFactory;
 
-        DecoratingServerSocket(ServerSocketInterface wrappedServerSocket) {
+        DecoratingServerSocket(ServerSocketInterface wrappedServerSocket,
+                               int outboundQueueCapacity, OverflowPolicy overflowPolicy,
+                               boolean connectionLogging, OutboundQueueMetrics metrics, ServerMetrics serverMetrics,
+                               ThreadFactory writerThreadFactory) {
             this.wrappedServerSocket = wrappedServerSocket;
+            this.outboundQueueCapacity = outboundQueueCapacity;
+            this.overflowPolicy = overflowPolicy;
+            this.connectionLogging = connectionLogging;
+            this.metrics = metrics;
+            this.serverMetrics = serverMetrics;
+            this.writerThreadFactory = writerThreadFactory;
         }
 
         @Override
         public Connection accept() throws Exception {
-            return new LoggingConnectionDecorator(wrappedServerSocket.accept());
+            Connection connection = new MeasuringConnectionDecorator(
+                    wrappedServerSocket.accept(), serverMetrics);
+            if (outboundQueueCapacity > 0) {
+                connection = new QueuedConnection(connection, outboundQueueCapacity,
+                        overflowPolicy, metrics, writerThreadFactory);
+            }
+            if (connectionLogging) {
+                connection = new LoggingConnectionDecorator(connection);
+            }
+            return connection;
         }
 
         @Override
@@ -1,13 +1,19 @@
 package edu.hm.dako.chat.server;
 
+import edu.hm.dako.chat.common.ChatPDU;
 import edu.hm.dako.chat.common.ClientConversationStatus;
 import edu.hm.dako.chat.common.ClientListEntry;
+import edu.hm.dako.chat.common.ClientTable;
+import edu.hm.dako.chat.common.WaitList;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Liste aller angemeldeten Clients. Diese Liste wird im Server als Singleton
@@ -15,10 +21,37 @@ import java.util.concurrent.ConcurrentHashMap;
  * nutzen diese Liste.
  * <p>
  * Die Liste wird als HashMap organisiert. Als Schluessel wird der Username von
- * Clients verwendet.
+ * Clients verwendet. Zusaetzlich erhaelt jeder Client beim Anlegen eine dichte
+ * Client-ID in einer {@link ClientTable}. Der Name wird nur beim Login in die
+ * ID umgesetzt; Wartelisten (Bitsets ueber die IDs), die Bearbeitung von
+ * Confirms und das Verteilen von Events arbeiten ohne Hashing ueber die ID.
  * <p>
  * Genereller Hinweis: Zur Umgehung von ConcurrentModificationExceptions wird
  * bei der Iteration durch Listen generell eine Kopie der Liste angelegt.
+ * <p>
+ * Methoden, die nur einen einzelnen Eintrag lesen oder aendern (insbesondere
+ * die Bearbeitung von Event-Confirms), sind nicht synchronisiert: Die
+ * Hashtabelle ist nebenlaeufig, die Eintraege und ihre Wartelisten sind
+ * selbst thread-sicher. Nur Operationen, die mehrere Eintraege konsistent
+ * sehen muessen (Aufbau einer Warteliste, Loeschen von Clients), laufen unter
+ * der Sperre der Liste. Die Sperre ist ein {@link ReentrantLock} statt eines
+ * Monitors, damit Worker in virtuellen Threads beim Warten auf die Sperre
+ * ihren Traeger-Thread freigeben.
+ * <p>
+ * Wartelisten werden pro Request ueber dessen Transaktions-ID verwaltet. Ein
+ * Client darf daher mehrere Chat-Requests senden, bevor die Response auf den
+ * ersten eingetroffen ist.
+ * <p>
+ * Ob ein Client geloescht werden darf, wird inkrementell verfolgt: Jeder
+ * Eintrag zaehlt, in wie vielen Wartelisten er steht. Wird ein Client dadurch
+ * loeschbar (letzter Confirm, Vormerken zum Beenden), kommt er in eine
+ * Warteschlange, die {@link #gcClientList()} abarbeitet. Die Clientliste muss
+ * dafuer nicht mehr durchsucht werden.
+ * <p>
+ * Die Namen der angemeldeten Clients werden zusaetzlich in einem
+ * versionierten {@link UserDirectory} gefuehrt, das bei jedem Statuswechsel
+ * und beim Entfernen eines Clients mitgepflegt wird. Statuswechsel eines
+ * Clients erfolgen nacheinander durch die Worker, die ihn bedienen.
  *
  * @author Peter Mandl
  */
@@ -28,8 +61,22 @@ public class SharedChatClientList {
     // Liste aller eingeloggten Clients
     private static ConcurrentHashMap<String, ClientListEntry> clients;
 
+    // Sitzungstabelle: alle Eintraege der Liste, Index ist die Client-ID
+    private final ClientTable clientTable = new ClientTable();
+
+    // Clients, die loeschbar geworden sind und beim naechsten Aufruf des
+    // Garbage Collectors entfernt werden
+    private final ConcurrentLinkedQueue<ClientListEntry> deletableClients =
+            new ConcurrentLinkedQueue<ClientListEntry>();
+
     private static SharedChatClientList instance;
 
+    // Sperre fuer Operationen, die mehrere Eintraege konsistent sehen muessen
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Versionierte Liste der angemeldeten User fuer Login- und Logout-Events
+    private final UserDirectory userDirectory = new UserDirectory();
+
     private SharedChatClientList() {
     }
 
@@ -53,6 +100,9 @@ public class SharedChatClientList {
     public void deleteAll() {
 
         clients.clear();
+        clientTable.clear();
+        deletableClients.clear();
+        userDirectory.clear();
     }
 
     /**
@@ -61,14 +111,16 @@ public class SharedChatClientList {
      * @param userName  Name des Users (Clients)
      * @param newStatus Neuer Status
      */
-    public synchronized void changeClientStatus(String userName,
+    public void changeClientStatus(String userName,
                                                 ClientConversationStatus newStatus) {
 
         ClientListEntry client = clients.get(userName);
         if (client != null) {
             client.setStatus(newStatus);
-            clients.replace(userName, client);
-            log.debug("User " + userName + " nun in Status: " + newStatus);
+            updateUserDirectory(client);
+            if (log.isDebugEnabled()) {
+                log.debug("User " + userName + " nun in Status: " + newStatus);
+            }
         }
     }
 
@@ -78,7 +130,7 @@ public class SharedChatClientList {
      * @param userName Name des Users (Clients)
      * @return Conversation-Status des Clients
      */
-    public synchronized ClientConversationStatus getClientStatus(String userName) {
+    public ClientConversationStatus getClientStatus(String userName) {
 
         ClientListEntry client = clients.get(userName);
         if (client != null) {
@@ -94,23 +146,51 @@ public class SharedChatClientList {
      * @param userName Name des Clients
      * @return Referenz auf den gesuchten Client
      */
-    public synchronized ClientListEntry getClient(String userName) {
+    public ClientListEntry getClient(String userName) {
 
         return clients.get(userName);
     }
 
+    /**
+     * Client ueber seine Client-ID auslesen, ohne Hashing und ohne Sperre
+     *
+     * @param clientId Client-ID
+     * @return Referenz auf den gesuchten Client oder null
+     */
+    public ClientListEntry getClient(int clientId) {
+
+        return clientTable.get(clientId);
+    }
+
+    /**
+     * Hoechste vergebene Client-ID. Alle Clients werden durchlaufen, indem
+     * {@link #getClient(int)} fuer 1 bis einschliesslich dieser ID
+     * aufgerufen wird; nicht vergebene IDs liefern null.
+     *
+     * @return Hoechste Client-ID, 0 bei leerer Liste
+     */
+    public int getMaxClientId() {
+
+        return clientTable.getMaxClientId();
+    }
+
     /**
      * Stellt eine Liste aller Namen der eingetragenen Clients bereit
      *
      * @return Vektor mit allen Namen der eingetragenen Clients
      */
-    public synchronized Vector<String> getClientNameList() {
+    public Vector<String> getClientNameList() {
 
-        Vector<String> clientNameList = new Vector<String>();
-        for (String s : new HashSet<String>(clients.keySet())) {
-            clientNameList.add(s);
+        lock.lock();
+        try {
+            Vector<String> clientNameList = new Vector<String>();
+            for (String s : new HashSet<String>(clients.keySet())) {
+                clientNameList.add(s);
+            }
+            return clientNameList;
+        } finally {
+            lock.unlock();
         }
-        return clientNameList;
     }
 
     /**
@@ -120,18 +200,57 @@ public class SharedChatClientList {
      * @return Vektor mit allen Namen der eingetragenen Clients, die registriert
      * sind oder die sich gerade registrieren
      */
-    public synchronized Vector<String> getRegisteredClientNameList() {
+    public Vector<String> getRegisteredClientNameList() {
 
-        Vector<String> clientNameList = new Vector<String>();
-        for (String s : new HashSet<String>(clients.keySet())) {
+        return new Vector<String>(userDirectory.getSnapshot().getUsers());
+    }
 
-            if ((getClientStatus(s) == ClientConversationStatus.REGISTERING)
-                    || (getClientStatus(s) == ClientConversationStatus.REGISTERED)) {
+    /**
+     * Liefert den aktuellen Stand der Liste aller angemeldeten Clients
+     * (REGISTERING oder REGISTERED) ohne Sperre und ohne Kopie
+     *
+     * @return Unveraenderlicher Stand mit Version
+     */
+    public UserDirectory.Snapshot getUserListSnapshot() {
 
-                clientNameList.add(s);
-            }
+        return userDirectory.getSnapshot();
+    }
+
+    /**
+     * Liefert die Version des Userverzeichnisses, mit der ein Client zuletzt
+     * aufgenommen oder entfernt wurde
+     *
+     * @param userName Name des Clients
+     * @return Version der Aenderung, 0 falls der Client unbekannt ist
+     */
+    public long getUserListVersion(String userName) {
+
+        ClientListEntry client = clients.get(userName);
+        if (client != null) {
+            return client.getUserListVersion();
+        }
+        return 0;
+    }
+
+    /**
+     * Nimmt einen Client in das Userverzeichnis auf bzw. entfernt ihn daraus,
+     * wenn sich durch seinen Status die Zugehoerigkeit geaendert hat
+     *
+     * @param client Eintrag des Clients
+     */
+    private void updateUserDirectory(ClientListEntry client) {
+
+        ClientConversationStatus status = client.getStatus();
+        long version;
+        if ((status == ClientConversationStatus.REGISTERING)
+                || (status == ClientConversationStatus.REGISTERED)) {
+            version = userDirectory.join(client.getUserName());
+        } else {
+            version = userDirectory.leave(client.getUserName());
+        }
+        if (version != 0) {
+            client.setUserListVersion(version);
         }
-        return clientNameList;
     }
 
     /**
@@ -140,11 +259,13 @@ public class SharedChatClientList {
      * @param userName Name des Clients
      * @return
      */
-    public synchronized boolean existsClient(String userName) {
+    public boolean existsClient(String userName) {
 
         if (userName != null) {
             if (!clients.containsKey(userName)) {
-                log.debug("User nicht in Clientliste: " + userName);
+                if (log.isDebugEnabled()) {
+                    log.debug("User nicht in Clientliste: " + userName);
+                }
                 return false;
             } else {
                 return true;
@@ -155,14 +276,21 @@ public class SharedChatClientList {
     }
 
     /**
-     * Legt einen neuen Client an
+     * Legt einen neuen Client an und vergibt seine Client-ID
      *
      * @param userName Name des neuen Clients
      * @param client   Client-Daten
      */
-    public synchronized void createClient(String userName, ClientListEntry client) {
-
-        clients.put(userName, client);
+    public void createClient(String userName, ClientListEntry client) {
+
+        lock.lock();
+        try {
+            clientTable.remove(clients.put(userName, client));
+            clientTable.add(client);
+            updateUserDirectory(client);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -171,56 +299,97 @@ public class SharedChatClientList {
      * @param userName Name des Clients
      * @param client   Client-Daten
      */
-    public synchronized void updateClient(String userName, ClientListEntry client) {
+    public void updateClient(String userName, ClientListEntry client) {
 
-        ClientListEntry existingClient = (ClientListEntry) clients.get(userName);
+        lock.lock();
+        try {
+            ClientListEntry existingClient = (ClientListEntry) clients.get(userName);
 
-        if (existingClient != null) {
-            clients.put(userName, client);
-        } else {
-            log.debug("User nicht in Clientliste: " + userName);
+            if (existingClient != null) {
+                clients.put(userName, client);
+                clientTable.replace(existingClient, client);
+            } else {
+                if (log.isDebugEnabled()) {
+                    log.debug("User nicht in Clientliste: " + userName);
+                }
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
     /**
      * Prueft, ob ein Client in keiner Warteliste mehr ist und daher geloescht
-     * werden kann.
+     * werden kann. Dazu genuegt der Referenzzaehler des Clients.
      *
      * @param userName Name des Clients
      * @return true Loeschen moeglich, sonst false
      */
-    public synchronized boolean deletable(String userName) {
+    public boolean deletable(String userName) {
 
-        for (String s : new Vector<String>(clients.keySet())) {
-            ClientListEntry client = (ClientListEntry) clients.get(s);
-            if (client.getWaitList().contains(userName)) {
-                // Client noch in einer Warteliste
-                log.debug("Loeschen nicht moeglich, da Client " + userName
-                        + " noch in der Warteliste von " + client.getUserName() + " ist");
-                return false;
+        ClientListEntry client = clients.get(userName);
+        if ((client != null) && (client.getWaitListReferences() > 0)) {
+            // Client noch in einer Warteliste
+            if (log.isDebugEnabled()) {
+                log.debug("Loeschen nicht moeglich, da Client " + userName + " noch in "
+                        + client.getWaitListReferences() + " Wartelisten ist");
             }
+            return false;
         }
         return true;
     }
 
     /**
      * Loescht einen Client zwangsweise inkl. aller Einträge in Wartelisten.
+     * Wird eine Warteliste dadurch leer, kommt fuer sie kein Confirm mehr an;
+     * der Aufrufer muss die Response an deren Initiator senden.
      *
      * @param userName Name des Clients
+     * @return Wartelisten anderer Clients, die durch das Loeschen leer wurden
      */
-    public synchronized void deleteClientWithoutCondition(String userName) {
+    public Vector<WaitList> deleteClientWithoutCondition(String userName) {
 
-        log.debug("Client  " + userName + " zwangsweise aus allen Listen entfernen");
-        for (String s : new HashSet<String>(clients.keySet())) {
-            ClientListEntry client = (ClientListEntry) clients.get(s);
-            if (client.getWaitList().contains(userName)) {
-                client.getWaitList().remove(userName);
+        lock.lock();
+        try {
+            if (log.isDebugEnabled()) {
+                log.debug("Client  " + userName + " zwangsweise aus allen Listen entfernen");
             }
-        }
+            Vector<WaitList> completedWaitLists = new Vector<WaitList>();
+            ClientListEntry removedClient = clients.remove(userName);
+            userDirectory.leave(userName);
+            if (removedClient == null) {
+                return completedWaitLists;
+            }
+            clientTable.remove(removedClient);
 
-        // Client kann nun entfernt werden
-        clients.remove(userName);
-        log.debug("Client  " + userName + " vollstaendig aus allen Wartelisten entfernt");
+            int maxClientId = clientTable.getMaxClientId();
+            for (int id = 1; id <= maxClientId; id++) {
+                ClientListEntry client = clientTable.get(id);
+                if (client == null) {
+                    continue;
+                }
+                for (WaitList waitList : client.getWaitLists()) {
+                    if (waitList.remove(removedClient) && client.removeWaitList(waitList)) {
+                        completedWaitLists.add(waitList);
+                        markIfDeletable(client);
+                    }
+                }
+            }
+
+            // Eigene Wartelisten verwerfen, die darin eingetragenen Clients werden
+            // dadurch eventuell loeschbar
+            int[] members = getWaitListIds(removedClient);
+            removedClient.clearWaitLists();
+            for (int id : members) {
+                markIfDeletable(clientTable.get(id));
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Client  " + userName + " vollstaendig aus allen Wartelisten entfernt");
+            }
+            return completedWaitLists;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -230,80 +399,111 @@ public class SharedChatClientList {
      * @param userName Name des Clients
      * @return true bei erfolgreichem Loeschen, sonst false
      */
-    public synchronized boolean deleteClient(String userName) {
-
-        log.debug("Clientliste vor dem Loeschen von " + userName + ": " + printClientList());
-        log.debug(
-                "Logout fuer " + userName + ", Laenge der Clientliste vor dem Loeschen von: "
-                        + userName + ": " + clients.size());
-
-        boolean deletedFlag = false;
-        ClientListEntry removeCandidateClient = (ClientListEntry) clients.get(userName);
-        if (removeCandidateClient != null) {
-
-            // Event-Warteliste des Clients leer?
-            log.debug("Laenge der Clientliste " + userName + ": " + clients.size());
-            if ((removeCandidateClient.getWaitList().size() == 0)
-                    && (removeCandidateClient.isFinished())) {
-
-                // Warteliste leer, jetzt pruefen, ob er noch in anderen
-                // Wartelisten ist
-                log.debug("Warteliste von Client " + removeCandidateClient.getUserName()
-                        + " ist leer und Client ist zum Beenden vorgemerkt");
-
-                for (String s : new HashSet<String>(clients.keySet())) {
-                    ClientListEntry client = (ClientListEntry) clients.get(s);
-                    if (client.getWaitList().contains(userName)) {
-                        log.debug("Loeschen nicht moeglich, da Client " + userName
-                                + " noch in der Warteliste von " + s + " ist");
-                        return deletedFlag;
+    public boolean deleteClient(String userName) {
+
+        lock.lock();
+        try {
+            if (log.isDebugEnabled()) {
+                log.debug("Clientliste vor dem Loeschen von " + userName + ": " + printClientList());
+            }
+            if (log.isDebugEnabled()) {
+                log.debug(
+                        "Logout fuer " + userName + ", Laenge der Clientliste vor dem Loeschen von: "
+                                + userName + ": " + clients.size());
+            }
+
+            boolean deletedFlag = false;
+            ClientListEntry removeCandidateClient = (ClientListEntry) clients.get(userName);
+            if (removeCandidateClient != null) {
+
+                // Eigene Wartelisten leer, zum Beenden vorgemerkt und in keiner
+                // anderen Warteliste mehr?
+                if (removeCandidateClient.isDeletable()) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Warteliste von Client " + removeCandidateClient.getUserName()
+                                + " ist leer und Client ist zum Beenden vorgemerkt");
+                    }
+                    clients.remove(userName);
+                    clientTable.remove(removeCandidateClient);
+                    userDirectory.leave(userName);
+                    deletedFlag = true;
+                } else {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Loeschen von " + userName + " nicht moeglich, offene Confirms: "
+                                + removeCandidateClient.getWaitListSize() + ", Referenzen: "
+                                + removeCandidateClient.getWaitListReferences());
                     }
                 }
+            }
 
-                // Client kann entfernt werden, sofern er auch zum Beenden
-                // vorgemerkt ist.
-                clients.remove(userName);
-                deletedFlag = true;
+            if (log.isDebugEnabled()) {
+                log.debug("Laenge der Clientliste nach dem Loeschen von " + userName + ": "
+                        + clients.size());
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Clientliste nach dem Loeschen von " + userName + ": " + printClientList());
             }
+            return deletedFlag;
+        } finally {
+            lock.unlock();
         }
+    }
 
-        log.debug("Laenge der Clientliste nach dem Loeschen von " + userName + ": "
-                + clients.size());
-        log.debug("Clientliste nach dem Loeschen von " + userName + ": " + printClientList());
-        return deletedFlag;
+    /**
+     * Vormerken eines Clients zum Loeschen, sofern er loeschbar ist. Wird an
+     * allen Stellen aufgerufen, an denen ein Client loeschbar werden kann
+     * (Vormerken zum Beenden, Austragen aus einer Warteliste, Abschluss einer
+     * eigenen Warteliste).
+     *
+     * @param client Eintrag des Clients, darf null sein
+     */
+    private void markIfDeletable(ClientListEntry client) {
+        if ((client != null) && client.isDeletable()) {
+            if (log.isDebugEnabled()) {
+                log.debug("Client " + client.getUserName() + " zum Loeschen vorgemerkt");
+            }
+            deletableClients.add(client);
+        }
     }
 
     /**
-     * Garbage Collector der Clientliste bereinigt nicht mehr benoetigte Clients
+     * Garbage Collector der Clientliste bereinigt nicht mehr benoetigte
+     * Clients. Es werden nur die Clients betrachtet, die seit dem letzten
+     * Aufruf loeschbar geworden sind; die Kosten haengen also nicht von der
+     * Laenge der Clientliste ab. Ist nichts vorgemerkt, wird die Sperre der
+     * Liste nicht angefordert.
      *
      * @return Namensliste aller entfernten Clients
      */
-    public synchronized Vector<String> gcClientList() {
+    public Vector<String> gcClientList() {
 
         Vector<String> deletedClients = new Vector<String>();
+        if (deletableClients.isEmpty()) {
+            return deletedClients;
+        }
 
-        for (String s1 : new Vector<String>(clients.keySet())) {
-            boolean clientUsed = true;
-            ClientListEntry client1 = (ClientListEntry) clients.get(s1);
-            if ((client1.getWaitList().size() == 0) && (client1.isFinished())) {
-
-                // Eigene Warteliste leer, jetzt pruefen, ob auch alle anderen
-                // Wartelisten diesen Client nicht enthalten
-                clientUsed = false;
-                for (String s2 : new Vector<String>(clients.keySet())) {
-                    ClientListEntry client2 = (ClientListEntry) clients.get(s2);
-                    if (client2.getWaitList().contains(s1)) {
-                        // Client noch in einer Warteliste
-                        clientUsed = true;
+        lock.lock();
+        try {
+            ClientListEntry client;
+            while ((client = deletableClients.poll()) != null) {
+
+                // Erneut pruefen: Der Client kann mehrfach vorgemerkt sein,
+                // bereits entfernt sein oder wurde inzwischen in eine neue
+                // Warteliste aufgenommen
+                if ((clientTable.get(client.getClientId()) == client) && client.isDeletable()) {
+                    String s = client.getUserName();
+                    if (log.isDebugEnabled()) {
+                        log.debug("Garbace Collection: Client " + s
+                                + " wird aus ClientListe entfernt");
                     }
+                    deletedClients.add(s);
+                    clients.remove(s, client);
+                    clientTable.remove(client);
+                    userDirectory.leave(s);
                 }
             }
-            if (!clientUsed) {
-                log.debug("Garbace Collection: Client " + client1.getUserName()
-                        + " wird aus ClientListe entfernt");
-                deletedClients.add(s1);
-                clients.remove(s1);
-            }
+        } finally {
+            lock.unlock();
         }
         return deletedClients;
     }
@@ -313,7 +513,7 @@ public class SharedChatClientList {
      *
      * @return Laenge der Liste
      */
-    public synchronized long size() {
+    public long size() {
 
         return clients.size();
     }
@@ -324,7 +524,7 @@ public class SharedChatClientList {
      *
      * @param userName Name des Clients
      */
-    public synchronized void incrNumberOfReceivedChatEventConfirms(String userName) {
+    public void incrNumberOfReceivedChatEventConfirms(String userName) {
 
         ClientListEntry client = clients.get(userName);
         if (client != null) {
@@ -338,7 +538,7 @@ public class SharedChatClientList {
      *
      * @param userName Name des Clients
      */
-    public synchronized void incrNumberOfSentChatEvents(String userName) {
+    public void incrNumberOfSentChatEvents(String userName) {
 
         ClientListEntry client = clients.get(userName);
         if (client != null) {
@@ -351,7 +551,7 @@ public class SharedChatClientList {
      *
      * @param userName Name des Clients
      */
-    public synchronized void incrNumberOfReceivedChatMessages(String userName) {
+    public void incrNumberOfReceivedChatMessages(String userName) {
 
         ClientListEntry client = clients.get(userName);
         if (client != null) {
@@ -365,15 +565,19 @@ public class SharedChatClientList {
      * @param userName Name des Clients
      */
 
-    public synchronized void setRequestStartTime(String userName, long startTime) {
+    public void setRequestStartTime(String userName, long startTime) {
 
         ClientListEntry client = clients.get(userName);
         if (client != null) {
             client.setStartTime(startTime);
-            log.debug(
-                    "Startzeit fuer Benutzer " + userName + " gesetzt: " + client.getStartTime());
+            if (log.isDebugEnabled()) {
+                log.debug(
+                        "Startzeit fuer Benutzer " + userName + " gesetzt: " + client.getStartTime());
+            }
         } else {
-            log.debug("Startzeit fuer Benutzer konnte nicht gesetzt werden:" + userName);
+            if (log.isDebugEnabled()) {
+                log.debug("Startzeit fuer Benutzer konnte nicht gesetzt werden:" + userName);
+            }
         }
     }
 
@@ -383,7 +587,7 @@ public class SharedChatClientList {
      * @param userName Name des Clients
      * @return Ankunftszeit des Requests in ns
      */
-    public synchronized long getRequestStartTime(String userName) {
+    public long getRequestStartTime(String userName) {
 
         ClientListEntry client = clients.get(userName);
         if (client != null) {
@@ -396,106 +600,250 @@ public class SharedChatClientList {
     /**
      * Erstellt eine Liste aller Clients, die noch ein Event bestaetigen muessen.
      * Es werden nur registrierte und sich in Registrierung befindliche Clients
-     * ausgewaehlt
+     * ausgewaehlt. Laeuft unter der Sperre der Liste, damit kein gerade
+     * geloeschter Client aufgenommen wird.
+     * <p>
+     * Die Liste wird unter der Transaktions-ID des Events abgelegt, die der
+     * des Requests entspricht und von den Clients im Confirm zurueckgegeben
+     * wird.
      *
-     * @param userName Name des Clients, fuer den die Liste erstellt werden soll
+     * @param userName  Name des Clients, fuer den die Liste erstellt werden soll
+     * @param event     Event-PDU, die anschliessend an alle Clients gesendet wird
+     * @param startTime Ankunftszeit des Requests in ns
      */
-    public synchronized void createWaitList(String userName) {
+    public void createWaitList(String userName, ChatPDU event, long startTime) {
 
         ClientListEntry client = clients.get(userName);
         if (client != null) {
-            for (String s : new HashSet<String>(clients.keySet())) {
-                // Nur registrierte oder sich gerade registrierende Clients in
-                // die
-                // Warteliste aufnehmen
-                if ((client.getStatus() == ClientConversationStatus.REGISTERED)
-                        || (client.getStatus() == ClientConversationStatus.REGISTERING)) {
-                    client.addWaitListEntry(s);
+            createWaitList(client.getClientId(), event, startTime);
+        } else {
+            if (log.isDebugEnabled()) {
+                log.debug("Warteliste fuer " + userName + " konnte nicht erzeugt werden");
+            }
+        }
+    }
+
+    /**
+     * Wie {@link #createWaitList(String, ChatPDU, long)}, der Initiator wird
+     * ueber seine Client-ID angegeben
+     *
+     * @param clientId  Client-ID des Clients, fuer den die Liste erstellt werden soll
+     * @param event     Event-PDU, die anschliessend an alle Clients gesendet wird
+     * @param startTime Ankunftszeit des Requests in ns
+     * @return Angelegte Warteliste oder null, falls der Client nicht existiert
+     */
+    public WaitList createWaitList(int clientId, ChatPDU event, long startTime) {
+
+        WaitList waitList = null;
+        lock.lock();
+        try {
+            ClientListEntry client = clientTable.get(clientId);
+            if (client != null) {
+                waitList = client.createWaitList(event.getTransactionId(), event,
+                        startTime, clientTable);
+                int maxClientId = clientTable.getMaxClientId();
+                for (int id = 1; id <= maxClientId; id++) {
+                    // Nur registrierte oder sich gerade registrierende Clients in
+                    // die
+                    // Warteliste aufnehmen
+                    ClientListEntry member = clientTable.get(id);
+                    if ((member != null)
+                            && ((client.getStatus() == ClientConversationStatus.REGISTERED)
+                            || (client.getStatus() == ClientConversationStatus.REGISTERING))) {
+                        waitList.add(member);
+                    }
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug("Warteliste fuer " + client.getUserName() + ", Transaktion "
+                            + ChatPDU.transactionIdToString(event.getTransactionId())
+                            + " erzeugt: " + waitList);
+                }
+            } else {
+                if (log.isDebugEnabled()) {
+                    log.debug("Warteliste fuer Client-ID " + clientId
+                            + " konnte nicht erzeugt werden");
                 }
             }
-            log.debug("Warteliste fuer " + userName + " erzeugt");
-        } else {
-            log.debug("Warteliste fuer " + userName + " konnte nicht erzeugt werden");
+        } finally {
+            lock.unlock();
         }
+        return waitList;
     }
 
     /**
-     * Loescht eine Event-Warteliste fuer einen Client
+     * Loescht alle Event-Wartelisten fuer einen Client
      *
-     * @param userName Name des Clients, fuer den die Liste geloesccht werden soll
+     * @param userName Name des Clients, fuer den die Listen geloescht werden sollen
      */
-    public synchronized void deleteWaitList(String userName) {
+    public void deleteWaitList(String userName) {
 
         ClientListEntry client = clients.get(userName);
         if (client != null) {
-            client.clearWaitList();
+            client.clearWaitLists();
         }
     }
 
     /**
-     * Loescht einen Eintrag aus der Event-Warteliste
+     * Loescht einen Eintrag aus der Event-Warteliste eines Requests. Nur fuer
+     * genau einen Aufrufer, naemlich den, der den letzten Eintrag entfernt,
+     * wird die Warteliste geliefert; nur dieser darf die Response an den
+     * Initiator senden. Die leere Liste wird dabei aus dem Client entfernt.
      *
-     * @param userName  Name des Clients, fuer den ein Listeneintrag aus seiner Warteliste
-     *                  geloescht werden soll
-     * @param entryName name des Clients, der aus der Event-Warteliste geloescht werden
-     *                  soll
-     * @return Anzahl der noch vorhandenen Eintraege in der Liste
-     * @throws Exception Client mit UserName existiert nicht
+     * @param userName      Name des Clients, fuer den ein Listeneintrag aus seiner Warteliste
+     *                      geloescht werden soll
+     * @param transactionId Transaktions-ID des Requests, zu dem der Confirm gehoert
+     * @param entryName     name des Clients, der aus der Event-Warteliste geloescht werden
+     *                      soll
+     * @return Die mit diesem Aufruf leer gewordene Warteliste, sonst null
      */
-
-    public synchronized void deleteWaitListEntry(String userName, String entryName) {
-
-        log.debug("Client: " + userName + ", aus Warteliste von " + entryName + " loeschen ");
+    public WaitList deleteWaitListEntry(String userName, long transactionId,
+                                        String entryName) {
 
         ClientListEntry client = clients.get(userName);
+        if (client == null) {
+            if (log.isDebugEnabled()) {
+                log.debug("Kein Eintrag fuer " + userName + " in der Clientliste vorhanden");
+            }
+            return null;
+        }
+        return deleteWaitListEntry(client.getClientId(), transactionId,
+                clients.get(entryName));
+    }
 
+    /**
+     * Wie {@link #deleteWaitListEntry(String, long, String)}, aber ohne
+     * Namensaufloesung: Der Initiator wird ueber seine Client-ID (aus dem
+     * Confirm) angegeben, der bestaetigende Client ueber seinen Eintrag, den
+     * sein Worker seit dem Login kennt.
+     *
+     * @param clientId      Client-ID des Initiators
+     * @param transactionId Transaktions-ID des Requests, zu dem der Confirm gehoert
+     * @param entry         Eintrag des bestaetigenden Clients
+     * @return Die mit diesem Aufruf leer gewordene Warteliste, sonst null
+     */
+    public WaitList deleteWaitListEntry(int clientId, long transactionId,
+                                        ClientListEntry entry) {
+
+        ClientListEntry client = clientTable.get(clientId);
         if (client == null) {
-            log.debug("Kein Eintrag fuer " + userName + " in der Clientliste vorhanden");
-        } else if (client.getWaitList().size() == 0) {
-            log.debug("Warteliste fuer " + userName + " war vorher schon leer");
-            return;
-        } else {
-            client.getWaitList().remove(entryName);
-            log.debug("Eintrag fuer " + entryName + " aus der Warteliste von " + userName
-                    + " geloescht");
+            if (log.isDebugEnabled()) {
+                log.debug("Kein Eintrag fuer Client-ID " + clientId
+                        + " in der Clientliste vorhanden");
+            }
+            return null;
+        }
+
+        // Nur Eintraege, die noch in der Tabelle stehen: Die ID eines
+        // entfernten Clients kann bereits neu vergeben sein
+        if ((entry == null) || (clientTable.get(entry.getClientId()) != entry)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Bestaetigender Client nicht (mehr) in der Clientliste, Transaktion "
+                        + ChatPDU.transactionIdToString(transactionId));
+            }
+            return null;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Client: " + entry.getUserName() + ", aus Warteliste von "
+                    + client.getUserName() + " fuer Transaktion "
+                    + ChatPDU.transactionIdToString(transactionId) + " loeschen ");
+        }
+
+        WaitList waitList = client.getWaitList(transactionId);
+        if (waitList == null) {
+            if (log.isDebugEnabled()) {
+                log.debug("Keine Warteliste fuer Transaktion "
+                        + ChatPDU.transactionIdToString(transactionId) + " von "
+                        + client.getUserName() + " vorhanden");
+            }
+            return null;
+        }
+
+        boolean lastEntry = waitList.remove(entry);
+        if (log.isDebugEnabled()) {
+            log.debug("Eintrag fuer " + entry.getUserName() + " aus der Warteliste von "
+                    + client.getUserName() + " geloescht, Warteliste nun leer: " + lastEntry);
         }
+
+        // Der bestaetigende Client kann durch diesen Confirm loeschbar werden
+        markIfDeletable(entry);
+
+        if (lastEntry && client.removeWaitList(waitList)) {
+            // Ebenso der Initiator, wenn dies sein letzter offener Request war
+            markIfDeletable(client);
+            return waitList;
+        }
+        return null;
     }
 
     /**
-     * Liefert die Laenge der Event-Warteliste fuer einen Client
+     * Liefert die Anzahl der ausstehenden Confirms ueber alle Wartelisten
+     * eines Clients
      *
      * @param userName Name des Clients
-     * @return Anzahl der noch vorhandenen Eintraege in der Liste
+     * @return Anzahl der noch vorhandenen Eintraege in den Listen
      */
-    public synchronized int getWaitListSize(String userName) {
+    public int getWaitListSize(String userName) {
 
         ClientListEntry client = clients.get(userName);
         if (client != null) {
-            return client.getWaitList().size();
+            return client.getWaitListSize();
         }
         return 0;
     }
 
-    public synchronized Vector<String> getWaitList(String userName) {
+    public Vector<String> getWaitList(String userName) {
 
         ClientListEntry client = clients.get(userName);
         if (client != null) {
-            return client.getWaitList();
+            Vector<String> entries = new Vector<String>();
+            for (int id : getWaitListIds(client)) {
+                ClientListEntry entry = clientTable.get(id);
+                if (entry != null) {
+                    entries.add(entry.getUserName());
+                }
+            }
+            return entries;
         }
         return null;
     }
 
+    /**
+     * Client-IDs aller Clients, die in einer Warteliste des Clients stehen
+     *
+     * @param client Eintrag des Clients
+     * @return IDs ohne Duplikate
+     */
+    private int[] getWaitListIds(ClientListEntry client) {
+
+        BitSet entries = new BitSet();
+        for (WaitList waitList : client.getWaitLists()) {
+            for (int id : waitList.toIds()) {
+                entries.set(id);
+            }
+        }
+        int[] ids = new int[entries.cardinality()];
+        int n = 0;
+        for (int id = entries.nextSetBit(0); id >= 0; id = entries.nextSetBit(id + 1)) {
+            ids[n++] = id;
+        }
+        return ids;
+    }
+
     /**
      * Setzt Kennzeichen, dass die Arbeit fuer einen User eingestellt werden kann
      *
      * @param userName Name des Clients
      */
-    public synchronized void finish(String userName) {
+    public void finish(String userName) {
 
         ClientListEntry client = clients.get(userName);
         if (client != null) {
             client.setFinished(true);
-            log.debug("Finished-Kennzeichen gesetzt fuer: " + userName);
+            if (log.isDebugEnabled()) {
+                log.debug("Finished-Kennzeichen gesetzt fuer: " + userName);
+            }
+            markIfDeletable(client);
         }
     }
 
@@ -515,7 +863,7 @@ public class SharedChatClientList {
             for (String s : new HashSet<String>(clients.keySet())) {
                 ClientListEntry client = clients.get(s);
                 stringBuilder.append(client.getUserName() + ", ");
-                stringBuilder.append(client.getWaitList() + "\n");
+                stringBuilder.append(client.getWaitLists() + "\n");
             }
         }
         return stringBuilder.toString();
@@ -1,5 +1,7 @@
 package edu.hm.dako.chat.server;
 
+import edu.hm.dako.chat.server.metrics.ServerMetrics;
+
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -14,4 +16,7 @@ public class SharedServerCounter {
     public AtomicInteger logoutCounter;
     public AtomicInteger eventCounter;
     public AtomicInteger confirmCounter;
+
+    // Kennzahlen je PDU-Typ
+    public ServerMetrics metrics;
 }
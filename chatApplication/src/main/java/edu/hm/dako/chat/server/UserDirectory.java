@@ -0,0 +1,122 @@
+package edu.hm.dako.chat.server;
+
+import java.util.Vector;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Versioniertes Verzeichnis der angemeldeten User (Zustand REGISTERING oder
+ * REGISTERED). Jede Aenderung erzeugt eine neue, danach unveraenderliche
+ * Namensliste und erhoeht die Versionsnummer um eins (Copy-on-Write). Lesende
+ * Zugriffe benoetigen keine Sperre und keine Kopie: Der aktuelle
+ * {@link Snapshot} wird unveraendert in beliebig viele PDUs uebernommen.
+ * <p>
+ * Login- und Logout-Events tragen nur noch den hinzugekommenen bzw.
+ * abgemeldeten User und die Version dieser Aenderung. Die vollstaendige Liste
+ * erhaelt ein Client mit der Login-Response und, falls er eine Luecke in den
+ * Versionen feststellt, auf Anforderung (User-List-Request).
+ *
+ * @author Peter Mandl
+ */
+public class UserDirectory {
+
+    // Aktueller Stand, wird bei jeder Aenderung als Ganzes ersetzt
+    private volatile Snapshot snapshot = new Snapshot(0, new Vector<String>());
+
+    // Serialisiert die Aenderungen untereinander
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Unveraenderlicher Stand des Verzeichnisses
+     */
+    public static final class Snapshot {
+
+        private final long version;
+
+        // Wird nach der Veroeffentlichung nicht mehr veraendert; Vector, da die
+        // PDU die Userliste in dieser Form uebertraegt
+        private final Vector<String> users;
+
+        private Snapshot(long version, Vector<String> users) {
+            this.version = version;
+            this.users = users;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * @return Namen der angemeldeten User; die Liste darf nicht veraendert
+         * werden
+         */
+        public Vector<String> getUsers() {
+            return users;
+        }
+    }
+
+    /**
+     * @return Aktueller Stand, ohne Sperre
+     */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * User in das Verzeichnis aufnehmen
+     *
+     * @param userName Name des Users
+     * @return Version dieser Aenderung, 0 wenn der User schon enthalten war
+     */
+    public long join(String userName) {
+        lock.lock();
+        try {
+            Snapshot current = snapshot;
+            if (current.users.contains(userName)) {
+                return 0;
+            }
+            Vector<String> users = new Vector<String>(current.users.size() + 1);
+            users.addAll(current.users);
+            users.add(userName);
+            snapshot = new Snapshot(current.version + 1, users);
+            return current.version + 1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * User aus dem Verzeichnis entfernen
+     *
+     * @param userName Name des Users
+     * @return Version dieser Aenderung, 0 wenn der User nicht enthalten war
+     */
+    public long leave(String userName) {
+        lock.lock();
+        try {
+            Snapshot current = snapshot;
+            int index = current.users.indexOf(userName);
+            if (index < 0) {
+                return 0;
+            }
+            Vector<String> users = new Vector<String>(current.users);
+            users.remove(index);
+            snapshot = new Snapshot(current.version + 1, users);
+            return current.version + 1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Alle User entfernen. Die Version laeuft weiter, damit Clients mit einem
+     * aelteren Stand die Aenderung erkennen.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            snapshot = new Snapshot(snapshot.version + 1, new Vector<String>());
+        } finally {
+            lock.unlock();
+        }
+    }
+}
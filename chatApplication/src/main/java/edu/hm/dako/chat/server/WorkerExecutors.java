@@ -0,0 +1,106 @@
+package edu.hm.dako.chat.server;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Erzeugt die Threads fuer Worker und Writer der Server mit blockierender
+ * Ein-/Ausgabe. Wahlweise wird je Aufgabe ein virtueller Thread verwendet
+ * (ab Java 21). Die Worker bleiben dabei unveraendert im blockierenden Stil
+ * programmiert; beim Warten in receive() wird nur der virtuelle Thread
+ * geparkt, nicht der Traeger-Thread.
+ * <p/>
+ * Die virtuellen Threads werden per Reflection angefordert, da das Projekt
+ * fuer Java 11 uebersetzt wird und die API erst ab Java 21 existiert. Die
+ * Aufrufer pruefen vorher mit {@link #isVirtualThreadSupported()}, ob die
+ * Laufzeitumgebung virtuelle Threads anbietet, und lehnen die Option sonst
+ * ab. Schlaegt die Erzeugung trotzdem fehl, werden normale Threads verwendet.
+ *
+ * @author Peter Mandl
+ */
+public final class WorkerExecutors {
+
+    private static Log log = LogFactory.getLog(WorkerExecutors.class);
+
+    private WorkerExecutors() {
+    }
+
+    /**
+     * Prueft, ob die Laufzeitumgebung virtuelle Threads anbietet
+     *
+     * @return true ab Java 21
+     */
+    public static boolean isVirtualThreadSupported() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Executor fuer die Worker-Threads erzeugen
+     *
+     * @param virtualThreads true: ein virtueller Thread je Worker, sonst ein
+     *                       Thread-Pool mit normalen Threads
+     * @return Executor fuer die Worker
+     */
+    public static ExecutorService newWorkerExecutor(boolean virtualThreads) {
+        if (virtualThreads) {
+            try {
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                log.debug("Worker laufen in virtuellen Threads");
+                return (ExecutorService) factory.invoke(null);
+            } catch (Exception e) {
+                notSupported(e);
+            }
+        }
+        return Executors.newCachedThreadPool();
+    }
+
+    /**
+     * ThreadFactory fuer Hilfsthreads (z.B. Writer der Ausgangswarteschlangen)
+     * erzeugen. Normale Threads werden als Daemon-Threads angelegt.
+     *
+     * @param virtualThreads true: virtuelle Threads, sonst normale Threads
+     * @param namePrefix     Praefix der Threadnamen, wird durchnummeriert
+     * @return ThreadFactory
+     */
+    public static ThreadFactory newThreadFactory(boolean virtualThreads,
+                                                 final String namePrefix) {
+        if (virtualThreads) {
+            try {
+                // Thread.ofVirtual().name(namePrefix, 1).factory()
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                builder = builderClass.getMethod("name", String.class, long.class)
+                        .invoke(builder, namePrefix, 1L);
+                return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            } catch (Exception e) {
+                notSupported(e);
+            }
+        }
+
+        final AtomicInteger counter = new AtomicInteger(0);
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, namePrefix + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    private static void notSupported(Exception e) {
+        log.warn("Virtuelle Threads nicht verfuegbar (ab Java 21), es werden normale "
+                + "Threads verwendet: " + e);
+    }
+}
@@ -1,9 +1,11 @@
 package edu.hm.dako.chat.server.chat;
 
+import edu.hm.dako.chat.connection.OutboundQueueMetrics;
 import edu.hm.dako.chat.server.ChatServerGuiInterface;
 import edu.hm.dako.chat.server.ChatServerInterface;
 import edu.hm.dako.chat.server.SharedChatClientList;
 import edu.hm.dako.chat.server.SharedServerCounter;
+import edu.hm.dako.chat.server.metrics.ServerMetrics;
 
 /**
  * Gemeinsame Attribute fuer alle Implementierungen
@@ -22,4 +24,40 @@ public abstract class AbstractChatServer implements ChatServerInterface {
     // Referenz auf Server GUI fuer die Meldung von Ereignissen
     protected ChatServerGuiInterface serverGuiInterface;
 
+    // Kennzahlen der Ausgangswarteschlangen aller Verbindungen
+    protected OutboundQueueMetrics outboundQueueMetrics = new OutboundQueueMetrics();
+
+    // Kennzahlen je PDU-Typ
+    protected ServerMetrics serverMetrics = new ServerMetrics(outboundQueueMetrics);
+
+    public OutboundQueueMetrics getOutboundQueueMetrics() {
+        return outboundQueueMetrics;
+    }
+
+    public void setOutboundQueueMetrics(OutboundQueueMetrics outboundQueueMetrics) {
+        this.outboundQueueMetrics = outboundQueueMetrics;
+    }
+
+    public ServerMetrics getServerMetrics() {
+        return serverMetrics;
+    }
+
+    /**
+     * Kennzahlen setzen, bevor der Server gestartet wird; sie werden ueber
+     * den gemeinsamen Zaehler an die Worker weitergereicht
+     */
+    public void setServerMetrics(ServerMetrics serverMetrics) {
+        this.serverMetrics = serverMetrics;
+        if (counter != null) {
+            counter.metrics = serverMetrics;
+        }
+    }
+
+    /**
+     * Kennzahlen beim Stoppen des Servers ausgeben und abmelden
+     */
+    protected void shutdownServerMetrics() {
+        serverMetrics.shutdown();
+        System.out.print(serverMetrics);
+    }
 }
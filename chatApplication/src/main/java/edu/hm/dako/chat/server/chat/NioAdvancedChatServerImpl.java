@@ -0,0 +1,231 @@
+package edu.hm.dako.chat.server.chat;
+
+import edu.hm.dako.chat.codec.PduCodec;
+import edu.hm.dako.chat.common.ChatPDU;
+import edu.hm.dako.chat.common.ClientListEntry;
+import edu.hm.dako.chat.common.ExceptionHandler;
+import edu.hm.dako.chat.connection.Connection;
+import edu.hm.dako.chat.connection.LoggingConnectionDecorator;
+import edu.hm.dako.chat.connection.OverflowPolicy;
+import edu.hm.dako.chat.nio.NioConnection;
+import edu.hm.dako.chat.nio.NioConnectionListener;
+import edu.hm.dako.chat.nio.NioEventLoop;
+import edu.hm.dako.chat.server.ChatServerGuiInterface;
+import edu.hm.dako.chat.server.SharedChatClientList;
+import edu.hm.dako.chat.server.SharedServerCounter;
+import edu.hm.dako.chat.server.metrics.MeasuringConnectionDecorator;
+import edu.hm.dako.chat.server.worker.AdvancedChatWorkerThreadImpl;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p/>
+ * Advanced-Chat-Server-Implementierung auf Basis von Java NIO. Statt eines
+ * Worker-Threads pro Client bedient eine kleine, feste Anzahl von
+ * Event-Loops (standardmaessig eine pro CPU-Kern) alle Verbindungen. Die
+ * Protokollbearbeitung uebernehmen weiterhin die Methoden von
+ * {@link AdvancedChatWorkerThreadImpl}, die als reine Session-Objekte im
+ * Thread der jeweiligen Event-Loop aufgerufen werden.
+ *
+ * @author Peter Mandl
+ */
+public class NioAdvancedChatServerImpl extends AbstractChatServer {
+
+    private static Log log = LogFactory.getLog(NioAdvancedChatServerImpl.class);
+
+    // Listen-Kanal fuer Verbindungsaufbauwuensche (blockierend im Acceptor)
+    private final ServerSocketChannel serverChannel;
+
+    // Event-Loops, auf die neue Verbindungen reihum verteilt werden
+    private final NioEventLoop[] eventLoops;
+    private int nextEventLoop = 0;
+
+    // Kodierung der PDUs in den Rahmen
+    private final PduCodec codec;
+
+    private final int sendBufferSize;
+    private final int receiveBufferSize;
+
+    // TCP-Option TcpNoDelay der Verbindungen
+    private final boolean tcpNoDelay;
+
+    // Begrenzung der Ausgangswarteschlange je Verbindung
+    private final int outboundQueueCapacity;
+    private final OverflowPolicy overflowPolicy;
+
+    // Verbindungen mit dem Logging-Dekorierer versehen
+    private final boolean connectionLogging;
+
+    /**
+     * Konstruktor
+     *
+     * @param serverPort         Listenport
+     * @param numberOfEventLoops Anzahl der Event-Loop-Threads
+     * @param codec              Kodierung der PDUs
+     * @param sendBufferSize     Groesse des Sendepuffers in Byte
+     * @param receiveBufferSize  Groesse des Empfangspuffers in Byte
+     * @param tcpNoDelay         true: Nagle-Algorithmus ausschalten
+     * @param outboundQueueCapacity Maximale Anzahl wartender Rahmen je Verbindung, 0 = unbegrenzt
+     * @param overflowPolicy     Verhalten bei voller Ausgangswarteschlange
+     * @param connectionLogging  Verbindungen mit dem Logging-Dekorierer versehen
+     * @param serverGuiInterface Referenz auf GUI fuer Callback
+     * @throws IOException Port belegt oder Selector nicht verfuegbar
+     */
+    public NioAdvancedChatServerImpl(int serverPort, int numberOfEventLoops, PduCodec codec,
+                                     int sendBufferSize, int receiveBufferSize, boolean tcpNoDelay,
+                                     int outboundQueueCapacity, OverflowPolicy overflowPolicy,
+                                     boolean connectionLogging,
+                                     ChatServerGuiInterface serverGuiInterface) throws IOException {
+        log.debug("NioAdvancedChatServerImpl konstruiert");
+        this.codec = codec;
+        this.sendBufferSize = sendBufferSize;
+        this.receiveBufferSize = receiveBufferSize;
+        this.tcpNoDelay = tcpNoDelay;
+        this.outboundQueueCapacity = outboundQueueCapacity;
+        this.overflowPolicy = overflowPolicy;
+        this.connectionLogging = connectionLogging;
+        this.serverGuiInterface = serverGuiInterface;
+        counter = new SharedServerCounter();
+        counter.logoutCounter = new AtomicInteger(0);
+        counter.eventCounter = new AtomicInteger(0);
+        counter.confirmCounter = new AtomicInteger(0);
+        counter.metrics = serverMetrics;
+
+        serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.socket().bind(new InetSocketAddress(serverPort));
+        } catch (IOException e) {
+            log.debug("Port " + serverPort + " auf dem Rechner schon in Benutzung: " + e);
+            serverChannel.close();
+            throw e;
+        }
+
+        eventLoops = new NioEventLoop[Math.max(1, numberOfEventLoops)];
+        for (int i = 0; i < eventLoops.length; i++) {
+            eventLoops[i] = new NioEventLoop("NioEventLoop-" + (i + 1));
+        }
+    }
+
+    @Override
+    public void start() {
+        // Clientliste erzeugen
+        clients = SharedChatClientList.getInstance();
+
+        for (NioEventLoop eventLoop : eventLoops) {
+            eventLoop.start();
+        }
+
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                System.out.println("NioAdvancedChatServer wartet auf Verbindungsanfragen von "
+                        + "Clients (" + eventLoops.length + " Event-Loops)...");
+
+                while (!Thread.currentThread().isInterrupted() && serverChannel.isOpen()) {
+                    try {
+                        SocketChannel channel = serverChannel.accept();
+                        log.debug("Neuer Verbindungsaufbauwunsch empfangen");
+                        acceptConnection(channel);
+                    } catch (Exception e) {
+                        if (!serverChannel.isOpen()) {
+                            log.debug("Listen-Kanal wurde geschlossen");
+                        } else {
+                            log.error(
+                                    "Exception beim Entgegennehmen von Verbindungsaufbauwuenschen: " + e);
+                            ExceptionHandler.logException(e);
+                        }
+                    }
+                }
+            }
+        }, "NioAcceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Neue Verbindung einrichten und einer Event-Loop zuordnen
+     *
+     * @param channel Neu angenommener Kanal
+     * @throws IOException Kanal kann nicht eingerichtet werden
+     */
+    private void acceptConnection(SocketChannel channel) throws IOException {
+        Socket socket = channel.socket();
+        socket.setSendBufferSize(sendBufferSize);
+        socket.setReceiveBufferSize(receiveBufferSize);
+        socket.setTcpNoDelay(tcpNoDelay);
+
+        NioEventLoop eventLoop = eventLoops[nextEventLoop];
+        nextEventLoop = (nextEventLoop + 1) % eventLoops.length;
+
+        NioConnection connection = new NioConnection(channel, eventLoop, codec,
+                outboundQueueCapacity, overflowPolicy, outboundQueueMetrics);
+
+        Connection sessionConnection = new MeasuringConnectionDecorator(connection,
+                serverMetrics);
+        if (connectionLogging) {
+            sessionConnection = new LoggingConnectionDecorator(sessionConnection);
+        }
+
+        // Session-Objekt mit der Protokolllogik des Advanced-Servers; es wird
+        // nicht als eigener Thread gestartet
+        final AdvancedChatWorkerThreadImpl session = new AdvancedChatWorkerThreadImpl(
+                sessionConnection, clients, counter, serverGuiInterface);
+
+        eventLoop.register(connection, new NioConnectionListener() {
+            @Override
+            public void messageReceived(NioConnection connection, Serializable message) {
+                if (session.processReceivedPdu((ChatPDU) message)) {
+                    session.terminate();
+                }
+            }
+
+            @Override
+            public void connectionClosed(NioConnection connection) {
+                log.debug("Verbindungsabbau durch Client erkannt");
+                session.terminate();
+            }
+        });
+    }
+
+    @Override
+    public void stop() throws Exception {
+
+        // Alle Verbindungen zu aktiven Clients abbauen
+        Vector<String> sendList = clients.getClientNameList();
+        for (String s : new Vector<String>(sendList)) {
+            ClientListEntry client = clients.getClient(s);
+            try {
+                if (client != null) {
+                    client.getConnection().close();
+                    log.error("Verbindung zu Client " + client.getUserName() + " geschlossen");
+                }
+            } catch (Exception e) {
+                log.debug(
+                        "Fehler beim Schliessen der Verbindung zu Client " + client.getUserName());
+                ExceptionHandler.logException(e);
+            }
+        }
+
+        // Loeschen der Userliste
+        clients.deleteAll();
+        serverChannel.close();
+        log.debug("Listen-Kanal geschlossen");
+
+        for (NioEventLoop eventLoop : eventLoops) {
+            eventLoop.shutdown();
+        }
+        log.debug("Event-Loops beendet");
+
+        shutdownServerMetrics();
+        System.out.println("NioAdvancedChatServer beendet sich");
+    }
+}
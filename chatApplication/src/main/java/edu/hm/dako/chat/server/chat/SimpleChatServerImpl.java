@@ -50,6 +50,7 @@ public class SimpleChatServerImpl extends AbstractChatServer {
         counter.logoutCounter = new AtomicInteger(0);
         counter.eventCounter = new AtomicInteger(0);
         counter.confirmCounter = new AtomicInteger(0);
+        counter.metrics = serverMetrics;
     }
 
     @Override
@@ -119,6 +120,7 @@ public class SimpleChatServerImpl extends AbstractChatServer {
         executorService.shutdown();
         log.debug("Threadpool freigegeben");
 
+        shutdownServerMetrics();
         System.out.println("SimpleChatServer beendet sich");
     }
 }
\ No newline at end of file
@@ -0,0 +1,207 @@
+package edu.hm.dako.chat.server.metrics;
+
+import edu.hm.dako.chat.codec.EncodedPdu;
+import edu.hm.dako.chat.common.ChatPDU;
+import edu.hm.dako.chat.connection.Connection;
+import edu.hm.dako.chat.connection.DecodeTimingConnection;
+import edu.hm.dako.chat.connection.FlushPolicy;
+import edu.hm.dako.chat.connection.FlushableConnection;
+import edu.hm.dako.chat.connection.GatheringConnection;
+import edu.hm.dako.chat.connection.PooledConnection;
+import edu.hm.dako.chat.connection.RetransmittingConnection;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Misst das Schreiben auf eine Verbindung je PDU-Typ. Der Decorator liegt
+ * direkt auf der Socket-Verbindung, also unterhalb einer
+ * {@link edu.hm.dako.chat.connection.QueuedConnection}; gemessen wird damit
+ * die Zeit im Writer-Thread, nicht das Einstellen in die Warteschlange.
+ * <p/>
+ * Bei kodierten PDUs wird die Kodierung, die beim ersten Schreiben eines
+ * Rahmens stattfindet, von der Schreibzeit abgezogen und getrennt
+ * eingetragen. Schreiben mehrere Writer dieselbe PDU gleichzeitig, wird die
+ * Kodierung naeherungsweise dem ersten zugeordnet. Bei Objektstroemen
+ * (Java-Serialisierung) sind Kodierung und Laenge nicht bekannt, die
+ * Serialisierung zaehlt dann zur Schreibzeit.
+ * <p/>
+ * Bei zurueckgehaltenen PDUs (siehe {@link FlushableConnection}) wird nur das
+ * Schreiben in den Puffer gemessen; der spaetere Flush ist keiner PDU
+ * zugeordnet.
+ *
+ * @author Peter Mandl
+ */
+public class MeasuringConnectionDecorator implements Connection, GatheringConnection,
+        FlushableConnection, RetransmittingConnection, PooledConnection,
+        DecodeTimingConnection {
+
+    private final Connection wrappedConnection;
+    private final ServerMetrics metrics;
+
+    public MeasuringConnectionDecorator(Connection wrappedConnection, ServerMetrics metrics) {
+        this.wrappedConnection = wrappedConnection;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Serializable receive(int timeout) throws Exception {
+        return wrappedConnection.receive(timeout);
+    }
+
+    @Override
+    public Serializable receive() throws Exception {
+        return wrappedConnection.receive();
+    }
+
+    @Override
+    public void send(Serializable message) throws Exception {
+        long start = System.nanoTime();
+        wrappedConnection.send(message);
+        metrics.sent(((ChatPDU) message).getPduType(), System.nanoTime() - start, -1, -1);
+    }
+
+    @Override
+    public void sendEncoded(EncodedPdu pdu) throws Exception {
+        boolean encodedBefore = pdu.isEncoded();
+        long start = System.nanoTime();
+        wrappedConnection.sendEncoded(pdu);
+        record(pdu, encodedBefore, System.nanoTime() - start);
+    }
+
+    @Override
+    public void send(Serializable message, boolean flush) throws Exception {
+        if (flush || !(wrappedConnection instanceof FlushableConnection)) {
+            send(message);
+            return;
+        }
+        long start = System.nanoTime();
+        ((FlushableConnection) wrappedConnection).send(message, false);
+        metrics.sent(((ChatPDU) message).getPduType(), System.nanoTime() - start, -1, -1);
+    }
+
+    @Override
+    public void sendEncoded(EncodedPdu pdu, boolean flush) throws Exception {
+        if (flush || !(wrappedConnection instanceof FlushableConnection)) {
+            sendEncoded(pdu);
+            return;
+        }
+        boolean encodedBefore = pdu.isEncoded();
+        long start = System.nanoTime();
+        ((FlushableConnection) wrappedConnection).sendEncoded(pdu, false);
+        record(pdu, encodedBefore, System.nanoTime() - start);
+    }
+
+    @Override
+    public void flush() throws Exception {
+        if (wrappedConnection instanceof FlushableConnection) {
+            ((FlushableConnection) wrappedConnection).flush();
+        }
+    }
+
+    @Override
+    public void endOfBatch() throws Exception {
+        if (wrappedConnection instanceof FlushableConnection) {
+            ((FlushableConnection) wrappedConnection).endOfBatch();
+        }
+    }
+
+    @Override
+    public FlushPolicy getFlushPolicy() {
+        if (wrappedConnection instanceof FlushableConnection) {
+            return ((FlushableConnection) wrappedConnection).getFlushPolicy();
+        }
+        return FlushPolicy.IMMEDIATE;
+    }
+
+    @Override
+    public long getNumberOfRetries() {
+        if (wrappedConnection instanceof RetransmittingConnection) {
+            return ((RetransmittingConnection) wrappedConnection).getNumberOfRetries();
+        }
+        return 0;
+    }
+
+    @Override
+    public long getNumberOfLostMessages() {
+        if (wrappedConnection instanceof RetransmittingConnection) {
+            return ((RetransmittingConnection) wrappedConnection).getNumberOfLostMessages();
+        }
+        return 0;
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        if (wrappedConnection instanceof RetransmittingConnection) {
+            ((RetransmittingConnection) wrappedConnection).setListener(listener);
+        }
+    }
+
+    @Override
+    public void release(ChatPDU pdu) {
+        if (wrappedConnection instanceof PooledConnection) {
+            ((PooledConnection) wrappedConnection).release(pdu);
+        }
+    }
+
+    @Override
+    public long getLastDecodeTime() {
+        if (wrappedConnection instanceof DecodeTimingConnection) {
+            return ((DecodeTimingConnection) wrappedConnection).getLastDecodeTime();
+        }
+        return 0;
+    }
+
+    /**
+     * Die Schreibzeit eines gesammelten Aufrufs (ohne Kodierung) wird zu
+     * gleichen Teilen auf die enthaltenen PDUs verteilt
+     */
+    @Override
+    public void sendGathered(List<EncodedPdu> pdus) throws Exception {
+        if (!(wrappedConnection instanceof GatheringConnection)) {
+            for (EncodedPdu pdu : pdus) {
+                sendEncoded(pdu);
+            }
+            return;
+        }
+
+        int count = pdus.size();
+        boolean[] encodedBefore = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            encodedBefore[i] = pdus.get(i).isEncoded();
+        }
+        long start = System.nanoTime();
+        ((GatheringConnection) wrappedConnection).sendGathered(pdus);
+        long elapsed = System.nanoTime() - start;
+
+        long[] encodeTimes = new long[count];
+        for (int i = 0; i < count; i++) {
+            encodeTimes[i] = encodeTime(pdus.get(i), encodedBefore[i]);
+            elapsed -= Math.max(0, encodeTimes[i]);
+        }
+        long sendShare = Math.max(0, elapsed) / count;
+        for (int i = 0; i < count; i++) {
+            EncodedPdu pdu = pdus.get(i);
+            metrics.sent(pdu.getPdu().getPduType(), sendShare, encodeTimes[i],
+                    pdu.getEncodedLength());
+        }
+    }
+
+    private void record(EncodedPdu pdu, boolean encodedBefore, long elapsed) {
+        long encodeTime = encodeTime(pdu, encodedBefore);
+        metrics.sent(pdu.getPdu().getPduType(), Math.max(0, elapsed - Math.max(0, encodeTime)),
+                encodeTime, pdu.getEncodedLength());
+    }
+
+    /**
+     * @return Dauer der Kodierung, wenn sie bei diesem Aufruf stattfand, sonst -1
+     */
+    private static long encodeTime(EncodedPdu pdu, boolean encodedBefore) {
+        return (!encodedBefore && pdu.isEncoded()) ? pdu.getEncodeTime() : -1;
+    }
+
+    @Override
+    public void close() throws Exception {
+        wrappedConnection.close();
+    }
+}
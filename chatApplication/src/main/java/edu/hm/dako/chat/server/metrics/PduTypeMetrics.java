@@ -0,0 +1,118 @@
+package edu.hm.dako.chat.server.metrics;
+
+import edu.hm.dako.chat.common.LatencyHistogram;
+import edu.hm.dako.chat.common.PduType;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Kennzahlen eines PDU-Typs. Zaehler sind als {@link LongAdder} ausgelegt,
+ * damit sich viele Worker- und Writer-Threads beim Hochzaehlen nicht
+ * gegenseitig ausbremsen; Zeiten werden in {@link LatencyHistogram}s in ns
+ * eingetragen.
+ * <p/>
+ * Je nach Typ sind nur einige Kennzahlen belegt: Requests und Confirms werden
+ * empfangen und verarbeitet, Events werden verteilt und deren Confirms
+ * gesammelt, Events und Responses werden kodiert und gesendet.
+ *
+ * @author Peter Mandl
+ */
+public class PduTypeMetrics {
+
+    private final PduType pduType;
+
+    // Empfangene PDUs und deren Bearbeitungszeit im Worker (ab Empfang)
+    private final LongAdder received = new LongAdder();
+    private final LatencyHistogram processingTime = new LatencyHistogram();
+
+    // Verteilung eines Events an alle Clients: Dauer der Sendeschleife und
+    // Anzahl der Empfaenger
+    private final LongAdder fanOutRecipients = new LongAdder();
+    private final LatencyHistogram fanOutTime = new LatencyHistogram();
+
+    // Zeit vom Eintreffen des Requests bis zum letzten Confirm
+    private final LatencyHistogram confirmTime = new LatencyHistogram();
+
+    // Auf die Verbindung geschriebene PDUs: Kodierung und Schreiben getrennt
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder sentBytes = new LongAdder();
+    private final LatencyHistogram encodeTime = new LatencyHistogram();
+    private final LatencyHistogram sendTime = new LatencyHistogram();
+
+    PduTypeMetrics(PduType pduType) {
+        this.pduType = pduType;
+    }
+
+    void received(long processingNanos) {
+        received.increment();
+        processingTime.recordValue(processingNanos);
+    }
+
+    void fannedOut(long fanOutNanos, int recipients) {
+        fanOutRecipients.add(recipients);
+        fanOutTime.recordValue(fanOutNanos);
+    }
+
+    void confirmsCollected(long confirmNanos) {
+        confirmTime.recordValue(confirmNanos);
+    }
+
+    void sent(long sendNanos, long encodeNanos, int bytes) {
+        sent.increment();
+        sendTime.recordValue(sendNanos);
+        if (encodeNanos >= 0) {
+            encodeTime.recordValue(encodeNanos);
+        }
+        if (bytes > 0) {
+            sentBytes.add(bytes);
+        }
+    }
+
+    /**
+     * @return true, wenn fuer den Typ bereits etwas gezaehlt wurde
+     */
+    public boolean isActive() {
+        return received.sum() > 0 || sent.sum() > 0 || fanOutTime.getTotalCount() > 0
+                || confirmTime.getTotalCount() > 0;
+    }
+
+    public PduType getPduType() {
+        return pduType;
+    }
+
+    public long getReceived() {
+        return received.sum();
+    }
+
+    public long getSent() {
+        return sent.sum();
+    }
+
+    public long getSentBytes() {
+        return sentBytes.sum();
+    }
+
+    public long getFanOutRecipients() {
+        return fanOutRecipients.sum();
+    }
+
+    public LatencyHistogram getProcessingTime() {
+        return processingTime;
+    }
+
+    public LatencyHistogram getFanOutTime() {
+        return fanOutTime;
+    }
+
+    public LatencyHistogram getConfirmTime() {
+        return confirmTime;
+    }
+
+    public LatencyHistogram getEncodeTime() {
+        return encodeTime;
+    }
+
+    public LatencyHistogram getSendTime() {
+        return sendTime;
+    }
+}
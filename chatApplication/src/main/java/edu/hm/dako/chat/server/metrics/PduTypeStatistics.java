@@ -0,0 +1,91 @@
+package edu.hm.dako.chat.server.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Unveraenderliche Momentaufnahme der Kennzahlen eines PDU-Typs, wird ueber
+ * JMX als CompositeData ausgeliefert
+ *
+ * @author Peter Mandl
+ */
+public class PduTypeStatistics {
+
+    private final String pduType;
+    private final long received;
+    private final long sent;
+    private final long sentBytes;
+    private final long fanOutRecipients;
+    private final TimerStatistics processingTime;
+    private final TimerStatistics fanOutTime;
+    private final TimerStatistics confirmTime;
+    private final TimerStatistics encodeTime;
+    private final TimerStatistics sendTime;
+
+    @ConstructorProperties({"pduType", "received", "sent", "sentBytes", "fanOutRecipients",
+            "processingTime", "fanOutTime", "confirmTime", "encodeTime", "sendTime"})
+    public PduTypeStatistics(String pduType, long received, long sent, long sentBytes,
+                             long fanOutRecipients, TimerStatistics processingTime,
+                             TimerStatistics fanOutTime, TimerStatistics confirmTime,
+                             TimerStatistics encodeTime, TimerStatistics sendTime) {
+        this.pduType = pduType;
+        this.received = received;
+        this.sent = sent;
+        this.sentBytes = sentBytes;
+        this.fanOutRecipients = fanOutRecipients;
+        this.processingTime = processingTime;
+        this.fanOutTime = fanOutTime;
+        this.confirmTime = confirmTime;
+        this.encodeTime = encodeTime;
+        this.sendTime = sendTime;
+    }
+
+    static PduTypeStatistics of(PduTypeMetrics metrics) {
+        return new PduTypeStatistics(metrics.getPduType().name(), metrics.getReceived(),
+                metrics.getSent(), metrics.getSentBytes(), metrics.getFanOutRecipients(),
+                TimerStatistics.of(metrics.getProcessingTime()),
+                TimerStatistics.of(metrics.getFanOutTime()),
+                TimerStatistics.of(metrics.getConfirmTime()),
+                TimerStatistics.of(metrics.getEncodeTime()),
+                TimerStatistics.of(metrics.getSendTime()));
+    }
+
+    public String getPduType() {
+        return pduType;
+    }
+
+    public long getReceived() {
+        return received;
+    }
+
+    public long getSent() {
+        return sent;
+    }
+
+    public long getSentBytes() {
+        return sentBytes;
+    }
+
+    public long getFanOutRecipients() {
+        return fanOutRecipients;
+    }
+
+    public TimerStatistics getProcessingTime() {
+        return processingTime;
+    }
+
+    public TimerStatistics getFanOutTime() {
+        return fanOutTime;
+    }
+
+    public TimerStatistics getConfirmTime() {
+        return confirmTime;
+    }
+
+    public TimerStatistics getEncodeTime() {
+        return encodeTime;
+    }
+
+    public TimerStatistics getSendTime() {
+        return sendTime;
+    }
+}
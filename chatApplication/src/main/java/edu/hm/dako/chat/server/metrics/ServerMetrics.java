@@ -0,0 +1,265 @@
+package edu.hm.dako.chat.server.metrics;
+
+import edu.hm.dako.chat.common.ExceptionHandler;
+import edu.hm.dako.chat.common.PduType;
+import edu.hm.dako.chat.connection.OutboundQueueMetrics;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kennzahlen eines Chat-Servers je PDU-Typ. Damit laesst sich z.B. klaeren,
+ * ob eine langsame Chat-Message-Response beim Verteilen des Events, beim
+ * Warten auf die Confirms, beim Kodieren oder beim Schreiben auf die
+ * Verbindung Zeit verloren hat:
+ * <ul>
+ * <li>Empfangen: Anzahl und Bearbeitungszeit im Worker ab dem Empfang</li>
+ * <li>Verteilen: Dauer der Sendeschleife eines Events an alle Clients</li>
+ * <li>Confirms: Zeit vom Eintreffen des Requests bis zum letzten Confirm</li>
+ * <li>Kodieren und Senden: gemessen von {@link MeasuringConnectionDecorator}
+ * unterhalb der Ausgangswarteschlange, inkl. gesendeter Bytes</li>
+ * </ul>
+ * Die Kennzahlen werden ohne Sperren fortgeschrieben. Sie sind ueber JMX
+ * ({@value #OBJECT_NAME}) abrufbar und koennen periodisch in eine Datei
+ * geschrieben werden.
+ *
+ * @author Peter Mandl
+ */
+public class ServerMetrics implements ServerMetricsMXBean {
+
+    private static Log log = LogFactory.getLog(ServerMetrics.class);
+
+    public static final String OBJECT_NAME = "edu.hm.dako.chat:type=ServerMetrics";
+
+    // Kennzahlen je PDU-Typ, Index ist die Ordinalzahl
+    private final PduTypeMetrics[] pduTypeMetrics;
+
+    private final OutboundQueueMetrics outboundQueueMetrics;
+
+    // Schreibt die Snapshot-Datei, null: keine Datei
+    private ScheduledExecutorService snapshotWriter;
+    private File snapshotFile;
+
+    private ObjectName registeredName;
+
+    /**
+     * @param outboundQueueMetrics Kennzahlen der Ausgangswarteschlangen, die mit
+     *                             ausgegeben werden
+     */
+    public ServerMetrics(OutboundQueueMetrics outboundQueueMetrics) {
+        this.outboundQueueMetrics = outboundQueueMetrics;
+        PduType[] types = PduType.values();
+        pduTypeMetrics = new PduTypeMetrics[types.length];
+        for (PduType type : types) {
+            pduTypeMetrics[type.ordinal()] = new PduTypeMetrics(type);
+        }
+    }
+
+    /**
+     * Empfangene PDU nach ihrer Bearbeitung eintragen
+     *
+     * @param pduType         Typ der PDU
+     * @param processingNanos Bearbeitungszeit ab dem Empfang in ns
+     */
+    public void received(PduType pduType, long processingNanos) {
+        get(pduType).received(processingNanos);
+    }
+
+    /**
+     * Verteilung eines Events an alle Clients eintragen
+     *
+     * @param pduType     Typ des Events
+     * @param fanOutNanos Dauer der Sendeschleife in ns
+     * @param recipients  Anzahl der Empfaenger
+     */
+    public void fannedOut(PduType pduType, long fanOutNanos, int recipients) {
+        get(pduType).fannedOut(fanOutNanos, recipients);
+    }
+
+    /**
+     * Letzten Confirm zu einem Event eintragen
+     *
+     * @param pduType      Typ des Events
+     * @param confirmNanos Zeit vom Eintreffen des Requests bis zum letzten
+     *                     Confirm in ns
+     */
+    public void confirmsCollected(PduType pduType, long confirmNanos) {
+        get(pduType).confirmsCollected(confirmNanos);
+    }
+
+    /**
+     * Auf eine Verbindung geschriebene PDU eintragen
+     *
+     * @param pduType     Typ der PDU
+     * @param sendNanos   Dauer des Schreibens ohne Kodierung in ns
+     * @param encodeNanos Dauer der Kodierung in ns, -1: unbekannt oder nicht
+     *                    bei diesem Aufruf kodiert
+     * @param bytes       Laenge des Rahmens, -1: unbekannt
+     */
+    public void sent(PduType pduType, long sendNanos, long encodeNanos, int bytes) {
+        get(pduType).sent(sendNanos, encodeNanos, bytes);
+    }
+
+    public PduTypeMetrics get(PduType pduType) {
+        return pduTypeMetrics[(pduType == null) ? 0 : pduType.ordinal()];
+    }
+
+    /**
+     * Als MXBean beim Plattform-MBean-Server anmelden. Eine bereits
+     * angemeldete Instanz (z.B. eines zuvor gestoppten Servers im selben
+     * Prozess) wird ersetzt.
+     */
+    public void registerMBean() {
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (mBeanServer.isRegistered(name)) {
+                mBeanServer.unregisterMBean(name);
+            }
+            mBeanServer.registerMBean(this, name);
+            registeredName = name;
+        } catch (Exception e) {
+            log.error("Serverkennzahlen koennen nicht bei JMX angemeldet werden");
+            ExceptionHandler.logException(e);
+        }
+    }
+
+    /**
+     * Kennzahlen periodisch in eine Datei schreiben. Die Datei wird jedes Mal
+     * vollstaendig mit dem aktuellen Stand ueberschrieben.
+     *
+     * @param fileName Name der Datei
+     * @param interval Abstand in Sekunden
+     */
+    public synchronized void startSnapshots(String fileName, int interval) {
+        snapshotFile = new File(fileName);
+        snapshotWriter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ServerMetricsSnapshot");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        snapshotWriter.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                writeSnapshot();
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+        log.debug("Serverkennzahlen werden alle " + interval + " s nach " + fileName
+                + " geschrieben");
+    }
+
+    /**
+     * Snapshot-Datei ein letztes Mal schreiben und von JMX abmelden
+     */
+    public synchronized void shutdown() {
+        if (snapshotWriter != null) {
+            snapshotWriter.shutdownNow();
+            snapshotWriter = null;
+            writeSnapshot();
+        }
+        if (registeredName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+            } catch (Exception e) {
+                log.debug("Abmelden der Serverkennzahlen bei JMX fehlgeschlagen: "
+                        + e.getMessage());
+            }
+            registeredName = null;
+        }
+    }
+
+    private void writeSnapshot() {
+        PrintWriter out = null;
+        try {
+            out = new PrintWriter(new OutputStreamWriter(
+                    new FileOutputStream(snapshotFile), "UTF-8"));
+            out.println("Serverkennzahlen vom " + new Date());
+            out.print(getSnapshot());
+        } catch (Exception e) {
+            log.error("Snapshot-Datei " + snapshotFile + " kann nicht geschrieben werden");
+            ExceptionHandler.logException(e);
+        } finally {
+            if (out != null) {
+                out.close();
+            }
+        }
+    }
+
+    @Override
+    public List<PduTypeStatistics> getPduTypeStatistics() {
+        List<PduTypeStatistics> statistics = new ArrayList<PduTypeStatistics>();
+        for (PduTypeMetrics metrics : pduTypeMetrics) {
+            if (metrics.isActive()) {
+                statistics.add(PduTypeStatistics.of(metrics));
+            }
+        }
+        return statistics;
+    }
+
+    @Override
+    public long getOutboundQueueDepth() {
+        return outboundQueueMetrics.getCurrentDepth();
+    }
+
+    @Override
+    public long getOutboundQueueMaxDepth() {
+        return outboundQueueMetrics.getMaxDepth();
+    }
+
+    @Override
+    public long getDroppedMessages() {
+        return outboundQueueMetrics.getDroppedMessages();
+    }
+
+    @Override
+    public long getBlockedSends() {
+        return outboundQueueMetrics.getBlockedSends();
+    }
+
+    /**
+     * Eine Zeile je aktivem PDU-Typ, Zeiten als Mittel/99%-Percentil/Maximum
+     * in Mikrosekunden
+     */
+    @Override
+    public String getSnapshot() {
+        StringBuilder snapshot = new StringBuilder();
+        snapshot.append("PDU-Typ; empfangen; Bearbeitung; verteilt an; Verteilung; Confirms;"
+                + " gesendet; Byte; Kodierung; Senden (Zeiten in us: Mittel/p99/Max)\n");
+        for (PduTypeStatistics s : getPduTypeStatistics()) {
+            snapshot.append(s.getPduType()).append("; ")
+                    .append(s.getReceived()).append("; ")
+                    .append(s.getProcessingTime()).append("; ")
+                    .append(s.getFanOutRecipients()).append("; ")
+                    .append(s.getFanOutTime()).append("; ")
+                    .append(s.getConfirmTime()).append("; ")
+                    .append(s.getSent()).append("; ")
+                    .append(s.getSentBytes()).append("; ")
+                    .append(s.getEncodeTime()).append("; ")
+                    .append(s.getSendTime()).append('\n');
+        }
+        snapshot.append(outboundQueueMetrics).append('\n');
+        return snapshot.toString();
+    }
+
+    @Override
+    public String toString() {
+        return getSnapshot();
+    }
+}
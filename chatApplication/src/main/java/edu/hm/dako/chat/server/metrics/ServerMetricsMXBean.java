@@ -0,0 +1,36 @@
+package edu.hm.dako.chat.server.metrics;
+
+import java.util.List;
+
+/**
+ * JMX-Schnittstelle der Serverkennzahlen, z.B. fuer JConsole oder
+ * VisualVM. Alle Zeiten in Mikrosekunden.
+ *
+ * @author Peter Mandl
+ */
+public interface ServerMetricsMXBean {
+
+    /**
+     * @return Kennzahlen aller PDU-Typen, fuer die bereits etwas gezaehlt wurde
+     */
+    List<PduTypeStatistics> getPduTypeStatistics();
+
+    /**
+     * @return Summe der aktuellen Laengen aller Ausgangswarteschlangen
+     */
+    long getOutboundQueueDepth();
+
+    /**
+     * @return Groesste beobachtete Laenge einer Ausgangswarteschlange
+     */
+    long getOutboundQueueMaxDepth();
+
+    long getDroppedMessages();
+
+    long getBlockedSends();
+
+    /**
+     * @return Alle Kennzahlen als Text, wie in der Snapshot-Datei
+     */
+    String getSnapshot();
+}
@@ -0,0 +1,82 @@
+package edu.hm.dako.chat.server.metrics;
+
+import edu.hm.dako.chat.common.LatencyHistogram;
+
+import java.beans.ConstructorProperties;
+import java.util.Locale;
+
+/**
+ * Unveraenderliche Auswertung eines Zeit-Histogramms fuer JMX und die
+ * Ausgabe der Kennzahlen. Alle Zeiten in Mikrosekunden.
+ *
+ * @author Peter Mandl
+ */
+public class TimerStatistics {
+
+    private final long count;
+    private final double mean;
+    private final double percentile50;
+    private final double percentile99;
+    private final double percentile999;
+    private final double maximum;
+
+    @ConstructorProperties({"count", "mean", "percentile50", "percentile99",
+            "percentile999", "maximum"})
+    public TimerStatistics(long count, double mean, double percentile50, double percentile99,
+                           double percentile999, double maximum) {
+        this.count = count;
+        this.mean = mean;
+        this.percentile50 = percentile50;
+        this.percentile99 = percentile99;
+        this.percentile999 = percentile999;
+        this.maximum = maximum;
+    }
+
+    /**
+     * Auswertung eines Histogramms mit Werten in ns
+     *
+     * @param histogram Histogramm
+     * @return Auswertung in Mikrosekunden
+     */
+    static TimerStatistics of(LatencyHistogram histogram) {
+        return new TimerStatistics(histogram.getTotalCount(),
+                histogram.getMean() / 1000.0,
+                histogram.getValueAtPercentile(50.0) / 1000.0,
+                histogram.getValueAtPercentile(99.0) / 1000.0,
+                histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getMax() / 1000.0);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getPercentile50() {
+        return percentile50;
+    }
+
+    public double getPercentile99() {
+        return percentile99;
+    }
+
+    public double getPercentile999() {
+        return percentile999;
+    }
+
+    public double getMaximum() {
+        return maximum;
+    }
+
+    @Override
+    public String toString() {
+        if (count == 0) {
+            return "-";
+        }
+        return String.format(Locale.ROOT, "%.1f/%.1f/%.1f", mean, percentile99,
+                maximum);
+    }
+}
@@ -1,31 +1,38 @@
 package edu.hm.dako.chat.server.worker;
 
+import edu.hm.dako.chat.codec.EncodedPdu;
 import edu.hm.dako.chat.common.ChatPDU;
 import edu.hm.dako.chat.common.ClientConversationStatus;
 import edu.hm.dako.chat.common.ClientListEntry;
 import edu.hm.dako.chat.common.ExceptionHandler;
+import edu.hm.dako.chat.common.WaitList;
 import edu.hm.dako.chat.connection.Connection;
 import edu.hm.dako.chat.connection.ConnectionTimeoutException;
+import edu.hm.dako.chat.connection.DecodeTimingConnection;
 import edu.hm.dako.chat.connection.EndOfFileException;
+import edu.hm.dako.chat.connection.FlushableConnection;
+import edu.hm.dako.chat.connection.PooledConnection;
 import edu.hm.dako.chat.server.ChatServerGuiInterface;
 import edu.hm.dako.chat.server.SharedChatClientList;
 import edu.hm.dako.chat.server.SharedServerCounter;
+import edu.hm.dako.chat.server.UserDirectory;
+import edu.hm.dako.chat.server.metrics.ServerMetrics;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import javax.sound.midi.Soundbank;
+import java.util.ArrayList;
 import java.util.Vector;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Abstrakte Klasse mit Basisfunktionalitaet fuer serverseitige Worker-Threads
+ * Abstrakte Klasse mit Basisfunktionalitaet fuer serverseitige Worker-Threads.
+ * Ein Worker ist eine Aufgabe fuer den Executor des Servers und kann daher
+ * sowohl in einem normalen als auch in einem virtuellen Thread laufen.
  *
  * @author Peter Mandl
  */
-public abstract class AbstractWorkerThread extends Thread {
-
-    protected static final int NO_LOST_EVENT_CONFIRMS = 0;
-    protected static final int NO_NUMBER_OF_RETRIES = 0;
+public abstract class AbstractWorkerThread implements Runnable {
 
     private static Log log = LogFactory.getLog(AbstractWorkerThread.class);
 
@@ -38,12 +45,21 @@ public abstract class AbstractWorkerThread extends Thread {
     // Username des durch den Worker-Thread bedienten Clients
     protected String userName = null;
 
+    // Eintrag des bedienten Clients in der Clientliste, wird beim Login
+    // gesetzt. Ueber ihn (bzw. seine Client-ID) laufen Confirms und Events
+    // ohne Namensaufloesung
+    protected ClientListEntry clientEntry = null;
+
     // Client-Threadname
     protected String clientThreadName = null;
 
     // Startzeit fuer die Serverbearbeitungszeit
     protected long startTime;
 
+    // Dauer der Dekodierung der zuletzt empfangenen PDU in ns, 0: nicht
+    // gemessen (siehe DecodeTimingConnection)
+    protected long decodeTime;
+
     // Gemeinsam fuer alle Workerthreads verwaltete Liste aller eingeloggten
     // Clients
     protected final SharedChatClientList clients;
@@ -53,8 +69,16 @@ public abstract class AbstractWorkerThread extends Thread {
     protected AtomicInteger eventCounter;
     protected AtomicInteger confirmCounter;
 
+    // Kennzahlen je PDU-Typ
+    protected ServerMetrics metrics;
+
     protected ChatServerGuiInterface serverGuiInterface;
 
+    // Verbindungen, an die in der laufenden Verteilschleife ohne Flush
+    // gesendet wurde
+    private final ArrayList<FlushableConnection> broadcastRecipients =
+            new ArrayList<FlushableConnection>();
+
     public AbstractWorkerThread(Connection con, SharedChatClientList clients,
                                 SharedServerCounter counter, ChatServerGuiInterface serverGuiInterface) {
         this.connection = con;
@@ -62,6 +86,7 @@ public abstract class AbstractWorkerThread extends Thread {
         this.logoutCounter = counter.logoutCounter;
         this.eventCounter = counter.eventCounter;
         this.confirmCounter = counter.confirmCounter;
+        this.metrics = counter.metrics;
         this.serverGuiInterface = serverGuiInterface;
     }
 
@@ -123,6 +148,7 @@ public abstract class AbstractWorkerThread extends Thread {
             // Nachricht empfangen
             // Zeitmessung fuer Serverbearbeitungszeit starten
             startTime = System.nanoTime();
+            decodeTime = lastDecodeTime();
 
         } catch (ConnectionTimeoutException e) {
 
@@ -151,7 +177,7 @@ public abstract class AbstractWorkerThread extends Thread {
 
         } catch (java.net.SocketException e) {
             log.debug("Verbindungsabbruch beim Empfang der naechsten Nachricht vom Client "
-                    + getName());
+                    + Thread.currentThread().getName());
             finished = true;
             return;
 
@@ -163,6 +189,13 @@ public abstract class AbstractWorkerThread extends Thread {
         }
 
         switchIncomingPdu(receivedPdu);
+        metrics.received(receivedPdu.getPduType(), System.nanoTime() - startTime);
+
+        // Die Bearbeitung haelt keine Referenzen auf die empfangene PDU, sie
+        // kann daher wiederverwendet werden
+        if (connection instanceof PooledConnection) {
+            ((PooledConnection) connection).release(receivedPdu);
+        }
     }
 
     /**
@@ -171,27 +204,29 @@ public abstract class AbstractWorkerThread extends Thread {
      * @param eventInitiatorClient Name des Clients
      */
     void sendLogoutResponse(String eventInitiatorClient) {
-        sendLogoutResponse(eventInitiatorClient, null);
+        sendLogoutResponse(eventInitiatorClient, ChatPDU.NO_TRANSACTION_ID);
     }
 
-    void sendLogoutResponse(String eventInitiatorClient, String transactionId) {
+    void sendLogoutResponse(String eventInitiatorClient, long transactionId) {
         ClientListEntry client = clients.getClient(eventInitiatorClient);
 
         if (client != null) {
             ChatPDU responsePdu = ChatPDU.createLogoutResponsePdu(
                     eventInitiatorClient,
                     client.getNumberOfSentEvents(),
-                    NO_LOST_EVENT_CONFIRMS,
+                    client.getNumberOfLostEventConfirms(),
                     client.getNumberOfReceivedEventConfirms(),
-                    NO_NUMBER_OF_RETRIES,
+                    client.getNumberOfRetries(),
                     client.getNumberOfReceivedChatMessages(),
                     clientThreadName);
             responsePdu.setTransactionId(transactionId);
             responsePdu.setEventUserName(eventInitiatorClient);
 
-            log.debug(eventInitiatorClient + ": SentEvents aus Clientliste: "
-                    + client.getNumberOfSentEvents() + ": ReceivedConfirms aus Clientliste: "
-                    + client.getNumberOfReceivedEventConfirms());
+            if (log.isDebugEnabled()) {
+                log.debug(eventInitiatorClient + ": SentEvents aus Clientliste: "
+                        + client.getNumberOfSentEvents() + ": ReceivedConfirms aus Clientliste: "
+                        + client.getNumberOfReceivedEventConfirms());
+            }
             try {
                 clients.getClient(eventInitiatorClient).getConnection().send(responsePdu);
 
@@ -205,7 +240,9 @@ public abstract class AbstractWorkerThread extends Thread {
                 e.printStackTrace();
             }
 
-            log.debug("Logout-Response-PDU an Client " + eventInitiatorClient + " gesendet");
+            if (log.isDebugEnabled()) {
+                log.debug("Logout-Response-PDU an Client " + eventInitiatorClient + " gesendet");
+            }
         }
     }
 
@@ -213,8 +250,9 @@ public abstract class AbstractWorkerThread extends Thread {
     protected abstract void switchIncomingPdu(ChatPDU receivedPdu);
 
     void loginResponse(ChatPDU receivedPdu) {
-        // Login Response senden
+        // Login Response mit der vollstaendigen Userliste senden
         ChatPDU responsePdu = ChatPDU.createLoginResponsePdu(userName, receivedPdu);
+        setUserList(responsePdu);
 
         try {
             clients.getClient(userName).getConnection().send(responsePdu);
@@ -223,12 +261,69 @@ public abstract class AbstractWorkerThread extends Thread {
             log.debug("Exception Message: " + e.getMessage());
         }
 
-        log.debug("Login-Response-PDU an Client " + userName + " gesendet");
+        if (log.isDebugEnabled()) {
+            log.debug("Login-Response-PDU an Client " + userName + " gesendet");
+        }
 
         // Zustand des Clients aendern
         clients.changeClientStatus(userName, ClientConversationStatus.REGISTERED);
     }
 
+    /**
+     * Aktuellen Stand der Userliste mit Version in eine PDU eintragen. Die
+     * Liste wird nicht kopiert, sondern von allen PDUs gemeinsam genutzt.
+     *
+     * @param pdu Login-Response- oder User-List-Response-PDU
+     */
+    void setUserList(ChatPDU pdu) {
+        UserDirectory.Snapshot snapshot = clients.getUserListSnapshot();
+        pdu.setClients(snapshot.getUsers());
+        pdu.setUserListVersion(snapshot.getVersion());
+    }
+
+    /**
+     * Aktion fuer die Behandlung ankommender User-List-Requests: Ein Client hat
+     * eine Luecke in den Versionen der Login- und Logout-Events festgestellt
+     * und erhaelt die vollstaendige Userliste
+     *
+     * @param receivedPdu Empfangene PDU
+     */
+    void userListRequestAction(ChatPDU receivedPdu) {
+        UserDirectory.Snapshot snapshot = clients.getUserListSnapshot();
+        ChatPDU responsePdu = ChatPDU.createUserListResponsePdu(receivedPdu,
+                snapshot.getUsers(), snapshot.getVersion());
+
+        if (log.isDebugEnabled()) {
+            log.debug("User-List-Request von " + receivedPdu.getUserName() + ", bekannte Version "
+                    + receivedPdu.getUserListVersion() + ", aktuelle Version "
+                    + snapshot.getVersion());
+        }
+        try {
+            connection.send(responsePdu);
+        } catch (Exception e) {
+            log.debug("Senden einer User-List-Response-PDU an " + receivedPdu.getUserName()
+                    + " nicht moeglich");
+            ExceptionHandler.logException(e);
+        }
+    }
+
+    /**
+     * Bestaetigenden Client (den von diesem Worker bedienten) aus der
+     * Warteliste des Requests austragen, zu dem ein Confirm gehoert. Traegt
+     * der Confirm die Client-ID des Initiators, wird kein Name aufgeloest.
+     *
+     * @param confirmPdu Empfangene Confirm-PDU
+     * @return Die mit diesem Confirm leer gewordene Warteliste, sonst null
+     */
+    WaitList deleteWaitListEntry(ChatPDU confirmPdu) {
+        if ((confirmPdu.getEventClientId() != 0) && (clientEntry != null)) {
+            return clients.deleteWaitListEntry(confirmPdu.getEventClientId(),
+                    confirmPdu.getTransactionId(), clientEntry);
+        }
+        return clients.deleteWaitListEntry(confirmPdu.getEventUserName(),
+                confirmPdu.getTransactionId(), confirmPdu.getUserName());
+    }
+
     void loginRequestFromUnknownClient(ChatPDU receivedPdu) {
         ChatPDU pdu;// User bereits angemeldet, Fehlermeldung an Client senden,
         // Fehlercode an Client senden
@@ -236,59 +331,123 @@ public abstract class AbstractWorkerThread extends Thread {
 
         try {
             connection.send(pdu);
-            log.debug("Login-Response-PDU an " + receivedPdu.getUserName()
-                    + " mit Fehlercode " + ChatPDU.LOGIN_ERROR + " gesendet");
+            if (log.isDebugEnabled()) {
+                log.debug("Login-Response-PDU an " + receivedPdu.getUserName()
+                        + " mit Fehlercode " + ChatPDU.LOGIN_ERROR + " gesendet");
+            }
         } catch (Exception e) {
             log.debug("Senden einer Login-Response-PDU an " + receivedPdu.getUserName()
                     + " nicth moeglich");
-            ExceptionHandler.logExceptionAndTerminate(e);
+            ExceptionHandler.logException(e);
+            finished = true;
         }
     }
 
     /**
-     * Senden eines Login-List-Update-Event an alle angemeldeten Clients
+     * Senden eines Login-List-Update-Event an alle angemeldeten Clients. Das
+     * Event enthaelt nicht die ganze Userliste, sondern nur den an- bzw.
+     * abgemeldeten User (Username der PDU) und die Version dieser Aenderung
+     * im Userverzeichnis. Die Clients fuehren ihre Liste damit selbst nach.
      *
      * @param pdu Zu sendende PDU
      */
     void sendLoginListUpdateEvent(ChatPDU pdu) {
 
-        // Liste der eingeloggten bzw. sich einloggenden User ermitteln
-        Vector<String> clientList = clients.getRegisteredClientNameList();
-
-        log.debug("Aktuelle Clientliste, die an die Clients uebertragen wird: " + clientList);
+        pdu.setUserListVersion(clients.getUserListVersion(pdu.getUserName()));
+        if (clientEntry != null) {
+            pdu.setEventClientId(clientEntry.getClientId());
+        }
 
-        pdu.setClients(clientList);
+        if (log.isDebugEnabled()) {
+            log.debug(pdu.getPduType() + " fuer " + pdu.getUserName()
+                    + ", Version der Userliste: " + pdu.getUserListVersion());
+        }
 
-        Vector<String> clientList2 = clients.getClientNameList();
-        for (String s : new Vector<>(clientList2)) {
+        // Event nur einmal kodieren und an alle Clients verteilen
+        EncodedPdu event = new EncodedPdu(pdu);
+        long fanOutStart = System.nanoTime();
+        int recipients = 0;
 
-            log.debug("Fuer " + s + " wird Login- oder Logout-Event-PDU an alle aktiven Clients gesendet");
+        // Alle Clients ueber ihre Client-ID durchlaufen
+        int maxClientId = clients.getMaxClientId();
+        for (int id = 1; id <= maxClientId; id++) {
 
-            ClientListEntry client = clients.getClient(s);
+            ClientListEntry client = clients.getClient(id);
+            if ((client != null) && log.isDebugEnabled()) {
+                log.debug("Fuer " + client.getUserName()
+                        + " wird Login- oder Logout-Event-PDU an alle aktiven Clients gesendet");
+            }
             try {
                 if (client != null) {
 
                     //Information für debugging
                     DirectionInfo.printPduDirection(pdu, DirectionInfo.Dir.S_TO_C, userName);
 
-                    client.getConnection().send(pdu);
-                    log.debug(
-                            "Login- oder Logout-Event-PDU an " + client.getUserName() + " gesendet");
-                    clients.incrNumberOfSentChatEvents(client.getUserName());
+                    sendBroadcastEvent(client.getConnection(), event);
+                    if (log.isDebugEnabled()) {
+                        log.debug(
+                                "Login- oder Logout-Event-PDU an " + client.getUserName() + " gesendet");
+                    }
+                    client.incrNumberOfSentEvents();
                     eventCounter.getAndIncrement();
-                    log.debug(userName + ": EventCounter bei Login/Logout erhoeht = "
-                            + eventCounter.get() + ", ConfirmCounter = " + confirmCounter.get());
+                    recipients++;
+                    if (log.isDebugEnabled()) {
+                        log.debug(userName + ": EventCounter bei Login/Logout erhoeht = "
+                                + eventCounter.get() + ", ConfirmCounter = " + confirmCounter.get());
+                    }
                 }
             } catch (Exception e) {
-                log.debug("Senden einer Login- oder Logout-Event-PDU an " + s + " nicht moeglich");
+                log.debug("Senden einer Login- oder Logout-Event-PDU an " + client.getUserName()
+                        + " nicht moeglich");
                 ExceptionHandler.logException(e);
             }
         }
+        endOfBroadcast();
+        metrics.fannedOut(pdu.getPduType(), System.nanoTime() - fanOutStart, recipients);
+    }
+
+    /**
+     * Event innerhalb einer Verteilschleife senden. Unterstuetzt die
+     * Verbindung das Zurueckhalten von PDUs, wird ohne Flush gesendet und die
+     * Verbindung fuer {@link #endOfBroadcast()} vorgemerkt; wann geschrieben
+     * wird, bestimmt dann ihre FlushPolicy.
+     *
+     * @param connection Verbindung zum Empfaenger
+     * @param event      Einmal kodiertes Event
+     * @throws Exception Fehler beim Senden
+     */
+    void sendBroadcastEvent(Connection connection, EncodedPdu event) throws Exception {
+        if (connection instanceof FlushableConnection) {
+            FlushableConnection flushable = (FlushableConnection) connection;
+            flushable.sendEncoded(event, false);
+            broadcastRecipients.add(flushable);
+        } else {
+            connection.sendEncoded(event);
+        }
+    }
+
+    /**
+     * Ende einer Verteilschleife: Alle Empfaenger-Verbindungen werden
+     * informiert und schreiben je nach FlushPolicy die zurueckgehaltenen
+     * Events
+     */
+    void endOfBroadcast() {
+        for (int i = 0; i < broadcastRecipients.size(); i++) {
+            try {
+                broadcastRecipients.get(i).endOfBatch();
+            } catch (Exception e) {
+                log.debug("Schreiben zurueckgehaltener Events nicht moeglich");
+                ExceptionHandler.logException(e);
+            }
+        }
+        broadcastRecipients.clear();
     }
 
     @Override
     public void run() {
-        log.debug("ChatWorker-Thread erzeugt, Threadname: " + Thread.currentThread().getName());
+        if (log.isDebugEnabled()) {
+            log.debug("ChatWorker-Thread erzeugt, Threadname: " + Thread.currentThread().getName());
+        }
         while (!finished && !Thread.currentThread().isInterrupted()) {
             try {
                 // Warte auf naechste Nachricht des Clients und fuehre
@@ -299,28 +458,131 @@ public abstract class AbstractWorkerThread extends Thread {
                 ExceptionHandler.logException(e);
             }
         }
-        log.debug(Thread.currentThread().getName() + " beendet sich");
+        if (log.isDebugEnabled()) {
+            log.debug(Thread.currentThread().getName() + " beendet sich");
+        }
         closeConnection();
     }
 
 
+    /**
+     * @return Dauer der Dekodierung der zuletzt empfangenen PDU in ns, 0 wenn
+     * die Verbindung sie nicht misst
+     */
+    private long lastDecodeTime() {
+        if (connection instanceof DecodeTimingConnection) {
+            return ((DecodeTimingConnection) connection).getLastDecodeTime();
+        }
+        return 0;
+    }
+
+    /**
+     * Bearbeitung einer PDU, die nicht vom Worker-Thread selbst, sondern von
+     * einer Event-Loop (siehe {@link edu.hm.dako.chat.nio.NioEventLoop})
+     * empfangen wurde. Die Bearbeitung laeuft im Thread der Event-Loop, dessen
+     * Name anschliessend wiederhergestellt wird.
+     *
+     * @param receivedPdu Empfangene PDU
+     * @return true, wenn die Session beendet werden kann
+     */
+    public boolean processReceivedPdu(ChatPDU receivedPdu) {
+        String eventLoopThreadName = Thread.currentThread().getName();
+        try {
+            // Zeitmessung fuer Serverbearbeitungszeit starten
+            startTime = System.nanoTime();
+            decodeTime = lastDecodeTime();
+            switchIncomingPdu(receivedPdu);
+            metrics.received(receivedPdu.getPduType(), System.nanoTime() - startTime);
+            checkIfClientIsDeletable();
+        } catch (Exception e) {
+            log.error("Exception waehrend der Nachrichtenverarbeitung");
+            ExceptionHandler.logException(e);
+        } finally {
+            Thread.currentThread().setName(eventLoopThreadName);
+        }
+        return finished;
+    }
+
+    /**
+     * Session beenden, ohne dass ein eigener Worker-Thread laeuft (z.B. nach
+     * einem von der Event-Loop erkannten Verbindungsabbruch)
+     */
+    public void terminate() {
+        finished = true;
+        closeConnection();
+    }
+
+    /**
+     * Senden an einen Client ist gescheitert, z.B. weil seine
+     * Ausgangswarteschlange voll war (OverflowPolicy DISCONNECT). Der Client
+     * wird wie nach einem Verbindungsabbruch behandelt: Seine Verbindung wird
+     * geschlossen, sein Worker erkennt das beim Empfang und raeumt die
+     * Clientliste auf. Der Server laeuft fuer alle anderen Clients weiter.
+     *
+     * @param client Eintrag des Clients, darf null sein
+     */
+    void clientDisconnected(ClientListEntry client) {
+        if (client == null) {
+            return;
+        }
+        log.debug("Client " + client.getUserName() + " wird als abgebaut behandelt");
+        try {
+            client.getConnection().close();
+        } catch (Exception e) {
+            log.debug("Exception bei close: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Die Warteliste eines Requests ist leer geworden, ohne dass ein Confirm
+     * eingetroffen ist (der letzte ausstehende Client wurde entfernt). Die
+     * Response an den Initiator ist dann noch zu senden. Nur relevant fuer
+     * Implementierungen mit Event-Confirms.
+     *
+     * @param waitList Leer gewordene Warteliste inkl. des gesendeten Events
+     */
+    protected void waitListCompleted(WaitList waitList) {
+    }
+
+    /**
+     * Letzter Confirm zu einem Event ist eingetroffen: Zeit seit dem
+     * Eintreffen des Requests in die Kennzahlen eintragen
+     *
+     * @param waitList Leer gewordene Warteliste
+     */
+    protected void confirmsCollected(WaitList waitList) {
+        metrics.confirmsCollected(waitList.getEvent().getPduType(),
+                System.nanoTime() - waitList.getStartTime());
+    }
+
     /**
      * Verbindung zu einem Client ordentlich abbauen
      */
     private void closeConnection() {
 
-        log.debug("Schliessen der Chat-Connection zum " + userName);
+        if (log.isDebugEnabled()) {
+            log.debug("Schliessen der Chat-Connection zum " + userName);
+        }
 
         // Bereinigen der Clientliste falls erforderlich
 
         if (clients.existsClient(userName)) {
-            log.debug("Close Connection fuer " + userName
-                    + ", Laenge der Clientliste vor dem bedingungslosen Loeschen: "
-                    + clients.size());
+            if (log.isDebugEnabled()) {
+                log.debug("Close Connection fuer " + userName
+                        + ", Laenge der Clientliste vor dem bedingungslosen Loeschen: "
+                        + clients.size());
+            }
 
-            clients.deleteClientWithoutCondition(userName);
-            log.debug("Laenge der Clientliste nach dem bedingungslosen Loeschen von " + userName
-                    + ": " + clients.size());
+            Vector<WaitList> completedWaitLists = clients.deleteClientWithoutCondition(userName);
+            if (log.isDebugEnabled()) {
+                log.debug("Laenge der Clientliste nach dem bedingungslosen Loeschen von " + userName
+                        + ": " + clients.size());
+            }
+
+            // Auf diesen Client hat als letztes noch eine Warteliste gewartet
+            for (WaitList waitList : completedWaitLists) {
+                waitListCompleted(waitList);
+            }
         }
 
         try {
@@ -348,25 +610,32 @@ public abstract class AbstractWorkerThread extends Thread {
                     // Loesche den Client aus der Clientliste
                     // Ein Loeschen ist aber nur zulaessig, wenn der Client
                     // nicht mehr in einer anderen Warteliste ist
-                    log.debug("Laenge der Clientliste vor dem Entfernen von " + userName + ": "
-                            + clients.size());
+                    if (log.isDebugEnabled()) {
+                        log.debug("Laenge der Clientliste vor dem Entfernen von " + userName + ": "
+                                + clients.size());
+                    }
                     if (clients.deleteClient(userName)) {
                         // Jetzt kann auch Worker-Thread beendet werden
 
-                        log.debug("Laenge der Clientliste nach dem Entfernen von " + userName + ": "
-                                + clients.size());
-                        log.debug("Worker-Thread fuer " + userName + " zum Beenden vorgemerkt");
+                        if (log.isDebugEnabled()) {
+                            log.debug("Laenge der Clientliste nach dem Entfernen von " + userName + ": "
+                                    + clients.size());
+                            log.debug("Worker-Thread fuer " + userName + " zum Beenden vorgemerkt");
+                        }
                         return true;
                     }
                 }
             }
         }
 
-        // Garbage Collection in der Clientliste durchfuehren
+        // Garbage Collection in der Clientliste durchfuehren (nur Clients, die
+        // seit dem letzten Aufruf loeschbar geworden sind)
         Vector<String> deletedClients = clients.gcClientList();
         if (deletedClients.contains(userName)) {
-            log.debug("Ueber Garbage Collector ermittelt: Laufender Worker-Thread fuer "
-                    + userName + " kann beendet werden");
+            if (log.isDebugEnabled()) {
+                log.debug("Ueber Garbage Collector ermittelt: Laufender Worker-Thread fuer "
+                        + userName + " kann beendet werden");
+            }
             finished = true;
             return true;
         }
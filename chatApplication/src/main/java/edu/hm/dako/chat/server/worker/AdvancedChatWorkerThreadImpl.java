@@ -1,18 +1,21 @@
 package edu.hm.dako.chat.server.worker;
 
+import edu.hm.dako.chat.codec.EncodedPdu;
 import edu.hm.dako.chat.common.ChatPDU;
 import edu.hm.dako.chat.common.ClientConversationStatus;
 import edu.hm.dako.chat.common.ClientListEntry;
 import edu.hm.dako.chat.common.ExceptionHandler;
 import edu.hm.dako.chat.common.PduType;
+import edu.hm.dako.chat.common.ServerPhase;
+import edu.hm.dako.chat.common.WaitList;
 import edu.hm.dako.chat.connection.Connection;
+import edu.hm.dako.chat.connection.RetransmittingConnection;
 import edu.hm.dako.chat.server.ChatServerGuiInterface;
 import edu.hm.dako.chat.server.SharedChatClientList;
 import edu.hm.dako.chat.server.SharedServerCounter;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import java.util.Vector;
 
 /**
  * Worker-Thread zur serverseitigen Bedienung einer Session mit einem Client.
@@ -28,6 +31,69 @@ public class AdvancedChatWorkerThreadImpl extends AbstractWorkerThread {
                                         SharedServerCounter counter, ChatServerGuiInterface serverGuiInterface) {
 
         super(con, clients, counter, serverGuiInterface);
+
+        // Nicht zustellbare Events wie ausbleibende Confirms behandeln (UDP)
+        if (con instanceof RetransmittingConnection) {
+            ((RetransmittingConnection) con).setListener(new RetransmittingConnection.Listener() {
+                @Override
+                public void retransmitted(ChatPDU pdu) {
+                    eventRetransmitted(pdu);
+                }
+
+                @Override
+                public void lost(ChatPDU pdu) {
+                    eventLost(pdu);
+                }
+            });
+        }
+    }
+
+    private static boolean isEvent(ChatPDU pdu) {
+        return pdu.getPduType().isEvent();
+    }
+
+    /**
+     * Ein Event an den Client dieses Workers wurde wiederholt; die
+     * Wiederholung wird dem Initiator des Events zugerechnet
+     *
+     * @param pdu Wiederholte PDU
+     */
+    private void eventRetransmitted(ChatPDU pdu) {
+        if (isEvent(pdu)) {
+            ClientListEntry initiator = clients.getClient(pdu.getEventUserName());
+            if (initiator != null) {
+                initiator.incrNumberOfRetries();
+            }
+        }
+    }
+
+    /**
+     * Ein Event an den Client dieses Workers ist trotz aller Wiederholungen
+     * nicht angekommen, sein Confirm bleibt also aus. Er wird beim Initiator
+     * als verloren gezaehlt und wie ein eingetroffener Confirm aus der
+     * Warteliste ausgetragen, damit der Initiator seine Response erhaelt.
+     *
+     * @param pdu Verlorene PDU
+     */
+    private void eventLost(ChatPDU pdu) {
+        if (!isEvent(pdu) || (clientEntry == null)) {
+            return;
+        }
+        ClientListEntry initiator = clients.getClient(pdu.getEventUserName());
+        if (initiator == null) {
+            return;
+        }
+        initiator.incrNumberOfLostEventConfirms();
+        if (log.isDebugEnabled()) {
+            log.debug(pdu.getPduType() + " von " + pdu.getEventUserName() + " an " + userName
+                    + " verloren");
+        }
+        WaitList completed = clients.deleteWaitListEntry(initiator.getClientId(),
+                pdu.getTransactionId(), clientEntry);
+        if (completed != null) {
+            confirmsCollected(completed);
+            waitListCompleted(completed);
+        }
     }
 
     @Override
@@ -36,35 +102,44 @@ public class AdvancedChatWorkerThreadImpl extends AbstractWorkerThread {
         DirectionInfo.printPduDirection(loginRequestPDU, DirectionInfo.Dir.C_TO_S, userName);
 
         ChatPDU pdu;
-        log.debug("Login-Request-PDU fuer " + loginRequestPDU.getUserName() + " empfangen");
+        if (log.isDebugEnabled()) {
+            log.debug("Login-Request-PDU fuer " + loginRequestPDU.getUserName() + " empfangen");
+        }
 
         // Neuer Client moechte sich einloggen, Client in Client-Liste
         // eintragen
         if (!clients.existsClient(loginRequestPDU.getUserName())) {
-            log.debug("User nicht in Clientliste: " + loginRequestPDU.getUserName());
+            if (log.isDebugEnabled()) {
+                log.debug("User nicht in Clientliste: " + loginRequestPDU.getUserName());
+            }
             ClientListEntry client = new ClientListEntry(loginRequestPDU.getUserName(), connection);
             client.setLoginTime(System.nanoTime());
             clients.createClient(loginRequestPDU.getUserName(), client);
+            clientEntry = client;
             clients.changeClientStatus(loginRequestPDU.getUserName(),
                     ClientConversationStatus.REGISTERING);
-            log.debug("User " + loginRequestPDU.getUserName() + " nun in Clientliste");
+            if (log.isDebugEnabled()) {
+                log.debug("User " + loginRequestPDU.getUserName() + " nun in Clientliste");
+            }
 
             userName = loginRequestPDU.getUserName();
             clientThreadName = loginRequestPDU.getClientThreadName();
             Thread.currentThread().setName(loginRequestPDU.getUserName());
-            log.debug("Laenge der Clientliste: " + clients.size());
+            if (log.isDebugEnabled()) {
+                log.debug("Laenge der Clientliste: " + clients.size());
+            }
             serverGuiInterface.incrNumberOfLoggedInClients();
 
             // Login-Event an alle Clients (auch an den gerade aktuell
             // anfragenden) senden
-            // WICHTIG: 2. Waitlist MUSS vor dem senden erstellt werden
-            clients.createWaitList(userName);
-
             pdu = ChatPDU.createLoginEventPdu(userName, loginRequestPDU);
 
             // Setze transaction vom request
             pdu.setTransactionId(loginRequestPDU.getTransactionId());
 
+            // WICHTIG: 2. Waitlist MUSS vor dem senden erstellt werden
+            clients.createWaitList(client.getClientId(), pdu, startTime);
+
             sendLoginListUpdateEvent(pdu);
 
             // ehemals loginResponse(receivedPdu);
@@ -86,41 +161,45 @@ public class AdvancedChatWorkerThreadImpl extends AbstractWorkerThread {
         //Information für debugging
         DirectionInfo.printPduDirection(loginConfirmPDU, DirectionInfo.Dir.C_TO_S, userName);
 
-        clients.deleteWaitListEntry(eventUserName, loginConfirmPDU.getUserName());
-
-        tryCreateLoginResponsePDU(loginConfirmPDU);
+        // WICHTIG: 3. Wenn WaitList 0 -> Response an Initiator senden.
+        // Nur der Confirm, der den letzten Eintrag entfernt, sendet
+        WaitList completed = deleteWaitListEntry(loginConfirmPDU);
+        if (completed != null) {
+            confirmsCollected(completed);
+            sendLoginResponse(eventUserName, completed.getTransactionId());
+        }
     }
 
     /**
      * Wenn alle Confirms angekommen sind, schickt der letzte
      * den Response an den Urheber
      *
-     * @param loginConfirmPDU pdu
+     * @param eventUserName Initiator des Logins
+     * @param transactionId Transaktion des Login-Requests
      */
-    private void tryCreateLoginResponsePDU(ChatPDU loginConfirmPDU) {
-        String eventUserName = loginConfirmPDU.getEventUserName();
-
-        // WICHTIG: 3. Wenn WaitList 0 -> Response an Initiator senden.
-        if (clients.getWaitListSize(eventUserName) == 0) {
-
-            ChatPDU loginResponse = new ChatPDU();
-            loginResponse.setUserName(eventUserName);
-            loginResponse.setPduType(PduType.LOGIN_RESPONSE);
-            loginResponse.setTransactionId(loginConfirmPDU.getTransactionId());
-            loginResponse.setClientStatus(ClientConversationStatus.REGISTERED);
-
-            try {
-                // WICHTIG: 4. Wir verwenden DIREKT die connection vom event Urheber
-                clients.getClient(eventUserName)
-                        .getConnection().send(loginResponse);
-
-                //Information für debugging
-                DirectionInfo.printPduDirection(loginResponse, DirectionInfo.Dir.S_TO_C, userName);
-            } catch (Exception e) {
-                throw new IllegalStateException("Cannot send", e);
-            }
+    private void sendLoginResponse(String eventUserName, long transactionId) {
+        ChatPDU loginResponse = new ChatPDU();
+        loginResponse.setUserName(eventUserName);
+        loginResponse.setPduType(PduType.LOGIN_RESPONSE);
+        loginResponse.setTransactionId(transactionId);
+        loginResponse.setClientStatus(ClientConversationStatus.REGISTERED);
+        setUserList(loginResponse);
+
+        ClientListEntry eventInitiatorClient = clients.getClient(eventUserName);
+        if (eventInitiatorClient == null) {
+            return;
         }
+        try {
+            // WICHTIG: 4. Wir verwenden DIREKT die connection vom event Urheber
+            eventInitiatorClient.getConnection().send(loginResponse);
 
+            //Information für debugging
+            DirectionInfo.printPduDirection(loginResponse, DirectionInfo.Dir.S_TO_C, userName);
+        } catch (Exception e) {
+            log.debug("Senden einer Login-Response-PDU an " + eventUserName + " nicht moeglich");
+            ExceptionHandler.logException(e);
+            clientDisconnected(eventInitiatorClient);
+        }
     }
 
     @Override
@@ -133,15 +212,38 @@ public class AdvancedChatWorkerThreadImpl extends AbstractWorkerThread {
         clients.setRequestStartTime(messageRequestPDU.getUserName(), startTime);
         clients.incrNumberOfReceivedChatMessages(messageRequestPDU.getUserName());
         serverGuiInterface.incrNumberOfRequests();
-        log.debug("Chat-Message-Request-PDU von " + messageRequestPDU.getUserName()
-                + " mit Sequenznummer " + messageRequestPDU.getSequenceNumber() + " empfangen");
+        if (log.isDebugEnabled()) {
+            log.debug("Chat-Message-Request-PDU von " + messageRequestPDU.getUserName()
+                    + " mit Sequenznummer " + messageRequestPDU.getSequenceNumber() + " empfangen");
+        }
 
-        if (!clients.existsClient(messageRequestPDU.getUserName())) {
-            log.debug("User nicht in Clientliste: " + messageRequestPDU.getUserName());
+        if ((clientEntry == null) || !clients.existsClient(messageRequestPDU.getUserName())) {
+            if (log.isDebugEnabled()) {
+                log.debug("User nicht in Clientliste: " + messageRequestPDU.getUserName());
+            }
         } else {
-            clients.createWaitList(userName);
+            ChatPDU pdu = ChatPDU.createChatMessageEventPdu(userName, messageRequestPDU);
+
+            // Setze transaction vom reqeust
+            pdu.setTransactionId(messageRequestPDU.getTransactionId());
+
+            // WICHTIG: Setze SequenceNumber
+            pdu.setSequenceNumber(messageRequestPDU.getSequenceNumber());
+
+            // Client-ID des Initiators, kommt mit jedem Confirm zurueck
+            pdu.setEventClientId(clientEntry.getClientId());
 
-            sendMessageEventToAllClients(messageRequestPDU);
+            // Eigene Warteliste je Request: Der Client darf weitere Requests
+            // senden, bevor diese Response versendet ist
+            long waitListStart = System.nanoTime();
+            WaitList waitList = clients.createWaitList(clientEntry.getClientId(), pdu, startTime);
+            if (waitList != null) {
+                // Zeitaufteilung fuer die Response
+                waitList.setPhaseTime(ServerPhase.DECODE, decodeTime);
+                waitList.setPhaseTime(ServerPhase.WAIT_LIST, System.nanoTime() - waitListStart);
+            }
+
+            sendMessageEventToAllClients(messageRequestPDU, pdu, waitList);
         }
     }
 
@@ -149,37 +251,47 @@ public class AdvancedChatWorkerThreadImpl extends AbstractWorkerThread {
      * Die Nachricht des Initiators wird an alle Teilnehmer der WaitList gesendet
      *
      * @param messageRequestPDU pdu
+     * @param pdu               Zu sendende Chat-Message-Event-PDU
+     * @param waitList          Warteliste des Requests fuer die Zeitaufteilung,
+     *                          darf null sein
      */
-    private void sendMessageEventToAllClients(ChatPDU messageRequestPDU) {
-        ClientListEntry client;// Liste der betroffenen Clients ermitteln
-        Vector<String> sendList = clients.getClientNameList();
-        ChatPDU pdu = ChatPDU.createChatMessageEventPdu(userName, messageRequestPDU);
-
-        // Setze transaction vom reqeust
-        pdu.setTransactionId(messageRequestPDU.getTransactionId());
+    private void sendMessageEventToAllClients(ChatPDU messageRequestPDU, ChatPDU pdu,
+                                              WaitList waitList) {
+        ClientListEntry client;
 
-        // WICHTIG: Setze SequenceNumber
-        pdu.setSequenceNumber(messageRequestPDU.getSequenceNumber());
+        // Event nur einmal kodieren: Die PDU ist fuer alle Empfaenger gleich
+        // (userName bleibt der Initiator), daher wird derselbe Rahmen an alle
+        // Verbindungen geschrieben
+        EncodedPdu event = new EncodedPdu(pdu);
+        long fanOutStart = System.nanoTime();
+        int recipients = 0;
+        if (waitList != null) {
+            waitList.fanOutStarted(fanOutStart);
+        }
 
-        // Event an Clients senden
-        for (String s : new Vector<>(sendList)) {
-            client = clients.getClient(s);
+        // Event an alle Clients senden, Durchlauf ueber die Client-IDs
+        int maxClientId = clients.getMaxClientId();
+        for (int id = 1; id <= maxClientId; id++) {
+            client = clients.getClient(id);
             try {
                 if ((client != null)
                         && (client.getStatus() != ClientConversationStatus.UNREGISTERED)) {
-                    pdu.setUserName(client.getUserName());
-
                     //Information für debugging
                     DirectionInfo.printPduDirection(pdu, DirectionInfo.Dir.S_TO_C, userName);
-                    client.getConnection().send(pdu);
+                    sendBroadcastEvent(client.getConnection(), event);
 
-                    log.debug("Chat-Event-PDU an " + client.getUserName() + " gesendet");
-                    clients.incrNumberOfSentChatEvents(client.getUserName());
+                    if (log.isDebugEnabled()) {
+                        log.debug("Chat-Event-PDU an " + client.getUserName() + " gesendet");
+                    }
+                    client.incrNumberOfSentEvents();
                     eventCounter.getAndIncrement();
-                    log.debug(userName + ": EventCounter erhoeht = " + eventCounter.get()
-                            + ", Aktueller ConfirmCounter = " + confirmCounter.get()
-                            + ", Anzahl gesendeter ChatMessages von dem Client = "
-                            + messageRequestPDU.getSequenceNumber());
+                    recipients++;
+                    if (log.isDebugEnabled()) {
+                        log.debug(userName + ": EventCounter erhoeht = " + eventCounter.get()
+                                + ", Aktueller ConfirmCounter = " + confirmCounter.get()
+                                + ", Anzahl gesendeter ChatMessages von dem Client = "
+                                + messageRequestPDU.getSequenceNumber());
+                    }
                 }
             } catch (Exception e) {
                 log.debug("Senden einer Chat-Event-PDU an " + client.getUserName()
@@ -187,7 +299,16 @@ public class AdvancedChatWorkerThreadImpl extends AbstractWorkerThread {
                 ExceptionHandler.logException(e);
             }
         }
-        log.debug("Aktuelle Laenge der Clientliste: " + clients.size());
+        endOfBroadcast();
+        long fanOutEnd = System.nanoTime();
+        if (waitList != null) {
+            waitList.setPhaseTime(ServerPhase.ENCODE, event.getEncodeTime());
+            waitList.fanOutFinished(fanOutEnd);
+        }
+        metrics.fannedOut(pdu.getPduType(), fanOutEnd - fanOutStart, recipients);
+        if (log.isDebugEnabled()) {
+            log.debug("Aktuelle Laenge der Clientliste: " + clients.size());
+        }
     }
 
     /**
@@ -201,56 +322,108 @@ public class AdvancedChatWorkerThreadImpl extends AbstractWorkerThread {
 
         String eventUserName = messageConfirmPDU.getEventUserName();
 
-        clients.deleteWaitListEntry(eventUserName, messageConfirmPDU.getUserName());
+        WaitList completed = deleteWaitListEntry(messageConfirmPDU);
+        if (completed != null) {
+            confirmsCollected(completed);
+            sendChatMessageResponse(eventUserName, completed);
+        }
+    }
+
+    /**
+     * Sammelbestaetigung eines Clients bearbeiten: Jeder enthaltene Confirm
+     * wird wie ein einzelner Chat-Message-Event-Confirm ausgetragen; fuer
+     * jede dabei leer gewordene Warteliste geht die Response an deren
+     * Initiator.
+     *
+     * @param batchPdu pdu mit parallelen Listen aus Transaktions-IDs und
+     *                 Client-IDs der Initiatoren
+     */
+    private void messageEventConfirmBatchAction(ChatPDU batchPdu) {
+        DirectionInfo.printPduDirection(batchPdu, DirectionInfo.Dir.C_TO_S, userName);
 
-        ClientListEntry eventInitiatorClient;
+        long[] transactionIds = batchPdu.getConfirmedTransactionIds();
+        int[] eventClientIds = batchPdu.getConfirmedEventClientIds();
+        if ((transactionIds == null) || (eventClientIds == null) || (clientEntry == null)) {
+            return;
+        }
 
-        if (clients.getWaitListSize(eventUserName) == 0) {
-            eventInitiatorClient = clients.getClient(eventUserName);
+        int count = Math.min(batchPdu.getNumberOfConfirmedEvents(),
+                Math.min(transactionIds.length, eventClientIds.length));
+        if (log.isDebugEnabled()) {
+            log.debug("Sammelbestaetigung mit " + count + " Confirms von " + userName
+                    + " empfangen");
+        }
+        for (int i = 0; i < count; i++) {
+            WaitList completed = clients.deleteWaitListEntry(eventClientIds[i],
+                    transactionIds[i], clientEntry);
+            if (completed != null) {
+                confirmsCollected(completed);
+                sendChatMessageResponse(completed.getEvent().getEventUserName(), completed);
+            }
+        }
+    }
 
-            if (eventInitiatorClient != null) {
-                // Anzahl der eventConfirms erhöhen
-                eventInitiatorClient.incrNumberOfReceivedEventConfirms();
-                ChatPDU responsePdu = ChatPDU.createChatMessageResponsePdu(
-                        eventUserName,
-                        eventInitiatorClient.getNumberOfSentEvents(),
-                        NO_LOST_EVENT_CONFIRMS,
-                        eventInitiatorClient.getNumberOfReceivedEventConfirms(),
-                        NO_NUMBER_OF_RETRIES,
-                        eventInitiatorClient.getNumberOfReceivedChatMessages(),
-                        messageConfirmPDU.getClientThreadName(),
-                        System.nanoTime() - eventInitiatorClient.getStartTime());
+    /**
+     * Chat-Message-Response an den Initiator senden, nachdem alle Confirms
+     * eingetroffen sind. Transaktions-ID, Sequenznummer und Ankunftszeit
+     * stammen aus der Warteliste des Requests, da der Client bereits weitere
+     * Requests gesendet haben kann.
+     *
+     * @param eventUserName Initiator der Chat-Nachricht
+     * @param waitList      Leer gewordene Warteliste des Requests
+     */
+    private void sendChatMessageResponse(String eventUserName, WaitList waitList) {
+        ChatPDU messageEventPDU = waitList.getEvent();
+        ClientListEntry eventInitiatorClient = clients.getClient(eventUserName);
+        if (eventInitiatorClient != null) {
+            long completionTime = System.nanoTime();
+            // Anzahl der eventConfirms erhöhen
+            eventInitiatorClient.incrNumberOfReceivedEventConfirms();
+            ChatPDU responsePdu = ChatPDU.createChatMessageResponsePdu(
+                    eventUserName,
+                    eventInitiatorClient.getNumberOfSentEvents(),
+                    eventInitiatorClient.getNumberOfLostEventConfirms(),
+                    eventInitiatorClient.getNumberOfReceivedEventConfirms(),
+                    eventInitiatorClient.getNumberOfRetries(),
+                    eventInitiatorClient.getNumberOfReceivedChatMessages(),
+                    messageEventPDU.getClientThreadName(),
+                    completionTime - waitList.getStartTime());
+
+            // Aufteilung der Serverzeit auf die Bearbeitungsabschnitte
+            responsePdu.setServerPhaseTimes(waitList.getPhaseTimes(completionTime));
 
-                // Setze transaction vom request
-                responsePdu.setTransactionId(messageConfirmPDU.getTransactionId());
+            // Setze transaction vom request
+            responsePdu.setTransactionId(messageEventPDU.getTransactionId());
 
-                // Setze sequenzNumber
-                responsePdu.setSequenceNumber(messageConfirmPDU.getSequenceNumber());
+            // Setze sequenzNumber
+            responsePdu.setSequenceNumber(messageEventPDU.getSequenceNumber());
 
-                if (responsePdu.getServerTime() / 1000000 > 100) {
+            if (responsePdu.getServerTime() / 1000000 > 100) {
+                if (log.isDebugEnabled()) {
                     log.debug(Thread.currentThread().getName()
                             + ", Benoetigte Serverzeit vor dem Senden der Response-Nachricht > 100 ms: "
                             + responsePdu.getServerTime() + " ns = "
                             + responsePdu.getServerTime() / 1000000 + " ms");
                 }
+            }
 
-                try {
-                    eventInitiatorClient
-                            .getConnection().send(responsePdu);
+            try {
+                eventInitiatorClient
+                        .getConnection().send(responsePdu);
 
-                    //Information für debugging
-                    DirectionInfo.printPduDirection(responsePdu, DirectionInfo.Dir.S_TO_C, userName);
-                    log.debug(
-                            "Chat-Message-Response-PDU an " + messageConfirmPDU.getUserName() + " gesendet");
-                } catch (Exception e) {
-                    log.debug("Senden einer Chat-Message-Response-PDU an " + eventUserName + " nicht moeglich");
-                    ExceptionHandler.logExceptionAndTerminate(e);
+                //Information für debugging
+                DirectionInfo.printPduDirection(responsePdu, DirectionInfo.Dir.S_TO_C, userName);
+                if (log.isDebugEnabled()) {
+                    log.debug("Chat-Message-Response-PDU an " + eventUserName + " gesendet");
                 }
+            } catch (Exception e) {
+                log.debug("Senden einer Chat-Message-Response-PDU an " + eventUserName + " nicht moeglich");
+                ExceptionHandler.logException(e);
+                clientDisconnected(eventInitiatorClient);
             }
         }
     }
 
-
     @Override
     protected void logoutRequestAction(ChatPDU logoutRequestPdu) {
 
@@ -259,21 +432,27 @@ public class AdvancedChatWorkerThreadImpl extends AbstractWorkerThread {
 
         ChatPDU pdu;
         logoutCounter.getAndIncrement();
-        log.debug("Logout-Request von " + logoutRequestPdu.getUserName() + ", LogoutCount = "
-                + logoutCounter.get());
+        if (log.isDebugEnabled()) {
+            log.debug("Logout-Request von " + logoutRequestPdu.getUserName() + ", LogoutCount = "
+                    + logoutCounter.get());
+        }
 
-        log.debug("Logout-Request-PDU von " + logoutRequestPdu.getUserName() + " empfangen");
+        if (log.isDebugEnabled()) {
+            log.debug("Logout-Request-PDU von " + logoutRequestPdu.getUserName() + " empfangen");
+        }
 
         if (!clients.existsClient(userName)) {
-            log.debug("User nicht in Clientliste: " + logoutRequestPdu.getUserName());
+            if (log.isDebugEnabled()) {
+                log.debug("User nicht in Clientliste: " + logoutRequestPdu.getUserName());
+            }
             System.out.println("Not in clientlist");
         } else {
-            clients.createWaitList(userName);
-
             // Event an Client versenden
             pdu = ChatPDU.createLogoutEventPdu(userName, logoutRequestPdu);
             pdu.setTransactionId(logoutRequestPdu.getTransactionId());
 
+            clients.createWaitList(clientEntry.getClientId(), pdu, startTime);
+
             clients.changeClientStatus(logoutRequestPdu.getUserName(),
                     ClientConversationStatus.UNREGISTERING);
 
@@ -297,20 +476,57 @@ public class AdvancedChatWorkerThreadImpl extends AbstractWorkerThread {
 
         String eventUserName = logoutEventPDU.getEventUserName();
 
-        clients.deleteWaitListEntry(eventUserName, logoutEventPDU.getUserName());
+        WaitList completed = deleteWaitListEntry(logoutEventPDU);
+        if (completed != null) {
+            confirmsCollected(completed);
+            completeLogout(eventUserName, completed.getTransactionId());
+        }
+    }
 
-        if (clients.getWaitListSize(eventUserName) == 0) {
+    /**
+     * Logout abschliessen, nachdem alle Confirms eingetroffen sind
+     *
+     * @param eventUserName Initiator des Logouts
+     * @param transactionId Transaktion des Logout-Requests
+     */
+    private void completeLogout(String eventUserName, long transactionId) {
 
-            // Logout Response senden
-            sendLogoutResponse(eventUserName, logoutEventPDU.getTransactionId());
+        // Logout Response senden
+        sendLogoutResponse(eventUserName, transactionId);
 
-            // Worker-Thread des Clients, der den Logout-Request gesendet
-            // hat, auch gleich zum Beenden markieren
-            clients.finish(eventUserName);
+        // Worker-Thread des Clients, der den Logout-Request gesendet
+        // hat, auch gleich zum Beenden markieren
+        clients.finish(eventUserName);
+        if (log.isDebugEnabled()) {
             log.debug("Laenge der Clientliste beim Vormerken zum Loeschen von " + eventUserName + ": " + clients.size());
+        }
+
+        // Wenn client ist "still alive", setze auf UNREGISTERED
+        clients.changeClientStatus(eventUserName, ClientConversationStatus.UNREGISTERED);
+    }
 
-            // Wenn client ist "still alive", setze auf UNREGISTERED
-            clients.changeClientStatus(eventUserName, ClientConversationStatus.UNREGISTERED);
+    @Override
+    protected void waitListCompleted(WaitList waitList) {
+        ChatPDU event = waitList.getEvent();
+        String eventInitiator = event.getEventUserName();
+
+        if (log.isDebugEnabled()) {
+            log.debug("Warteliste von " + eventInitiator + " ohne Confirm leer (Verbindungsabbruch oder Verlust), "
+                    + event.getPduType() + " wird abgeschlossen");
+        }
+
+        switch (event.getPduType()) {
+            case LOGIN_EVENT:
+                sendLoginResponse(eventInitiator, event.getTransactionId());
+                break;
+            case CHAT_MESSAGE_EVENT:
+                sendChatMessageResponse(eventInitiator, waitList);
+                break;
+            case LOGOUT_EVENT:
+                completeLogout(eventInitiator, event.getTransactionId());
+                break;
+            default:
+                break;
         }
     }
 
@@ -341,6 +557,11 @@ public class AdvancedChatWorkerThreadImpl extends AbstractWorkerThread {
                     messageEventConfirmAction(receivedPdu);
                     break;
 
+                case CHAT_MESSAGE_EVENT_CONFIRM_BATCH:
+                    // Gesammelte Chat-Message-Event-Confirms vom Client empfangen
+                    messageEventConfirmBatchAction(receivedPdu);
+                    break;
+
                 case LOGOUT_REQUEST:
                     // Logout-Request vom Client empfangen
                     logoutRequestAction(receivedPdu);
@@ -349,10 +570,18 @@ public class AdvancedChatWorkerThreadImpl extends AbstractWorkerThread {
                 case LOGOUT_EVENT_CONFIRM:
                     //Logout-Event-Confirm vom Client emfangen
                     logoutEventConfirmAction(receivedPdu);
+                    break;
+
+                case USER_LIST_REQUEST:
+                    // Client fordert die vollstaendige Userliste an
+                    userListRequestAction(receivedPdu);
+                    break;
 
                 default:
-                    log.debug("Falsche PDU empfangen von Client: " + receivedPdu.getUserName()
-                            + ", PduType: " + receivedPdu.getPduType());
+                    if (log.isDebugEnabled()) {
+                        log.debug("Falsche PDU empfangen von Client: " + receivedPdu.getUserName()
+                                + ", PduType: " + receivedPdu.getPduType());
+                    }
                     break;
             }
         } catch (Exception e) {
@@ -21,6 +21,11 @@ public class DirectionInfo {
      * @param userName userName
      */
     public static void printPduDirection(ChatPDU pdu, Dir direction, String userName) {
+        // Formatierung nur, wenn die Ausgabe auch erfolgt: wird fuer jede
+        // gesendete und empfangene PDU aufgerufen
+        if (!log.isInfoEnabled()) {
+            return;
+        }
         String dirString = direction == Dir.S_TO_C
                 ? "-->   "
                 : "   <--";
@@ -28,7 +33,7 @@ public class DirectionInfo {
         log(String.format("[S%sC] [Type: %s] [TID: %s] [T: %s] [User: %s] [Send response to (EventUser): %s]",
                 dirString,
                 pdu.getPduType(),
-                pdu.getTransactionId(),
+                ChatPDU.transactionIdToString(pdu.getTransactionId()),
                 Thread.currentThread().getName(),
                 userName,
                 pdu.getEventUserName()));
@@ -40,7 +45,11 @@ public class DirectionInfo {
      * @param sendingPdu pdu
      */
     public static void logSendRequest(ChatPDU sendingPdu) {
-        log("[S <--- C]  Request: " + sendingPdu.getTransactionId());
+        if (!log.isInfoEnabled()) {
+            return;
+        }
+        log("[S <--- C]  Request: "
+                + ChatPDU.transactionIdToString(sendingPdu.getTransactionId()));
     }
 
     /**
@@ -49,7 +58,11 @@ public class DirectionInfo {
      * @param receivedPdu pdu
      */
     public static void logReceivedResponse(ChatPDU receivedPdu) {
-        log("[S ---> C] Response: " + receivedPdu.getTransactionId());
+        if (!log.isInfoEnabled()) {
+            return;
+        }
+        log("[S ---> C] Response: "
+                + ChatPDU.transactionIdToString(receivedPdu.getTransactionId()));
     }
 
     /**
@@ -1,5 +1,6 @@
 package edu.hm.dako.chat.server.worker;
 
+import edu.hm.dako.chat.codec.EncodedPdu;
 import edu.hm.dako.chat.common.ChatPDU;
 import edu.hm.dako.chat.common.ClientConversationStatus;
 import edu.hm.dako.chat.common.ClientListEntry;
@@ -11,8 +12,6 @@ import edu.hm.dako.chat.server.SharedServerCounter;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import java.util.Vector;
-
 /**
  * Worker-Thread zur serverseitigen Bedienung einer Session mit einem Client.
  * Jedem Chat-Client wird serverseitig ein Worker-Thread zugeordnet.
@@ -33,23 +32,32 @@ public class SimpleChatWorkerThreadImpl extends AbstractWorkerThread {
     protected void loginRequestAction(ChatPDU receivedPdu) {
 
         ChatPDU pdu;
-        log.debug("Login-Request-PDU fuer " + receivedPdu.getUserName() + " empfangen");
+        if (log.isDebugEnabled()) {
+            log.debug("Login-Request-PDU fuer " + receivedPdu.getUserName() + " empfangen");
+        }
 
         // Neuer Client moechte sich einloggen, Client in Client-Liste
         // eintragen
         if (!clients.existsClient(receivedPdu.getUserName())) {
-            log.debug("User nicht in Clientliste: " + receivedPdu.getUserName());
+            if (log.isDebugEnabled()) {
+                log.debug("User nicht in Clientliste: " + receivedPdu.getUserName());
+            }
             ClientListEntry client = new ClientListEntry(receivedPdu.getUserName(), connection);
             client.setLoginTime(System.nanoTime());
             clients.createClient(receivedPdu.getUserName(), client);
+            clientEntry = client;
             clients.changeClientStatus(receivedPdu.getUserName(),
                     ClientConversationStatus.REGISTERING);
-            log.debug("User " + receivedPdu.getUserName() + " nun in Clientliste");
+            if (log.isDebugEnabled()) {
+                log.debug("User " + receivedPdu.getUserName() + " nun in Clientliste");
+            }
 
             userName = receivedPdu.getUserName();
             clientThreadName = receivedPdu.getClientThreadName();
             Thread.currentThread().setName(receivedPdu.getUserName());
-            log.debug("Laenge der Clientliste: " + clients.size());
+            if (log.isDebugEnabled()) {
+                log.debug("Laenge der Clientliste: " + clients.size());
+            }
             serverGuiInterface.incrNumberOfLoggedInClients();
 
             // Login-Event an alle Clients (auch an den gerade aktuell
@@ -70,31 +78,43 @@ public class SimpleChatWorkerThreadImpl extends AbstractWorkerThread {
         clients.setRequestStartTime(receivedPdu.getUserName(), startTime);
         clients.incrNumberOfReceivedChatMessages(receivedPdu.getUserName());
         serverGuiInterface.incrNumberOfRequests();
-        log.debug("Chat-Message-Request-PDU von " + receivedPdu.getUserName()
-                + " mit Sequenznummer " + receivedPdu.getSequenceNumber() + " empfangen");
+        if (log.isDebugEnabled()) {
+            log.debug("Chat-Message-Request-PDU von " + receivedPdu.getUserName()
+                    + " mit Sequenznummer " + receivedPdu.getSequenceNumber() + " empfangen");
+        }
 
         if (!clients.existsClient(receivedPdu.getUserName())) {
-            log.debug("User nicht in Clientliste: " + receivedPdu.getUserName());
+            if (log.isDebugEnabled()) {
+                log.debug("User nicht in Clientliste: " + receivedPdu.getUserName());
+            }
         } else {
-            // Liste der betroffenen Clients ermitteln
-            Vector<String> sendList = clients.getClientNameList();
             ChatPDU pdu = ChatPDU.createChatMessageEventPdu(userName, receivedPdu);
 
-            // Event an Clients senden
-            for (String s : new Vector<>(sendList)) {
-                client = clients.getClient(s);
+            // Event nur einmal kodieren und an alle Clients verteilen
+            EncodedPdu event = new EncodedPdu(pdu);
+            long fanOutStart = System.nanoTime();
+            int recipients = 0;
+
+            // Event an alle Clients senden, Durchlauf ueber die Client-IDs
+            int maxClientId = clients.getMaxClientId();
+            for (int id = 1; id <= maxClientId; id++) {
+                client = clients.getClient(id);
                 try {
                     if ((client != null)
                             && (client.getStatus() != ClientConversationStatus.UNREGISTERED)) {
-                        pdu.setUserName(client.getUserName());
-                        client.getConnection().send(pdu);
-                        log.debug("Chat-Event-PDU an " + client.getUserName() + " gesendet");
-                        clients.incrNumberOfSentChatEvents(client.getUserName());
+                        sendBroadcastEvent(client.getConnection(), event);
+                        if (log.isDebugEnabled()) {
+                            log.debug("Chat-Event-PDU an " + client.getUserName() + " gesendet");
+                        }
+                        client.incrNumberOfSentEvents();
                         eventCounter.getAndIncrement();
-                        log.debug(userName + ": EventCounter erhoeht = " + eventCounter.get()
-                                + ", Aktueller ConfirmCounter = " + confirmCounter.get()
-                                + ", Anzahl gesendeter ChatMessages von dem Client = "
-                                + receivedPdu.getSequenceNumber());
+                        recipients++;
+                        if (log.isDebugEnabled()) {
+                            log.debug(userName + ": EventCounter erhoeht = " + eventCounter.get()
+                                    + ", Aktueller ConfirmCounter = " + confirmCounter.get()
+                                    + ", Anzahl gesendeter ChatMessages von dem Client = "
+                                    + receivedPdu.getSequenceNumber());
+                        }
                     }
                 } catch (Exception e) {
                     log.debug("Senden einer Chat-Event-PDU an " + client.getUserName()
@@ -103,6 +123,9 @@ public class SimpleChatWorkerThreadImpl extends AbstractWorkerThread {
                 }
             }
 
+            endOfBroadcast();
+            metrics.fannedOut(pdu.getPduType(), System.nanoTime() - fanOutStart, recipients);
+
             client = clients.getClient(receivedPdu.getUserName());
             if (client != null) {
                 ChatPDU responsePdu = ChatPDU.createChatMessageResponsePdu(
@@ -110,24 +133,35 @@ public class SimpleChatWorkerThreadImpl extends AbstractWorkerThread {
                         client.getNumberOfReceivedChatMessages(), receivedPdu.getClientThreadName(),
                         (System.nanoTime() - client.getStartTime()));
 
+                // Transaktion des Requests zurueckgeben, damit der Client die
+                // Response bei mehreren offenen Requests zuordnen kann
+                responsePdu.setTransactionId(receivedPdu.getTransactionId());
+
                 if (responsePdu.getServerTime() / 1000000 > 100) {
-                    log.debug(Thread.currentThread().getName()
-                            + ", Benoetigte Serverzeit vor dem Senden der Response-Nachricht > 100 ms: "
-                            + responsePdu.getServerTime() + " ns = "
-                            + responsePdu.getServerTime() / 1000000 + " ms");
+                    if (log.isDebugEnabled()) {
+                        log.debug(Thread.currentThread().getName()
+                                + ", Benoetigte Serverzeit vor dem Senden der Response-Nachricht > 100 ms: "
+                                + responsePdu.getServerTime() + " ns = "
+                                + responsePdu.getServerTime() / 1000000 + " ms");
+                    }
                 }
 
                 try {
                     client.getConnection().send(responsePdu);
-                    log.debug(
-                            "Chat-Message-Response-PDU an " + receivedPdu.getUserName() + " gesendet");
+                    if (log.isDebugEnabled()) {
+                        log.debug(
+                                "Chat-Message-Response-PDU an " + receivedPdu.getUserName() + " gesendet");
+                    }
                 } catch (Exception e) {
                     log.debug("Senden einer Chat-Message-Response-PDU an " + client.getUserName()
                             + " nicht moeglich");
-                    ExceptionHandler.logExceptionAndTerminate(e);
+                    ExceptionHandler.logException(e);
+                    clientDisconnected(client);
                 }
             }
-            log.debug("Aktuelle Laenge der Clientliste: " + clients.size());
+            if (log.isDebugEnabled()) {
+                log.debug("Aktuelle Laenge der Clientliste: " + clients.size());
+            }
         }
     }
 
@@ -136,13 +170,19 @@ public class SimpleChatWorkerThreadImpl extends AbstractWorkerThread {
 
         ChatPDU pdu;
         logoutCounter.getAndIncrement();
-        log.debug("Logout-Request von " + receivedPdu.getUserName() + ", LogoutCount = "
-                + logoutCounter.get());
+        if (log.isDebugEnabled()) {
+            log.debug("Logout-Request von " + receivedPdu.getUserName() + ", LogoutCount = "
+                    + logoutCounter.get());
+        }
 
-        log.debug("Logout-Request-PDU von " + receivedPdu.getUserName() + " empfangen");
+        if (log.isDebugEnabled()) {
+            log.debug("Logout-Request-PDU von " + receivedPdu.getUserName() + " empfangen");
+        }
 
         if (!clients.existsClient(userName)) {
-            log.debug("User nicht in Clientliste: " + receivedPdu.getUserName());
+            if (log.isDebugEnabled()) {
+                log.debug("User nicht in Clientliste: " + receivedPdu.getUserName());
+            }
         } else {
 
             // Event an Client versenden
@@ -160,8 +200,10 @@ public class SimpleChatWorkerThreadImpl extends AbstractWorkerThread {
             // Worker-Thread des Clients, der den Logout-Request gesendet
             // hat, auch gleich zum Beenden markieren
             clients.finish(receivedPdu.getUserName());
-            log.debug("Laenge der Clientliste beim Vormerken zum Loeschen von "
-                    + receivedPdu.getUserName() + ": " + clients.size());
+            if (log.isDebugEnabled()) {
+                log.debug("Laenge der Clientliste beim Vormerken zum Loeschen von "
+                        + receivedPdu.getUserName() + ": " + clients.size());
+            }
         }
     }
 
@@ -187,9 +229,16 @@ public class SimpleChatWorkerThreadImpl extends AbstractWorkerThread {
                     logoutRequestAction(receivedPdu);
                     break;
 
+                case USER_LIST_REQUEST:
+                    // Client fordert die vollstaendige Userliste an
+                    userListRequestAction(receivedPdu);
+                    break;
+
                 default:
-                    log.debug("Falsche PDU empfangen von Client: " + receivedPdu.getUserName()
-                            + ", PduType: " + receivedPdu.getPduType());
+                    if (log.isDebugEnabled()) {
+                        log.debug("Falsche PDU empfangen von Client: " + receivedPdu.getUserName()
+                                + ", PduType: " + receivedPdu.getPduType());
+                    }
                     break;
             }
         } catch (Exception e) {
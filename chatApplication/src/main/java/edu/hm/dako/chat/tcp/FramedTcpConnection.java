@@ -0,0 +1,381 @@
+package edu.hm.dako.chat.tcp;
+
+import edu.hm.dako.chat.codec.EncodedPdu;
+import edu.hm.dako.chat.codec.PduCodec;
+import edu.hm.dako.chat.codec.PduFrames;
+import edu.hm.dako.chat.codec.PduPool;
+import edu.hm.dako.chat.codec.RecyclingPduCodec;
+import edu.hm.dako.chat.common.ChatPDU;
+import edu.hm.dako.chat.connection.Connection;
+import edu.hm.dako.chat.connection.ConnectionTimeoutException;
+import edu.hm.dako.chat.connection.DecodeTimingConnection;
+import edu.hm.dako.chat.connection.DeferredFlusher;
+import edu.hm.dako.chat.connection.EndOfFileException;
+import edu.hm.dako.chat.connection.FlushPolicy;
+import edu.hm.dako.chat.connection.FlushableConnection;
+import edu.hm.dako.chat.connection.GatheringConnection;
+import edu.hm.dako.chat.connection.PooledConnection;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * TCP-Verbindung mit Rahmenbildung ueber Laengenfelder. Der Rahmeninhalt wird
+ * von einem austauschbaren {@link PduCodec} erzeugt. Wird fuer die
+ * Kommunikation mit dem NIO-basierten Server sowie fuer das Binaerformat
+ * verwendet.
+ * <p/>
+ * Ohne Zurueckhaltung (FlushPolicy IMMEDIATE) wird jeder Rahmen direkt auf
+ * das Socket geschrieben. Sonst liegt ein Puffer vor dem Socket, in dem
+ * Rahmen, die ohne Flush gesendet werden, bis zum Schreibzeitpunkt der
+ * {@link FlushPolicy} gesammelt werden.
+ * <p/>
+ * Mit PDU-Pooling ({@link #setPduPooling(boolean)}) werden Rahmen in einen
+ * wiederverwendeten Empfangspuffer gelesen und in PDUs aus einem
+ * {@link PduPool} dekodiert, die der Empfaenger ueber
+ * {@link #release(ChatPDU)} zurueckgibt. Setzt einen
+ * {@link RecyclingPduCodec} voraus.
+ *
+ * @author Peter Mandl
+ */
+public class FramedTcpConnection implements Connection, GatheringConnection,
+        FlushableConnection, PooledConnection, DecodeTimingConnection {
+
+    private static Log log = LogFactory.getLog(FramedTcpConnection.class);
+
+    // Ein- und Ausgabestrom der Verbindung
+    private OutputStream out;
+    private DataInputStream in;
+
+    // Verwendetes TCP-Socket
+    private Socket socket;
+
+    // Sperre fuer den Verbindungsabbau (kein Monitor, damit virtuelle Threads
+    // beim blockierenden flush ihren Traeger-Thread nicht festhalten)
+    private final ReentrantLock closeLock = new ReentrantLock();
+
+    // Serialisiert das Schreiben, da der Zeitgeber der FlushPolicy parallel
+    // zum sendenden Thread flushen kann
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    // Mindestgroesse des Puffers vor dem Socket bei zurueckgehaltenen Rahmen
+    private static final int OUTPUT_BUFFER_SIZE = 16384;
+
+    // Kodierung des Rahmeninhalts
+    private final PduCodec codec;
+
+    // Zeitpunkt des Schreibens zurueckgehaltener Rahmen
+    private final DeferredFlusher flusher;
+
+    // Anfangsgroesse des wiederverwendeten Empfangspuffers bei PDU-Pooling
+    private static final int RECEIVE_BUFFER_SIZE = 1024;
+
+    // Wiederverwendete PDUs und Empfangspuffer, null: kein PDU-Pooling.
+    // Nur im empfangenden Thread verwendet.
+    private PduPool pduPool;
+    private byte[] receiveBuffer;
+
+    // Dauer der letzten Dekodierung in ns, nur im empfangenden Thread verwendet
+    private long lastDecodeTime = 0;
+
+    public FramedTcpConnection(Socket socket, PduCodec codec, int sendBufferSize,
+                               int receiveBufferSize, boolean keepAlive, boolean tcpNoDelay) {
+        this(socket, codec, sendBufferSize, receiveBufferSize, keepAlive, tcpNoDelay,
+                FlushPolicy.IMMEDIATE);
+    }
+
+    /**
+     * @param socket            Verbundenes Socket
+     * @param codec             Kodierung des Rahmeninhalts
+     * @param sendBufferSize    Groesse des Sendepuffers in Byte
+     * @param receiveBufferSize Groesse des Empfangspuffers in Byte
+     * @param keepAlive         TCP-Option KeepAlive
+     * @param tcpNoDelay        TCP-Option TcpNoDelay (true: Nagle-Algorithmus aus)
+     * @param flushPolicy       Schreibzeitpunkt fuer Rahmen, die ohne Flush
+     *                          gesendet werden
+     */
+    public FramedTcpConnection(Socket socket, PduCodec codec, int sendBufferSize,
+                               int receiveBufferSize, boolean keepAlive, boolean tcpNoDelay,
+                               FlushPolicy flushPolicy) {
+        this.socket = socket;
+        this.codec = codec;
+        this.flusher = new DeferredFlusher(flushPolicy, this);
+
+        log.debug(Thread.currentThread().getName()
+                + ": Verbindung mit Rahmenbildung aufgebaut, Remote-TCP-Port " + socket.getPort());
+
+        try {
+            socket.setReceiveBufferSize(receiveBufferSize);
+            socket.setSendBufferSize(sendBufferSize);
+            socket.setTcpNoDelay(tcpNoDelay);
+            socket.setKeepAlive(keepAlive);
+
+            if (flushPolicy.isDeferred()) {
+                out = new BufferedOutputStream(socket.getOutputStream(),
+                        Math.max(OUTPUT_BUFFER_SIZE, flushPolicy.getThresholdBytes()));
+            } else {
+                out = socket.getOutputStream();
+            }
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        } catch (SocketException e) {
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public Serializable receive(int timeout)
+            throws Exception, ConnectionTimeoutException, EndOfFileException {
+
+        if (!socket.isConnected()) {
+            log.debug("Empfangsversuch, obwohl Verbindung nicht mehr steht");
+            throw new EndOfFileException(new Exception());
+        }
+
+        socket.setSoTimeout(timeout);
+
+        try {
+            Serializable message = readFrame();
+            socket.setSoTimeout(0);
+            return message;
+
+        } catch (java.net.SocketTimeoutException e) {
+            throw new ConnectionTimeoutException(e);
+        } catch (java.io.EOFException e) {
+            log.debug("End of File beim Empfang");
+            throw new EndOfFileException(e);
+        } catch (Exception e) {
+            log.debug("Vermutlich SocketException: " + e);
+            throw new EndOfFileException(e);
+        }
+    }
+
+    @Override
+    public Serializable receive() throws Exception {
+
+        if (!socket.isConnected()) {
+            log.debug("Empfangsversuch, obwohl Verbindung nicht mehr steht");
+            throw new EndOfFileException(new Exception());
+        }
+        try {
+            socket.setSoTimeout(0);
+            return readFrame();
+        } catch (Exception e) {
+            log.debug("Exception beim Empfang " + socket.getInetAddress());
+            log.debug(e.getMessage());
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * PDU-Pooling ein- oder ausschalten. Muss vor dem ersten Empfang erfolgen.
+     * Ohne {@link RecyclingPduCodec} (Java-Serialisierung) wird der Aufruf
+     * ignoriert.
+     *
+     * @param pooling true: empfangene PDUs wiederverwenden
+     */
+    public void setPduPooling(boolean pooling) {
+        if (pooling && !(codec instanceof RecyclingPduCodec)) {
+            log.debug("PDU-Pooling mit diesem Codec nicht moeglich");
+            return;
+        }
+        pduPool = pooling ? new PduPool() : null;
+        receiveBuffer = pooling ? new byte[RECEIVE_BUFFER_SIZE] : null;
+    }
+
+    @Override
+    public void release(ChatPDU pdu) {
+        if (pduPool != null) {
+            pduPool.release(pdu);
+        }
+    }
+
+    @Override
+    public long getLastDecodeTime() {
+        return lastDecodeTime;
+    }
+
+    /**
+     * Liest einen vollstaendigen Rahmen vom Eingabestrom
+     */
+    private Serializable readFrame() throws IOException {
+        int length = in.readInt();
+        PduFrames.checkFrameLength(length);
+        byte[] data;
+        if (pduPool == null) {
+            data = new byte[length];
+        } else {
+            if (length > receiveBuffer.length) {
+                receiveBuffer = new byte[Math.max(length, receiveBuffer.length * 2)];
+            }
+            data = receiveBuffer;
+        }
+        in.readFully(data, 0, length);
+
+        // Nur das Dekodieren messen, nicht das Lesen vom Socket
+        long start = System.nanoTime();
+        ChatPDU pdu;
+        if (pduPool == null) {
+            pdu = codec.decode(data, 0, length);
+        } else {
+            pdu = ((RecyclingPduCodec) codec).decode(data, 0, length, pduPool.acquire());
+        }
+        lastDecodeTime = System.nanoTime() - start;
+        return pdu;
+    }
+
+    @Override
+    public void send(Serializable message) throws Exception {
+        send(message, true);
+    }
+
+    @Override
+    public void send(Serializable message, boolean flush) throws Exception {
+
+        if (socket.isClosed()) {
+            log.debug("Sendeversuch, obwohl Socket geschlossen ist");
+            throw new IOException();
+        }
+        if (!socket.isConnected()) {
+            log.debug("Sendeversuch, obwohl Verbindung nicht mehr steht");
+            throw new IOException();
+        }
+
+        writeFrame(codec.encode((ChatPDU) message), flush);
+    }
+
+    @Override
+    public void sendEncoded(EncodedPdu pdu) throws Exception {
+        sendEncoded(pdu, true);
+    }
+
+    @Override
+    public void sendEncoded(EncodedPdu pdu, boolean flush) throws Exception {
+
+        if (socket.isClosed() || !socket.isConnected()) {
+            log.debug("Sendeversuch, obwohl Verbindung nicht mehr steht");
+            throw new IOException();
+        }
+
+        // Gemeinsamen, bereits kodierten Rahmen verwenden
+        writeFrame(pdu.getFrame(codec), flush);
+    }
+
+    @Override
+    public void sendGathered(List<EncodedPdu> pdus) throws Exception {
+
+        if (socket.isClosed() || !socket.isConnected()) {
+            log.debug("Sendeversuch, obwohl Verbindung nicht mehr steht");
+            throw new IOException();
+        }
+
+        // Alle Rahmen zusammenfassen und mit einem Schreibaufruf uebergeben
+        ByteBuffer[] frames = new ByteBuffer[pdus.size()];
+        int length = 0;
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = pdus.get(i).getFrame(codec);
+            length += frames[i].remaining();
+        }
+        ByteBuffer gathered = ByteBuffer.allocate(length);
+        for (ByteBuffer frame : frames) {
+            gathered.put(frame);
+        }
+        gathered.flip();
+        writeFrame(gathered, true);
+    }
+
+    @Override
+    public void flush() throws Exception {
+        writeLock.lock();
+        try {
+            if (!socket.isClosed()) {
+                flushOutput();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void endOfBatch() throws Exception {
+        writeLock.lock();
+        try {
+            if (flusher.isFlushAtEndOfBatch() && !socket.isClosed()) {
+                flushOutput();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public FlushPolicy getFlushPolicy() {
+        return flusher.getPolicy();
+    }
+
+    /**
+     * Laengenfeld und Inhalt in einem Schreibaufruf uebergeben bzw. bei
+     * zurueckgehaltenen Rahmen in den Puffer schreiben
+     */
+    private void writeFrame(ByteBuffer frame, boolean flush) throws IOException {
+        writeLock.lock();
+        try {
+            int length = frame.remaining();
+            out.write(frame.array(), frame.arrayOffset() + frame.position(), length);
+            if (flush || flusher.written(length)) {
+                flushOutput();
+            }
+        } catch (Exception e) {
+            log.debug("Exception beim Sendeversuch an " + socket.getInetAddress());
+            log.debug(e.getMessage());
+            throw new IOException();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Puffer auf das Socket schreiben, nur unter der Schreibsperre
+     */
+    private void flushOutput() throws IOException {
+        flusher.flushed();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeLock.lock();
+        try {
+            try {
+                // Zurueckgehaltene Rahmen noch schreiben; ein Fehler dabei
+                // verhindert das Schliessen nicht
+                try {
+                    flush();
+                } catch (Exception e) {
+                    log.debug("Zurueckgehaltene Rahmen nicht mehr schreibbar: " + e.getMessage());
+                }
+                log.debug("Verbindungssocket wird geschlossen, lokaler Port: "
+                        + socket.getLocalPort() + ", entfernter Port: " + socket.getPort());
+                socket.close();
+            } catch (Exception e) {
+                log.debug("Exception beim Verbindungsabbau " + socket.getInetAddress());
+                log.debug(e.getMessage());
+                throw new IOException(new IOException());
+            }
+        } finally {
+            closeLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package edu.hm.dako.chat.tcp;
+
+import edu.hm.dako.chat.codec.PduCodec;
+import edu.hm.dako.chat.connection.Connection;
+
+import java.net.Socket;
+
+/**
+ * Erzeugen von TCP-Verbindungen mit Rahmenbildung zum Server
+ *
+ * @author Peter Mandl
+ */
+public class FramedTcpConnectionFactory extends TcpConnectionFactory {
+
+    // Kodierung des Rahmeninhalts
+    private final PduCodec codec;
+
+    /**
+     * @param codec Kodierung des Rahmeninhalts
+     */
+    public FramedTcpConnectionFactory(PduCodec codec) {
+        this.codec = codec;
+    }
+
+    @Override
+    protected Connection createConnection(Socket socket, int sendBufferSize,
+                                          int receiveBufferSize) {
+        return new FramedTcpConnection(socket, codec, sendBufferSize, receiveBufferSize,
+                false, tcpNoDelay, flushPolicy);
+    }
+}
@@ -0,0 +1,55 @@
+package edu.hm.dako.chat.tcp;
+
+import edu.hm.dako.chat.codec.PduCodec;
+import edu.hm.dako.chat.connection.Connection;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.Socket;
+
+/**
+ * Server-Socket fuer TCP-Verbindungen mit Rahmenbildung (siehe
+ * {@link FramedTcpConnection})
+ *
+ * @author Peter Mandl
+ */
+public class FramedTcpServerSocket extends TcpServerSocket {
+
+    // Kodierung des Rahmeninhalts
+    private final PduCodec codec;
+
+    // Empfangene PDUs wiederverwenden (siehe FramedTcpConnection)
+    private boolean pduPooling = false;
+
+    /**
+     * Erzeugt ein TCP-Serversocket und bindet es an einen Port.
+     *
+     * @param port              Portnummer, die verwendet werden soll
+     * @param codec             Kodierung des Rahmeninhalts
+     * @param sendBufferSize    Groesse des Sendepuffers in Byte
+     * @param receiveBufferSize Groesse des Empfangspuffers in Byte
+     * @throws BindException Port schon belegt
+     * @throws IOException   I/O-Fehler bei der Socket-Erzeugung
+     */
+    public FramedTcpServerSocket(int port, PduCodec codec, int sendBufferSize,
+                                 int receiveBufferSize) throws BindException, IOException {
+        super(port, sendBufferSize, receiveBufferSize);
+        this.codec = codec;
+    }
+
+    /**
+     * @param pduPooling true: empfangene PDUs der angenommenen Verbindungen
+     *                   wiederverwenden (Standard: false)
+     */
+    public void setPduPooling(boolean pduPooling) {
+        this.pduPooling = pduPooling;
+    }
+
+    @Override
+    protected Connection createConnection(Socket socket) {
+        FramedTcpConnection connection = new FramedTcpConnection(socket, codec,
+                sendBufferSize, receiveBufferSize, false, tcpNoDelay, flushPolicy);
+        connection.setPduPooling(pduPooling);
+        return connection;
+    }
+}
@@ -1,24 +1,39 @@
 package edu.hm.dako.chat.tcp;
 
+import edu.hm.dako.chat.codec.EncodedPdu;
 import edu.hm.dako.chat.connection.Connection;
 import edu.hm.dako.chat.connection.ConnectionTimeoutException;
+import edu.hm.dako.chat.connection.DeferredFlusher;
 import edu.hm.dako.chat.connection.EndOfFileException;
+import edu.hm.dako.chat.connection.FlushPolicy;
+import edu.hm.dako.chat.connection.FlushableConnection;
+import edu.hm.dako.chat.connection.GatheringConnection;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.net.Socket;
 import java.net.SocketException;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Implementierung der TCP-Verbindung
+ * <p/>
+ * PDUs koennen ueber {@link FlushableConnection} ohne sofortiges Flushen
+ * gesendet werden; wann sie geschrieben werden, legt die {@link FlushPolicy}
+ * fest. Die Groesse zurueckgehaltener PDUs ist erst bekannt, wenn der
+ * Objektstrom seinen internen Blockpuffer (1 KB) weitergibt; die
+ * Byte-Schwelle wird daher um bis zu 1 KB spaeter erkannt.
  *
  * @author Peter Mandl
  */
-public class TcpConnection implements Connection {
+public class TcpConnection implements Connection, GatheringConnection, FlushableConnection {
 
     private static Log log = LogFactory.getLog(TcpConnection.class);
 
@@ -29,6 +44,23 @@ public class TcpConnection implements Connection {
     // Verwendetes TCP-Socket
     private Socket socket;
 
+    // Sperre fuer den Verbindungsabbau (kein Monitor, damit virtuelle Threads
+    // beim blockierenden flush ihren Traeger-Thread nicht festhalten)
+    private final ReentrantLock closeLock = new ReentrantLock();
+
+    // Serialisiert das Schreiben, da der Zeitgeber der FlushPolicy parallel
+    // zum sendenden Thread flushen kann
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    // Groesse des Puffers fuer den Ausgabestrom in Byte
+    private static final int OUTPUT_BUFFER_SIZE = 16384;
+
+    // Zaehlt die in den Puffer geschriebenen Bytes fuer die FlushPolicy
+    private CountingOutputStream countingOut;
+
+    // Zeitpunkt des Schreibens zurueckgehaltener PDUs
+    private final DeferredFlusher flusher;
+
     /*
      * Zur Information: Standardgroesse des Empfangspuffers einer TCP-Verbindung:
      * 8192 Byte. Standardgroesse des Sendepuffers einer TCP-Verbindung: 8192
@@ -36,7 +68,23 @@ public class TcpConnection implements Connection {
      */
     public TcpConnection(Socket socket, int sendBufferSize, int receiveBufferSize,
                          boolean keepAlive, boolean TcpNoDelay) {
+        this(socket, sendBufferSize, receiveBufferSize, keepAlive, TcpNoDelay,
+                FlushPolicy.IMMEDIATE);
+    }
+
+    /**
+     * @param socket            Verbundenes Socket
+     * @param sendBufferSize    Groesse des Sendepuffers in Byte
+     * @param receiveBufferSize Groesse des Empfangspuffers in Byte
+     * @param keepAlive         TCP-Option KeepAlive
+     * @param TcpNoDelay        TCP-Option TcpNoDelay (true: Nagle-Algorithmus aus)
+     * @param flushPolicy       Schreibzeitpunkt fuer PDUs, die ohne Flush gesendet
+     *                          werden
+     */
+    public TcpConnection(Socket socket, int sendBufferSize, int receiveBufferSize,
+                         boolean keepAlive, boolean TcpNoDelay, FlushPolicy flushPolicy) {
         this.socket = socket;
+        this.flusher = new DeferredFlusher(flushPolicy, this);
 
         log.debug(Thread.currentThread().getName()
                 + ": Verbindung mit neuem Client aufgebaut, Remote-TCP-Port " + socket.getPort());
@@ -46,7 +94,15 @@ public class TcpConnection implements Connection {
             // Achtung: Erst Ausgabestrom, dann Eingabestrom erzeugen, sonst Fehler
             // beim Verbindungsaufbau, siehe API-Beschreibung
 
-            out = new ObjectOutputStream(socket.getOutputStream());
+            // Gepufferter Ausgabestrom: Geschrieben wird erst beim flush, damit
+            // mehrere PDUs mit einem Schreibaufruf uebertragen werden koennen.
+            // Der Stream-Header muss sofort raus, sonst blockiert der Partner
+            // beim Erzeugen seines Eingabestroms
+            countingOut = new CountingOutputStream(new BufferedOutputStream(
+                    socket.getOutputStream(),
+                    Math.max(OUTPUT_BUFFER_SIZE, flushPolicy.getThresholdBytes())));
+            out = new ObjectOutputStream(countingOut);
+            out.flush();
             in = new ObjectInputStream(socket.getInputStream());
 
             log.debug("Standardgroesse des Empfangspuffers der Verbindung: "
@@ -132,6 +188,11 @@ public class TcpConnection implements Connection {
 
     @Override
     public void send(Serializable message) throws Exception {
+        send(message, true);
+    }
+
+    @Override
+    public void send(Serializable message, boolean flush) throws Exception {
 
         if (socket.isClosed()) {
             log.debug("Sendeversuch, obwohl Socket geschlossen ist");
@@ -142,27 +203,149 @@ public class TcpConnection implements Connection {
             throw new IOException();
         }
 
+        writeLock.lock();
         try {
+            long before = countingOut.getCount();
             out.writeObject(message);
-            out.flush();
+            if (flush || flusher.written(countingOut.getCount() - before)) {
+                flushOutput();
+            }
         } catch (Exception e) {
             log.debug("Exception beim Sendeversuch an " + socket.getInetAddress());
             log.debug(e.getMessage());
             throw new IOException();
+        } finally {
+            writeLock.unlock();
         }
     }
 
     @Override
-    public synchronized void close() throws IOException {
+    public void sendEncoded(EncodedPdu pdu) throws Exception {
+        // Objektstrom kann keinen fertigen Rahmen uebernehmen
+        send(pdu.getPdu(), true);
+    }
+
+    @Override
+    public void sendEncoded(EncodedPdu pdu, boolean flush) throws Exception {
+        send(pdu.getPdu(), flush);
+    }
+
+    @Override
+    public void flush() throws Exception {
+        writeLock.lock();
         try {
-            out.flush();
-            log.debug("Verbindungssocket wird geschlossen, lokaler Port: "
-                    + socket.getLocalPort() + ", entfernter Port: " + socket.getPort());
-            socket.close();
+            if (!socket.isClosed()) {
+                flushOutput();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void endOfBatch() throws Exception {
+        writeLock.lock();
+        try {
+            if (flusher.isFlushAtEndOfBatch() && !socket.isClosed()) {
+                flushOutput();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public FlushPolicy getFlushPolicy() {
+        return flusher.getPolicy();
+    }
+
+    /**
+     * Puffer auf das Socket schreiben, nur unter der Schreibsperre
+     */
+    private void flushOutput() throws IOException {
+        flusher.flushed();
+        out.flush();
+    }
+
+    @Override
+    public void sendGathered(List<EncodedPdu> pdus) throws Exception {
+
+        if (socket.isClosed() || !socket.isConnected()) {
+            log.debug("Sendeversuch, obwohl Verbindung nicht mehr steht");
+            throw new IOException();
+        }
+
+        writeLock.lock();
+        try {
+            // Alle PDUs in den Puffer schreiben, dann einmal flushen
+            for (EncodedPdu pdu : pdus) {
+                out.writeObject(pdu.getPdu());
+            }
+            flushOutput();
         } catch (Exception e) {
-            log.debug("Exception beim Verbindungsabbau " + socket.getInetAddress());
+            log.debug("Exception beim Sendeversuch an " + socket.getInetAddress());
             log.debug(e.getMessage());
-            throw new IOException(new IOException());
+            throw new IOException();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeLock.lock();
+        try {
+            try {
+                flush();
+                log.debug("Verbindungssocket wird geschlossen, lokaler Port: "
+                        + socket.getLocalPort() + ", entfernter Port: " + socket.getPort());
+                socket.close();
+            } catch (Exception e) {
+                log.debug("Exception beim Verbindungsabbau " + socket.getInetAddress());
+                log.debug(e.getMessage());
+                throw new IOException(new IOException());
+            }
+        } finally {
+            closeLock.unlock();
+        }
+    }
+
+    /**
+     * Zaehlt die vom Objektstrom in den Puffer geschriebenen Bytes
+     */
+    private static class CountingOutputStream extends OutputStream {
+
+        private final OutputStream wrapped;
+        private long count = 0;
+
+        CountingOutputStream(OutputStream wrapped) {
+            this.wrapped = wrapped;
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            wrapped.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            wrapped.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            wrapped.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            wrapped.close();
         }
     }
 }
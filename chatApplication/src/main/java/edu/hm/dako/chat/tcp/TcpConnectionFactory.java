@@ -2,6 +2,7 @@ package edu.hm.dako.chat.tcp;
 
 import edu.hm.dako.chat.connection.Connection;
 import edu.hm.dako.chat.connection.ConnectionFactory;
+import edu.hm.dako.chat.connection.FlushPolicy;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -27,6 +28,26 @@ public class TcpConnectionFactory implements ConnectionFactory {
     // angenommen wird
     private long connectionTryCounter = 0;
 
+    // TCP-Option TcpNoDelay und Schreibzeitpunkt zurueckgehaltener PDUs fuer
+    // die erzeugten Verbindungen
+    boolean tcpNoDelay = true;
+    FlushPolicy flushPolicy = FlushPolicy.IMMEDIATE;
+
+    /**
+     * @param tcpNoDelay true: Nagle-Algorithmus ausschalten (Standard)
+     */
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    /**
+     * @param flushPolicy Schreibzeitpunkt fuer PDUs, die ohne Flush gesendet
+     *                    werden (Standard: IMMEDIATE)
+     */
+    public void setFlushPolicy(FlushPolicy flushPolicy) {
+        this.flushPolicy = flushPolicy;
+    }
+
     /**
      * Baut eine Verbindung zum Server auf. Der Verbindungsaufbau wird mehrmals
      * versucht.
@@ -34,7 +55,7 @@ public class TcpConnectionFactory implements ConnectionFactory {
     public Connection connectToServer(String remoteServerAddress, int serverPort,
                                       int localPort, int sendBufferSize, int receiveBufferSize) throws IOException {
 
-        TcpConnection connection = null;
+        Connection connection = null;
         boolean connected = false;
 
         // Es wird "localhost" fuer die lokale IP-Adresse verwendet
@@ -46,9 +67,9 @@ public class TcpConnectionFactory implements ConnectionFactory {
 
                 connectionTryCounter++;
 
-                connection = new TcpConnection(
+                connection = createConnection(
                         new Socket(remoteServerAddress, serverPort, localAddress, localPort),
-                        sendBufferSize, receiveBufferSize, false, true);
+                        sendBufferSize, receiveBufferSize);
                 connected = true;
 
             } catch (BindException e) {
@@ -79,4 +100,20 @@ public class TcpConnectionFactory implements ConnectionFactory {
                 + connectionTryCounter);
         return connection;
     }
+
+    /**
+     * Erzeugt die Verbindung auf einem bereits verbundenen Socket. Kann von
+     * abgeleiteten Factories fuer andere Verbindungsvarianten ueberschrieben
+     * werden.
+     *
+     * @param socket            Verbundenes Socket
+     * @param sendBufferSize    Groesse des Sendepuffers in Byte
+     * @param receiveBufferSize Groesse des Empfangspuffers in Byte
+     * @return Verbindung zum Server
+     */
+    protected Connection createConnection(Socket socket, int sendBufferSize,
+                                          int receiveBufferSize) {
+        return new TcpConnection(socket, sendBufferSize, receiveBufferSize, false, tcpNoDelay,
+                flushPolicy);
+    }
 }
@@ -1,12 +1,14 @@
 package edu.hm.dako.chat.tcp;
 
 import edu.hm.dako.chat.connection.Connection;
+import edu.hm.dako.chat.connection.FlushPolicy;
 import edu.hm.dako.chat.connection.ServerSocketInterface;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.io.IOException;
 import java.net.BindException;
+import java.net.Socket;
 
 /**
  * Server-Socket Implementierung auf TCP-Basis
@@ -21,6 +23,11 @@ public class TcpServerSocket implements ServerSocketInterface {
     int sendBufferSize;
     int receiveBufferSize;
 
+    // TCP-Option TcpNoDelay und Schreibzeitpunkt zurueckgehaltener PDUs fuer
+    // die angenommenen Verbindungen
+    boolean tcpNoDelay = true;
+    FlushPolicy flushPolicy = FlushPolicy.IMMEDIATE;
+
     /**
      * Erzeugt ein TCP-Serversocket und bindet es an einen Port.
      *
@@ -48,10 +55,37 @@ public class TcpServerSocket implements ServerSocketInterface {
         }
     }
 
+    /**
+     * @param tcpNoDelay true: Nagle-Algorithmus ausschalten (Standard)
+     */
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    /**
+     * @param flushPolicy Schreibzeitpunkt fuer PDUs, die ohne Flush gesendet
+     *                    werden (Standard: IMMEDIATE)
+     */
+    public void setFlushPolicy(FlushPolicy flushPolicy) {
+        this.flushPolicy = flushPolicy;
+    }
+
     @Override
     public Connection accept() throws IOException {
-        return new TcpConnection(serverSocket.accept(), sendBufferSize, receiveBufferSize,
-                false, true);
+        return createConnection(serverSocket.accept());
+    }
+
+    /**
+     * Erzeugt die Verbindung fuer ein neu angenommenes Socket. Kann von
+     * abgeleiteten Klassen fuer andere Verbindungsvarianten ueberschrieben
+     * werden.
+     *
+     * @param socket Angenommenes Socket
+     * @return Verbindung zum Client
+     */
+    protected Connection createConnection(Socket socket) {
+        return new TcpConnection(socket, sendBufferSize, receiveBufferSize, false, tcpNoDelay,
+                flushPolicy);
     }
 
     @Override
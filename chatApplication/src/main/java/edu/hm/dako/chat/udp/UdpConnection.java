@@ -0,0 +1,702 @@
+package edu.hm.dako.chat.udp;
+
+import edu.hm.dako.chat.codec.EncodedPdu;
+import edu.hm.dako.chat.codec.PduCodec;
+import edu.hm.dako.chat.common.ChatPDU;
+import edu.hm.dako.chat.common.ExceptionHandler;
+import edu.hm.dako.chat.connection.Connection;
+import edu.hm.dako.chat.connection.ConnectionTimeoutException;
+import edu.hm.dako.chat.connection.EndOfFileException;
+import edu.hm.dako.chat.connection.RetransmittingConnection;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.PortUnreachableException;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Verbindung ueber UDP mit gesicherter Zustellung. Jede PDU wird in genau
+ * einem Datagramm uebertragen:
+ * <pre>
+ * [Typ: 1 Byte][Sequenznummer: 4 Byte][Untergrenze: 4 Byte][Rahmen des Codecs]
+ * </pre>
+ * Der Empfaenger quittiert jedes DATA- und FIN-Datagramm mit einem
+ * ACK-Datagramm gleicher Sequenznummer. Unquittierte Datagramme werden nach
+ * Ablauf der Wartezeit wiederholt, hoechstens maxRetries mal; danach gilt
+ * die PDU als verloren. Die Wartezeit wird aus den gemessenen Umlaufzeiten
+ * geschaetzt (RFC 6298, ohne Messung wiederholter Datagramme) und je
+ * Wiederholung verdoppelt, hoechstens bis zur vorgegebenen maximalen
+ * Wartezeit.
+ * <p/>
+ * Je Verbindung sind hoechstens {@link #SEND_WINDOW} Datagramme
+ * unquittiert unterwegs; weitere Sendeversuche warten, bis Quittungen
+ * eintreffen oder Datagramme aufgegeben werden. Ohne diese Flusskontrolle
+ * laeuft der Empfangspuffer des Partners unter Last ueber, und die
+ * Wiederholungen verschaerfen die Ueberlast.
+ * <p/>
+ * Die Untergrenze ist die kleinste Sequenznummer, die der Sender zum
+ * Sendezeitpunkt noch wiederholt. Darunter liegende Luecken (aufgegebene
+ * PDUs) erwartet der Empfaenger nicht mehr, so dass die Duplikaterkennung
+ * mit einer kleinen Menge auskommt.
+ * <p/>
+ * Die PDUs werden in der Reihenfolge ihres Eintreffens ausgeliefert, ein
+ * verlorenes Datagramm haelt die folgenden nicht auf (kein
+ * Head-of-Line-Blocking wie bei TCP). Beim Abbau wartet die Verbindung, bis
+ * alle offenen PDUs quittiert oder aufgegeben sind, und sendet dann FIN.
+ * <p/>
+ * Die Wiederholungen aller Verbindungen steuert ein gemeinsamer
+ * Zeitgeber-Thread, der nie blockieren darf. Die Rueckmeldungen an den
+ * {@link Listener} laufen daher in einem eigenen Thread-Pool: Sendet die
+ * Anwendung dort (z.B. eine Response nach einem verlorenen Event) und wartet
+ * auf das Sendefenster, laufen Wiederholungen und Verlustzaehlung aller
+ * Verbindungen weiter und geben das Fenster frei.
+ * <p/>
+ * Auf Clientseite gehoert das Socket der Verbindung, ein eigener Thread
+ * empfaengt die Datagramme. Auf Serverseite teilen sich alle Verbindungen
+ * das Socket des {@link UdpServerSocket}, das die Datagramme nach
+ * Absenderadresse verteilt.
+ *
+ * @author Peter Mandl
+ */
+public class UdpConnection implements Connection, RetransmittingConnection {
+
+    private static Log log = LogFactory.getLog(UdpConnection.class);
+
+    // Datagrammtypen
+    static final byte DATA = 1;
+    static final byte ACK = 2;
+    static final byte FIN = 3;
+
+    // Laenge des Protokollkopfs: Typ, Sequenznummer, Untergrenze
+    static final int HEADER_LENGTH = 9;
+
+    // Maximale Nutzlast eines UDP-Datagramms ueber IPv4
+    static final int MAX_DATAGRAM_LENGTH = 65507;
+
+    // Maximale Wartezeit auf eine Quittung in ms, falls keine vorgegeben ist
+    public static final int DEFAULT_RETRANSMIT_TIMEOUT = 2000;
+
+    // Maximale Anzahl unquittierter Datagramme je Verbindung; klein genug,
+    // dass Events und Quittungen in den Empfangspuffer eines Clients
+    // (20000 Byte) passen
+    static final int SEND_WINDOW = 8;
+
+    // Untergrenze (wie RTO_MIN unter Linux) und Startwert der geschaetzten
+    // Wartezeit in ms
+    private static final long MIN_TIMEOUT_MILLIS = 200;
+    private static final long INITIAL_TIMEOUT_MILLIS = 200;
+
+    // Markiert im Empfangspuffer das Verbindungsende
+    private static final Object END_OF_STREAM = new Object();
+
+    // Thread des Zeitgebers, darf nicht auf das Sendefenster warten
+    private static volatile Thread timerThread;
+
+    // Gemeinsamer Zeitgeber fuer die Wiederholungen aller Verbindungen;
+    // quittierte Datagramme werden sofort aus seiner Warteschlange entfernt
+    private static final ScheduledThreadPoolExecutor timer = createTimer();
+
+    // Threads fuer die Rueckmeldungen an den Listener; ein blockierender
+    // Listener haelt damit nicht den Zeitgeber auf
+    private static final ExecutorService listenerExecutor =
+            Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Udp-Listener");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final DatagramSocket socket;
+    private final SocketAddress remoteAddress;
+    private final PduCodec codec;
+
+    // Maximale Anzahl an Wiederholungen je PDU und maximale Wartezeit in ns
+    private final int maxRetries;
+    private final long maxTimeoutNanos;
+
+    // Server-Socket, aus dessen Verbindungstabelle die Verbindung beim Abbau
+    // entfernt wird; null auf Clientseite
+    private final UdpServerSocket serverSocket;
+
+    // Senderseite: Vergabe der Sequenznummern und Schaetzung der Wartezeit;
+    // released wird signalisiert, wenn ein offenes Datagramm quittiert oder
+    // aufgegeben wurde
+    private final ReentrantLock sendLock = new ReentrantLock();
+    private final Condition released = sendLock.newCondition();
+    private int nextSequenceNumber = 1;
+    private long smoothedRtt = -1;
+    private long rttVariation;
+    private long timeoutNanos;
+
+    // Gesendete, noch nicht quittierte Datagramme
+    private final ConcurrentSkipListMap<Integer, Outstanding> outstanding =
+            new ConcurrentSkipListMap<Integer, Outstanding>();
+
+    // Empfaengerseite, nur vom Empfangsthread veraendert: Bis contiguous
+    // sind alle Sequenznummern empfangen oder vom Sender aufgegeben, darueber
+    // die einzeln empfangenen
+    private int contiguous = 0;
+    private final TreeSet<Integer> receivedAbove = new TreeSet<Integer>();
+
+    // Empfangene, noch nicht abgeholte PDUs
+    private final LinkedBlockingQueue<Object> received = new LinkedBlockingQueue<Object>();
+
+    private final ReentrantLock closeLock = new ReentrantLock();
+    private volatile boolean closed = false;
+    private volatile boolean peerClosed = false;
+
+    // Zaehler
+    private final AtomicLong retries = new AtomicLong(0);
+    private final AtomicLong lostMessages = new AtomicLong(0);
+    private final AtomicLong duplicates = new AtomicLong(0);
+
+    private volatile Listener listener;
+
+    /**
+     * Gesendetes, noch nicht quittiertes Datagramm
+     */
+    private static class Outstanding {
+        final int sequenceNumber;
+        final byte[] datagram;
+
+        // Enthaltene PDU, null bei FIN
+        final ChatPDU pdu;
+
+        final long sendTime = System.nanoTime();
+        volatile int retries = 0;
+        volatile ScheduledFuture<?> timeout;
+
+        Outstanding(int sequenceNumber, byte[] datagram, ChatPDU pdu) {
+            this.sequenceNumber = sequenceNumber;
+            this.datagram = datagram;
+            this.pdu = pdu;
+        }
+    }
+
+    /**
+     * @param socket            UDP-Socket; auf Clientseite mit dem Server
+     *                          verbunden und im Besitz der Verbindung
+     * @param remoteAddress     Adresse des Partners
+     * @param codec             Kodierung der PDUs
+     * @param retransmitTimeout Maximale Wartezeit auf eine Quittung in ms (0:
+     *                          Standardwert)
+     * @param maxRetries        Maximale Anzahl an Wiederholungen je PDU
+     * @param serverSocket      Server-Socket, das die Datagramme verteilt; null
+     *                          auf Clientseite
+     */
+    public UdpConnection(DatagramSocket socket, SocketAddress remoteAddress, PduCodec codec,
+                         int retransmitTimeout, int maxRetries, UdpServerSocket serverSocket) {
+        this.socket = socket;
+        this.remoteAddress = remoteAddress;
+        this.codec = codec;
+        this.maxRetries = Math.max(0, maxRetries);
+        this.maxTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(
+                Math.max(MIN_TIMEOUT_MILLIS,
+                        (retransmitTimeout > 0) ? retransmitTimeout : DEFAULT_RETRANSMIT_TIMEOUT));
+        this.timeoutNanos = Math.min(TimeUnit.MILLISECONDS.toNanos(INITIAL_TIMEOUT_MILLIS),
+                maxTimeoutNanos);
+        this.serverSocket = serverSocket;
+
+        log.debug(Thread.currentThread().getName() + ": UDP-Verbindung zu " + remoteAddress
+                + " aufgebaut, lokaler Port " + socket.getLocalPort());
+
+        if (serverSocket == null) {
+            Thread receiver = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    receiveLoop();
+                }
+            }, "UdpReceiver-" + socket.getLocalPort());
+            receiver.setDaemon(true);
+            receiver.start();
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor createTimer() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "Udp-Retransmit");
+                        thread.setDaemon(true);
+                        timerThread = thread;
+                        return thread;
+                    }
+                });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    @Override
+    public Serializable receive(int timeout)
+            throws Exception, ConnectionTimeoutException, EndOfFileException {
+        Object message = (timeout > 0) ? received.poll(timeout, TimeUnit.MILLISECONDS)
+                : received.take();
+        if (message == null) {
+            throw new ConnectionTimeoutException(new SocketTimeoutException());
+        }
+        return deliver(message);
+    }
+
+    @Override
+    public Serializable receive() throws Exception {
+        return deliver(received.take());
+    }
+
+    private Serializable deliver(Object message) throws EndOfFileException {
+        if (message == END_OF_STREAM) {
+            // Auch weitere Empfangsversuche sollen das Ende sehen
+            received.add(END_OF_STREAM);
+            log.debug("End of File beim Empfang von " + remoteAddress);
+            throw new EndOfFileException(new EOFException());
+        }
+        return (Serializable) message;
+    }
+
+    @Override
+    public void send(Serializable message) throws Exception {
+        checkOpen();
+        ChatPDU pdu = (ChatPDU) message;
+        transmit(DATA, codec.encode(pdu), pdu);
+    }
+
+    @Override
+    public void sendEncoded(EncodedPdu pdu) throws Exception {
+        checkOpen();
+
+        // Gemeinsamen, bereits kodierten Rahmen verwenden
+        transmit(DATA, pdu.getFrame(codec), pdu.getPdu());
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed || peerClosed) {
+            log.debug("Sendeversuch, obwohl Verbindung nicht mehr steht");
+            throw new IOException();
+        }
+    }
+
+    /**
+     * Datagramm mit neuer Sequenznummer senden und bis zur Quittung
+     * vormerken
+     *
+     * @param type  DATA oder FIN
+     * @param frame Rahmen des Codecs, null bei FIN
+     * @param pdu   Enthaltene PDU, null bei FIN
+     */
+    private void transmit(byte type, ByteBuffer frame, ChatPDU pdu) throws IOException {
+        int length = HEADER_LENGTH + ((frame == null) ? 0 : frame.remaining());
+        if (length > MAX_DATAGRAM_LENGTH) {
+            throw new IOException("PDU mit " + length + " Byte passt nicht in ein Datagramm");
+        }
+        byte[] datagram = new byte[length];
+        datagram[0] = type;
+        if (frame != null) {
+            frame.get(datagram, HEADER_LENGTH, length - HEADER_LENGTH);
+        }
+
+        Outstanding entry;
+        sendLock.lock();
+        try {
+            awaitWindow();
+            int sequenceNumber = nextSequenceNumber++;
+            Map.Entry<Integer, Outstanding> oldest = outstanding.firstEntry();
+            putInt(datagram, 1, sequenceNumber);
+            putInt(datagram, 5, (oldest == null) ? sequenceNumber : oldest.getKey());
+            entry = new Outstanding(sequenceNumber, datagram, pdu);
+            outstanding.put(sequenceNumber, entry);
+            entry.timeout = schedule(entry, timeoutNanos);
+        } finally {
+            sendLock.unlock();
+        }
+        sendDatagram(datagram);
+    }
+
+    /**
+     * Wartet, bis das Sendefenster wieder Platz hat. Aufruf nur mit sendLock.
+     * Im Zeitgeber wird nicht gewartet: Nur er gibt aufgegebene Datagramme
+     * frei, er wuerde also sich selbst und alle Verbindungen blockieren.
+     */
+    private void awaitWindow() throws IOException {
+        if ((outstanding.size() >= SEND_WINDOW) && (Thread.currentThread() == timerThread)) {
+            throw new IOException("Sendefenster zu " + remoteAddress
+                    + " voll, Zeitgeber wartet nicht");
+        }
+        try {
+            while (outstanding.size() >= SEND_WINDOW) {
+                if (peerClosed || socket.isClosed()) {
+                    throw new IOException("Verbindung zu " + remoteAddress + " abgebaut");
+                }
+                released.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Warten auf das Sendefenster unterbrochen");
+        }
+    }
+
+    private ScheduledFuture<?> schedule(final Outstanding entry, long delayNanos) {
+        return timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                timeout(entry);
+            }
+        }, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Wartezeit eines Datagramms abgelaufen: wiederholen oder aufgeben
+     */
+    private void timeout(Outstanding entry) {
+        if (outstanding.get(entry.sequenceNumber) != entry) {
+            // Inzwischen quittiert
+            return;
+        }
+        if (socket.isClosed() || (entry.retries >= maxRetries)) {
+            if (outstanding.remove(entry.sequenceNumber, entry)) {
+                if ((entry.pdu != null) && !socket.isClosed()) {
+                    lostMessages.incrementAndGet();
+                    log.debug("PDU " + entry.pdu.getPduType() + " an " + remoteAddress + " nach "
+                            + entry.retries + " Wiederholungen verloren");
+                    notifyListener(entry.pdu, true);
+                }
+                signalReleased();
+            }
+            return;
+        }
+
+        entry.retries++;
+        retries.incrementAndGet();
+        sendDatagram(entry.datagram);
+        if (entry.pdu != null) {
+            notifyListener(entry.pdu, false);
+        }
+
+        // Wartezeit je Wiederholung verdoppeln, hoechstens bis zur maximalen
+        // Wartezeit
+        long delay = currentTimeout();
+        for (int i = 0; (i < entry.retries) && (delay < maxTimeoutNanos); i++) {
+            delay *= 2;
+        }
+        entry.timeout = schedule(entry, Math.min(delay, maxTimeoutNanos));
+    }
+
+    /**
+     * Rueckmeldung an den Listener im Thread-Pool der Listener ausfuehren
+     *
+     * @param pdu  Wiederholte oder verlorene PDU
+     * @param lost true: verloren, false: wiederholt
+     */
+    private void notifyListener(final ChatPDU pdu, final boolean lost) {
+        final Listener current = listener;
+        if (current == null) {
+            return;
+        }
+        listenerExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (lost) {
+                        current.lost(pdu);
+                    } else {
+                        current.retransmitted(pdu);
+                    }
+                } catch (Exception e) {
+                    ExceptionHandler.logException(e);
+                }
+            }
+        });
+    }
+
+    private long currentTimeout() {
+        sendLock.lock();
+        try {
+            return timeoutNanos;
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    /**
+     * Quittung eingetroffen
+     */
+    private void acknowledged(int sequenceNumber) {
+        Outstanding entry = outstanding.remove(sequenceNumber);
+        if (entry == null) {
+            // Quittung eines wiederholten Datagramms
+            return;
+        }
+        ScheduledFuture<?> timeout = entry.timeout;
+        if (timeout != null) {
+            timeout.cancel(false);
+        }
+        if (entry.retries == 0) {
+            updateTimeout(System.nanoTime() - entry.sendTime);
+        }
+        signalReleased();
+    }
+
+    /**
+     * Wartezeit nach RFC 6298 aus einer gemessenen Umlaufzeit neu schaetzen
+     *
+     * @param rtt Umlaufzeit in ns
+     */
+    private void updateTimeout(long rtt) {
+        sendLock.lock();
+        try {
+            if (smoothedRtt < 0) {
+                smoothedRtt = rtt;
+                rttVariation = rtt / 2;
+            } else {
+                rttVariation = (3 * rttVariation + Math.abs(smoothedRtt - rtt)) / 4;
+                smoothedRtt = (7 * smoothedRtt + rtt) / 8;
+            }
+            timeoutNanos = Math.min(maxTimeoutNanos,
+                    Math.max(TimeUnit.MILLISECONDS.toNanos(MIN_TIMEOUT_MILLIS),
+                            smoothedRtt + 4 * rttVariation));
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    private void signalReleased() {
+        sendLock.lock();
+        try {
+            released.signalAll();
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    /**
+     * Eingetroffenes Datagramm bearbeiten. Wird nur vom Empfangsthread des
+     * Sockets aufgerufen.
+     *
+     * @param data   Empfangspuffer
+     * @param offset Beginn des Datagramms
+     * @param length Laenge des Datagramms
+     */
+    void handleDatagram(byte[] data, int offset, int length) {
+        if (length < HEADER_LENGTH) {
+            log.debug("Zu kurzes Datagramm von " + remoteAddress + " verworfen");
+            return;
+        }
+        byte type = data[offset];
+        int sequenceNumber = getInt(data, offset + 1);
+
+        if (type == ACK) {
+            acknowledged(sequenceNumber);
+            return;
+        }
+        if ((type != DATA) && (type != FIN)) {
+            log.debug("Unbekannter Datagrammtyp " + type + " von " + remoteAddress);
+            return;
+        }
+
+        // Jedes Datagramm quittieren, auch Duplikate, deren Quittung verloren
+        // gegangen ist
+        sendAck(socket, remoteAddress, sequenceNumber);
+        if (!isNew(sequenceNumber, getInt(data, offset + 5))) {
+            duplicates.incrementAndGet();
+            return;
+        }
+
+        if (type == FIN) {
+            peerClosed();
+            return;
+        }
+        try {
+            received.add(codec.decode(data, offset + HEADER_LENGTH + PduCodec.HEADER_LENGTH,
+                    length - HEADER_LENGTH - PduCodec.HEADER_LENGTH));
+        } catch (IOException e) {
+            log.error("Datagramm von " + remoteAddress + " nicht dekodierbar: " + e);
+        }
+    }
+
+    /**
+     * Duplikaterkennung
+     *
+     * @param sequenceNumber Sequenznummer des Datagramms
+     * @param floor          Kleinste Sequenznummer, die der Sender noch
+     *                       wiederholt
+     * @return true, wenn das Datagramm zum ersten Mal eintrifft
+     */
+    private boolean isNew(int sequenceNumber, int floor) {
+        boolean isNew = (sequenceNumber > contiguous) && receivedAbove.add(sequenceNumber);
+
+        // Vom Sender aufgegebene Sequenznummern werden nicht mehr erwartet
+        if (floor - 1 > contiguous) {
+            contiguous = floor - 1;
+            receivedAbove.headSet(contiguous, true).clear();
+        }
+        while (receivedAbove.remove(contiguous + 1)) {
+            contiguous++;
+        }
+        return isNew;
+    }
+
+    /**
+     * Partner hat die Verbindung abgebaut: Er nimmt nichts mehr an, offene
+     * Datagramme werden daher ohne Verlustzaehlung verworfen
+     */
+    private void peerClosed() {
+        log.debug("Verbindungsabbau durch " + remoteAddress);
+        peerClosed = true;
+        discardOutstanding();
+        received.add(END_OF_STREAM);
+    }
+
+    private void discardOutstanding() {
+        for (Outstanding entry : outstanding.values()) {
+            ScheduledFuture<?> timeout = entry.timeout;
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+        }
+        outstanding.clear();
+        signalReleased();
+    }
+
+    /**
+     * Empfangsschleife auf Clientseite
+     */
+    private void receiveLoop() {
+        byte[] buffer = new byte[MAX_DATAGRAM_LENGTH];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        while (!socket.isClosed()) {
+            try {
+                packet.setLength(buffer.length);
+                socket.receive(packet);
+                handleDatagram(packet.getData(), packet.getOffset(), packet.getLength());
+            } catch (PortUnreachableException e) {
+                // Server (noch) nicht erreichbar, die Wiederholung uebernimmt der
+                // Zeitgeber
+                log.debug("Server " + remoteAddress + " nicht erreichbar");
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    log.debug("Exception beim Empfang von " + remoteAddress + ": " + e);
+                }
+            }
+        }
+        received.add(END_OF_STREAM);
+    }
+
+    private void sendDatagram(byte[] datagram) {
+        try {
+            socket.send(new DatagramPacket(datagram, datagram.length, remoteAddress));
+        } catch (IOException e) {
+            // Wie ein verlorenes Datagramm behandeln, der Zeitgeber wiederholt
+            log.debug("Exception beim Sendeversuch an " + remoteAddress + ": " + e);
+        }
+    }
+
+    /**
+     * Quittung senden, auch fuer Partner ohne Verbindung (FIN nach dem Abbau)
+     */
+    static void sendAck(DatagramSocket socket, SocketAddress address, int sequenceNumber) {
+        byte[] ack = new byte[HEADER_LENGTH];
+        ack[0] = ACK;
+        putInt(ack, 1, sequenceNumber);
+        try {
+            socket.send(new DatagramPacket(ack, ack.length, address));
+        } catch (IOException e) {
+            log.debug("Quittung an " + address + " nicht sendbar: " + e);
+        }
+    }
+
+    static int getInt(byte[] data, int offset) {
+        return ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16)
+                | ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+    }
+
+    private static void putInt(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value >>> 24);
+        data[offset + 1] = (byte) (value >>> 16);
+        data[offset + 2] = (byte) (value >>> 8);
+        data[offset + 3] = (byte) value;
+    }
+
+    @Override
+    public long getNumberOfRetries() {
+        return retries.get();
+    }
+
+    @Override
+    public long getNumberOfLostMessages() {
+        return lostMessages.get();
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Wartet, bis alle offenen Datagramme quittiert oder aufgegeben sind,
+     * hoechstens so lange, wie alle Wiederholungen dauern koennen
+     */
+    private void awaitDrained() {
+        long remaining = maxTimeoutNanos * (maxRetries + 2);
+        sendLock.lock();
+        try {
+            while (!outstanding.isEmpty() && !peerClosed && (remaining > 0)) {
+                remaining = released.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            // Offene PDUs noch zustellen, dann dem Partner das Ende melden
+            awaitDrained();
+            if (!peerClosed && !socket.isClosed()) {
+                transmit(FIN, null, null);
+                awaitDrained();
+            }
+        } finally {
+            discardOutstanding();
+            received.add(END_OF_STREAM);
+            if (serverSocket != null) {
+                serverSocket.remove(remoteAddress, this);
+            } else {
+                socket.close();
+            }
+            log.debug("UDP-Verbindung zu " + remoteAddress + " abgebaut, Wiederholungen: "
+                    + retries.get() + ", verlorene PDUs: " + lostMessages.get()
+                    + ", Duplikate: " + duplicates.get());
+            closeLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package edu.hm.dako.chat.udp;
+
+import edu.hm.dako.chat.codec.PduCodec;
+import edu.hm.dako.chat.connection.Connection;
+import edu.hm.dako.chat.connection.ConnectionFactory;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+
+/**
+ * Erzeugen von UDP-Verbindungen zum Server. Ein Verbindungsaufbau findet
+ * nicht statt, die erste PDU (Login-Request) legt die Verbindung im Server
+ * an.
+ *
+ * @author Peter Mandl
+ */
+public class UdpConnectionFactory implements ConnectionFactory {
+
+    // Parameter der Verbindungen
+    private final PduCodec codec;
+    private final int retransmitTimeout;
+    private final int maxRetries;
+
+    /**
+     * @param codec             Kodierung der PDUs
+     * @param retransmitTimeout Maximale Wartezeit auf eine Quittung in ms (0:
+     *                          Standardwert)
+     * @param maxRetries        Maximale Anzahl an Wiederholungen je PDU
+     */
+    public UdpConnectionFactory(PduCodec codec, int retransmitTimeout, int maxRetries) {
+        this.codec = codec;
+        this.retransmitTimeout = retransmitTimeout;
+        this.maxRetries = maxRetries;
+    }
+
+    @Override
+    public Connection connectToServer(String remoteServerAddress, int serverPort,
+                                      int localPort, int sendBufferSize, int receiveBufferSize) throws IOException {
+        DatagramSocket socket = new DatagramSocket(localPort);
+        socket.setSendBufferSize(sendBufferSize);
+        socket.setReceiveBufferSize(receiveBufferSize);
+        socket.connect(new InetSocketAddress(remoteServerAddress, serverPort));
+        return new UdpConnection(socket, socket.getRemoteSocketAddress(), codec,
+                retransmitTimeout, maxRetries, null);
+    }
+}
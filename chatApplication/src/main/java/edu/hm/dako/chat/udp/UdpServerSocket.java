@@ -0,0 +1,172 @@
+package edu.hm.dako.chat.udp;
+
+import edu.hm.dako.chat.codec.PduCodec;
+import edu.hm.dako.chat.connection.Connection;
+import edu.hm.dako.chat.connection.ServerSocketInterface;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server-Socket auf UDP-Basis. Alle Verbindungen teilen sich ein
+ * Datagramm-Socket; ein Empfangsthread verteilt die eintreffenden Datagramme
+ * nach der Absenderadresse auf die {@link UdpConnection}s. Das erste
+ * Datagramm eines neuen Absenders (Sequenznummer 1) erzeugt eine neue
+ * Verbindung, die ueber {@link #accept()} abgeholt wird.
+ *
+ * @author Peter Mandl
+ */
+public class UdpServerSocket implements ServerSocketInterface {
+
+    private static Log log = LogFactory.getLog(UdpServerSocket.class);
+
+    // Pruefintervall von accept() auf ein geschlossenes Socket in ms
+    private static final int ACCEPT_POLL_INTERVAL = 500;
+
+    private final DatagramSocket socket;
+
+    // Parameter der Verbindungen
+    private final PduCodec codec;
+    private final int retransmitTimeout;
+    private final int maxRetries;
+
+    // Bestehende Verbindungen je Absenderadresse
+    private final ConcurrentHashMap<SocketAddress, UdpConnection> connections =
+            new ConcurrentHashMap<SocketAddress, UdpConnection>();
+
+    // Neue, noch nicht abgeholte Verbindungen
+    private final LinkedBlockingQueue<UdpConnection> newConnections =
+            new LinkedBlockingQueue<UdpConnection>();
+
+    /**
+     * Erzeugt ein UDP-Serversocket und bindet es an einen Port.
+     *
+     * @param port              Portnummer, die verwendet werden soll
+     * @param codec             Kodierung der PDUs
+     * @param sendBufferSize    Groesse des Sendepuffers in Byte
+     * @param receiveBufferSize Groesse des Empfangspuffers in Byte
+     * @param retransmitTimeout Maximale Wartezeit auf eine Quittung in ms
+     * @param maxRetries        Maximale Anzahl an Wiederholungen je PDU
+     * @throws BindException   Port schon belegt
+     * @throws SocketException Fehler bei der Socket-Erzeugung
+     */
+    public UdpServerSocket(int port, PduCodec codec, int sendBufferSize,
+                           int receiveBufferSize, int retransmitTimeout, int maxRetries)
+            throws BindException, SocketException {
+        this.codec = codec;
+        this.retransmitTimeout = retransmitTimeout;
+        this.maxRetries = maxRetries;
+        try {
+            socket = new DatagramSocket(port);
+            socket.setSendBufferSize(sendBufferSize);
+            socket.setReceiveBufferSize(receiveBufferSize);
+        } catch (BindException e) {
+            log.debug(
+                    "Port " + port + " auf dem Rechner schon in Benutzung, Bind Exception: " + e);
+            throw e;
+        } catch (SocketException e) {
+            log.debug("Schwerwiegender Fehler beim Anlegen eines UDP-Sockets mit Portnummer "
+                    + port + ": " + e);
+            throw e;
+        }
+
+        Thread receiver = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                receiveLoop();
+            }
+        }, "UdpServer-Receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    @Override
+    public Connection accept() throws IOException {
+        while (!socket.isClosed()) {
+            try {
+                UdpConnection connection = newConnections.poll(ACCEPT_POLL_INTERVAL,
+                        TimeUnit.MILLISECONDS);
+                if (connection != null) {
+                    return connection;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SocketException("accept unterbrochen");
+            }
+        }
+        throw new SocketException("Socket geschlossen");
+    }
+
+    /**
+     * Verteilt die eintreffenden Datagramme auf die Verbindungen
+     */
+    private void receiveLoop() {
+        byte[] buffer = new byte[UdpConnection.MAX_DATAGRAM_LENGTH];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        while (!socket.isClosed()) {
+            try {
+                packet.setLength(buffer.length);
+                socket.receive(packet);
+                dispatch(packet);
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    log.error("Exception beim Empfang eines Datagramms: " + e);
+                }
+            }
+        }
+    }
+
+    private void dispatch(DatagramPacket packet) {
+        SocketAddress address = packet.getSocketAddress();
+        byte[] data = packet.getData();
+        int offset = packet.getOffset();
+        int length = packet.getLength();
+
+        UdpConnection connection = connections.get(address);
+        if ((connection == null) && (length >= UdpConnection.HEADER_LENGTH)) {
+            byte type = data[offset];
+            int sequenceNumber = UdpConnection.getInt(data, offset + 1);
+            if ((type == UdpConnection.DATA) && (sequenceNumber == 1)) {
+                // Erste PDU eines neuen Clients
+                connection = new UdpConnection(socket, address, codec, retransmitTimeout,
+                        maxRetries, this);
+                connections.put(address, connection);
+                newConnections.add(connection);
+            } else if (type == UdpConnection.FIN) {
+                // Verbindung bereits abgebaut, Quittung ging verloren
+                UdpConnection.sendAck(socket, address, sequenceNumber);
+            }
+        }
+        if (connection != null) {
+            connection.handleDatagram(data, offset, length);
+        } else {
+            log.debug("Datagramm ohne Verbindung von " + address + " verworfen");
+        }
+    }
+
+    /**
+     * Verbindung nach dem Abbau aus der Tabelle entfernen
+     */
+    void remove(SocketAddress address, UdpConnection connection) {
+        connections.remove(address, connection);
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return socket.isClosed();
+    }
+}
@@ -0,0 +1,228 @@
+package edu.hm.dako.chat.microbenchmarks;
+
+import edu.hm.dako.chat.common.ChatPDU;
+import edu.hm.dako.chat.common.ClientConversationStatus;
+import edu.hm.dako.chat.common.ClientListEntry;
+import edu.hm.dako.chat.common.WaitList;
+import edu.hm.dako.chat.server.SharedChatClientList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Operationen der gemeinsamen Clientliste, die der Server je Chat-Nachricht
+ * ausfuehrt: Warteliste anlegen, fuer jeden Empfaenger einen Eintrag beim
+ * Confirm loeschen und die Liste aufraeumen. Gemessen wird fuer
+ * verschiedene Anzahlen angemeldeter Clients und mit mehreren Threads, die
+ * wie die Worker-Threads des Servers gleichzeitig auf die Liste zugreifen.
+ *
+ * @author Peter Mandl
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class ClientListBenchmark {
+
+    // Anzahl der vor jedem Aufraeumen beendeten Clients
+    static final int GC_BATCH = 16;
+
+    @Param({"10", "100", "1000", "5000"})
+    public int clients;
+
+    private SharedChatClientList clientList;
+
+    // Namen aller angemeldeten Clients
+    private String[] clientNames;
+
+    // Eintraege aller angemeldeten Clients, fuer den Ablauf ueber Client-IDs
+    private ClientListEntry[] clientEntries;
+
+    // Vergibt je Benchmark-Thread einen eigenen Initiator
+    private final AtomicInteger nextInitiator = new AtomicInteger();
+
+    // Vergibt je aufraeumendem Thread eigene Namen fuer beendete Clients
+    private final AtomicInteger nextGarbageThread = new AtomicInteger();
+
+    /**
+     * Zustand eines Benchmark-Threads: ein eigener initiierender Client, wie
+     * bei einem Worker-Thread, der die Requests genau eines Clients bearbeitet
+     */
+    @State(Scope.Thread)
+    public static class Initiator {
+
+        String userName;
+        int clientId;
+        ChatPDU event;
+        private int transactionCounter = 0;
+
+        @Setup
+        public void setup(ClientListBenchmark benchmark) {
+            int index = benchmark.nextInitiator.getAndIncrement()
+                    % benchmark.clientNames.length;
+            userName = benchmark.clientNames[index];
+            clientId = benchmark.clientEntries[index].getClientId();
+            event = SamplePdus.create(SamplePdus.CHAT_MESSAGE_EVENT);
+        }
+
+        /**
+         * Event mit neuer Transaktions-ID, damit sich die Wartelisten der
+         * Threads nicht ueberschneiden
+         */
+        ChatPDU nextEvent() {
+            event.setTransactionId(ChatPDU.createTransactionId(clientId, ++transactionCounter));
+            return event;
+        }
+    }
+
+    /**
+     * Zustand eines aufraeumenden Threads: vor jedem Aufruf werden
+     * {@link #GC_BATCH} beendete Clients ohne Wartelisten angelegt, die der
+     * Garbage Collector der Clientliste entfernen muss
+     */
+    @State(Scope.Thread)
+    public static class Garbage {
+
+        private String[] names;
+
+        @Setup(Level.Trial)
+        public void setup(ClientListBenchmark benchmark) {
+            int thread = benchmark.nextGarbageThread.getAndIncrement();
+            names = new String[GC_BATCH];
+            for (int i = 0; i < GC_BATCH; i++) {
+                names[i] = "Finished-" + thread + "-" + i;
+            }
+        }
+
+        @Setup(Level.Invocation)
+        public void createFinishedClients(ClientListBenchmark benchmark) {
+            for (String name : names) {
+                benchmark.clientList.createClient(name, new ClientListEntry(name, null));
+                benchmark.clientList.finish(name);
+            }
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        clientList = SharedChatClientList.getInstance();
+        clientList.deleteAll();
+        clientNames = new String[clients];
+        clientEntries = new ClientListEntry[clients];
+        for (int i = 0; i < clients; i++) {
+            clientNames[i] = "Client-" + i;
+            clientEntries[i] = new ClientListEntry(clientNames[i], null);
+            clientList.createClient(clientNames[i], clientEntries[i]);
+            clientList.changeClientStatus(clientNames[i], ClientConversationStatus.REGISTERED);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        clientList.deleteAll();
+    }
+
+    /**
+     * Vollstaendiger Ablauf einer Chat-Nachricht: Warteliste anlegen und fuer
+     * jeden Empfaenger den Eintrag loeschen, bis die Liste leer ist
+     */
+    @Benchmark
+    public WaitList waitListCycle(Initiator initiator) {
+        return waitListCycle(initiator.userName, initiator.nextEvent());
+    }
+
+    /**
+     * Wie {@link #waitListCycle(Initiator)}, aber wie im Worker ueber die
+     * Client-IDs: Initiator aus dem Confirm, bestaetigender Client als
+     * Eintrag, ohne Namensaufloesung
+     */
+    @Benchmark
+    public WaitList waitListCycleById(Initiator initiator) {
+        ChatPDU event = initiator.nextEvent();
+        clientList.createWaitList(initiator.clientId, event, System.nanoTime());
+        WaitList completed = null;
+        for (ClientListEntry entry : clientEntries) {
+            WaitList waitList = clientList.deleteWaitListEntry(initiator.clientId,
+                    event.getTransactionId(), entry);
+            if (waitList != null) {
+                completed = waitList;
+            }
+        }
+        return completed;
+    }
+
+    /**
+     * Warteliste anlegen und ohne Confirms wieder verwerfen, wie beim Logout
+     * eines Clients mit offenen Requests
+     */
+    @Benchmark
+    public void createAndDeleteWaitList(Initiator initiator) {
+        clientList.createWaitList(initiator.userName, initiator.nextEvent(), System.nanoTime());
+        clientList.deleteWaitList(initiator.userName);
+    }
+
+    /**
+     * Aufraeumen der Clientliste mit {@link #GC_BATCH} loeschbaren Clients je
+     * Aufruf. Durchlaufen werden nur die vorgemerkten Clients; mit der Laenge
+     * der Liste waechst nur das Austragen aus dem Benutzerverzeichnis, das je
+     * Client eine neue Momentaufnahme der Namensliste anlegt. Bei mehreren
+     * Threads entfernt ein Aufruf auch die von anderen Threads angelegten
+     * Clients oder wartet unter der Sperre auf deren Aufraeumen.
+     */
+    @Benchmark
+    public Vector<String> gcClientList(Garbage garbage) {
+        return clientList.gcClientList();
+    }
+
+    /**
+     * Wartelisten-Ablauf unter Konkurrenz mit einem Thread, der die Liste
+     * laufend aufraeumt; dieser entfernt je Aufruf {@link #GC_BATCH} beendete
+     * Clients unter der Sperre der Liste
+     */
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public WaitList contendedWaitListCycle(Initiator initiator) {
+        return waitListCycle(initiator.userName, initiator.nextEvent());
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public Vector<String> contendedGcClientList(Garbage garbage) {
+        return clientList.gcClientList();
+    }
+
+    private WaitList waitListCycle(String userName, ChatPDU event) {
+        clientList.createWaitList(userName, event, System.nanoTime());
+        WaitList completed = null;
+        for (String entryName : clientNames) {
+            WaitList waitList = clientList.deleteWaitListEntry(userName,
+                    event.getTransactionId(), entryName);
+            if (waitList != null) {
+                completed = waitList;
+            }
+        }
+        return completed;
+    }
+}
@@ -0,0 +1,136 @@
+package edu.hm.dako.chat.microbenchmarks;
+
+import edu.hm.dako.chat.codec.PduCodecType;
+import edu.hm.dako.chat.common.ChatPDU;
+import edu.hm.dako.chat.connection.Connection;
+import edu.hm.dako.chat.connection.ConnectionFactory;
+import edu.hm.dako.chat.connection.LoggingConnectionDecorator;
+import edu.hm.dako.chat.connection.ServerSocketInterface;
+import edu.hm.dako.chat.tcp.FramedTcpConnectionFactory;
+import edu.hm.dako.chat.tcp.FramedTcpServerSocket;
+import edu.hm.dako.chat.tcp.TcpConnectionFactory;
+import edu.hm.dako.chat.tcp.TcpServerSocket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Senden und Empfangen einer Chat-Nachricht ueber eine TCP-Verbindung auf
+ * dem lokalen Rechner: Der Benchmark-Thread sendet ein Chat-Event, ein
+ * Echo-Thread empfaengt es und sendet es zurueck. Gemessen wird die
+ * Umlaufzeit, wahlweise mit dem Logging-Dekorierer auf beiden Seiten.
+ *
+ * @author Peter Mandl
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConnectionRoundTripBenchmark {
+
+    // Port des Echo-Servers
+    private static final int SERVER_PORT = 50300;
+
+    // Puffergroessen wie in der Standardkonfiguration des Servers
+    private static final int BUFFER_SIZE = 300000;
+
+    @Param({"JavaSerialization", "Binary"})
+    public PduCodecType codecType;
+
+    @Param({"false", "true"})
+    public boolean decorated;
+
+    private ServerSocketInterface serverSocket;
+    private Connection clientConnection;
+    private Thread echoThread;
+    private ChatPDU message;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+
+        // Bei Java-Serialisierung wie im Client ein durchgehender Objektstrom,
+        // sonst Rahmen mit dem gewaehlten Codec
+        ConnectionFactory factory;
+        if (codecType == PduCodecType.JavaSerialization) {
+            serverSocket = new TcpServerSocket(SERVER_PORT, BUFFER_SIZE, BUFFER_SIZE);
+            factory = new TcpConnectionFactory();
+        } else {
+            serverSocket = new FramedTcpServerSocket(SERVER_PORT, codecType.createCodec(),
+                    BUFFER_SIZE, BUFFER_SIZE);
+            factory = new FramedTcpConnectionFactory(codecType.createCodec());
+        }
+
+        echoThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                echo();
+            }
+        }, "Echo-Server");
+        echoThread.setDaemon(true);
+        echoThread.start();
+
+        clientConnection = decorate(
+                factory.connectToServer("localhost", SERVER_PORT, 0, BUFFER_SIZE, BUFFER_SIZE));
+        message = SamplePdus.create(SamplePdus.CHAT_MESSAGE_EVENT);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        // Schliessen der Verbindung beendet den Echo-Thread
+        clientConnection.close();
+        echoThread.join(1000);
+        serverSocket.close();
+    }
+
+    @Benchmark
+    public Serializable roundTrip() throws Exception {
+        clientConnection.send(message);
+        return clientConnection.receive();
+    }
+
+    /**
+     * Nimmt genau eine Verbindung an und sendet jede empfangene Nachricht
+     * zurueck, bis die Verbindung geschlossen wird
+     */
+    private void echo() {
+        Connection connection = null;
+        try {
+            connection = decorate(serverSocket.accept());
+            while (true) {
+                connection.send(connection.receive());
+            }
+        } catch (Exception e) {
+            // Verbindung vom Benchmark geschlossen
+        } finally {
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (Exception e) {
+                    // Verbindung ist bereits geschlossen
+                }
+            }
+        }
+    }
+
+    private Connection decorate(Connection connection) {
+        if (decorated) {
+            return new LoggingConnectionDecorator(connection);
+        }
+        return connection;
+    }
+}
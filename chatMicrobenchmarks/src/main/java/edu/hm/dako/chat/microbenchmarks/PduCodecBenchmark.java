@@ -0,0 +1,84 @@
+package edu.hm.dako.chat.microbenchmarks;
+
+import edu.hm.dako.chat.codec.PduCodec;
+import edu.hm.dako.chat.codec.PduCodecType;
+import edu.hm.dako.chat.common.ChatPDU;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kodieren und Dekodieren jeder Beispiel-PDU mit jedem Codec, ohne Netz.
+ * Entspricht dem Aufwand, den Client und Server je Nachricht fuer die
+ * Serialisierung bzw. Deserialisierung treiben.
+ *
+ * @author Peter Mandl
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PduCodecBenchmark {
+
+    @Param({"JavaSerialization", "Binary"})
+    public PduCodecType codecType;
+
+    @Param({SamplePdus.LOGIN_REQUEST, SamplePdus.CHAT_MESSAGE_REQUEST,
+            SamplePdus.LOGOUT_REQUEST, SamplePdus.LOGIN_EVENT, SamplePdus.LOGOUT_EVENT,
+            SamplePdus.LOGIN_RESPONSE, SamplePdus.LOGIN_ERROR_RESPONSE,
+            SamplePdus.CHAT_MESSAGE_EVENT, SamplePdus.CHAT_MESSAGE_RESPONSE,
+            SamplePdus.LOGOUT_RESPONSE, SamplePdus.LOGIN_EVENT_CONFIRM,
+            SamplePdus.CHAT_MESSAGE_EVENT_CONFIRM, SamplePdus.LOGOUT_EVENT_CONFIRM,
+            SamplePdus.CHAT_MESSAGE_EVENT_CONFIRM_BATCH})
+    public String pdu;
+
+    private PduCodec codec;
+    private ChatPDU samplePdu;
+
+    // Kodierter Rahmen der Beispiel-PDU fuer das Dekodieren
+    private byte[] frame;
+
+    @Setup
+    public void setup() throws Exception {
+        codec = codecType.createCodec();
+        samplePdu = SamplePdus.create(pdu);
+        ByteBuffer encoded = codec.encode(samplePdu);
+        frame = new byte[encoded.remaining()];
+        encoded.get(frame);
+    }
+
+    @Benchmark
+    public ByteBuffer encode() throws Exception {
+        return codec.encode(samplePdu);
+    }
+
+    @Benchmark
+    public ChatPDU decode() throws Exception {
+        return codec.decode(frame, PduCodec.HEADER_LENGTH, frame.length - PduCodec.HEADER_LENGTH);
+    }
+
+    /**
+     * Kodieren und Dekodieren hintereinander, wie auf dem Weg vom Sender zum
+     * Empfaenger
+     */
+    @Benchmark
+    public ChatPDU roundTrip() throws Exception {
+        ByteBuffer encoded = codec.encode(samplePdu);
+        return codec.decode(encoded.array(), encoded.arrayOffset() + encoded.position()
+                + PduCodec.HEADER_LENGTH,
+                encoded.remaining() - PduCodec.HEADER_LENGTH);
+    }
+}
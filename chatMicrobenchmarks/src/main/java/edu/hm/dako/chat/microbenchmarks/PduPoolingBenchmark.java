@@ -0,0 +1,166 @@
+package edu.hm.dako.chat.microbenchmarks;
+
+import edu.hm.dako.chat.codec.BinaryPduCodec;
+import edu.hm.dako.chat.codec.PduCodec;
+import edu.hm.dako.chat.codec.PduPool;
+import edu.hm.dako.chat.common.ChatPDU;
+import edu.hm.dako.chat.common.ClientConversationStatus;
+import edu.hm.dako.chat.common.ClientListEntry;
+import edu.hm.dako.chat.common.WaitList;
+import edu.hm.dako.chat.server.SharedChatClientList;
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Empfangsseite des Servers fuer eine Chat-Nachricht: Warteliste anlegen und
+ * die Confirms aller Empfaenger dekodieren und austragen, einmal mit neuen
+ * PDUs je Confirm und einmal mit PDUs aus einem {@link PduPool}.
+ * <p/>
+ * Aussagekraeftig ist vor allem die Allokationsrate, daher mit dem
+ * GC-Profiler starten:
+ * <pre>
+ * java -jar target/benchmarks.jar PduPoolingBenchmark -prof gc
+ * </pre>
+ * gc.alloc.rate.norm geteilt durch clients ergibt die Byte je verteiltem
+ * Event auf der Empfangsseite.
+ *
+ * @author Peter Mandl
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PduPoolingBenchmark {
+
+    @Param({"false", "true"})
+    public boolean pooled;
+
+    @Param({"10", "100", "1000"})
+    public int clients;
+
+    // Transaktions-ID der Chat-Nachricht, auf die alle Confirms verweisen
+    private static final long TRANSACTION_ID = ChatPDU.createTransactionId(1, 4711);
+
+    // Gemeinsamer Codec aller Verbindungen, wie im Server
+    private BinaryPduCodec codec;
+
+    // Pool einer Verbindung; alle Confirms werden im selben Thread bearbeitet
+    private PduPool pool;
+
+    private SharedChatClientList clientList;
+    private ClientListEntry[] clientEntries;
+
+    // Initiator der Chat-Nachricht und verteiltes Event
+    private int initiatorId;
+    private ChatPDU event;
+
+    // Kodierte Confirms aller Empfaenger (mit Laengenfeld)
+    private byte[][] confirmFrames;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        // Ohne Log4j-Konfiguration stuende der Root-Logger auf DEBUG; gemessen
+        // wird der Betrieb ohne Debug-Ausgaben
+        Logger.getRootLogger().setLevel(org.apache.log4j.Level.WARN);
+
+        codec = new BinaryPduCodec();
+        pool = new PduPool();
+
+        clientList = SharedChatClientList.getInstance();
+        clientList.deleteAll();
+        clientEntries = new ClientListEntry[clients];
+        for (int i = 0; i < clients; i++) {
+            String clientName = "Client-" + i;
+            clientEntries[i] = new ClientListEntry(clientName, null);
+            clientList.createClient(clientName, clientEntries[i]);
+            clientList.changeClientStatus(clientName, ClientConversationStatus.REGISTERED);
+        }
+        initiatorId = clientEntries[0].getClientId();
+
+        event = SamplePdus.create(SamplePdus.CHAT_MESSAGE_EVENT);
+        event.setTransactionId(TRANSACTION_ID);
+        event.setEventClientId(initiatorId);
+        // Threadnamen wie in Server und Benchmarking-Client statt des JMH-Threads
+        event.setServerThreadName("Workerthread-1");
+
+        confirmFrames = new byte[clients][];
+        for (int i = 0; i < clients; i++) {
+            ChatPDU confirm = ChatPDU.createChatMessageEventConfirm("Client-" + i, event);
+            confirm.setTransactionId(TRANSACTION_ID);
+            confirm.setSequenceNumber(event.getSequenceNumber());
+            confirm.setClientThreadName("Client-Thread-" + i);
+            ByteBuffer encoded = codec.encode(confirm);
+            confirmFrames[i] = new byte[encoded.remaining()];
+            encoded.get(confirmFrames[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        clientList.deleteAll();
+    }
+
+    /**
+     * Vollstaendiger Ablauf einer Chat-Nachricht auf der Empfangsseite:
+     * Warteliste anlegen, je Empfaenger den Confirm dekodieren und austragen
+     */
+    @Benchmark
+    public WaitList confirmCycle() throws Exception {
+        clientList.createWaitList(initiatorId, event, System.nanoTime());
+        WaitList completed = null;
+        for (int i = 0; i < clients; i++) {
+            ChatPDU confirm = decode(confirmFrames[i]);
+            WaitList waitList = clientList.deleteWaitListEntry(confirm.getEventClientId(),
+                    confirm.getTransactionId(), clientEntries[i]);
+            if (waitList != null) {
+                completed = waitList;
+            }
+            release(confirm);
+        }
+        return completed;
+    }
+
+    /**
+     * Nur das Dekodieren der Confirms, ohne Warteliste
+     */
+    @Benchmark
+    public void decodeConfirms(Blackhole blackhole) throws Exception {
+        for (int i = 0; i < clients; i++) {
+            ChatPDU confirm = decode(confirmFrames[i]);
+            blackhole.consume(confirm.getTransactionId());
+            release(confirm);
+        }
+    }
+
+    private ChatPDU decode(byte[] frame) throws Exception {
+        int length = frame.length - PduCodec.HEADER_LENGTH;
+        if (pooled) {
+            return codec.decode(frame, PduCodec.HEADER_LENGTH, length, pool.acquire());
+        }
+        return codec.decode(frame, PduCodec.HEADER_LENGTH, length);
+    }
+
+    private void release(ChatPDU confirm) {
+        if (pooled) {
+            pool.release(confirm);
+        }
+    }
+}
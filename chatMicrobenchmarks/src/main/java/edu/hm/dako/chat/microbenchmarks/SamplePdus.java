@@ -0,0 +1,150 @@
+package edu.hm.dako.chat.microbenchmarks;
+
+import edu.hm.dako.chat.common.ChatPDU;
+import edu.hm.dako.chat.common.ClientConversationStatus;
+import edu.hm.dako.chat.common.PduType;
+
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Beispiel-PDUs fuer die Mikrobenchmarks: die Requests, wie sie der Client
+ * aufbaut, und alle Erzeugnisse der Fabrikmethoden von {@link ChatPDU}, mit
+ * realistisch belegten Feldern (Transaktions-ID, Threadnamen, Clientliste, Version der Userliste).
+ *
+ * @author Peter Mandl
+ */
+public final class SamplePdus {
+
+    /**
+     * Namen der Beispiel-PDUs, als Werte fuer @Param
+     */
+    public static final String LOGIN_REQUEST = "LoginRequest";
+    public static final String CHAT_MESSAGE_REQUEST = "ChatMessageRequest";
+    public static final String LOGOUT_REQUEST = "LogoutRequest";
+    public static final String LOGIN_EVENT = "LoginEvent";
+    public static final String LOGOUT_EVENT = "LogoutEvent";
+    public static final String LOGIN_RESPONSE = "LoginResponse";
+    public static final String LOGIN_ERROR_RESPONSE = "LoginErrorResponse";
+    public static final String CHAT_MESSAGE_EVENT = "ChatMessageEvent";
+    public static final String CHAT_MESSAGE_RESPONSE = "ChatMessageResponse";
+    public static final String LOGOUT_RESPONSE = "LogoutResponse";
+    public static final String LOGIN_EVENT_CONFIRM = "LoginEventConfirm";
+    public static final String CHAT_MESSAGE_EVENT_CONFIRM = "ChatMessageEventConfirm";
+    public static final String LOGOUT_EVENT_CONFIRM = "LogoutEventConfirm";
+    public static final String CHAT_MESSAGE_EVENT_CONFIRM_BATCH = "ChatMessageEventConfirmBatch";
+
+    // Laenge der Chat-Nachricht wie im Standardfall des Benchmarking-Clients
+    private static final int MESSAGE_LENGTH = 50;
+
+    // Anzahl der Clients in der Clientliste einer Login-Response
+    private static final int CLIENT_LIST_LENGTH = 50;
+
+    // Version der Userliste in Login-/Logout-Events und Login-Response
+    private static final long USER_LIST_VERSION = 1000;
+
+    // Anzahl der Confirms in einer Sammelbestaetigung
+    private static final int CONFIRM_BATCH_SIZE = 8;
+
+    // Request-Zaehler fuer die Transaktions-IDs
+    private static final AtomicInteger requestCounter = new AtomicInteger(0);
+
+    private SamplePdus() {
+    }
+
+    /**
+     * Beispiel-PDU erzeugen
+     *
+     * @param name Name der PDU, siehe Konstanten
+     * @return Neue PDU
+     */
+    public static ChatPDU create(String name) {
+        if (name.equals(LOGIN_REQUEST)) {
+            return request(PduType.LOGIN_REQUEST, null);
+        } else if (name.equals(CHAT_MESSAGE_REQUEST)) {
+            return chatMessageRequest();
+        } else if (name.equals(LOGOUT_REQUEST)) {
+            return request(PduType.LOGOUT_REQUEST, null);
+        } else if (name.equals(LOGIN_EVENT)) {
+            ChatPDU pdu = ChatPDU.createLoginEventPdu("Client-1",
+                    request(PduType.LOGIN_REQUEST, null));
+            pdu.setUserListVersion(USER_LIST_VERSION);
+            return pdu;
+        } else if (name.equals(LOGOUT_EVENT)) {
+            ChatPDU pdu = ChatPDU.createLogoutEventPdu("Client-1",
+                    request(PduType.LOGOUT_REQUEST, null));
+            pdu.setUserListVersion(USER_LIST_VERSION + 1);
+            return pdu;
+        } else if (name.equals(LOGIN_RESPONSE)) {
+            ChatPDU pdu = ChatPDU.createLoginResponsePdu("Client-1",
+                    request(PduType.LOGIN_REQUEST, null));
+            pdu.setClients(clientList());
+            pdu.setUserListVersion(USER_LIST_VERSION);
+            return pdu;
+        } else if (name.equals(LOGIN_ERROR_RESPONSE)) {
+            return ChatPDU.createLoginErrorResponsePdu(
+                    request(PduType.LOGIN_REQUEST, null), ChatPDU.LOGIN_ERROR);
+        } else if (name.equals(CHAT_MESSAGE_EVENT)) {
+            return ChatPDU.createChatMessageEventPdu("Client-1", chatMessageRequest());
+        } else if (name.equals(CHAT_MESSAGE_RESPONSE)) {
+            ChatPDU pdu = ChatPDU.createChatMessageResponsePdu("Client-1", 1000, 0, 1000, 0,
+                    100, "Client-Client-1", 125000);
+            pdu.setTransactionId(transactionId());
+            pdu.setSequenceNumber(100);
+            return pdu;
+        } else if (name.equals(LOGOUT_RESPONSE)) {
+            return ChatPDU.createLogoutResponsePdu("Client-1", 1000, 0, 1000, 0, 100,
+                    "Client-Client-1");
+        } else if (name.equals(LOGIN_EVENT_CONFIRM)) {
+            return ChatPDU.createLoginEventConfirm("Client-2", create(LOGIN_EVENT));
+        } else if (name.equals(CHAT_MESSAGE_EVENT_CONFIRM)) {
+            return ChatPDU.createChatMessageEventConfirm("Client-2", create(CHAT_MESSAGE_EVENT));
+        } else if (name.equals(LOGOUT_EVENT_CONFIRM)) {
+            return ChatPDU.createLogoutEventConfirm("Client-2", create(LOGOUT_EVENT));
+        } else if (name.equals(CHAT_MESSAGE_EVENT_CONFIRM_BATCH)) {
+            long[] transactionIds = new long[CONFIRM_BATCH_SIZE];
+            int[] eventClientIds = new int[CONFIRM_BATCH_SIZE];
+            for (int i = 0; i < CONFIRM_BATCH_SIZE; i++) {
+                transactionIds[i] = transactionId();
+                eventClientIds[i] = i + 1;
+            }
+            return ChatPDU.createChatMessageEventConfirmBatchPdu("Client-2", transactionIds,
+                    eventClientIds, CONFIRM_BATCH_SIZE);
+        }
+        throw new IllegalArgumentException("Unbekannte Beispiel-PDU " + name);
+    }
+
+    private static ChatPDU chatMessageRequest() {
+        StringBuilder message = new StringBuilder(MESSAGE_LENGTH);
+        for (int i = 0; i < MESSAGE_LENGTH; i++) {
+            message.append('A');
+        }
+        ChatPDU pdu = request(PduType.CHAT_MESSAGE_REQUEST, message.toString());
+        pdu.setSequenceNumber(100);
+        return pdu;
+    }
+
+    private static ChatPDU request(PduType pduType, String message) {
+        ChatPDU pdu = new ChatPDU();
+        pdu.setPduType(pduType);
+        pdu.setTransactionId(transactionId());
+        pdu.setClientStatus(ClientConversationStatus.REGISTERED);
+        pdu.setClientThreadName("Client-Client-1");
+        pdu.setUserName("Client-1");
+        pdu.setMessage(message);
+        return pdu;
+    }
+
+    // Transaktions-IDs wie im Client: Client-Nummer und Request-Zaehler
+    private static long transactionId() {
+        return ChatPDU.createTransactionId(1, requestCounter.incrementAndGet());
+    }
+
+    private static Vector<String> clientList() {
+        Vector<String> clients = new Vector<String>();
+        for (int i = 1; i <= CLIENT_LIST_LENGTH; i++) {
+            clients.add("Client-" + i);
+        }
+        return clients;
+    }
+}